@@ -110,6 +110,17 @@ CREATE TABLE `languagetype` (
 
 -- --------------------------------------------------------
 
+--
+-- Table structure for table `persistentdelete`
+--
+
+CREATE TABLE `persistentdelete` (
+  `id` int(11) NOT NULL,
+  `name` varchar(255) CHARACTER SET utf8 COLLATE utf8_unicode_ci NOT NULL
+) ENGINE=InnoDB DEFAULT CHARSET=latin1;
+
+-- --------------------------------------------------------
+
 --
 -- Table structure for table `repo`
 --
@@ -222,6 +233,13 @@ ALTER TABLE `languagetype`
   ADD PRIMARY KEY (`id`),
   ADD KEY `type` (`type`);
 
+--
+-- Indexes for table `persistentdelete`
+--
+ALTER TABLE `persistentdelete`
+  ADD PRIMARY KEY (`id`),
+  ADD UNIQUE KEY `name` (`name`);
+
 --
 -- Indexes for table `repo`
 --
@@ -286,6 +304,11 @@ ALTER TABLE `icon`
 ALTER TABLE `languagetype`
   MODIFY `id` int(10) UNSIGNED NOT NULL AUTO_INCREMENT, AUTO_INCREMENT=232;
 --
+-- AUTO_INCREMENT for table `persistentdelete`
+--
+ALTER TABLE `persistentdelete`
+  MODIFY `id` int(11) NOT NULL AUTO_INCREMENT;
+--
 -- AUTO_INCREMENT for table `repo`
 --
 ALTER TABLE `repo`
@@ -0,0 +1,170 @@
+/*
+ * Copyright (c) 2016 Boyter Online Services
+ *
+ * Use of this software is governed by the Fair Source License included
+ * in the LICENSE.TXT file, but will be eventually open under GNU General Public License Version 3
+ * see the README.md for when this clause will take effect
+ *
+ * Version 1.3.15
+ */
+package com.searchcode.app.benchmark;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Compares the JSON results of a benchmark run against a saved baseline run so that a change can be shown
+ * to be faster, or shown to not have made anything slower. A benchmark is a regression when it is slower than
+ * the baseline by more than the threshold percentage and by more than the combined error of the two runs.
+ */
+public class BaselineReport {
+
+    private final List<Comparison> comparisons;
+    private final double thresholdPercent;
+
+    public BaselineReport(Map<String, Score> baseline, Map<String, Score> current, double thresholdPercent) {
+        this.thresholdPercent = thresholdPercent;
+        this.comparisons = new ArrayList<>();
+
+        for (var entry : current.entrySet()) {
+            this.comparisons.add(new Comparison(entry.getKey(), baseline.get(entry.getKey()), entry.getValue(), thresholdPercent));
+        }
+    }
+
+    public List<Comparison> getComparisons() {
+        return this.comparisons;
+    }
+
+    public boolean hasRegression() {
+        return this.comparisons.stream().anyMatch(x -> x.regression);
+    }
+
+    /**
+     * Reads the results written by JMH using the JSON result format keyed by benchmark name and parameters
+     */
+    public static Map<String, Score> load(Path path) throws IOException {
+        try (Reader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            return parse(new JsonParser().parse(reader));
+        }
+    }
+
+    public static Map<String, Score> parse(JsonElement results) {
+        var scores = new LinkedHashMap<String, Score>();
+
+        for (var element : results.getAsJsonArray()) {
+            var result = element.getAsJsonObject();
+            var name = result.get("benchmark").getAsString();
+
+            if (result.has("params")) {
+                var params = new TreeMap<String, String>();
+                for (var param : result.getAsJsonObject("params").entrySet()) {
+                    params.put(param.getKey(), param.getValue().getAsString());
+                }
+                name += params.toString();
+            }
+
+            var primaryMetric = result.getAsJsonObject("primaryMetric");
+            var scoreError = primaryMetric.get("scoreError").getAsString();
+
+            scores.put(name, new Score(
+                    result.get("mode").getAsString(),
+                    primaryMetric.get("score").getAsDouble(),
+                    "NaN".equals(scoreError) ? 0 : Double.parseDouble(scoreError),
+                    primaryMetric.get("scoreUnit").getAsString()));
+        }
+
+        return scores;
+    }
+
+    /**
+     * Plain text table of every benchmark with how it changed from the baseline
+     */
+    public String render() {
+        var sb = new StringBuilder();
+        var width = this.comparisons.stream().mapToInt(x -> x.name.length()).max().orElse(10);
+        var format = "%-" + width + "s  %14s  %14s  %-10s  %9s  %s%n";
+
+        sb.append(String.format(format, "Benchmark", "Baseline", "Current", "Units", "Change", ""));
+
+        for (var comparison : this.comparisons) {
+            if (comparison.baseline == null) {
+                sb.append(String.format(format, comparison.name, "-", String.format("%.3f", comparison.current.score), comparison.current.unit, "-", "NEW"));
+                continue;
+            }
+
+            sb.append(String.format(format,
+                    comparison.name,
+                    String.format("%.3f", comparison.baseline.score),
+                    String.format("%.3f", comparison.current.score),
+                    comparison.current.unit,
+                    String.format("%+.1f%%", comparison.slowdownPercent),
+                    comparison.regression ? "REGRESSION" : comparison.improvement ? "IMPROVED" : ""));
+        }
+
+        sb.append(String.format("%nChange is how much slower than the baseline, regressions are slower by more than %.1f%% and the error of both runs%n", this.thresholdPercent));
+
+        return sb.toString();
+    }
+
+    public static class Score {
+        public final String mode;
+        public final double score;
+        public final double error;
+        public final String unit;
+
+        public Score(String mode, double score, double error, String unit) {
+            this.mode = mode;
+            this.score = score;
+            this.error = error;
+            this.unit = unit;
+        }
+
+        /**
+         * Throughput is the only mode where a bigger score is better
+         */
+        public boolean higherIsBetter() {
+            return "thrpt".equals(this.mode);
+        }
+    }
+
+    public static class Comparison {
+        public final String name;
+        public final Score baseline;
+        public final Score current;
+        public final double slowdownPercent;
+        public final boolean regression;
+        public final boolean improvement;
+
+        public Comparison(String name, Score baseline, Score current, double thresholdPercent) {
+            this.name = name;
+            this.baseline = baseline;
+            this.current = current;
+
+            // Cannot compare if there is nothing to compare against or they were measured differently
+            if (baseline == null || baseline.score == 0 || !baseline.mode.equals(current.mode) || !baseline.unit.equals(current.unit)) {
+                this.slowdownPercent = 0;
+                this.regression = false;
+                this.improvement = false;
+                return;
+            }
+
+            var slowdown = current.higherIsBetter() ? baseline.score - current.score : current.score - baseline.score;
+            var significant = Math.abs(slowdown) > baseline.error + current.error;
+
+            this.slowdownPercent = slowdown / baseline.score * 100;
+            this.regression = significant && this.slowdownPercent > thresholdPercent;
+            this.improvement = significant && this.slowdownPercent < -thresholdPercent;
+        }
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) 2016 Boyter Online Services
+ *
+ * Use of this software is governed by the Fair Source License included
+ * in the LICENSE.TXT file, but will be eventually open under GNU General Public License Version 3
+ * see the README.md for when this clause will take effect
+ *
+ * Version 1.3.15
+ */
+package com.searchcode.app.benchmark;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Entry point for the benchmarks jar. Runs the benchmarks saving the results as JSON and optionally compares
+ * them against a baseline, exiting with a non zero status if anything regressed so it can guard a build.
+ *
+ *     java -jar benchmarks.jar [-save results.json] [-baseline baseline.json] [-threshold 10] [regex]
+ *     java -jar benchmarks.jar -compare baseline.json results.json [-threshold 10]
+ *
+ * Run from the root of the repository so that the classifier and OWASP databases can be found.
+ */
+public class BenchmarkRunner {
+
+    private static final String DEFAULT_RESULTS = "jmh-result.json";
+    private static final String DEFAULT_INCLUDE = BenchmarkRunner.class.getPackageName() + ".*Benchmark";
+    private static final double DEFAULT_THRESHOLD = 10;
+
+    public static void main(String[] args) throws IOException, RunnerException {
+        Path save = Paths.get(DEFAULT_RESULTS);
+        Path baseline = null;
+        Path compare = null;
+        double threshold = DEFAULT_THRESHOLD;
+        String include = DEFAULT_INCLUDE;
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-save":
+                    save = Paths.get(args[++i]);
+                    break;
+                case "-baseline":
+                    baseline = Paths.get(args[++i]);
+                    break;
+                case "-compare":
+                    baseline = Paths.get(args[++i]);
+                    compare = Paths.get(args[++i]);
+                    break;
+                case "-threshold":
+                    threshold = Double.parseDouble(args[++i]);
+                    break;
+                default:
+                    include = args[i];
+            }
+        }
+
+        if (compare == null) {
+            new Runner(new OptionsBuilder()
+                    .include(include)
+                    .resultFormat(ResultFormatType.JSON)
+                    .result(save.toString())
+                    .build()).run();
+            compare = save;
+        }
+
+        if (baseline == null) {
+            return;
+        }
+
+        var report = new BaselineReport(BaselineReport.load(baseline), BaselineReport.load(compare), threshold);
+        System.out.println();
+        System.out.print(report.render());
+
+        if (report.hasRegression()) {
+            System.exit(1);
+        }
+    }
+}
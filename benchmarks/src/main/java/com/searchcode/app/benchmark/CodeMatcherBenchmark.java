@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) 2016 Boyter Online Services
+ *
+ * Use of this software is governed by the Fair Source License included
+ * in the LICENSE.TXT file, but will be eventually open under GNU General Public License Version 3
+ * see the README.md for when this clause will take effect
+ *
+ * Version 1.3.15
+ */
+package com.searchcode.app.benchmark;
+
+import com.searchcode.app.service.CodeMatcher;
+import com.searchcode.app.util.MultiTermMatcher;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Formatting of search results which runs for every result on every search
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CodeMatcherBenchmark {
+
+    private CodeMatcher codeMatcher;
+    private ArrayList<String> matchTerms;
+    private MultiTermMatcher matcher;
+    private List<String> matchingLines;
+
+    @Setup
+    public void setup() {
+        this.codeMatcher = new CodeMatcher();
+        this.matchTerms = this.codeMatcher.splitTerms("public String request.queryParams(\"q\") function");
+        this.matcher = this.codeMatcher.compileTerms(this.matchTerms);
+        this.matchingLines = new ArrayList<>();
+
+        for (var file : Corpus.getFiles()) {
+            for (var cmr : this.codeMatcher.findMatchingLines(file.codeLines, this.matchTerms, false)) {
+                if (cmr.isMatching()) {
+                    this.matchingLines.add(file.codeLines.get(cmr.getLineNumber()));
+                }
+            }
+        }
+    }
+
+    @Benchmark
+    public void findMatchingLines(Blackhole blackhole) {
+        var scanner = this.matcher.newScanner();
+
+        for (var file : Corpus.getFiles()) {
+            blackhole.consume(this.codeMatcher.findMatchingLines(file.codeLines, this.matchTerms, scanner, false));
+        }
+    }
+
+    @Benchmark
+    public void highlightLine(Blackhole blackhole) {
+        for (var line : this.matchingLines) {
+            blackhole.consume(this.codeMatcher.highlightLine(line, this.matchTerms));
+        }
+    }
+}
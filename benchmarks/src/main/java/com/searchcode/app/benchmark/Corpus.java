@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2016 Boyter Online Services
+ *
+ * Use of this software is governed by the Fair Source License included
+ * in the LICENSE.TXT file, but will be eventually open under GNU General Public License Version 3
+ * see the README.md for when this clause will take effect
+ *
+ * Version 1.3.15
+ */
+
+package com.searchcode.app.benchmark;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The checked in corpus of realistic files that the benchmarks run over. Files are read from the classpath
+ * so the benchmarks jar is self contained. Binary files are decoded as ISO-8859-1 so every byte maps to
+ * a single character the same way they look to the indexer.
+ */
+public final class Corpus {
+
+    private static final String CORPUS_LOCATION = "/corpus/";
+    private static final List<CorpusFile> FILES = load();
+
+    private Corpus() {
+    }
+
+    public static List<CorpusFile> getFiles() {
+        return FILES;
+    }
+
+    private static List<CorpusFile> load() {
+        var files = new ArrayList<CorpusFile>();
+
+        for (var line : new String(readResource("files.txt"), StandardCharsets.UTF_8).split("\n")) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+
+            var split = line.split(" ");
+            var bytes = readResource(split[0]);
+            var contents = "Unknown".equals(split[1]) ? new String(bytes, StandardCharsets.ISO_8859_1) : new String(bytes, StandardCharsets.UTF_8);
+
+            files.add(new CorpusFile(split[0], split[1], contents));
+        }
+
+        return Collections.unmodifiableList(files);
+    }
+
+    private static byte[] readResource(String name) {
+        try (InputStream inputStream = Corpus.class.getResourceAsStream(CORPUS_LOCATION + name)) {
+            if (inputStream == null) {
+                throw new IllegalStateException("missing corpus file " + name);
+            }
+
+            return inputStream.readAllBytes();
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    public static final class CorpusFile {
+        public final String fileName;
+        public final String languageName;
+        public final String contents;
+        public final List<String> codeLines;
+
+        public CorpusFile(String fileName, String languageName, String contents) {
+            this.fileName = fileName;
+            this.languageName = languageName;
+            this.contents = contents;
+            this.codeLines = Collections.unmodifiableList(Arrays.asList(contents.split("\\r\\n|\\n|\\r")));
+        }
+
+        @Override
+        public String toString() {
+            return this.fileName;
+        }
+    }
+}
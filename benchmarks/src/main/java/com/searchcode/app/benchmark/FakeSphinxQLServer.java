@@ -0,0 +1,336 @@
+/*
+ * Copyright (c) 2016 Boyter Online Services
+ *
+ * Use of this software is governed by the Fair Source License included
+ * in the LICENSE.TXT file, but will be eventually open under GNU General Public License Version 3
+ * see the README.md for when this clause will take effect
+ *
+ * Version 1.3.15
+ */
+package com.searchcode.app.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Stand in for a sphinx or manticore searchd speaking just enough of the MySQL protocol for the JDBC driver to
+ * connect and run statements against it, so the sphinx indexing path can be benchmarked without a real server.
+ * Statements are read fully and acknowledged without doing anything with them other than counting, with an
+ * optional delay per statement to stand in for the work a real server would do.
+ *
+ * Point searchcode at it by setting sphinx_connection_string to jdbc:mysql://%s:PORT and listing the address
+ * it is bound to in sphinx_servers_shards.
+ */
+public class FakeSphinxQLServer implements Closeable {
+
+    private static final int MAX_PACKET = 0xFFFFFF;
+
+    private static final int COM_QUIT = 0x01;
+    private static final int COM_INIT_DB = 0x02;
+    private static final int COM_QUERY = 0x03;
+    private static final int COM_PING = 0x0E;
+
+    // LONG_PASSWORD | LONG_FLAG | CONNECT_WITH_DB | PROTOCOL_41 | TRANSACTIONS | SECURE_CONNECTION
+    private static final int CAPABILITIES = 0x0001 | 0x0004 | 0x0008 | 0x0200 | 0x2000 | 0x8000;
+    private static final int CHARSET_UTF8 = 33;
+    private static final int STATUS_AUTOCOMMIT = 0x0002;
+    private static final int TYPE_VAR_STRING = 0xFD;
+
+    private static final String[][] VARIABLES = {
+            {"auto_increment_increment", "1"},
+            {"character_set_client", "utf8"},
+            {"character_set_connection", "utf8"},
+            {"character_set_results", "utf8"},
+            {"character_set_server", "utf8"},
+            {"collation_server", "utf8_general_ci"},
+            {"init_connect", ""},
+            {"interactive_timeout", "28800"},
+            {"lower_case_table_names", "0"},
+            {"max_allowed_packet", "1073741824"},
+            {"net_buffer_length", "16384"},
+            {"net_write_timeout", "60"},
+            {"sql_mode", ""},
+            {"system_time_zone", "UTC"},
+            {"time_zone", "SYSTEM"},
+            {"tx_isolation", "REPEATABLE-READ"},
+            {"wait_timeout", "28800"}
+    };
+
+    private final ServerSocket serverSocket;
+    private final long delayMicros;
+    private final List<Socket> sockets = new CopyOnWriteArrayList<>();
+    private final AtomicLong statements = new AtomicLong();
+    private final AtomicLong bytes = new AtomicLong();
+    private final AtomicLong connectionId = new AtomicLong();
+
+    /**
+     * Listens on the address and port, where a port of 0 picks a free one
+     */
+    public FakeSphinxQLServer(String address, int port, long delayMicros) throws IOException {
+        this.serverSocket = new ServerSocket();
+        this.serverSocket.setReuseAddress(true);
+        this.serverSocket.bind(new InetSocketAddress(InetAddress.getByName(address), port));
+        this.delayMicros = delayMicros;
+
+        var thread = new Thread(this::accept, "fake-sphinxql-" + address);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public int getPort() {
+        return this.serverSocket.getLocalPort();
+    }
+
+    /**
+     * Number of REPLACE or INSERT statements received
+     */
+    public long getStatements() {
+        return this.statements.get();
+    }
+
+    /**
+     * Bytes of REPLACE or INSERT statements received
+     */
+    public long getBytes() {
+        return this.bytes.get();
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.serverSocket.close();
+
+        for (var socket : this.sockets) {
+            socket.close();
+        }
+    }
+
+    private void accept() {
+        while (!this.serverSocket.isClosed()) {
+            try {
+                var socket = this.serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                this.sockets.add(socket);
+
+                var thread = new Thread(() -> this.serve(socket), "fake-sphinxql-connection");
+                thread.setDaemon(true);
+                thread.start();
+            } catch (IOException ignored) {
+                // Closing the server socket ends the loop
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try (socket;
+             var inputStream = socket.getInputStream();
+             var outputStream = socket.getOutputStream()) {
+
+            this.write(outputStream, 0, this.handshake());
+            this.readPacket(inputStream);
+            this.write(outputStream, 2, this.ok(0));
+
+            while (true) {
+                var packet = this.readPacket(inputStream);
+                var command = packet[0] & 0xFF;
+
+                switch (command) {
+                    case COM_QUIT:
+                        return;
+                    case COM_QUERY:
+                        // Only the start is needed to know what the statement is, which matters for large REPLACE statements
+                        this.query(outputStream, new String(packet, 1, Math.min(packet.length - 1, 256), StandardCharsets.UTF_8), packet.length - 1);
+                        break;
+                    case COM_PING:
+                    case COM_INIT_DB:
+                    default:
+                        this.write(outputStream, 1, this.ok(0));
+                }
+            }
+        } catch (IOException ignored) {
+            // Client went away
+        } finally {
+            this.sockets.remove(socket);
+        }
+    }
+
+    private void query(OutputStream outputStream, String sql, int length) throws IOException {
+        var statement = sql.replaceFirst("^\\s*(/\\*.*?\\*/\\s*)?", "").toUpperCase();
+
+        if (statement.startsWith("SHOW VARIABLES")) {
+            this.resultSet(outputStream, new String[]{"Variable_name", "Value"}, VARIABLES);
+        } else if (statement.startsWith("SHOW")) {
+            this.resultSet(outputStream, new String[]{"Collation", "Charset", "Id", "Default", "Compiled", "Sortlen"}, new String[0][]);
+        } else if (statement.startsWith("SELECT")) {
+            this.resultSet(outputStream, new String[]{"value"}, new String[][]{{"1"}});
+        } else {
+            if (statement.startsWith("REPLACE") || statement.startsWith("INSERT")) {
+                this.statements.incrementAndGet();
+                this.bytes.addAndGet(length);
+                this.delay();
+            }
+
+            this.write(outputStream, 1, this.ok(0));
+        }
+    }
+
+    private void delay() {
+        if (this.delayMicros <= 0) {
+            return;
+        }
+
+        var until = System.nanoTime() + this.delayMicros * 1000;
+        while (System.nanoTime() < until) {
+            Thread.onSpinWait();
+        }
+    }
+
+    private byte[] handshake() {
+        var packet = new ByteArrayOutputStream();
+        packet.write(10);
+        this.writeNullTerminated(packet, "5.5.0-fake-sphinxql");
+        this.writeInt(packet, this.connectionId.incrementAndGet(), 4);
+        packet.writeBytes("abcdefgh".getBytes(StandardCharsets.US_ASCII));
+        packet.write(0);
+        this.writeInt(packet, CAPABILITIES & 0xFFFF, 2);
+        packet.write(CHARSET_UTF8);
+        this.writeInt(packet, STATUS_AUTOCOMMIT, 2);
+        this.writeInt(packet, CAPABILITIES >>> 16, 2);
+        packet.write(21);
+        packet.writeBytes(new byte[10]);
+        packet.writeBytes("ijklmnopqrst".getBytes(StandardCharsets.US_ASCII));
+        packet.write(0);
+        return packet.toByteArray();
+    }
+
+    private byte[] ok(long affectedRows) {
+        var packet = new ByteArrayOutputStream();
+        packet.write(0);
+        this.writeLength(packet, affectedRows);
+        this.writeLength(packet, 0);
+        this.writeInt(packet, STATUS_AUTOCOMMIT, 2);
+        this.writeInt(packet, 0, 2);
+        return packet.toByteArray();
+    }
+
+    private byte[] eof() {
+        var packet = new ByteArrayOutputStream();
+        packet.write(0xFE);
+        this.writeInt(packet, 0, 2);
+        this.writeInt(packet, STATUS_AUTOCOMMIT, 2);
+        return packet.toByteArray();
+    }
+
+    private void resultSet(OutputStream outputStream, String[] columns, String[][] rows) throws IOException {
+        var sequence = 1;
+
+        var count = new ByteArrayOutputStream();
+        this.writeLength(count, columns.length);
+        this.write(outputStream, sequence++, count.toByteArray());
+
+        for (var column : columns) {
+            var packet = new ByteArrayOutputStream();
+            this.writeString(packet, "def");
+            this.writeString(packet, "");
+            this.writeString(packet, "");
+            this.writeString(packet, "");
+            this.writeString(packet, column);
+            this.writeString(packet, column);
+            packet.write(0x0C);
+            this.writeInt(packet, CHARSET_UTF8, 2);
+            this.writeInt(packet, 1024, 4);
+            packet.write(TYPE_VAR_STRING);
+            this.writeInt(packet, 0, 2);
+            packet.write(0);
+            this.writeInt(packet, 0, 2);
+            this.write(outputStream, sequence++, packet.toByteArray());
+        }
+
+        this.write(outputStream, sequence++, this.eof());
+
+        for (var row : rows) {
+            var packet = new ByteArrayOutputStream();
+            for (var value : row) {
+                this.writeString(packet, value);
+            }
+            this.write(outputStream, sequence++, packet.toByteArray());
+        }
+
+        this.write(outputStream, sequence, this.eof());
+        outputStream.flush();
+    }
+
+    /**
+     * Reads a whole packet joining any that were split for being over the maximum packet size
+     */
+    private byte[] readPacket(InputStream inputStream) throws IOException {
+        var payload = new ByteArrayOutputStream();
+        int length;
+
+        do {
+            var header = inputStream.readNBytes(4);
+            if (header.length < 4) {
+                throw new EOFException();
+            }
+
+            length = (header[0] & 0xFF) | (header[1] & 0xFF) << 8 | (header[2] & 0xFF) << 16;
+            var body = inputStream.readNBytes(length);
+            if (body.length < length) {
+                throw new EOFException();
+            }
+            payload.writeBytes(body);
+        } while (length == MAX_PACKET);
+
+        return payload.toByteArray();
+    }
+
+    private void write(OutputStream outputStream, int sequence, byte[] payload) throws IOException {
+        var header = new byte[]{(byte) payload.length, (byte) (payload.length >>> 8), (byte) (payload.length >>> 16), (byte) sequence};
+        outputStream.write(header);
+        outputStream.write(payload);
+        outputStream.flush();
+    }
+
+    private void writeInt(ByteArrayOutputStream packet, long value, int bytes) {
+        for (var i = 0; i < bytes; i++) {
+            packet.write((int) (value >>> (8 * i)) & 0xFF);
+        }
+    }
+
+    private void writeLength(ByteArrayOutputStream packet, long value) {
+        if (value < 251) {
+            packet.write((int) value);
+        } else if (value < 0x10000) {
+            packet.write(0xFC);
+            this.writeInt(packet, value, 2);
+        } else if (value < 0x1000000) {
+            packet.write(0xFD);
+            this.writeInt(packet, value, 3);
+        } else {
+            packet.write(0xFE);
+            this.writeInt(packet, value, 8);
+        }
+    }
+
+    private void writeString(ByteArrayOutputStream packet, String value) {
+        var bytes = value.getBytes(StandardCharsets.UTF_8);
+        this.writeLength(packet, bytes.length);
+        packet.writeBytes(bytes);
+    }
+
+    private void writeNullTerminated(ByteArrayOutputStream packet, String value) {
+        packet.writeBytes(value.getBytes(StandardCharsets.UTF_8));
+        packet.write(0);
+    }
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright (c) 2016 Boyter Online Services
+ *
+ * Use of this software is governed by the Fair Source License included
+ * in the LICENSE.TXT file, but will be eventually open under GNU General Public License Version 3
+ * see the README.md for when this clause will take effect
+ *
+ * Version 1.3.15
+ */
+package com.searchcode.app.benchmark;
+
+import com.searchcode.app.util.OWASPClassifier;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Matching of the OWASP rules against code which is done when viewing a file
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class OWASPClassifierBenchmark {
+
+    private OWASPClassifier owaspClassifier;
+
+    @Setup
+    public void setup() {
+        this.owaspClassifier = new OWASPClassifier();
+    }
+
+    @Benchmark
+    public void classifyCode(Blackhole blackhole) {
+        for (var file : Corpus.getFiles()) {
+            blackhole.consume(this.owaspClassifier.classifyCode(file.codeLines, file.languageName));
+        }
+    }
+}
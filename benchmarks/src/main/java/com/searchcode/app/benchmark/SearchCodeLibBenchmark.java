@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2016 Boyter Online Services
+ *
+ * Use of this software is governed by the Fair Source License included
+ * in the LICENSE.TXT file, but will be eventually open under GNU General Public License Version 3
+ * see the README.md for when this clause will take effect
+ *
+ * Version 1.3.15
+ */
+package com.searchcode.app.benchmark;
+
+import com.searchcode.app.util.SearchCodeLib;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The per file work done by the indexer to build the searchable content and decide what to skip
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SearchCodeLibBenchmark {
+
+    private SearchCodeLib searchCodeLib;
+
+    @Setup
+    public void setup() {
+        this.searchCodeLib = new SearchCodeLib();
+    }
+
+    @Benchmark
+    public void codeCleanPipeline(Blackhole blackhole) {
+        for (var file : Corpus.getFiles()) {
+            blackhole.consume(this.searchCodeLib.codeCleanPipeline(file.contents));
+        }
+    }
+
+    @Benchmark
+    public void splitKeywords(Blackhole blackhole) {
+        for (var file : Corpus.getFiles()) {
+            blackhole.consume(this.searchCodeLib.splitKeywords(file.contents, true));
+        }
+    }
+
+    @Benchmark
+    public void findInterestingKeywords(Blackhole blackhole) {
+        for (var file : Corpus.getFiles()) {
+            blackhole.consume(this.searchCodeLib.findInterestingKeywords(file.contents));
+        }
+    }
+
+    @Benchmark
+    public void isBinary(Blackhole blackhole) {
+        for (var file : Corpus.getFiles()) {
+            blackhole.consume(this.searchCodeLib.isBinary(file.codeLines, file.fileName));
+        }
+    }
+
+    @Benchmark
+    public void isMinified(Blackhole blackhole) {
+        for (var file : Corpus.getFiles()) {
+            blackhole.consume(this.searchCodeLib.isMinified(file.codeLines, file.fileName));
+        }
+    }
+}
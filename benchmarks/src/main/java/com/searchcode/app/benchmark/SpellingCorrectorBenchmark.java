@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) 2016 Boyter Online Services
+ *
+ * Use of this software is governed by the Fair Source License included
+ * in the LICENSE.TXT file, but will be eventually open under GNU General Public License Version 3
+ * see the README.md for when this clause will take effect
+ *
+ * Version 1.3.15
+ */
+package com.searchcode.app.benchmark;
+
+import com.searchcode.app.util.SearchcodeSpellingCorrector;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+/**
+ * Spelling suggestions made for searches that return no results, using the words of the corpus as the
+ * dictionary and misspellings of them as the searches
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SpellingCorrectorBenchmark {
+
+    private SearchcodeSpellingCorrector spellingCorrector;
+    private List<String> misspellings;
+
+    @Setup
+    public void setup() {
+        this.spellingCorrector = new SearchcodeSpellingCorrector();
+        this.misspellings = new ArrayList<>();
+        var words = new LinkedHashSet<String>();
+
+        for (var file : Corpus.getFiles()) {
+            for (var word : file.contents.split("[^a-zA-Z]+")) {
+                if (word.length() > 3) {
+                    this.spellingCorrector.putWord(word);
+                    words.add(word.toLowerCase());
+                }
+            }
+        }
+
+        // Drop a character from the middle of every tenth word so every lookup has to search
+        var count = 0;
+        for (var word : words) {
+            if (count++ % 10 == 0) {
+                var middle = word.length() / 2;
+                this.misspellings.add(word.substring(0, middle) + word.substring(middle + 1));
+            }
+        }
+    }
+
+    @Benchmark
+    public void correct(Blackhole blackhole) {
+        for (var word : this.misspellings) {
+            blackhole.consume(this.spellingCorrector.correct(word));
+        }
+    }
+}
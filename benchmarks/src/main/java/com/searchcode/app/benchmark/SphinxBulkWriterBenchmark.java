@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2016 Boyter Online Services
+ *
+ * Use of this software is governed by the Fair Source License included
+ * in the LICENSE.TXT file, but will be eventually open under GNU General Public License Version 3
+ * see the README.md for when this clause will take effect
+ *
+ * Version 1.3.15
+ */
+package com.searchcode.app.benchmark;
+
+import com.searchcode.app.config.SphinxSearchConfig;
+import com.searchcode.app.service.Singleton;
+import com.searchcode.app.service.index.SphinxBulkWriter;
+import com.searchcode.app.util.Properties;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writing documents into sphinx real time indexes spread over one or more servers, run against FakeSphinxQLServer
+ * bound to a loopback address per server. A batch size of 0 sends a statement per document which is how indexing
+ * worked before the bulk writer.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SphinxBulkWriterBenchmark {
+
+    private static final int DOCUMENTS = 2000;
+    private static final int SHARDS_PER_SERVER = 4;
+
+    @Param({"1", "2"})
+    public int servers;
+
+    @Param({"0", "4096"})
+    public int batchSizeKb;
+
+    @Param({"50"})
+    public long delayMicros;
+
+    private final List<FakeSphinxQLServer> fakeServers = new ArrayList<>();
+    private SphinxBulkWriter sphinxBulkWriter;
+    private List<SphinxBulkWriter.Row> rows;
+
+    @Setup
+    public void setup() throws IOException {
+        var serversShards = new ArrayList<String>();
+        var port = 0;
+
+        for (var i = 0; i < this.servers; i++) {
+            var address = "127.0.0." + (i + 1);
+            var server = new FakeSphinxQLServer(address, port, this.delayMicros);
+            port = server.getPort();
+            this.fakeServers.add(server);
+
+            var shards = new ArrayList<String>();
+            for (var j = 1; j <= SHARDS_PER_SERVER; j++) {
+                shards.add(Integer.toString(i * SHARDS_PER_SERVER + j));
+            }
+            serversShards.add(address + ":" + String.join(",", shards));
+        }
+
+        Properties.getProperties().setProperty("sphinx_connection_string", "jdbc:mysql://%s:" + port + "?characterEncoding=utf8&maxAllowedPacket=1073741824&net_buffer_length=16384");
+
+        var sphinxSearchConfig = new SphinxSearchConfig();
+        sphinxSearchConfig.setSphinxServersShards(String.join(";", serversShards));
+        this.sphinxBulkWriter = new SphinxBulkWriter(sphinxSearchConfig, Singleton.getLogger(), 1024L * this.batchSizeKb, 0, 0);
+
+        this.rows = new ArrayList<>();
+        var files = Corpus.getFiles();
+        for (var i = 0; i < DOCUMENTS; i++) {
+            var file = files.get(i % files.size());
+            this.rows.add(new SphinxBulkWriter.Row(i, file.contents.toLowerCase(), file.fileName, "repo/" + file.fileName, 1, 1, 1, 1, 1, file.codeLines.size()));
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        for (var server : this.fakeServers) {
+            server.close();
+        }
+        this.fakeServers.clear();
+    }
+
+    @Benchmark
+    public int write() {
+        return this.sphinxBulkWriter.write(this.rows);
+    }
+}
@@ -0,0 +1,3 @@
+#!/bin/bash
+echo "Launching searchcode server..."
+exec java -jar searchcode-1.3.15.jar "$@"
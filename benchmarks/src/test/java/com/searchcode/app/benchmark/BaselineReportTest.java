@@ -0,0 +1,69 @@
+package com.searchcode.app.benchmark;
+
+import com.google.gson.JsonParser;
+import junit.framework.TestCase;
+
+import java.util.LinkedHashMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class BaselineReportTest extends TestCase {
+
+    public void testParseJmhResults() {
+        var json = "[{\"benchmark\":\"a.B.c\",\"mode\":\"avgt\",\"params\":{\"size\":\"10\"},\"primaryMetric\":{\"score\":12.5,\"scoreError\":0.5,\"scoreUnit\":\"us/op\"}}," +
+                "{\"benchmark\":\"a.B.d\",\"mode\":\"thrpt\",\"primaryMetric\":{\"score\":100.0,\"scoreError\":\"NaN\",\"scoreUnit\":\"ops/s\"}}]";
+
+        var scores = BaselineReport.parse(new JsonParser().parse(json));
+
+        assertThat(scores).containsOnlyKeys("a.B.c{size=10}", "a.B.d");
+        assertThat(scores.get("a.B.c{size=10}").score).isEqualTo(12.5);
+        assertThat(scores.get("a.B.c{size=10}").error).isEqualTo(0.5);
+        assertThat(scores.get("a.B.d").error).isEqualTo(0);
+        assertThat(scores.get("a.B.d").higherIsBetter()).isTrue();
+    }
+
+    public void testAverageTimeRegression() {
+        var baseline = new LinkedHashMap<String, BaselineReport.Score>();
+        var current = new LinkedHashMap<String, BaselineReport.Score>();
+        baseline.put("slower", new BaselineReport.Score("avgt", 100, 1, "us/op"));
+        current.put("slower", new BaselineReport.Score("avgt", 120, 1, "us/op"));
+        baseline.put("faster", new BaselineReport.Score("avgt", 100, 1, "us/op"));
+        current.put("faster", new BaselineReport.Score("avgt", 50, 1, "us/op"));
+
+        var report = new BaselineReport(baseline, current, 10);
+
+        assertThat(report.hasRegression()).isTrue();
+        assertThat(report.getComparisons().get(0).regression).isTrue();
+        assertThat(report.getComparisons().get(0).slowdownPercent).isEqualTo(20.0);
+        assertThat(report.getComparisons().get(1).improvement).isTrue();
+        assertThat(report.render()).contains("REGRESSION").contains("IMPROVED");
+    }
+
+    public void testThroughputLowerIsRegression() {
+        var baseline = new LinkedHashMap<String, BaselineReport.Score>();
+        var current = new LinkedHashMap<String, BaselineReport.Score>();
+        baseline.put("b", new BaselineReport.Score("thrpt", 100, 1, "ops/s"));
+        current.put("b", new BaselineReport.Score("thrpt", 80, 1, "ops/s"));
+
+        assertThat(new BaselineReport(baseline, current, 10).hasRegression()).isTrue();
+    }
+
+    public void testWithinErrorIsNotRegression() {
+        var baseline = new LinkedHashMap<String, BaselineReport.Score>();
+        var current = new LinkedHashMap<String, BaselineReport.Score>();
+        baseline.put("b", new BaselineReport.Score("avgt", 100, 15, "us/op"));
+        current.put("b", new BaselineReport.Score("avgt", 120, 15, "us/op"));
+
+        assertThat(new BaselineReport(baseline, current, 10).hasRegression()).isFalse();
+    }
+
+    public void testNewBenchmarkIsNotRegression() {
+        var current = new LinkedHashMap<String, BaselineReport.Score>();
+        current.put("new", new BaselineReport.Score("avgt", 100, 1, "us/op"));
+
+        var report = new BaselineReport(new LinkedHashMap<>(), current, 10);
+
+        assertThat(report.hasRegression()).isFalse();
+        assertThat(report.render()).contains("NEW");
+    }
+}
@@ -0,0 +1,71 @@
+package com.searchcode.app.benchmark;
+
+import com.searchcode.app.config.SphinxSearchConfig;
+import com.searchcode.app.service.Singleton;
+import com.searchcode.app.service.index.SphinxBulkWriter;
+import com.searchcode.app.util.Properties;
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class FakeSphinxQLServerTest extends TestCase {
+
+    public void testBulkWriterAgainstFakeServers() throws Exception {
+        try (var first = new FakeSphinxQLServer("127.0.0.1", 0, 0);
+             var second = new FakeSphinxQLServer("127.0.0.2", first.getPort(), 0)) {
+
+            Properties.getProperties().setProperty("sphinx_connection_string", "jdbc:mysql://%s:" + first.getPort() + "?characterEncoding=utf8");
+
+            var sphinxSearchConfig = new SphinxSearchConfig();
+            sphinxSearchConfig.setSphinxServersShards("127.0.0.1:1,2;127.0.0.2:3,4");
+            var writer = new SphinxBulkWriter(sphinxSearchConfig, Singleton.getLogger(), 1024 * 1024, 0, 0);
+
+            var rows = new ArrayList<SphinxBulkWriter.Row>();
+            for (var i = 0; i < 100; i++) {
+                rows.add(new SphinxBulkWriter.Row(i, "contents é中 '\"\\ " + i, "file" + i, "repo/file" + i, 1, 1, 1, 1, 1, 1));
+            }
+
+            assertThat(writer.write(rows)).isEqualTo(100);
+            assertThat(first.getStatements()).isEqualTo(2);
+            assertThat(second.getStatements()).isEqualTo(2);
+            assertThat(first.getBytes()).isGreaterThan(0);
+        }
+    }
+
+    public void testConcurrentSearchesUsePool() throws Exception {
+        try (var server = new FakeSphinxQLServer("127.0.0.1", 0, 0)) {
+            Properties.getProperties().setProperty("sphinx_connection_string", "jdbc:mysql://%s:" + server.getPort() + "?characterEncoding=utf8&connectTimeout=1000");
+            Properties.getProperties().setProperty("sphinx_pool_size", "4");
+
+            var sphinxSearchConfig = new SphinxSearchConfig();
+            var executorService = Executors.newFixedThreadPool(16);
+            var futures = new ArrayList<Future<Integer>>();
+
+            for (var i = 0; i < 64; i++) {
+                futures.add(executorService.submit(() -> {
+                    try (var connection = sphinxSearchConfig.getConnection("127.0.0.1").get();
+                         var statement = connection.prepareStatement("SELECT id FROM codesearchrealtime WHERE MATCH(?) LIMIT 0, 20; SHOW META;")) {
+                        statement.setString(1, "test");
+                        try (var resultSet = statement.executeQuery()) {
+                            resultSet.next();
+                            return resultSet.getInt(1);
+                        }
+                    }
+                }));
+            }
+
+            for (var future : futures) {
+                assertThat(future.get()).isEqualTo(1);
+            }
+            executorService.shutdown();
+
+            assertThat(sphinxSearchConfig.getPoolStats(",")).contains("sphinx-127.0.0.1 active 0").contains("total 4");
+        } finally {
+            Properties.getProperties().remove("sphinx_pool_size");
+        }
+    }
+}
@@ -62,6 +62,7 @@ public class ServerRoutes {
 
     public static void RegisterServerRoutes() {
         get("/", (request, response) -> {
+            Singleton.getStatsService().incrementCount(Values.STATS_ROUTE_PREFIX + request.pathInfo());
             var codeRouteService = new CodeRouteService();
             return new FreeMarkerEngine().render(codeRouteService.root(request, response));
         });
@@ -117,18 +118,28 @@ public class ServerRoutes {
 
             get("/codesearch/", (request, response) -> {
                 addJsonHeaders(response);
+                Singleton.getStatsService().incrementCount(Values.STATS_ROUTE_PREFIX + request.pathInfo());
                 var searchRouteService = new SearchRouteService();
                 return new JsonTransformer().render(searchRouteService.codeSearch(request, response));
             });
 
             get("/literalcodesearch/", (request, response) -> {
                 addJsonHeaders(response);
+                Singleton.getStatsService().incrementCount(Values.STATS_ROUTE_PREFIX + request.pathInfo());
                 var searchRouteService = new SearchRouteService();
                 return new JsonTransformer().render(searchRouteService.literalCodeSearch(request, response));
             });
 
+            get("/regexcodesearch/", (request, response) -> {
+                addJsonHeaders(response);
+                Singleton.getStatsService().incrementCount(Values.STATS_ROUTE_PREFIX + request.pathInfo());
+                var searchRouteService = new SearchRouteService();
+                return new JsonTransformer().render(searchRouteService.regexCodeSearch(request, response));
+            });
+
             get("/codesearch/rss/", (request, response) -> {
                 addXmlHeaders(response);
+                Singleton.getStatsService().incrementCount(Values.STATS_ROUTE_PREFIX + request.pathInfo());
                 var searchRouteService = new SearchRouteService();
                 var map = new HashMap<String, Object>();
                 map.put("result", searchRouteService.codeSearch(request, response));
@@ -139,6 +150,7 @@ public class ServerRoutes {
 
             get("/timecodesearch/", (request, response) -> {
                 addJsonHeaders(response);
+                Singleton.getStatsService().incrementCount(Values.STATS_ROUTE_PREFIX + request.pathInfo());
                 var ars = new TimeSearchRouteService();
                 return new JsonTransformer().render(ars.getTimeSearch(request, response));
             });
@@ -16,4 +16,8 @@ import java.sql.SQLException;
 public interface IDatabaseConfig {
     Connection getConnection() throws SQLException;
     boolean closeConnection();
+
+    // Connection for statements that only read, which may be one of many so reads need not wait on each other or on writes
+    Connection getReadConnection() throws SQLException;
+    boolean closeReadConnection();
 }
@@ -56,4 +56,14 @@ public class MySQLDatabaseConfig implements IDatabaseConfig {
     public boolean closeConnection() {
         return true;
     }
+
+    @Override
+    public Connection getReadConnection() throws SQLException {
+        return this.getConnection();
+    }
+
+    @Override
+    public boolean closeReadConnection() {
+        return this.closeConnection();
+    }
 }
\ No newline at end of file
@@ -13,15 +13,26 @@ package com.searchcode.app.config;
 import com.searchcode.app.service.Singleton;
 import com.searchcode.app.util.LoggerWrapper;
 import com.searchcode.app.util.Properties;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import org.sqlite.SQLiteConfig;
 
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
 
+/**
+ * SQLite in write ahead log mode where one connection does all the writing and a pool of read only connections
+ * serves reads. With the write ahead log readers see the last commit and do not block or get blocked by the writer,
+ * so listing repositories or reading settings does not wait on indexing saving repository state.
+ */
 public class SQLiteDatabaseConfig implements IDatabaseConfig {
 
+    private static final String BUSY_TIMEOUT_MILLIS = "5000";
+
     private final LoggerWrapper logger;
     private Connection connection = null;
+    private volatile HikariDataSource readDataSource = null;
 
     public SQLiteDatabaseConfig() {
         this.logger = Singleton.getLogger();
@@ -31,14 +42,15 @@ public class SQLiteDatabaseConfig implements IDatabaseConfig {
         try {
             if (connection == null || connection.isClosed()) {
                 Singleton.getHelpers().closeQuietly(connection);
-                var sqliteFile = (String) Properties.getProperties().getOrDefault(Values.SQLITE_FILE, Values.DEFAULT_SQLITE_FILE);
-
                 Class.forName("org.sqlite.JDBC");
-                connection = DriverManager.getConnection("jdbc:sqlite:" + sqliteFile);
 
-                // WAL write ahead logging supposedly helps with performance but did not notice a difference
-                // PreparedStatement stmt = connection.prepareStatement("PRAGMA journal_mode=WAL;");
-                // stmt.execute();
+                var config = new SQLiteConfig();
+                config.setJournalMode(SQLiteConfig.JournalMode.WAL);
+                // Safe with the write ahead log as a crash can only lose the last commits, never corrupt the file
+                config.setSynchronous(SQLiteConfig.SynchronousMode.NORMAL);
+                config.setBusyTimeout(BUSY_TIMEOUT_MILLIS);
+
+                connection = DriverManager.getConnection(this.getUrl(), config.toProperties());
             }
         } catch (ClassNotFoundException ex) {
             this.logger.severe(String.format("0c59f5f2::error in class %s exception %s it appears searchcode is unable to connect sqlite as the driver is missing", ex.getClass(), ex.getMessage()));
@@ -54,4 +66,58 @@ public class SQLiteDatabaseConfig implements IDatabaseConfig {
         // things will break
         return false;
     }
+
+    /**
+     * Returns a read only connection from the pool which must be closed to hand it back
+     */
+    @Override
+    public Connection getReadConnection() throws SQLException {
+        var dataSource = this.readDataSource;
+        if (dataSource == null) {
+            dataSource = this.getReadDataSource();
+        }
+
+        return dataSource.getConnection();
+    }
+
+    @Override
+    public boolean closeReadConnection() {
+        return true;
+    }
+
+    private synchronized HikariDataSource getReadDataSource() throws SQLException {
+        if (this.readDataSource == null) {
+            // The writer creates the file and switches it to the write ahead log which read only connections cannot do
+            this.getConnection();
+
+            var sqliteConfig = new SQLiteConfig();
+            sqliteConfig.setReadOnly(true);
+            sqliteConfig.setBusyTimeout(BUSY_TIMEOUT_MILLIS);
+
+            var poolSize = Singleton.getHelpers().tryParseInt(Properties.getProperties().getProperty(Values.SQLITE_READ_POOL_SIZE, Values.DEFAULT_SQLITE_READ_POOL_SIZE), Values.DEFAULT_SQLITE_READ_POOL_SIZE);
+
+            var config = new HikariConfig();
+            config.setPoolName("sqlite-read");
+            config.setJdbcUrl(this.getUrl());
+            config.setDataSourceProperties(sqliteConfig.toProperties());
+            config.setReadOnly(true);
+            config.setConnectionTestQuery("SELECT 1");
+            config.setMaximumPoolSize(Math.max(1, poolSize));
+            config.setMinimumIdle(1);
+
+            try {
+                this.readDataSource = new HikariDataSource(config);
+            } catch (Exception ex) {
+                this.logger.severe(String.format("8b3f60d2::error in class %s exception %s unable to open read connections to sqlite", ex.getClass(), ex.getMessage()));
+                throw new SQLException(ex);
+            }
+        }
+
+        return this.readDataSource;
+    }
+
+    private String getUrl() {
+        var sqliteFile = (String) Properties.getProperties().getOrDefault(Values.SQLITE_FILE, Values.DEFAULT_SQLITE_FILE);
+        return "jdbc:sqlite:" + sqliteFile;
+    }
 }
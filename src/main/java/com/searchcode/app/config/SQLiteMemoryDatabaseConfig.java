@@ -43,4 +43,17 @@ public class SQLiteMemoryDatabaseConfig implements IDatabaseConfig {
     public boolean closeConnection() {
         return false;
     }
+
+    /**
+     * Every connection to an in memory database gets its own empty database so reads share the one connection
+     */
+    @Override
+    public Connection getReadConnection() throws SQLException {
+        return this.getConnection();
+    }
+
+    @Override
+    public boolean closeReadConnection() {
+        return false;
+    }
 }
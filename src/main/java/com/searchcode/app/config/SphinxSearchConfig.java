@@ -10,32 +10,39 @@
 
 package com.searchcode.app.config;
 
-import com.mysql.jdbc.exceptions.jdbc4.MySQLSyntaxErrorException;
 import com.searchcode.app.service.Singleton;
 import com.searchcode.app.util.Helpers;
 import com.searchcode.app.util.LoggerWrapper;
 import com.searchcode.app.util.Properties;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
 
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.SQLException;
 import java.util.HashMap;
+import java.util.Map;
 import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * This is slightly different to the other database connections because we need multiple
  * connections in order to support the different shards that Sphinx requires in order to
  * use a real time index.
  *
- * NB connections to sphinx are fairly cheap and pooled in the server itself so no need
- * to pool them here, at least that's the theory we shall see how it holds up in the
- * real world at some point.
+ * Each sphinx server gets its own connection pool which is shared by every instance of this class, so
+ * concurrent searches and indexing each get their own connection. Connections returned must be closed
+ * which hands them back to the pool. The pool checks connections that have been idle before handing them
+ * out and replaces old or broken ones in the background so there is no validity check on every call.
  */
 public class SphinxSearchConfig {
 
+    private static final Map<String, HikariDataSource> dataSources = new ConcurrentHashMap<>();
+    private static final long CONNECTION_TIMEOUT_MILLIS = 5_000;
+
     private String SPHINX_SERVERS_SHARDS;
+    private final int POOL_SIZE;
     private final Helpers helpers;
-    private final HashMap<String, Connection> connectionList = new HashMap<>();
     private final LoggerWrapper logger;
 
     public SphinxSearchConfig() {
@@ -43,31 +50,60 @@ public class SphinxSearchConfig {
         this.logger = Singleton.getLogger();
 
         this.SPHINX_SERVERS_SHARDS = Properties.getProperties().getProperty(Values.SPHINX_SERVERS_SHARDS, Values.DEFAULT_SPHINX_SERVERS_SHARDS);
+        this.POOL_SIZE = this.helpers.tryParseInt(Properties.getProperties().getProperty(Values.SPHINX_POOL_SIZE, Values.DEFAULT_SPHINX_POOL_SIZE), Values.DEFAULT_SPHINX_POOL_SIZE);
     }
 
+    /**
+     * Returns a pooled connection to the server which must be closed once finished with
+     */
     public Optional<Connection> getConnection(String server) throws SQLException {
-        Connection connection = null;
-
-        try {
-            connection = this.connectionList.getOrDefault(server, null);
-
-            if (connection == null || connection.isClosed() || !connection.isValid(1)) {
-                this.helpers.closeQuietly(connection);
-                Class.forName("com.mysql.jdbc.Driver");
-                var connectionString = (String) Properties.getProperties().getOrDefault("sphinx_connection_string", "jdbc:mysql://%s:9306?characterEncoding=utf8&maxAllowedPacket=1073741824&net_buffer_length=16384");
-
-                connectionString = String.format(connectionString, server);
-                connection = DriverManager.getConnection(connectionString, Values.EMPTYSTRING, Values.EMPTYSTRING);
+        return Optional.of(this.getDataSource(server).getConnection());
+    }
 
-                this.connectionList.put(server, connection);
+    /**
+     * Returns the active, idle, total and waiting counts for the pool of each server connected to
+     */
+    public String getPoolStats(String seperator) {
+        var stats = new TreeMap<String, String>();
+
+        for (var entry : dataSources.entrySet()) {
+            var pool = entry.getValue().getHikariPoolMXBean();
+            if (pool != null) {
+                stats.put(entry.getKey(), String.format("%s active %d idle %d total %d waiting %d",
+                        entry.getValue().getPoolName(),
+                        pool.getActiveConnections(),
+                        pool.getIdleConnections(),
+                        pool.getTotalConnections(),
+                        pool.getThreadsAwaitingConnection()));
             }
-        } catch (ClassNotFoundException ex) {
-            this.logger.severe(String.format("f9e4283d::error in class %s exception %s it appears searchcode is unable to connect sphinx using mysql connection as the driver is missing", ex.getClass(), ex.getMessage()));
-        } catch (MySQLSyntaxErrorException ex) {
-            this.logger.severe(String.format("2362eb21::error in class %s exception %s it appears searchcode is unable to connect sphinx", ex.getClass(), ex.getMessage()));
         }
 
-        return Optional.ofNullable(connection);
+        return String.join(seperator, stats.values());
+    }
+
+    private HikariDataSource getDataSource(String server) {
+        var connectionString = (String) Properties.getProperties().getOrDefault("sphinx_connection_string", "jdbc:mysql://%s:9306?characterEncoding=utf8&maxAllowedPacket=1073741824&net_buffer_length=16384");
+        var jdbcUrl = String.format(connectionString, server);
+
+        return dataSources.computeIfAbsent(jdbcUrl, x -> {
+            var config = new HikariConfig();
+            config.setPoolName("sphinx-" + server);
+            config.setDriverClassName("com.mysql.jdbc.Driver");
+            config.setJdbcUrl(jdbcUrl);
+            config.setUsername(Values.EMPTYSTRING);
+            config.setPassword(Values.EMPTYSTRING);
+            config.setMaximumPoolSize(this.POOL_SIZE);
+            config.setConnectionTimeout(CONNECTION_TIMEOUT_MILLIS);
+            // Start even when sphinx is down so that it can be connected to once it is back
+            config.setInitializationFailTimeout(-1);
+            // Searches send the query and SHOW META together
+            config.addDataSourceProperty("allowMultiQueries", "true");
+            // Sphinx does not understand the session variable queries the driver would otherwise run
+            config.addDataSourceProperty("useLocalSessionState", "true");
+
+            this.logger.info(String.format("5b1e0c97::creating sphinx connection pool for %s with %d connections", server, this.POOL_SIZE));
+            return new HikariDataSource(config);
+        });
     }
 
     /**
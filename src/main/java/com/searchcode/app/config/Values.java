@@ -24,12 +24,18 @@ public class Values {
     public static final String PROPERTIES_FILE_NAME = "searchcode.properties";
     public static final String SQLITE_FILE = "sqlite_file";
     public static final String DEFAULT_SQLITE_FILE = "searchcode.sqlite";
+    public static final String SQLITE_READ_POOL_SIZE = "sqlite_read_pool_size";
+    public static final String DEFAULT_SQLITE_READ_POOL_SIZE = "4";
     public static final String SERVER_PORT = "server_port";
     public static final String DEFAULT_SERVER_PORT = "8080";
     public static final String INDEXLOCATION = "index_location";
     public static final String DEFAULTINDEXLOCATION = "./index/";
     public static final String FACETSLOCATION = "facets_location";
     public static final String DEFAULTFACETSLOCATION = "./index/facet/";
+    public static final String SNIPPETLOCATION = "snippet_location";
+    public static final String DEFAULTSNIPPETLOCATION = "./index/snippet/";
+    public static final String SNIPPET_STORE = "snippet_store";
+    public static final String DEFAULT_SNIPPET_STORE = "true";
     public static final String TIMEINDEXLOCATION = "timeindex_location";
     public static final String DEFAULTTIMEINDEXLOCATION = "./index/time/";
     public static final String TIMEINDEXFACETLOCATION = "timeindex_facets_location";
@@ -44,6 +50,8 @@ public class Values {
     public static final String DEFAULTINDEXTIME = "5";
     public static final String SPELLINGCORRECTORSIZE = "spelling_corrector_size";
     public static final String DEFAULTSPELLINGCORRECTORSIZE = "10000";
+    public static final String SPELLING_CORRECTOR_SNAPSHOT = "spelling_corrector_snapshot";
+    public static final String DEFAULT_SPELLING_CORRECTOR_SNAPSHOT = "./index/spelling/snapshot.gz";
     public static final String ONLYLOCALHOST = "only_localhost";
     public static final String DEFAULTONLYLOCALHOST = "false";
     public static final String LOWMEMORY = "low_memory";
@@ -52,6 +60,8 @@ public class Values {
     public static final String DEFAULTGITBINARYPATH = "/usr/bin/git";
     public static final String USESYSTEMGIT = "use_system_git";
     public static final String DEFAULTUSESYSTEMGIT = "false";
+    public static final String GIT_BARE_INDEX = "git_bare_index";
+    public static final String DEFAULT_GIT_BARE_INDEX = "false";
     public static final String APIENABLED = "api_enabled";
     public static final String DEFAULTAPIENABLED = "false";
     public static final String APIKEYAUTH = "api_key_authentication";
@@ -70,6 +80,8 @@ public class Values {
     public static final String DEFAULT_MAX_FILE_LENGTH_READ = "30000000";
     public static final String OWASPDATABASELOCATION = "owasp_database_location";
     public static final String DEFAULTOWASPDATABASELOCATION = "./include/owasp/database.json";
+    public static final String OWASP_INDEX = "owasp_index";
+    public static final String DEFAULT_OWASP_INDEX = "false";
     public static final String CLASSIFIER_DATABASE_LOCATION = "classifier_database_location";
     public static final String DEFAULT_CLASSIFIER_DATABASE_LOCATION = "./include/classifier/database.json";
     public static final String LICENSE_DATABASE_LOCATION = "license_database_location";
@@ -88,6 +100,8 @@ public class Values {
     public static final String DEFAULT_GUESS_BINARY = "true";
     public static final String NUMBER_GIT_PROCESSORS = "number_git_processors";
     public static final String DEFAULT_NUMBER_GIT_PROCESSORS = "2";
+    public static final String REPO_INDEX_WORKERS = "repo_index_workers";
+    public static final String DEFAULT_REPO_INDEX_WORKERS = "1";
     public static final String NUMBER_SVN_PROCESSORS = "number_svn_processors";
     public static final String DEFAULT_NUMBER_SVN_PROCESSORS = "2";
     public static final String NUMBER_FILE_PROCESSORS = "number_file_processors";
@@ -112,6 +126,34 @@ public class Values {
     public static final String DEFAULT_DEEP_GUESS_FILES = "false";
     public static final String HOST_NAME = "host_name";
     public static final String DEFAULT_HOST_NAME = "localhost:8080";
+    public static final String FACET_CHILD_LIMIT = "facet_child_limit";
+    public static final String DEFAULT_FACET_CHILD_LIMIT = "200";
+    public static final String INDEX_RAM_BUFFER_SIZE_MB = "index_ram_buffer_size_mb";
+    public static final String DEFAULT_INDEX_RAM_BUFFER_SIZE_MB = "64";
+    public static final String INDEX_MERGE_POLICY = "index_merge_policy";
+    public static final String DEFAULT_INDEX_MERGE_POLICY = "tiered";
+    public static final String INDEX_COMMIT_INTERVAL = "index_commit_interval";
+    public static final String DEFAULT_INDEX_COMMIT_INTERVAL = "10";
+    public static final String STATS_FLUSH_INTERVAL = "stats_flush_interval";
+    public static final String DEFAULT_STATS_FLUSH_INTERVAL = "30";
+    public static final String INDEX_NEAR_REAL_TIME = "index_near_real_time";
+    public static final String DEFAULT_INDEX_NEAR_REAL_TIME = "true";
+    public static final String INDEX_DELTA = "index_delta";
+    public static final String DEFAULT_INDEX_DELTA = "true";
+    public static final String INDEX_TRIGRAMS = "index_trigrams";
+    public static final String DEFAULT_INDEX_TRIGRAMS = "true";
+    public static final String REGEX_MAX_CANDIDATES = "regex_max_candidates";
+    public static final String DEFAULT_REGEX_MAX_CANDIDATES = "5000";
+    public static final String REGEX_TIMEOUT_MILLIS = "regex_timeout_millis";
+    public static final String DEFAULT_REGEX_TIMEOUT_MILLIS = "2000";
+    public static final String SPOOL_LOCATION = "spool_location";
+    public static final String DEFAULT_SPOOL_LOCATION = "./index/spool/";
+    public static final String SPOOL_MAX_SIZE_MB = "spool_max_size_mb";
+    public static final String DEFAULT_SPOOL_MAX_SIZE_MB = "1024";
+    public static final String SPOOL_BATCH_SIZE_MB = "spool_batch_size_mb";
+    public static final String DEFAULT_SPOOL_BATCH_SIZE_MB = "64";
+    public static final String SPOOL_MAX_ATTEMPTS = "spool_max_attempts";
+    public static final String DEFAULT_SPOOL_MAX_ATTEMPTS = "10";
 
     // Used for both searchcoee server and searchcode.com
     public static final String DEFAULT_HIGHLIGHTER = "javascript";
@@ -126,11 +168,18 @@ public class Values {
     public static final String DEFAULT_INDEX_SERVICE = "internal";
     public static final String SPHINX_SERVERS_SHARDS = "sphinx_servers_shards";
     public static final String DEFAULT_SPHINX_SERVERS_SHARDS = "localhost:1";
+    public static final String SPHINX_POOL_SIZE = "sphinx_pool_size";
+    public static final String DEFAULT_SPHINX_POOL_SIZE = "10";
+    public static final String SPHINX_WRITE_BATCH_SIZE_KB = "sphinx_write_batch_size_kb";
+    public static final String DEFAULT_SPHINX_WRITE_BATCH_SIZE_KB = "4096";
+    public static final String SPHINX_WRITE_RETRIES = "sphinx_write_retries";
+    public static final String DEFAULT_SPHINX_WRITE_RETRIES = "3";
     public static final String INDEX_ALL_FIELDS = "index_all_fields";
     public static final String DEFAULT_INDEX_ALL_FIELDS = "content,filename,filenamereverse,path,interesting";
 
     // Lucene stored values for indexing / searching
     public static final String CONTENTS = "contents";
+    public static final String CONTENTS_TRIGRAM = "contentstrigram"; // Every trigram of the contents for regex search
     public static final String PATH = "path"; // The primary key for everything in the index
     public static final String FILELOCATION = "filelocation";
     public static final String FILELOCATIONFILENAME = "filelocationfilename";
@@ -152,11 +201,13 @@ public class Values {
     public static final String CODEID = "codeid";
     public static final String SCHASH = "schash"; // Not a real simhash but custom one
     public static final String DISPLAY_LOCATION = "displaylocation";
+    public static final String OWASP_FINDINGS = "owaspfindings";
     // Facets
     public static final String LANGUAGENAME = "languagename";
     public static final String REPONAME = "reponame";
     public static final String CODEOWNER = "codeowner";
     public static final String SOURCE = "source";
+    public static final String OWASP = "owasp";
 
     // Lucene values for literal search
     public static final String FILE_NAME_LITERAL = "fn";
@@ -164,6 +215,7 @@ public class Values {
     public static final String LANGUAGE_NAME_LITERAL = "ln";
     public static final String OWNER_NAME_LITERAL = "on";
     public static final String DISPLAY_LOCATION_LITERAL = "fl";
+    public static final String OWASP_NAME_LITERAL = "ow";
 
     // Random
     public static final String USERSESSIONID = "admin_user";
@@ -183,6 +235,9 @@ public class Values {
 
     // CacheSingleton lookup values
     public static final String CACHE_TOTAL_SEARCH = "statsservice-totalsearch";
+    public static final String CACHE_TOTAL_INDEXED = "statsservice-totalindexed";
+    public static final String STATS_ROUTE_PREFIX = "statsservice-route-";
+    public static final String STATS_API_KEY_PREFIX = "statsservice-apikey-";
 
     // Used for things stored in data table
     public static final String PERSISTENT_DELETE_QUEUE = "persistent-delete-queue";
@@ -225,6 +280,7 @@ public class Values {
     public static final String NBSP = "&nbsp;";
 
     // Used to control cache
+    public static final int LARGE_CACHE_SIZE = 100_000;
     public static final int DEFAULT_CACHE_SIZE = 10_000;
     public static final int SMALL_CACHE_SIZE = 1_000;
     public static final int LOW_CACHE_DAYS = 5;
@@ -44,12 +44,12 @@ public class Api {
         this.createTableIfMissing();
     }
 
-    public synchronized List<ApiResult> getAllApi() {
+    public List<ApiResult> getAllApi() {
         var apiResults = new ArrayList<ApiResult>();
         var connStmtRs = new ConnStmtRs();
 
         try {
-            connStmtRs.conn = this.dbConfig.getConnection();
+            connStmtRs.conn = this.dbConfig.getReadConnection();
             connStmtRs.stmt = connStmtRs.conn.prepareStatement("select rowid,publickey,privatekey,lastused,data from api;");
             connStmtRs.rs = connStmtRs.stmt.executeQuery();
 
@@ -65,18 +65,18 @@ public class Api {
         } catch (SQLException ex) {
             this.logger.severe(String.format("c58e8a00::error in class %s exception %s searchcode was unable to pull the api keys from the database api calls will fail, most likely the table has changed or is missing", ex.getClass(), ex.getMessage()));
         } finally {
-            this.helpers.closeQuietly(connStmtRs, this.dbConfig.closeConnection());
+            this.helpers.closeQuietly(connStmtRs, this.dbConfig.closeReadConnection());
         }
 
         return apiResults;
     }
 
-    public synchronized Optional<ApiResult> getApiByPublicKey(String publicKey) {
+    public Optional<ApiResult> getApiByPublicKey(String publicKey) {
         Optional<ApiResult> result = Optional.empty();
         var connStmtRs = new ConnStmtRs();
 
         try {
-            connStmtRs.conn = this.dbConfig.getConnection();
+            connStmtRs.conn = this.dbConfig.getReadConnection();
             connStmtRs.stmt = connStmtRs.conn.prepareStatement("select rowid,publickey,privatekey,lastused,data from api where publickey=?;");
 
             connStmtRs.stmt.setString(1, publicKey);
@@ -95,7 +95,7 @@ public class Api {
         } catch (SQLException ex) {
             this.logger.severe(String.format("c81a4390::error in class %s exception %s searchcode was unable to pull the api keys from the database api calls will fail, most likely the table has changed or is missing", ex.getClass(), ex.getMessage()));
         } finally {
-            this.helpers.closeQuietly(connStmtRs, this.dbConfig.closeConnection());
+            this.helpers.closeQuietly(connStmtRs, this.dbConfig.closeReadConnection());
         }
 
         return result;
@@ -21,10 +21,18 @@ import com.searchcode.app.util.LoggerWrapper;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
 
 /**
  * Provides access to all methods required to get Data details from the database.
  * Designed to work with both MySQL and SQLite with tests to ensure this is the case.
+ *
+ * The table is read into memory the first time a value is asked for and saves write through to both, so
+ * reading a value never touches the database. This assumes this instance is the only thing writing to the table.
  */
 public class Data {
 
@@ -32,6 +40,10 @@ public class Data {
     private final IDatabaseConfig dbConfig;
     private final LoggerWrapper logger;
 
+    private final Map<String, String> cache = new ConcurrentHashMap<>();
+    private final Map<String, List<Consumer<String>>> listeners = new ConcurrentHashMap<>();
+    private volatile boolean cacheLoaded = false;
+
     public Data() {
         this(Singleton.getDatabaseConfig(), Singleton.getHelpers(), Singleton.getLogger());
     }
@@ -46,28 +58,38 @@ public class Data {
         }
     }
 
-    public synchronized List<DataData> getAllData() {
+    public List<DataData> getAllData() {
+        return this.loadAllData().orElseGet(ArrayList::new);
+    }
+
+    /**
+     * Reads every value from the table returning empty if they could not be read
+     */
+    private Optional<List<DataData>> loadAllData() {
+        Optional<List<DataData>> result = Optional.empty();
         var values = new ArrayList<DataData>();
         var connStmtRs = new ConnStmtRs();
 
         try {
-            connStmtRs.conn = this.dbConfig.getConnection();
+            connStmtRs.conn = this.dbConfig.getReadConnection();
             connStmtRs.stmt = connStmtRs.conn.prepareStatement("select `key`, `value` from `data`;");
             connStmtRs.rs = connStmtRs.stmt.executeQuery();
 
             while (connStmtRs.rs.next()) {
                 values.add(new DataData(connStmtRs.rs.getString("key"), connStmtRs.rs.getString("value")));
             }
+
+            result = Optional.of(values);
         } catch (SQLException ex) {
             this.logger.severe(String.format("e897086c::error in class %s exception %s searchcode was unable get all data, this is likely to break all sorts of things, most likely the table has changed or is missing", ex.getClass(), ex.getMessage()));
         } finally {
-            this.helpers.closeQuietly(connStmtRs, this.dbConfig.closeConnection());
+            this.helpers.closeQuietly(connStmtRs, this.dbConfig.closeReadConnection());
         }
 
-        return values;
+        return result;
     }
 
-    public synchronized String getDataByName(String key, String defaultValue) {
+    public String getDataByName(String key, String defaultValue) {
         var value = this.getDataByName(key);
         if (value == null) {
             return defaultValue;
@@ -76,12 +98,67 @@ public class Data {
     }
 
     // TODO modify this to return optional
-    public synchronized String getDataByName(String key) {
+    public String getDataByName(String key) {
+        if (key == null) {
+            return null;
+        }
+
+        if (this.loadCache()) {
+            return this.cache.get(key);
+        }
+
+        return this.getDataByNameFromDatabase(key);
+    }
+
+    /**
+     * Called with the new value whenever the key is saved so that anything holding onto a value can keep it current
+     */
+    public void addListener(String key, Consumer<String> listener) {
+        this.listeners.computeIfAbsent(key, x -> new CopyOnWriteArrayList<>()).add(listener);
+    }
+
+    /**
+     * Stops calling a listener previously added for the key, needs to be the same instance that was added
+     */
+    public void removeListener(String key, Consumer<String> listener) {
+        var keyListeners = this.listeners.get(key);
+
+        if (keyListeners != null) {
+            keyListeners.remove(listener);
+        }
+    }
+
+    /**
+     * Fills the cache if it has not been already. If the table cannot be read values are read from the database
+     * until it can be, as treating every value as missing would have callers save over them with defaults.
+     */
+    private boolean loadCache() {
+        if (this.cacheLoaded) {
+            return true;
+        }
+
+        synchronized (this) {
+            if (!this.cacheLoaded) {
+                this.loadAllData().ifPresent(values -> {
+                    for (var value : values) {
+                        if (value.value != null) {
+                            this.cache.put(value.key, value.value);
+                        }
+                    }
+                    this.cacheLoaded = true;
+                });
+            }
+        }
+
+        return this.cacheLoaded;
+    }
+
+    private String getDataByNameFromDatabase(String key) {
         String value = null;
         var connStmtRs = new ConnStmtRs();
 
         try {
-            connStmtRs.conn = this.dbConfig.getConnection();
+            connStmtRs.conn = this.dbConfig.getReadConnection();
             connStmtRs.stmt = connStmtRs.conn.prepareStatement("select `key`, `value` from `data` where `key` = ?;");
             connStmtRs.stmt.setString(1, key);
 
@@ -93,40 +170,67 @@ public class Data {
         } catch (SQLException ex) {
             this.logger.severe(String.format("52f85254::error in class %s exception %s searchcode was unable get data by name %s, this is likely to break all sorts of things, most likely the table has changed or is missing", ex.getClass(), ex.getMessage(), key));
         } finally {
-            this.helpers.closeQuietly(connStmtRs, this.dbConfig.closeConnection());
+            this.helpers.closeQuietly(connStmtRs, this.dbConfig.closeReadConnection());
         }
 
         return value;
     }
 
+    /**
+     * Saves the value returning true if the key did not exist before
+     */
     public synchronized boolean saveData(String key, String value) {
         var existing = this.getDataByName(key);
-        var isNew = false;
+        this.save(key, value, existing != null);
+        return existing == null;
+    }
+
+    /**
+     * Saves the value returning true only if it was written, which saveData does not report
+     */
+    public synchronized boolean trySaveData(String key, String value) {
+        return this.save(key, value, this.getDataByName(key) != null);
+    }
+
+    private boolean save(String key, String value, boolean exists) {
+        var saved = false;
         var connStmtRs = new ConnStmtRs();
 
         try {
             connStmtRs.conn = this.dbConfig.getConnection();
 
-            if (existing != null) {
+            if (exists) {
                 connStmtRs.stmt = connStmtRs.conn.prepareStatement("UPDATE `data` SET `key` = ?, `value` = ? WHERE `key` = ?");
                 connStmtRs.stmt.setString(1, key);
                 connStmtRs.stmt.setString(2, value);
                 connStmtRs.stmt.setString(3, key);
             } else {
-                isNew = true;
                 connStmtRs.stmt = connStmtRs.conn.prepareStatement("INSERT INTO data(`key`, `value`) VALUES (?,?)");
                 connStmtRs.stmt.setString(1, key);
                 connStmtRs.stmt.setString(2, value);
             }
 
             connStmtRs.stmt.execute();
+            saved = true;
         } catch (SQLException ex) {
             this.logger.severe(String.format("e241d7cd::error in class %s exception %s searchcode was unable save data name %s, this is likely to break all sorts of things, most likely the table has changed or is missing", ex.getClass(), ex.getMessage(), key));
         } finally {
             this.helpers.closeQuietly(connStmtRs, this.dbConfig.closeConnection());
         }
 
-        return isNew;
+        if (saved) {
+            if (value == null) {
+                this.cache.remove(key);
+            } else {
+                this.cache.put(key, value);
+            }
+
+            for (var listener : this.listeners.getOrDefault(key, List.of())) {
+                listener.accept(value);
+            }
+        }
+
+        return saved;
     }
 
     /**
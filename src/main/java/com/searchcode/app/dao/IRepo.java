@@ -2,7 +2,9 @@ package com.searchcode.app.dao;
 
 import com.searchcode.app.model.RepoResult;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 public interface IRepo {
@@ -12,6 +14,7 @@ public interface IRepo {
     Optional<RepoResult> getRepoByUrl(String repositoryUrl);
     Optional<RepoResult> getRepoByName(String repositoryName);
     Optional<RepoResult> getRepoById(int repoId);
+    Map<Integer, RepoResult> getRepoByIds(Collection<Integer> repoIds);
     int getRepoCount();
     List<RepoResult> getPagedRepo(int offset, int pageSize);
     List<RepoResult> searchRepo(String searchTerms);
@@ -12,6 +12,11 @@ import org.cache2k.Cache;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
 import java.util.Optional;
 
 /**
@@ -112,6 +117,51 @@ public class LanguageType {
         return optional;
     }
 
+    /**
+     * Gets every language type with one of the ids keyed by id. Anything not already in the cache is
+     * fetched using a single query.
+     */
+    public Map<Integer, LanguageTypeDTO> getByIds(Collection<Integer> ids) {
+        var results = new HashMap<Integer, LanguageTypeDTO>();
+        var missing = new ArrayList<Integer>();
+
+        for (var id : new HashSet<>(ids)) {
+            var cacheResult = this.typeCache.peekEntry(CachePrefix + id);
+            if (cacheResult != null) {
+                cacheResult.getValue().ifPresent(x -> results.put(id, x));
+            } else {
+                missing.add(id);
+            }
+        }
+
+        if (missing.isEmpty()) {
+            return results;
+        }
+
+        var connStmtRs = new ConnStmtRs();
+
+        try {
+            connStmtRs.conn = this.dbConfig.getConnection();
+            connStmtRs.stmt = connStmtRs.conn.prepareStatement("SELECT id, type FROM languagetype WHERE id IN (" + this.helpers.sqlPlaceholders(missing.size()) + ");");
+            for (var i = 0; i < missing.size(); i++) {
+                connStmtRs.stmt.setInt(i + 1, missing.get(i));
+            }
+            connStmtRs.rs = connStmtRs.stmt.executeQuery();
+
+            while (connStmtRs.rs.next()) {
+                var languageTypeDTO = new LanguageTypeDTO(connStmtRs.rs.getInt("id"), connStmtRs.rs.getString("type"));
+                results.put(languageTypeDTO.getId(), languageTypeDTO);
+                this.typeCache.put(CachePrefix + languageTypeDTO.getId(), Optional.of(languageTypeDTO));
+            }
+        } catch (SQLException ex) {
+            this.logger.severe(String.format("0b6f5a3e::error in class %s exception %s searchcode was unable to get languages by id %s, this is likely to break all sorts of things, most likely the table has changed or is missing", ex.getClass(), ex.getMessage(), missing));
+        } finally {
+            this.helpers.closeQuietly(connStmtRs, this.dbConfig.closeConnection());
+        }
+
+        return results;
+    }
+
     /**
      * Create a new language type in the database and return an optional containing it.
      * If given a type that already exists will return that one rather than create a new one.
@@ -11,7 +11,12 @@ import com.searchcode.app.util.LoggerWrapper;
 import org.cache2k.Cache;
 
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 public class MySQLRepo implements IRepo {
@@ -126,6 +131,54 @@ public class MySQLRepo implements IRepo {
         return result;
     }
 
+    /**
+     * Gets every repository with one of the ids keyed by id. Anything not already in the cache is
+     * fetched using a single query.
+     */
+    @Override
+    public Map<Integer, RepoResult> getRepoByIds(Collection<Integer> repoIds) {
+        var results = new HashMap<Integer, RepoResult>();
+        var missing = new ArrayList<Integer>();
+
+        for (var repoId : new HashSet<>(repoIds)) {
+            var cacheResult = this.cache.peekEntry(CachePrefix + repoId);
+            if (cacheResult != null) {
+                cacheResult.getValue().ifPresent(x -> results.put(repoId, x));
+            } else {
+                missing.add(repoId);
+            }
+        }
+
+        if (missing.isEmpty()) {
+            return results;
+        }
+
+        var connStmtRs = new ConnStmtRs();
+
+        try {
+            connStmtRs.conn = this.dbConfig.getConnection();
+            connStmtRs.stmt = connStmtRs.conn.prepareStatement("select `id`, `name`, `scm`, `url`, `suggestedname`, `sourceurl`, `instructions`, `sourceid`, `spdx`, `username` from repo where id in (" + this.helpers.sqlPlaceholders(missing.size()) + ");");
+            for (var i = 0; i < missing.size(); i++) {
+                connStmtRs.stmt.setInt(i + 1, missing.get(i));
+            }
+            connStmtRs.rs = connStmtRs.stmt.executeQuery();
+
+            while (connStmtRs.rs.next()) {
+                var result = buildRepoResult(connStmtRs);
+                result.ifPresent(x -> {
+                    results.put(x.getRowId(), x);
+                    this.cache.put(CachePrefix + x.getRowId(), result);
+                });
+            }
+        } catch (SQLException ex) {
+            this.logger.severe(String.format("7d2c9e41::error in class %s exception %s searchcode was unable to get repositories by id %s", ex.getClass(), ex.getMessage(), missing));
+        } finally {
+            this.helpers.closeQuietly(connStmtRs, this.dbConfig.closeConnection());
+        }
+
+        return results;
+    }
+
     @Override
     public Optional<RepoResult> getRepoByUrl(String repositoryUrl) {
         if (repositoryUrl == null) {
@@ -0,0 +1,155 @@
+/*
+ * Copyright (c) 2016 Boyter Online Services
+ *
+ * Use of this software is governed by the Fair Source License included
+ * in the LICENSE.TXT file, but will be eventually open under GNU General Public License Version 3
+ * see the README.md for when this clause will take effect
+ *
+ * Version 1.3.15
+ */
+
+package com.searchcode.app.dao;
+
+import com.searchcode.app.config.IDatabaseConfig;
+import com.searchcode.app.config.Values;
+import com.searchcode.app.dto.ConnStmtRs;
+import com.searchcode.app.service.Singleton;
+import com.searchcode.app.util.Helpers;
+import com.searchcode.app.util.LoggerWrapper;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Names of repositories waiting to be deleted, one row per repository so that adding or removing one is a
+ * single statement rather than rewriting the whole list. The SQL used works against both SQLite and MySQL
+ * where the table is created by schema.sql.
+ */
+public class PersistentDelete {
+    private final Helpers helpers;
+    private final IDatabaseConfig dbConfig;
+    private final LoggerWrapper logger;
+
+    public PersistentDelete() {
+        this(Singleton.getDatabaseConfig(), Singleton.getHelpers(), Singleton.getLogger());
+    }
+
+    public PersistentDelete(IDatabaseConfig dbConfig, Helpers helpers, LoggerWrapper logger) {
+        this.dbConfig = dbConfig;
+        this.helpers = helpers;
+        this.logger = logger;
+
+        if (Singleton.getHelpers().isStandaloneInstance()) {
+            this.createTableIfMissing();
+        }
+    }
+
+    /**
+     * Returns every name in the order they were added or empty if the table could not be read
+     */
+    public Optional<List<String>> getAll() {
+        var names = new ArrayList<String>();
+        var connStmtRs = new ConnStmtRs();
+
+        try {
+            connStmtRs.conn = this.dbConfig.getReadConnection();
+            connStmtRs.stmt = connStmtRs.conn.prepareStatement("SELECT name FROM persistentdelete ORDER BY id;");
+            connStmtRs.rs = connStmtRs.stmt.executeQuery();
+
+            while (connStmtRs.rs.next()) {
+                names.add(connStmtRs.rs.getString("name"));
+            }
+        } catch (SQLException ex) {
+            this.logger.severe(String.format("6f2b9d40::error in class %s exception %s searchcode was unable to read the repositories waiting to be deleted", ex.getClass(), ex.getMessage()));
+            return Optional.empty();
+        } finally {
+            this.helpers.closeQuietly(connStmtRs, this.dbConfig.closeReadConnection());
+        }
+
+        return Optional.of(names);
+    }
+
+    /**
+     * Adds the name returning true if it was saved, which includes when it was already there
+     */
+    public synchronized boolean add(String name) {
+        var successful = false;
+        var connStmtRs = new ConnStmtRs();
+
+        try {
+            connStmtRs.conn = this.dbConfig.getConnection();
+            connStmtRs.stmt = connStmtRs.conn.prepareStatement("SELECT name FROM persistentdelete WHERE name=?;");
+            connStmtRs.stmt.setString(1, name);
+            connStmtRs.rs = connStmtRs.stmt.executeQuery();
+            var exists = connStmtRs.rs.next();
+            connStmtRs.rs.close();
+            connStmtRs.stmt.close();
+
+            if (!exists) {
+                connStmtRs.stmt = connStmtRs.conn.prepareStatement("INSERT INTO persistentdelete(name) VALUES (?);");
+                connStmtRs.stmt.setString(1, name);
+                connStmtRs.stmt.execute();
+            }
+
+            successful = true;
+        } catch (SQLException ex) {
+            this.logger.severe(String.format("a1c94e27::error in class %s exception %s searchcode was unable to add %s to the repositories waiting to be deleted", ex.getClass(), ex.getMessage(), name));
+        } finally {
+            this.helpers.closeQuietly(connStmtRs, this.dbConfig.closeConnection());
+        }
+
+        return successful;
+    }
+
+    /**
+     * Removes the name returning true if the statement ran, which includes when it was not there
+     */
+    public synchronized boolean remove(String name) {
+        var successful = false;
+        var connStmtRs = new ConnStmtRs();
+
+        try {
+            connStmtRs.conn = this.dbConfig.getConnection();
+            connStmtRs.stmt = connStmtRs.conn.prepareStatement("DELETE FROM persistentdelete WHERE name=?;");
+            connStmtRs.stmt.setString(1, name);
+            connStmtRs.stmt.execute();
+
+            successful = true;
+        } catch (SQLException ex) {
+            this.logger.severe(String.format("3e7d05b8::error in class %s exception %s searchcode was unable to remove %s from the repositories waiting to be deleted", ex.getClass(), ex.getMessage(), name));
+        } finally {
+            this.helpers.closeQuietly(connStmtRs, this.dbConfig.closeConnection());
+        }
+
+        return successful;
+    }
+
+    /**
+     * This method is specific to SQLite and will fail if run against MySQL, where the table is created by schema.sql
+     */
+    public synchronized void createTableIfMissing() {
+        var connStmtRs = new ConnStmtRs();
+
+        try {
+            connStmtRs.conn = this.dbConfig.getConnection();
+            connStmtRs.stmt = connStmtRs.conn.prepareStatement("SELECT name FROM sqlite_master WHERE type='table' AND name='persistentdelete';");
+
+            connStmtRs.rs = connStmtRs.stmt.executeQuery();
+            var value = Values.EMPTYSTRING;
+            while (connStmtRs.rs.next()) {
+                value = connStmtRs.rs.getString("name");
+            }
+
+            if (this.helpers.isNullEmptyOrWhitespace(value)) {
+                connStmtRs.stmt = connStmtRs.conn.prepareStatement("CREATE TABLE \"persistentdelete\" (\"id\" INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, \"name\" VARCHAR NOT NULL UNIQUE)");
+                connStmtRs.stmt.execute();
+            }
+        } catch (SQLException ex) {
+            this.logger.severe(String.format("c0e58a16::error in class %s exception %s searchcode was unable to create the persistentdelete table, so repositories will not be deleted", ex.getClass(), ex.getMessage()));
+        } finally {
+            this.helpers.closeQuietly(connStmtRs, this.dbConfig.closeConnection());
+        }
+    }
+}
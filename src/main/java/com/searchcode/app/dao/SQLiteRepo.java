@@ -20,7 +20,10 @@ import com.searchcode.app.util.LoggerWrapper;
 
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 /**
@@ -44,12 +47,12 @@ public class SQLiteRepo implements IRepo {
     }
 
     @Override
-    public synchronized List<RepoResult> getAllRepo() {
+    public List<RepoResult> getAllRepo() {
         var repoResults = new ArrayList<RepoResult>();
         var connStmtRs = new ConnStmtRs();
 
         try {
-            connStmtRs.conn = this.dbConfig.getConnection();
+            connStmtRs.conn = this.dbConfig.getReadConnection();
             connStmtRs.stmt = connStmtRs.conn.prepareStatement("select rowid,name,scm,url,username,password,source,branch,data from repo order by rowid desc;");
 
             connStmtRs.rs = connStmtRs.stmt.executeQuery();
@@ -79,14 +82,14 @@ public class SQLiteRepo implements IRepo {
         } catch (SQLException ex) {
             this.logger.severe(String.format("820c9557::error in class %s exception %s searchcode was unable to get the list of all repositories, this is likely nothing will be indexed, most likely the table has changed or is missing", ex.getClass(), ex.getMessage()));
         } finally {
-            this.helpers.closeQuietly(connStmtRs, this.dbConfig.closeConnection());
+            this.helpers.closeQuietly(connStmtRs, this.dbConfig.closeReadConnection());
         }
 
         return repoResults;
     }
 
     @Override
-    public synchronized List<RepoResult> searchRepo(String searchTerms) {
+    public List<RepoResult> searchRepo(String searchTerms) {
         var repoResults = this.getAllRepo();
         List<RepoResult> matchRepoResults = new ArrayList<RepoResult>();
 
@@ -112,12 +115,12 @@ public class SQLiteRepo implements IRepo {
     }
 
     @Override
-    public synchronized List<RepoResult> getPagedRepo(int offset, int pageSize) {
+    public List<RepoResult> getPagedRepo(int offset, int pageSize) {
         List<RepoResult> repoResults = new ArrayList<>();
         ConnStmtRs connStmtRs = new ConnStmtRs();
 
         try {
-            connStmtRs.conn = this.dbConfig.getConnection();
+            connStmtRs.conn = this.dbConfig.getReadConnection();
             connStmtRs.stmt = connStmtRs.conn.prepareStatement("select rowid,name,scm,url,username,password,source,branch,data from repo order by rowid desc limit ?, ?;");
 
             connStmtRs.stmt.setInt(1, offset);
@@ -150,19 +153,19 @@ public class SQLiteRepo implements IRepo {
         } catch (SQLException ex) {
             this.logger.severe(String.format("20c36ec2::error in class %s exception %s searchcode was unable to get the paged list of repositories, this is likely nothing will be indexed, most likely the table has changed or is missing", ex.getClass(), ex.getMessage()));
         } finally {
-            this.helpers.closeQuietly(connStmtRs, this.dbConfig.closeConnection());
+            this.helpers.closeQuietly(connStmtRs, this.dbConfig.closeReadConnection());
         }
 
         return repoResults;
     }
 
     @Override
-    public synchronized int getRepoCount() {
+    public int getRepoCount() {
         int totalCount = 0;
         ConnStmtRs connStmtRs = new ConnStmtRs();
 
         try {
-            connStmtRs.conn = this.dbConfig.getConnection();
+            connStmtRs.conn = this.dbConfig.getReadConnection();
             connStmtRs.stmt = connStmtRs.conn.prepareStatement("select count(rowid) as totalcount from repo;");
 
             connStmtRs.rs = connStmtRs.stmt.executeQuery();
@@ -173,14 +176,14 @@ public class SQLiteRepo implements IRepo {
         } catch (SQLException ex) {
             this.logger.severe(String.format("4e403331::error in class %s exception %s searchcode was unable to get the count of repositories, this is unlikely to affect anything but there are likely to be other issues in the logs", ex.getClass(), ex.getMessage()));
         } finally {
-            this.helpers.closeQuietly(connStmtRs, this.dbConfig.closeConnection());
+            this.helpers.closeQuietly(connStmtRs, this.dbConfig.closeReadConnection());
         }
 
         return totalCount;
     }
 
     @Override
-    public synchronized Optional<RepoResult> getRepoByName(String repositoryName) {
+    public Optional<RepoResult> getRepoByName(String repositoryName) {
         if (repositoryName == null) {
             return Optional.empty();
         }
@@ -189,7 +192,7 @@ public class SQLiteRepo implements IRepo {
         ConnStmtRs connStmtRs = new ConnStmtRs();
 
         try {
-            connStmtRs.conn = this.dbConfig.getConnection();
+            connStmtRs.conn = this.dbConfig.getReadConnection();
             connStmtRs.stmt = connStmtRs.conn.prepareStatement("select rowid,name,scm,url,username,password,source,branch,data from repo where name=?;");
 
             connStmtRs.stmt.setString(1, repositoryName);
@@ -222,14 +225,14 @@ public class SQLiteRepo implements IRepo {
         } catch (SQLException ex) {
             this.logger.severe(String.format("359a0566::error in class %s exception %s searchcode was unable to get repository by name %s, this is likely to cause indexing issues and its likely other issues will be in the logs", ex.getClass(), ex.getMessage(), repositoryName));
         } finally {
-            this.helpers.closeQuietly(connStmtRs, this.dbConfig.closeConnection());
+            this.helpers.closeQuietly(connStmtRs, this.dbConfig.closeReadConnection());
         }
 
         return result;
     }
 
     @Override
-    public synchronized Optional<RepoResult> getRepoByUrl(String repositoryUrl) {
+    public Optional<RepoResult> getRepoByUrl(String repositoryUrl) {
         if (repositoryUrl == null) {
             return Optional.empty();
         }
@@ -238,7 +241,7 @@ public class SQLiteRepo implements IRepo {
         ConnStmtRs connStmtRs = new ConnStmtRs();
 
         try {
-            connStmtRs.conn = this.dbConfig.getConnection();
+            connStmtRs.conn = this.dbConfig.getReadConnection();
             connStmtRs.stmt = connStmtRs.conn.prepareStatement("select rowid,name,scm,url,username,password,source,branch,data from repo where url=?;");
             connStmtRs.stmt.setString(1, repositoryUrl);
             connStmtRs.rs = connStmtRs.stmt.executeQuery();
@@ -270,17 +273,22 @@ public class SQLiteRepo implements IRepo {
         } catch (SQLException ex) {
             this.logger.severe(String.format("afd625ce::error in class %s exception %s searchcode was unable to get repository by url %s, this is likely to cause indexing issues and its likely other issues will be in the logs", ex.getClass(), ex.getMessage(), repositoryUrl));
         } finally {
-            this.helpers.closeQuietly(connStmtRs, this.dbConfig.closeConnection());
+            this.helpers.closeQuietly(connStmtRs, this.dbConfig.closeReadConnection());
         }
 
         return result;
     }
 
     @Override
-    public synchronized Optional<RepoResult> getRepoById(int repoId) {
+    public Optional<RepoResult> getRepoById(int repoId) {
         return Optional.empty();
     }
 
+    @Override
+    public Map<Integer, RepoResult> getRepoByIds(Collection<Integer> repoIds) {
+        return new HashMap<>();
+    }
+
     @Override
     public synchronized void deleteRepoByName(String repositoryName) {
         ConnStmtRs connStmtRs = new ConnStmtRs();
@@ -10,6 +10,11 @@ import com.searchcode.app.util.LoggerWrapper;
 import org.cache2k.Cache;
 
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
 import java.util.Optional;
 
 public class Source {
@@ -99,6 +104,53 @@ public class Source {
         return result;
     }
 
+    /**
+     * Gets every source with one of the ids keyed by id. Anything not already in the cache is
+     * fetched using a single query.
+     */
+    public Map<Integer, SourceResult> getSourceByIds(Collection<Integer> sourceIds) {
+        var results = new HashMap<Integer, SourceResult>();
+        var missing = new ArrayList<Integer>();
+
+        for (var sourceId : new HashSet<>(sourceIds)) {
+            var cacheResult = this.cache.peekEntry(this.CachePrefix + sourceId);
+            if (cacheResult != null) {
+                cacheResult.getValue().ifPresent(x -> results.put(sourceId, x));
+            } else {
+                missing.add(sourceId);
+            }
+        }
+
+        if (missing.isEmpty()) {
+            return results;
+        }
+
+        var connStmtRs = new ConnStmtRs();
+
+        try {
+            connStmtRs.conn = this.dbConfig.getConnection();
+            connStmtRs.stmt = connStmtRs.conn.prepareStatement("select id,name from source where id in (" + this.helpers.sqlPlaceholders(missing.size()) + ");");
+            for (var i = 0; i < missing.size(); i++) {
+                connStmtRs.stmt.setInt(i + 1, missing.get(i));
+            }
+            connStmtRs.rs = connStmtRs.stmt.executeQuery();
+
+            while (connStmtRs.rs.next()) {
+                var result = getSourceResult(connStmtRs);
+                result.ifPresent(x -> {
+                    results.put(x.id, x);
+                    this.cache.put(this.CachePrefix + x.id, result);
+                });
+            }
+        } catch (SQLException ex) {
+            this.logger.severe(String.format("c5e81d07::error in class %s exception %s", ex.getClass(), ex.getMessage()));
+        } finally {
+            this.helpers.closeQuietly(connStmtRs, this.dbConfig.closeConnection());
+        }
+
+        return results;
+    }
+
     private Optional<SourceResult> getSourceResult(ConnStmtRs connStmtRs) throws SQLException {
         var id = connStmtRs.rs.getInt("id");
         var name = connStmtRs.rs.getString("name");
@@ -6,20 +6,20 @@ import com.searchcode.app.dto.CodeFacetLanguage;
 import com.searchcode.app.dto.CodeIndexDocument;
 import com.searchcode.app.dto.ConnStmtRs;
 import com.searchcode.app.dto.SourceCodeDTO;
-import com.searchcode.app.model.CodeResult;
 import com.searchcode.app.model.searchcode.SearchcodeCodeResult;
 import com.searchcode.app.service.CacheSingleton;
 import com.searchcode.app.service.Singleton;
 import com.searchcode.app.util.Helpers;
 import com.searchcode.app.util.LoggerWrapper;
-import org.apache.commons.lang3.StringUtils;
 import org.cache2k.Cache;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.stream.Collectors;
 
@@ -163,61 +163,55 @@ public class SourceCode {
         return results;
     }
 
-    public List<CodeResult> getByIds(List<Integer> codeIds) {
-        var codeResultList = new ArrayList<CodeResult>();
-        var connStmtRs = new ConnStmtRs();
+    /**
+     * Gets the code for all of the ids in the order they were supplied, skipping any that do not exist. Anything
+     * not already in the cache is fetched using a single query so a page of search results is one round trip.
+     */
+    public List<SourceCodeDTO> getByIds(List<Integer> codeIds) {
+        var found = new HashMap<Integer, SourceCodeDTO>();
+        var missing = new ArrayList<Integer>();
 
-        var stringBuffer = new StringBuffer();
         for (var codeId : codeIds) {
-            stringBuffer.append(codeId).append(",");
+            var cacheResult = this.codeCache.peekEntry(CachePrefix + codeId);
+            if (cacheResult != null) {
+                cacheResult.getValue().ifPresent(x -> found.put(codeId, x));
+            } else if (!missing.contains(codeId)) {
+                missing.add(codeId);
+            }
         }
-        var codeIdsString = StringUtils.substring(stringBuffer.toString(), 0, -1);
-
-        try {
-            connStmtRs.conn = this.dbConfig.getConnection();
-            connStmtRs.stmt = connStmtRs.conn.prepareStatement("select c.id,c.filename,c.location," +
-                    "substring(uncompress(c.content),1,500000) as content," +
-                    "c.hash, r.name as reponame, c.simhash, c.linescount," +
-                    "lt.type as languagetype," +
-                    "s.name as sourcename, r.sourceurl, r.url, c.blank, c.comment, r.username " +
-                    "from code c " +
-                    "join repo r ON c.repoid = r.id " +
-                    "join languagetype lt ON c.languagename = lt.id " +
-                    "join source s ON s.id = r.sourceid " +
-                    "where c.id in (" +
-                    codeIdsString +
-                    ") order by field(c.id, " +
-                    codeIdsString +
-                    ");");
-
-            connStmtRs.rs = connStmtRs.stmt.executeQuery();
 
-//            while (rs.next()) {
-//                codeResultList.add(new SearchcodeSearchResult(
-//                        rs.getInt("id"),
-//                        rs.getString("filename"),
-//                        rs.getString("location"),
-//                        rs.getString("content"),
-//                        rs.getString("hash"),
-//                        rs.getString("reponame"),
-//                        rs.getString("simhash"),
-//                        rs.getInt("linescount"),
-//                        rs.getString("languagetype"),
-//                        rs.getString("sourcename"),
-//                        rs.getString("sourceurl"),
-//                        rs.getString("url"),
-//                        rs.getInt("blank"),
-//                        rs.getInt("comment"),
-//                        rs.getString("username")
-//                ));
-//            }
-        } catch (SQLException ex) {
-            this.logger.severe(String.format("1eb33289::error in class %s exception %s searchcode unable to get code by ids %s", ex.getClass(), ex.getMessage(), String.join(", ", codeIds.stream().map(x -> x.toString()).collect(Collectors.toList()))));
-        } finally {
-            this.helpers.closeQuietly(connStmtRs, this.dbConfig.closeConnection());
+        if (!missing.isEmpty()) {
+            var connStmtRs = new ConnStmtRs();
+
+            try {
+                connStmtRs.conn = this.dbConfig.getConnection();
+
+                var query = "   SELECT id, repoid, filetypeid, location, filename, UNCOMPRESS(content) AS content, hash, languagename, linescount" +
+                        "     FROM code" +
+                        "    WHERE id IN (" + this.helpers.sqlPlaceholders(missing.size()) + ");";
+
+                connStmtRs.stmt = connStmtRs.conn.prepareStatement(query);
+                for (var i = 0; i < missing.size(); i++) {
+                    connStmtRs.stmt.setInt(i + 1, missing.get(i));
+                }
+
+                connStmtRs.rs = connStmtRs.stmt.executeQuery();
+                while (connStmtRs.rs.next()) {
+                    var sourceCodeDTO = this.buildSourceCodeDTO(connStmtRs.rs);
+                    found.put(sourceCodeDTO.id, sourceCodeDTO);
+                    this.codeCache.put(CachePrefix + sourceCodeDTO.id, Optional.of(sourceCodeDTO));
+                }
+            } catch (SQLException ex) {
+                this.logger.severe(String.format("1eb33289::error in class %s exception %s searchcode unable to get code by ids %s", ex.getClass(), ex.getMessage(), missing.stream().map(x -> x.toString()).collect(Collectors.joining(", "))));
+            } finally {
+                this.helpers.closeQuietly(connStmtRs, this.dbConfig.closeConnection());
+            }
         }
 
-        return codeResultList;
+        return codeIds.stream()
+                .map(found::get)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
     }
 
     public List<SearchcodeCodeResult> getCodeBetween(int start, int end) {
@@ -329,17 +323,7 @@ public class SourceCode {
 
             connStmtRs.rs = connStmtRs.stmt.executeQuery();
             while (connStmtRs.rs.next()) {
-                result = Optional.of(new SourceCodeDTO()
-                        .setId(connStmtRs.rs.getInt("id"))
-                        .setRepoId(connStmtRs.rs.getInt("repoid"))
-                        .setFileTypeId(connStmtRs.rs.getInt("filetypeid"))
-                        .setLocation(connStmtRs.rs.getString("location"))
-                        .setFilename(connStmtRs.rs.getString("filename"))
-                        .setContent(connStmtRs.rs.getString("content"))
-                        .setHash(connStmtRs.rs.getString("hash"))
-                        .setLanguageName(connStmtRs.rs.getInt("languagename"))
-                        .setLinesCount(connStmtRs.rs.getInt("linescount"))
-                );
+                result = Optional.of(this.buildSourceCodeDTO(connStmtRs.rs));
             }
 
         } catch (SQLException ex) {
@@ -401,6 +385,19 @@ public class SourceCode {
         return null;
     }
 
+    private SourceCodeDTO buildSourceCodeDTO(ResultSet resultSet) throws SQLException {
+        return new SourceCodeDTO()
+                .setId(resultSet.getInt("id"))
+                .setRepoId(resultSet.getInt("repoid"))
+                .setFileTypeId(resultSet.getInt("filetypeid"))
+                .setLocation(resultSet.getString("location"))
+                .setFilename(resultSet.getString("filename"))
+                .setContent(resultSet.getString("content"))
+                .setHash(resultSet.getString("hash"))
+                .setLanguageName(resultSet.getInt("languagename"))
+                .setLinesCount(resultSet.getInt("linescount"));
+    }
+
     public String getLocation(CodeIndexDocument codeIndexDocument) {
         if (codeIndexDocument == null || codeIndexDocument.getDisplayLocation() == null || codeIndexDocument.getFileName() == null) {
             return Values.EMPTYSTRING;
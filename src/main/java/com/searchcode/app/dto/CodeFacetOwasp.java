@@ -0,0 +1,43 @@
+package com.searchcode.app.dto;
+
+import com.searchcode.app.config.Values;
+import com.searchcode.app.service.Singleton;
+
+public class CodeFacetOwasp {
+    public String name = Values.EMPTYSTRING;
+    public int count = 0;
+    public boolean selected = false;
+
+    public CodeFacetOwasp(String name, int count) {
+        this.name = name;
+        this.count = count;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public void setCount(int count) {
+        this.count = count;
+    }
+
+    public boolean getSelected() {
+        return selected;
+    }
+
+    public void setSelected(boolean selected) {
+        this.selected = selected;
+    }
+
+    public String getNameSearchable() {
+        return Singleton.getHelpers().replaceForIndex(this.name.toLowerCase());
+    }
+}
@@ -20,6 +20,7 @@ import java.util.List;
 public class CodeResult {
     public List<String> code = new ArrayList<>();
     public List<CodeMatchResult> matchingResults = new ArrayList<>();
+    public List<OWASPMatchingResult> owaspResults = null; // Only set when findings were stored at index time
     public String filePath = Values.EMPTYSTRING;
     public String codePath = Values.EMPTYSTRING;
     public String fileName = Values.EMPTYSTRING;
@@ -62,6 +63,15 @@ public class CodeResult {
         return this;
     }
 
+    public List<OWASPMatchingResult> getOwaspResults() {
+        return owaspResults;
+    }
+
+    public CodeResult setOwaspResults(List<OWASPMatchingResult> owaspResults) {
+        this.owaspResults = owaspResults;
+        return this;
+    }
+
     public List<CodeMatchResult> getMatchingResults() {
         return matchingResults;
     }
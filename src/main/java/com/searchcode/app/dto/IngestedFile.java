@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2016 Boyter Online Services
+ *
+ * Use of this software is governed by the Fair Source License included
+ * in the LICENSE.TXT file, but will be eventually open under GNU General Public License Version 3
+ * see the README.md for when this clause will take effect
+ *
+ * Version 1.3.15
+ */
+
+package com.searchcode.app.dto;
+
+import java.nio.charset.Charset;
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Immutable result of reading a file once from disk. Holds the guessed encoding, the md5 of the bytes on disk
+ * and the decoded content with lines joined by \n, along with the offsets of each line in the content so that
+ * the lines can be handed out without splitting or joining the content again.
+ */
+public final class IngestedFile {
+    private final Charset charset;
+    private final String md5hash;
+    private final String contents;
+    private final int[] lineStarts;
+    private final int[] lineEnds;
+    private final List<String> codeLines;
+
+    public IngestedFile(Charset charset, String md5hash, String contents, int[] lineStarts, int[] lineEnds) {
+        this.charset = charset;
+        this.md5hash = md5hash;
+        this.contents = contents;
+        this.lineStarts = lineStarts;
+        this.lineEnds = lineEnds;
+        this.codeLines = new CodeLines();
+    }
+
+    public Charset getCharset() {
+        return this.charset;
+    }
+
+    /**
+     * The md5 of the whole file on disk which may be null if it was not requested when reading
+     */
+    public String getMd5hash() {
+        return this.md5hash;
+    }
+
+    /**
+     * The decoded lines joined by \n which is the same as joining the result of getCodeLines
+     */
+    public String getContents() {
+        return this.contents;
+    }
+
+    public int getLineCount() {
+        return this.lineStarts.length;
+    }
+
+    /**
+     * Unmodifiable view of the lines backed by the content, each line is only created when asked for
+     */
+    public List<String> getCodeLines() {
+        return this.codeLines;
+    }
+
+    private class CodeLines extends AbstractList<String> implements RandomAccess {
+        @Override
+        public String get(int index) {
+            return contents.substring(lineStarts[index], lineEnds[index]);
+        }
+
+        @Override
+        public int size() {
+            return lineStarts.length;
+        }
+    }
+}
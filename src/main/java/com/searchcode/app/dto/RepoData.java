@@ -24,6 +24,7 @@ public class RepoData {
     public String project = Values.EMPTYSTRING;
 
     public String indexError = Values.EMPTYSTRING;
+    public String lastIndexedCommit = Values.EMPTYSTRING; // Used to work out what changed since the last index
 
     public RepoData() {}
 
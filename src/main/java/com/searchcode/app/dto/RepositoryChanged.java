@@ -18,6 +18,8 @@ public class RepositoryChanged {
     private List<String> changedFiles;
     private List<String> deletedFiles;
     private boolean clone;
+    private boolean delta;
+    private String headCommit;
 
     public RepositoryChanged(boolean changed) {
         this.clone = false;
@@ -52,4 +54,24 @@ public class RepositoryChanged {
     public void setClone(boolean clone) {
         this.clone = clone;
     }
+
+    /**
+     * True when the changed and deleted files are everything that changed since the last indexed commit
+     * which means only those files need to be indexed rather than walking the whole repository
+     */
+    public boolean isDelta() {
+        return delta;
+    }
+
+    public void setDelta(boolean delta) {
+        this.delta = delta;
+    }
+
+    public String getHeadCommit() {
+        return headCommit;
+    }
+
+    public void setHeadCommit(String headCommit) {
+        this.headCommit = headCommit;
+    }
 }
@@ -26,6 +26,7 @@ public class SearchResult {
     private List<CodeFacetRepo> repoFacetResults = new ArrayList<>();
     private List<CodeFacetOwner> repoOwnerResults = new ArrayList<>();
     private List<CodeFacetSource> codeFacetSources = new ArrayList<>();
+    private List<CodeFacetOwasp> owaspFacetResults = new ArrayList<>();
     private List<CodeFacetYearMonthDay> repoFacetYearMonthDay = new ArrayList<>();
     private List<CodeFacetYearMonth> repoFacetYearMonth = new ArrayList<>();
     private List<CodeFacetYear> repoFacetYear = new ArrayList<>();
@@ -170,4 +171,12 @@ public class SearchResult {
     public void setCodeFacetSources(List<CodeFacetSource> codeFacetSources) {
         this.codeFacetSources = codeFacetSources;
     }
+
+    public List<CodeFacetOwasp> getOwaspFacetResults() {
+        return owaspFacetResults;
+    }
+
+    public void setOwaspFacetResults(List<CodeFacetOwasp> owaspFacetResults) {
+        this.owaspFacetResults = owaspFacetResults;
+    }
 }
@@ -30,6 +30,18 @@ public class PopulateSpellingCorrectorJob implements Job {
     public void execute(JobExecutionContext context) {
         Thread.currentThread().setPriority(Thread.MIN_PRIORITY);
         Path path = Paths.get(Properties.getProperties().getProperty(Values.REPOSITORYLOCATION, Values.DEFAULTREPOSITORYLOCATION));
+        Path snapshotPath = Paths.get(Properties.getProperties().getProperty(Values.SPELLING_CORRECTOR_SNAPSHOT, Values.DEFAULT_SPELLING_CORRECTOR_SNAPSHOT));
+
+        // On startup use the snapshot from the last run if there is one rather than walking every repository
+        if (Singleton.getPopulateSpellingCorrectorJobFirstRun()) {
+            Singleton.setPopulateSpellingCorrectorJobFirstRun(false);
+
+            if (Singleton.getSpellingCorrector().loadSnapshot(snapshotPath)) {
+                this.logger.info(String.format("7a1d2e90::loaded %d words into spelling corrector from %s", Singleton.getSpellingCorrector().getWordCount(), snapshotPath.toString()));
+                return;
+            }
+        }
+
         this.logger.info(String.format("4f5b6cb6::starting populatespellingcorrector in path %s", path.toString()));
 
         try {
@@ -77,5 +89,7 @@ public class PopulateSpellingCorrectorJob implements Job {
         } catch (IOException ex) {
             this.logger.severe(String.format("55d4cf9a::error in class %s exception %s", ex.getClass(), ex.getMessage()));
         }
+
+        Singleton.getSpellingCorrector().saveSnapshot(snapshotPath);
     }
 }
@@ -0,0 +1,194 @@
+/*
+ * Copyright (c) 2016 Boyter Online Services
+ *
+ * Use of this software is governed by the Fair Source License included
+ * in the LICENSE.TXT file, but will be eventually open under GNU General Public License Version 3
+ * see the README.md for when this clause will take effect
+ *
+ * Version 1.3.15
+ */
+
+package com.searchcode.app.jobs.repository;
+
+import com.searchcode.app.dto.CodeOwner;
+import com.searchcode.app.util.LoggerWrapper;
+import org.cache2k.Cache;
+import org.eclipse.jgit.blame.BlameGenerator;
+import org.eclipse.jgit.blame.BlameResult;
+import org.eclipse.jgit.diff.RawTextComparator;
+import org.eclipse.jgit.internal.storage.file.FileRepository;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevTree;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.treewalk.TreeWalk;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Works out the owners of files in a single git repository. The repository is opened and HEAD resolved once
+ * for the whole index run rather than for every file, so every blame shares the same repository and its
+ * object caches. Results are cached by repository, path and the blob id of the file at HEAD so a file that
+ * has not changed since the last run is never blamed again. The blob id alone is not enough as identical
+ * files in different places have different histories and so different owners.
+ * Should be closed once the repository has been processed.
+ */
+public class GitCodeOwners implements AutoCloseable {
+
+    private final LoggerWrapper logger;
+    private final Cache<String, List<CodeOwner>> codeOwnerCache;
+    private final String repoLocation;
+    private final Repository repository;
+    private final ObjectId headCommit;
+    private final RevTree headTree;
+
+    public GitCodeOwners(String repoLocation, Cache<String, List<CodeOwner>> codeOwnerCache, LoggerWrapper logger) throws IOException {
+        this.logger = logger;
+        this.codeOwnerCache = codeOwnerCache;
+        this.repoLocation = repoLocation;
+        this.repository = new FileRepository(new File(repoLocation));
+
+        try (RevWalk revWalk = new RevWalk(this.repository)) {
+            ObjectId head = this.repository.resolve(Constants.HEAD);
+            this.headCommit = head;
+            this.headTree = head == null ? null : revWalk.parseCommit(head).getTree();
+        } catch (IOException | RuntimeException ex) {
+            this.repository.close();
+            throw ex;
+        }
+    }
+
+    public String getRepoLocation() {
+        return this.repoLocation;
+    }
+
+    /**
+     * Returns the owners of the file at HEAD counting at most codeLinesSize lines, or an empty list if the
+     * file cannot be found in the repository or blamed
+     */
+    public List<CodeOwner> getCodeOwners(String fileName, int codeLinesSize) {
+        if (this.headCommit == null) {
+            this.logger.severe(String.format("caca9ca8::getblameinfo commitId is null for repository %s filename %s", this.repoLocation, fileName));
+            return new ArrayList<>();
+        }
+
+        try {
+            String filePath = this.findFilePath(fileName);
+
+            if (filePath == null) {
+                this.logger.info(String.format("273e0a9e::getblameinfo is null for repository %s filename %s", this.repoLocation, fileName));
+                return new ArrayList<>();
+            }
+
+            ObjectId blobId = this.getBlobId(filePath);
+            String cacheKey = this.repository.getDirectory().getAbsolutePath() + ":" + filePath + ":" + blobId.getName() + ":" + codeLinesSize;
+            List<CodeOwner> codeOwners = this.codeOwnerCache.peek(cacheKey);
+
+            if (codeOwners == null) {
+                codeOwners = this.blame(filePath, codeLinesSize);
+                this.codeOwnerCache.put(cacheKey, codeOwners);
+            }
+
+            return this.copy(codeOwners);
+        } catch (IOException | RuntimeException ex) {
+            this.logger.severe(String.format("85cd8d0c::error in class %s exception %s for repository %s", ex.getClass(), ex.getMessage(), this.repoLocation));
+        }
+
+        return new ArrayList<>();
+    }
+
+    @Override
+    public void close() {
+        this.repository.close();
+    }
+
+    /**
+     * The file name passed in may still have the directory of the repository at the front so if it cannot be
+     * found try again without it
+     */
+    private String findFilePath(String fileName) throws IOException {
+        if (this.getBlobId(fileName) != null) {
+            return fileName;
+        }
+
+        String[] split = fileName.split("/");
+        if (split.length != 1) {
+            String withoutDirectory = String.join("/", Arrays.asList(split).subList(1, split.length));
+            if (this.getBlobId(withoutDirectory) != null) {
+                return withoutDirectory;
+            }
+        }
+
+        return null;
+    }
+
+    private ObjectId getBlobId(String filePath) throws IOException {
+        if (filePath.isEmpty()) {
+            return null;
+        }
+
+        try (TreeWalk treeWalk = TreeWalk.forPath(this.repository, filePath, this.headTree)) {
+            return treeWalk == null ? null : treeWalk.getObjectId(0);
+        }
+    }
+
+    private List<CodeOwner> blame(String filePath, int codeLinesSize) throws IOException {
+        HashMap<String, CodeOwner> owners = new HashMap<>();
+
+        try (BlameGenerator blameGenerator = new BlameGenerator(this.repository, filePath)) {
+            blameGenerator.setTextComparator(RawTextComparator.WS_IGNORE_ALL);
+            blameGenerator.push(null, this.headCommit);
+
+            BlameResult blame = BlameResult.create(blameGenerator);
+            if (blame == null) {
+                return new ArrayList<>();
+            }
+
+            blame.computeAll();
+            int lineCount = Math.min(codeLinesSize, blame.getResultContents().size());
+
+            for (int i = 0; i < lineCount; i++) {
+                RevCommit commit = blame.getSourceCommit(i);
+                if (commit == null) {
+                    continue;
+                }
+
+                PersonIdent authorIdent = commit.getAuthorIdent();
+                CodeOwner codeOwner = owners.get(authorIdent.getName());
+
+                if (codeOwner == null) {
+                    owners.put(authorIdent.getName(), new CodeOwner(authorIdent.getName(), 1, commit.getCommitTime()));
+                } else {
+                    codeOwner.incrementLines();
+
+                    if (commit.getCommitTime() > codeOwner.getMostRecentUnixCommitTimestamp()) {
+                        codeOwner.setMostRecentUnixCommitTimestamp(commit.getCommitTime());
+                    }
+                }
+            }
+        }
+
+        return new ArrayList<>(owners.values());
+    }
+
+    /**
+     * CodeOwner is mutable so hand out copies to avoid callers changing what is cached
+     */
+    private List<CodeOwner> copy(List<CodeOwner> codeOwners) {
+        List<CodeOwner> copy = new ArrayList<>(codeOwners.size());
+
+        for (CodeOwner codeOwner : codeOwners) {
+            copy.add(new CodeOwner(codeOwner.getName(), codeOwner.getNoLines(), codeOwner.getMostRecentUnixCommitTimestamp()));
+        }
+
+        return copy;
+    }
+}
@@ -13,6 +13,7 @@ package com.searchcode.app.jobs.repository;
 import au.com.bytecode.opencsv.CSVWriter;
 import com.searchcode.app.config.Values;
 import com.searchcode.app.dto.BinaryFinding;
+import com.searchcode.app.dto.IngestedFile;
 import com.searchcode.app.dto.RepositoryChanged;
 import com.searchcode.app.dto.RunningIndexJob;
 import com.searchcode.app.model.RepoResult;
@@ -37,6 +38,7 @@ import java.io.IOException;
 import java.nio.file.*;
 import java.time.Instant;
 import java.util.*;
+import java.util.stream.Collectors;
 
 public abstract class IndexBaseRepoJob implements Job {
 
@@ -46,6 +48,8 @@ public abstract class IndexBaseRepoJob implements Job {
     public boolean LOGINDEXED = Boolean.parseBoolean(Properties.getProperties().getProperty(Values.LOG_INDEXED, "false"));
     public boolean FOLLOWLINKS = Boolean.parseBoolean(Properties.getProperties().getProperty(Values.FOLLOW_LINKS, Values.DEFAULT_FOLLOW_LINKS));
     public boolean DELETEREPO = Boolean.parseBoolean(Properties.getProperties().getProperty(Values.DELETE_REPO_AFTER_PROCESS, Values.DEFAULT_DELETE_REPO_AFTER_PROCESS));
+    public boolean INDEXDELTA = Boolean.parseBoolean(Properties.getProperties().getProperty(Values.INDEX_DELTA, Values.DEFAULT_INDEX_DELTA));
+    public int INDEXWORKERS = Singleton.getHelpers().tryParseInt(Properties.getProperties().getProperty(Values.REPO_INDEX_WORKERS, Values.DEFAULT_REPO_INDEX_WORKERS), Values.DEFAULT_REPO_INDEX_WORKERS);
     public boolean haveRepoResult = false;
     public IIndexService indexService = Singleton.getIndexService();
     public LoggerWrapper logger = Singleton.getLogger();
@@ -238,42 +242,164 @@ public abstract class IndexBaseRepoJob implements Job {
     public void updateIndex(RepoResult repoResult, String repoLocations, String repoRemoteLocation, boolean existingRepo, RepositoryChanged repositoryChanged) {
         String repoGitLocation = repoLocations + "/" + repoResult.getDirectoryName();
         Path docDir = Paths.get(repoGitLocation);
+        boolean completed;
 
-        this.logger.info(String.format("09989306::doing full index of files for repository %s", repoResult.getName()));
-        this.indexDocsByPath(docDir, repoResult, repoLocations, repoRemoteLocation, existingRepo);
+        if (this.canIndexDelta(repoResult, existingRepo, repositoryChanged)) {
+            this.logger.info(String.format("5b7e19a2::doing delta index of %d changed and %d deleted files for repository %s", repositoryChanged.getChangedFiles().size(), repositoryChanged.getDeletedFiles().size(), repoResult.getName()));
+            completed = this.indexDocsByDelta(docDir, repoResult, repoLocations, repoRemoteLocation, repositoryChanged);
+        } else {
+            this.logger.info(String.format("09989306::doing full index of files for repository %s", repoResult.getName()));
+            completed = this.indexDocsByPath(docDir, repoResult, repoLocations, repoRemoteLocation, existingRepo);
+        }
+
+        // Only remember the commit once everything up to it has been indexed otherwise the next run does a full index
+        if (repoResult.getData() != null && repositoryChanged != null) {
+            String headCommit = repositoryChanged.getHeadCommit();
+            repoResult.getData().lastIndexedCommit = completed && headCommit != null ? headCommit : Values.EMPTYSTRING;
+        }
 
         // Write file indicating that the index was successful
         this.logger.info(String.format("07422ca0::successfully processed writing index success for %s", repoResult.getName()));
     }
 
+    /**
+     * Only the changes since the last indexed commit need to be processed if the repository already existed
+     * and those changes could be worked out. Falls back to a full walk when reindexing everything or when
+     * the index has nothing for the repository, such as after the index was deleted.
+     */
+    public boolean canIndexDelta(RepoResult repoResult, boolean existingRepo, RepositoryChanged repositoryChanged) {
+        if (!this.INDEXDELTA || !existingRepo || repositoryChanged == null || !repositoryChanged.isDelta()) {
+            return false;
+        }
+
+        if (this.indexService.getReindexingAll()) {
+            return false;
+        }
+
+        return !this.indexService.getRepoDocuments(repoResult.getName(), 0).isEmpty();
+    }
+
+    /**
+     * Indexes only the files which changed and removes from the index the files which were deleted since the
+     * last indexed commit. Changed files go through the same processing as a full walk so anything that is
+     * now excluded, such as a file that became binary, is removed from the index as well.
+     * Returns false if the job was terminated before everything was processed.
+     */
+    public boolean indexDocsByDelta(Path path, RepoResult repoResult, String repoLocations, String repoRemoteLocation, RepositoryChanged repositoryChanged) {
+        String fileRepoLocations = FilenameUtils.separatorsToUnix(repoLocations);
+        SearchcodeFileVisitor<Path> searchcodeFileVisitor = new SearchcodeFileVisitor<>(this, repoResult, fileRepoLocations, repoRemoteLocation);
+        List<String> removeFiles = new ArrayList<>();
+        List<String> visitedFiles = new ArrayList<>();
+
+        try {
+            for (String changedFile : repositoryChanged.getChangedFiles()) {
+                Path filePath = path.resolve(changedFile);
+                String fileToString = FilenameUtils.separatorsToUnix(filePath.toString());
+
+                if (!this.isIndexableFile(filePath)) {
+                    removeFiles.add(fileToString);
+                    continue;
+                }
+
+                try {
+                    searchcodeFileVisitor.visitFile(filePath, null);
+                } catch (IOException ex) {
+                    this.logger.severe(String.format("6a40ed8e::error in class %s exception %s file %s", ex.getClass(), ex.getMessage(), fileToString));
+                }
+
+                if (searchcodeFileVisitor.terminated) {
+                    return false;
+                }
+
+                visitedFiles.add(fileToString);
+            }
+        } finally {
+            searchcodeFileVisitor.finish();
+        }
+
+        if (searchcodeFileVisitor.terminated) {
+            return false;
+        }
+
+        // Only known once every changed file has been processed, kept in the order the files changed
+        for (String fileToString : visitedFiles) {
+            if (!searchcodeFileVisitor.fileLocationsMap.containsKey(fileToString)) {
+                removeFiles.add(fileToString);
+            }
+        }
+
+        for (String deletedFile : repositoryChanged.getDeletedFiles()) {
+            removeFiles.add(FilenameUtils.separatorsToUnix(path.resolve(deletedFile).toString()));
+        }
+
+        if (!removeFiles.isEmpty()) {
+            this.logger.info(String.format("c2b4a6f0::removing %d files from index for repository %s", removeFiles.size(), repoResult.getName()));
+            try {
+                this.indexService.deleteByCodeIds(removeFiles.stream().map(DigestUtils::sha1Hex).collect(Collectors.toList()));
+            } catch (IOException ex) {
+                this.logger.severe(String.format("f5d1e7a3::error in class %s exception %s repository by name %s", ex.getClass(), ex.getMessage(), repoResult.getName()));
+                return false;
+            }
+        }
+
+        if (this.LOGINDEXED) {
+            logIndexed(repoResult.getName(), searchcodeFileVisitor.reportList);
+        }
+
+        return true;
+    }
+
     /**
      * Indexes all the documents in the path provided. Will also remove anything from the index if not on disk
      * Generally this is a slow update used only for the initial clone of a repository
      * NB this can be used for updates but it will be much slower as it needs to to walk the contents of the disk
+     * Returns false if the walk did not complete.
      */
-    public void indexDocsByPath(Path path, RepoResult repoResult, String repoLocations, String repoRemoteLocation, boolean existingRepo) {
+    public boolean indexDocsByPath(Path path, RepoResult repoResult, String repoLocations, String repoRemoteLocation, boolean existingRepo) {
 
         String fileRepoLocations = FilenameUtils.separatorsToUnix(repoLocations);
         SearchcodeFileVisitor<Path> searchcodeFileVisitor = new SearchcodeFileVisitor<>(this, repoResult, fileRepoLocations, repoRemoteLocation);
+        boolean completed = true;
 
         try {
-            if (this.FOLLOWLINKS) {
-                Files.walkFileTree(path, EnumSet.of(FileVisitOption.FOLLOW_LINKS), Integer.MAX_VALUE, searchcodeFileVisitor);
-            } else {
-                Files.walkFileTree(path, searchcodeFileVisitor);
-            }
-
+            this.walkFileTree(path, searchcodeFileVisitor);
         } catch (IOException ex) {
             this.logger.severe(String.format("4ee4d191::error in class %s exception %s repository by name %s", ex.getClass(), ex.getMessage(), repoResult.getName()));
+            completed = false;
+        } finally {
+            searchcodeFileVisitor.finish();
         }
 
         if (this.LOGINDEXED) {
             logIndexed(repoResult.getName(), searchcodeFileVisitor.reportList);
         }
 
-        if (existingRepo) {
+        // A walk that was stopped early has not seen every file so cleaning would remove files still on disk
+        if (existingRepo && !searchcodeFileVisitor.terminated) {
             this.cleanMissingPathFiles(repoResult.getName(), searchcodeFileVisitor.fileLocationsMap);
         }
+
+        return completed && !searchcodeFileVisitor.terminated;
+    }
+
+    /**
+     * Hands every file of the repository to the visitor. This method can be implemented by extending class
+     * but is not required as it walks the files on disk
+     */
+    public void walkFileTree(Path path, SearchcodeFileVisitor<Path> searchcodeFileVisitor) throws IOException {
+        if (this.FOLLOWLINKS) {
+            Files.walkFileTree(path, EnumSet.of(FileVisitOption.FOLLOW_LINKS), Integer.MAX_VALUE, searchcodeFileVisitor);
+        } else {
+            Files.walkFileTree(path, searchcodeFileVisitor);
+        }
+    }
+
+    /**
+     * Checks if a file that changed is still there to be indexed. This method can be implemented by extending
+     * class but is not required as it checks the file on disk
+     */
+    public boolean isIndexableFile(Path filePath) {
+        return Files.isRegularFile(filePath);
     }
 
     /**
@@ -380,12 +506,15 @@ public abstract class IndexBaseRepoJob implements Job {
      * The below are shared between the delta updates and path walk
      */
 
+    /**
+     * Reads the file once from disk, the result holds the lines, content and md5 of the file
+     */
     public CodeLinesReturn getCodeLines(String changedFile, List<String[]> reportList) {
-        List<String> codeLines = new ArrayList<>();
+        IngestedFile ingestedFile = null;
         boolean error = false;
 
         try {
-            codeLines = Singleton.getHelpers().readFileLinesGuessEncoding(changedFile, this.MAXFILELINEDEPTH);
+            ingestedFile = Singleton.getHelpers().ingestFile(changedFile, this.MAXFILELINEDEPTH);
         } catch (IOException ex) {
             error = true;
             this.logger.severe(String.format("fb3bfafb::error in class %s exception %s", ex.getClass(), ex.getMessage()));
@@ -395,7 +524,7 @@ public abstract class IndexBaseRepoJob implements Job {
             }
         }
 
-        return new CodeLinesReturn(codeLines, reportList, error);
+        return new CodeLinesReturn(ingestedFile, reportList, error);
     }
 
     public IsMinifiedReturn getIsMinified(List<String> codeLines, String fileName, List<String[]> reportList) {
@@ -511,18 +640,26 @@ public abstract class IndexBaseRepoJob implements Job {
     }
 
     public class CodeLinesReturn {
-        private final List<String> codeLines;
+        private final IngestedFile ingestedFile;
         private final boolean error;
         private final List<String[]> reportList;
 
-        public CodeLinesReturn(List<String> codeLines, List<String[]> reportList, boolean error) {
-            this.codeLines = codeLines;
+        public CodeLinesReturn(IngestedFile ingestedFile, List<String[]> reportList, boolean error) {
+            this.ingestedFile = ingestedFile;
             this.reportList = reportList;
             this.error = error;
         }
 
         public List<String> getCodeLines() {
-            return codeLines;
+            return ingestedFile == null ? new ArrayList<>() : ingestedFile.getCodeLines();
+        }
+
+        public String getContents() {
+            return ingestedFile == null ? Values.EMPTYSTRING : ingestedFile.getContents();
+        }
+
+        public String getMd5hash() {
+            return ingestedFile == null ? Values.EMPTYSTRING : ingestedFile.getMd5hash();
         }
 
         public List<String[]> getReportList() {
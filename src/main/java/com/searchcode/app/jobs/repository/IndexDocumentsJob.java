@@ -60,6 +60,9 @@ public class IndexDocumentsJob implements Job {
                 if (codeIndexQueueSize != 0) {
                     this.logger.info(String.format("19494c98::documents to index %d lines to index %d", codeIndexQueueSize, this.indexService.getCodeIndexLinesCount()));
                     this.indexService.indexDocument(this.indexQueue);
+                } else {
+                    // Nothing waiting so commit anything left over from the last batch once the interval passes
+                    this.indexService.commit();
                 }
 
                 Thread.sleep(this.INDEXTIME);
@@ -15,42 +15,52 @@ package com.searchcode.app.jobs.repository;
 
 import com.searchcode.app.config.Values;
 import com.searchcode.app.dto.CodeOwner;
+import com.searchcode.app.dto.IngestedFile;
 import com.searchcode.app.dto.RepositoryChanged;
 import com.searchcode.app.model.RepoResult;
+import com.searchcode.app.service.CacheSingleton;
 import com.searchcode.app.service.index.IIndexService;
 import com.searchcode.app.service.Singleton;
 import com.searchcode.app.util.Properties;
 import com.searchcode.app.util.SearchCodeLib;
 import com.searchcode.app.util.UniqueRepoQueue;
 import org.apache.commons.io.FilenameUtils;
-import org.eclipse.jgit.api.BlameCommand;
 import org.eclipse.jgit.api.CloneCommand;
+import org.eclipse.jgit.api.FetchCommand;
 import org.eclipse.jgit.api.Git;
 import org.eclipse.jgit.api.PullCommand;
 import org.eclipse.jgit.api.errors.GitAPIException;
-import org.eclipse.jgit.blame.BlameResult;
 import org.eclipse.jgit.diff.DiffEntry;
 import org.eclipse.jgit.internal.storage.file.FileRepository;
 import org.eclipse.jgit.lib.*;
 import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.transport.RefSpec;
 import org.eclipse.jgit.transport.UsernamePasswordCredentialsProvider;
+import org.eclipse.jgit.treewalk.AbstractTreeIterator;
 import org.eclipse.jgit.treewalk.CanonicalTreeParser;
+import org.eclipse.jgit.treewalk.EmptyTreeIterator;
+import org.eclipse.jgit.treewalk.TreeWalk;
 import org.quartz.DisallowConcurrentExecution;
 import org.quartz.PersistJobDataAfterExecution;
 
 import java.io.*;
 import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.text.DateFormat;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.HashMap;
-import java.util.List;
+import java.time.Instant;
+import java.util.*;
 
 /**
  * This job is responsible for pulling and indexing git repositories
  * <p>
+ * When git_bare_index is enabled repositories are cloned without a working tree and only the branch being
+ * indexed is fetched. Files are then read straight from the object database by walking the tree of the commit
+ * being indexed, and any file whose blob is the same as in the last indexed commit is skipped.
+ * <p>
  * TODO add more tests as they are lacking
  */
 @PersistJobDataAfterExecution
@@ -59,6 +69,13 @@ public class IndexGitRepoJob extends IndexBaseRepoJob {
 
     private final String GIT_BINARY_PATH;
     private boolean USE_SYSTEM_GIT;
+    public boolean BAREINDEX;
+    private GitCodeOwners gitCodeOwners = null;
+
+    // Only set while a repository without a working tree is being indexed
+    private Repository bareRepository = null;
+    private Map<String, ObjectId> bareFiles = null;
+    private Set<String> unchangedBareFiles = null;
 
     public IndexGitRepoJob() {
         this(Singleton.getIndexService());
@@ -67,6 +84,7 @@ public class IndexGitRepoJob extends IndexBaseRepoJob {
     public IndexGitRepoJob(IIndexService indexService) {
         this.GIT_BINARY_PATH = Properties.getProperties().getProperty(Values.GITBINARYPATH, Values.DEFAULTGITBINARYPATH);
         this.USE_SYSTEM_GIT = Boolean.parseBoolean(Properties.getProperties().getProperty(Values.USESYSTEMGIT, Values.DEFAULTUSESYSTEMGIT));
+        this.BAREINDEX = Boolean.parseBoolean(Properties.getProperties().getProperty(Values.GIT_BARE_INDEX, Values.DEFAULT_GIT_BARE_INDEX));
 
         File f = new File(this.GIT_BINARY_PATH);
         if (this.USE_SYSTEM_GIT && !f.exists()) {
@@ -96,7 +114,8 @@ public class IndexGitRepoJob extends IndexBaseRepoJob {
     public String getCodeOwner(List<String> codeLines, String fileName, String repoDirectory, String fileRepoLocations, SearchCodeLib scl) {
         List<CodeOwner> owners;
 
-        if (this.USE_SYSTEM_GIT) {
+        // The system git blames the file in the working tree so cannot be used when there is none
+        if (this.USE_SYSTEM_GIT && !this.BAREINDEX) {
             owners = this.getBlameInfoExternal(codeLines.size(), repoDirectory, fileRepoLocations, fileName);
         } else {
             owners = this.getBlameInfo(codeLines.size(), repoDirectory, fileRepoLocations, fileName);
@@ -200,98 +219,202 @@ public class IndexGitRepoJob extends IndexBaseRepoJob {
     }
 
     /**
-     * Uses the inbuilt git
-     * TODO lots of hairy bits in here need tests to capture issues
+     * Uses the inbuilt git. The repository is opened on the first call and reused for every following
+     * file in the same repository until the index of the repository finishes.
      */
     public List<CodeOwner> getBlameInfo(int codeLinesSize, String repoName, String repoLocations, String fileName) {
-        List<CodeOwner> codeOwners = new ArrayList<>(codeLinesSize);
+        // The / part is required due to centos bug for version 1.1.1
+        String repoLoc = repoLocations + "/" + repoName + "/.git";
+
         try {
-            // The / part is required due to centos bug for version 1.1.1
-            // This appears to be correct
-            String repoLoc = repoLocations + "/" + repoName + "/.git";
+            return this.getGitCodeOwners(repoLoc).getCodeOwners(fileName, codeLinesSize);
+        } catch (IOException | IllegalArgumentException ex) {
+            this.logger.severe(String.format("8b6da512::error in class %s exception %s for repository %s", ex.getClass(), ex.getMessage(), repoName));
+        }
 
-            Repository localRepository = new FileRepository(new File(repoLoc));
-            BlameCommand blamer = new BlameCommand(localRepository);
+        return new ArrayList<>();
+    }
 
-            ObjectId commitID = localRepository.resolve("HEAD");
+    @Override
+    public void updateIndex(RepoResult repoResult, String repoLocations, String repoRemoteLocation, boolean existingRepo, RepositoryChanged repositoryChanged) {
+        try {
+            if (this.BAREINDEX) {
+                try {
+                    this.openBareFiles(repoResult, repoLocations, existingRepo, repositoryChanged);
+                } catch (IOException | IllegalArgumentException ex) {
+                    // Walking the disk instead would find nothing and remove every file of the repository from the index
+                    this.logger.severe(String.format("a83f5d1e::error in class %s exception %s unable to read the tree of repository %s", ex.getClass(), ex.getMessage(), repoResult.getName()));
+                    return;
+                }
+            }
 
-            if (commitID == null) {
-                this.logger.severe(String.format("caca9ca8::getblameinfo commitId is null for repository %s filename %s", repoLoc, fileName));
-                return codeOwners;
+            super.updateIndex(repoResult, repoLocations, repoRemoteLocation, existingRepo, repositoryChanged);
+        } finally {
+            this.closeBareFiles();
+            this.closeGitCodeOwners();
+        }
+    }
+
+    @Override
+    public void walkFileTree(Path path, SearchcodeFileVisitor<Path> searchcodeFileVisitor) throws IOException {
+        if (this.bareFiles == null) {
+            super.walkFileTree(path, searchcodeFileVisitor);
+            return;
+        }
+
+        for (String fileToString : this.bareFiles.keySet()) {
+            searchcodeFileVisitor.visitFile(Paths.get(fileToString), null);
+
+            if (searchcodeFileVisitor.terminated) {
+                return;
             }
+        }
+    }
 
-            BlameResult blame;
+    @Override
+    public boolean isIndexableFile(Path filePath) {
+        if (this.bareFiles == null) {
+            return super.isIndexableFile(filePath);
+        }
 
-            // Somewhere in here appears to be wrong...
-            blamer.setStartCommit(commitID);
-            blamer.setFilePath(fileName);
-            blame = blamer.call();
+        return this.bareFiles.containsKey(FilenameUtils.separatorsToUnix(filePath.toString()));
+    }
 
-            // Hail mary attempt to solve issue on CentOS Attempt to set at all costs
-            if (blame == null) { // This one appears to solve the issue so don't remove it
-                String[] split = fileName.split("/");
-                blamer.setStartCommit(commitID);
-                if (split.length != 1) {
-                    blamer.setFilePath(String.join("/", Arrays.asList(split).subList(1, split.length)));
-                }
-                blame = blamer.call();
+    /**
+     * Without a working tree there is no modified time so a file has been updated if its blob is not the same
+     * as in the last indexed commit
+     */
+    @Override
+    public boolean isUpdated(String fileLocation, Instant lastRunTime) {
+        if (this.bareFiles == null) {
+            return super.isUpdated(fileLocation, lastRunTime);
+        }
+
+        return this.indexService.getReindexingAll() || !this.unchangedBareFiles.contains(fileLocation);
+    }
+
+    /**
+     * Reads the blob of the file from the object database rather than from disk
+     */
+    @Override
+    public CodeLinesReturn getCodeLines(String changedFile, List<String[]> reportList) {
+        ObjectId blobId = this.bareFiles == null ? null : this.bareFiles.get(changedFile);
+        if (blobId == null) {
+            return super.getCodeLines(changedFile, reportList);
+        }
+
+        IngestedFile ingestedFile = null;
+        boolean error = false;
+
+        try {
+            ObjectLoader loader = this.bareRepository.open(blobId, Constants.OBJ_BLOB);
+
+            try (InputStream inputStream = loader.openStream()) {
+                ingestedFile = Singleton.getHelpers().ingestStream(inputStream, loader.getSize(), this.MAXFILELINEDEPTH);
             }
-            if (blame == null) {
-                String[] split = fileName.split("/");
-                blamer.setStartCommit(commitID);
-                if (split.length != 1) {
-                    blamer.setFilePath("/" + String.join("/", Arrays.asList(split).subList(1, split.length)));
-                }
-                blame = blamer.call();
+        } catch (IOException ex) {
+            error = true;
+            this.logger.severe(String.format("4c90e6b2::error in class %s exception %s blob %s", ex.getClass(), ex.getMessage(), blobId.getName()));
+
+            if (this.LOGINDEXED) {
+                reportList.add(new String[]{changedFile, "excluded", "unable to read file from repository"});
             }
+        }
+
+        return new CodeLinesReturn(ingestedFile, reportList, error);
+    }
+
+    /**
+     * Walks the tree of the commit being indexed remembering the blob of every file under the path it would have
+     * in a checkout. Files with the same blob in the last indexed commit are remembered as unchanged, unless the
+     * index has nothing for the repository in which case everything needs to be indexed again.
+     */
+    private void openBareFiles(RepoResult repoResult, String repoLocations, boolean existingRepo, RepositoryChanged repositoryChanged) throws IOException {
+        Path path = Paths.get(repoLocations + "/" + repoResult.getDirectoryName());
+        String headCommit = repositoryChanged == null ? null : repositoryChanged.getHeadCommit();
+        String lastIndexedCommit = repoResult.getData() == null ? Values.EMPTYSTRING : repoResult.getData().lastIndexedCommit;
 
-            if (blame == null) {
-                this.logger.info(String.format("273e0a9e::getblameinfo is null for repository %s filename %s", repoLoc, fileName));
+        if (!existingRepo || this.indexService.getRepoDocuments(repoResult.getName(), 0).isEmpty()) {
+            lastIndexedCommit = Values.EMPTYSTRING;
+        }
+
+        this.bareRepository = new FileRepository(new File(repoLocations + "/" + repoResult.getDirectoryName() + "/.git"));
+        this.bareFiles = new LinkedHashMap<>();
+        this.unchangedBareFiles = new HashSet<>();
+
+        try (RevWalk revWalk = new RevWalk(this.bareRepository); TreeWalk treeWalk = new TreeWalk(this.bareRepository)) {
+            ObjectId head = this.bareRepository.resolve(headCommit == null ? Constants.HEAD : headCommit);
+            if (head == null) {
+                throw new IOException("unable to resolve the commit to index");
             }
 
-            if (blame != null) {
-                // Get all the owners their number of commits and most recent commit
-                HashMap<String, CodeOwner> owners = new HashMap<>();
-                RevCommit commit;
-                PersonIdent authorIdent;
+            treeWalk.addTree(revWalk.parseCommit(head).getTree());
+            treeWalk.addTree(this.getIndexedTree(revWalk, lastIndexedCommit));
+            treeWalk.setRecursive(true);
 
-                try {
-                    for (int i = 0; i < codeLinesSize; i++) {
-                        commit = blame.getSourceCommit(i);
-                        authorIdent = commit.getAuthorIdent();
-
-                        if (owners.containsKey(authorIdent.getName())) {
-                            CodeOwner codeOwner = owners.get(authorIdent.getName());
-                            codeOwner.incrementLines();
-
-                            int timestamp = codeOwner.getMostRecentUnixCommitTimestamp();
-
-                            if (commit.getCommitTime() > timestamp) {
-                                codeOwner.setMostRecentUnixCommitTimestamp(commit.getCommitTime());
-                            }
-                            owners.put(authorIdent.getName(), codeOwner);
-                        } else {
-                            owners.put(authorIdent.getName(), new CodeOwner(authorIdent.getName(), 1, commit.getCommitTime()));
-                        }
-                    }
-                } catch (IndexOutOfBoundsException ex) {
-                    // blame.getSourceCommit(i) will throw this exception and there is no way I can see to correctly
-                    // identify when it will occur. Its not something that is severe so we log it under info
-                    this.logger.info(String.format("4cf371a5::error in class %s exception %s for repository %s index out of bounds, this can safely be ignored but is something to fix in the future", ex.getClass(), ex.getMessage(), repoName));
+            while (treeWalk.next()) {
+                // Submodules and symbolic links have no content of their own to index
+                if (!this.isFileMode(treeWalk.getFileMode(0))) {
+                    continue;
                 }
 
-                codeOwners = new ArrayList<>(owners.values());
+                String fileToString = FilenameUtils.separatorsToUnix(path.resolve(treeWalk.getPathString()).toString());
+                this.bareFiles.put(fileToString, treeWalk.getObjectId(0));
+
+                if (this.isFileMode(treeWalk.getFileMode(1)) && treeWalk.idEqual(0, 1)) {
+                    this.unchangedBareFiles.add(fileToString);
+                }
             }
+        }
 
-        } catch (IOException ex) {
-            this.logger.severe(String.format("85cd8d0c::error in class %s exception %s for repository %s", ex.getClass(), ex.getMessage(), repoName));
-        } catch (GitAPIException ex) {
-            this.logger.severe(String.format("91029067::error in class %s exception %s for repository %s", ex.getClass(), ex.getMessage(), repoName));
-        } catch (IllegalArgumentException ex) {
-            this.logger.severe(String.format("8b6da512::error in class %s exception %s for repository %s", ex.getClass(), ex.getMessage(), repoName));
+        this.logger.info(String.format("e6b1f3c8::found %d files of which %d are unchanged in the tree of repository %s", this.bareFiles.size(), this.unchangedBareFiles.size(), repoResult.getName()));
+    }
+
+    /**
+     * Returns the tree of the last indexed commit or an empty tree if there is none or it no longer exists
+     */
+    private AbstractTreeIterator getIndexedTree(RevWalk revWalk, String lastIndexedCommit) {
+        if (!Singleton.getHelpers().isNullEmptyOrWhitespace(lastIndexedCommit)) {
+            try {
+                CanonicalTreeParser treeParser = new CanonicalTreeParser();
+                treeParser.reset(revWalk.getObjectReader(), revWalk.parseCommit(ObjectId.fromString(lastIndexedCommit)).getTree());
+                return treeParser;
+            } catch (IOException | IllegalArgumentException ex) {
+                this.logger.info(String.format("0f7a2d95::unable to read last indexed commit %s exception %s indexing every file", lastIndexedCommit, ex.getMessage()));
+            }
         }
 
-        return codeOwners;
+        return new EmptyTreeIterator();
+    }
+
+    private boolean isFileMode(FileMode fileMode) {
+        return (fileMode.getBits() & FileMode.TYPE_MASK) == FileMode.TYPE_FILE;
+    }
+
+    private void closeBareFiles() {
+        Singleton.getHelpers().closeQuietly(this.bareRepository);
+        this.bareRepository = null;
+        this.bareFiles = null;
+        this.unchangedBareFiles = null;
+    }
+
+    private synchronized GitCodeOwners getGitCodeOwners(String repoLocation) throws IOException {
+        if (this.gitCodeOwners != null && !this.gitCodeOwners.getRepoLocation().equals(repoLocation)) {
+            this.closeGitCodeOwners();
+        }
+
+        if (this.gitCodeOwners == null) {
+            this.gitCodeOwners = new GitCodeOwners(repoLocation, CacheSingleton.getCodeOwnerCache(), this.logger);
+        }
+
+        return this.gitCodeOwners;
+    }
+
+    private synchronized void closeGitCodeOwners() {
+        if (this.gitCodeOwners != null) {
+            this.gitCodeOwners.close();
+            this.gitCodeOwners = null;
+        }
     }
 
     /**
@@ -299,6 +422,8 @@ public class IndexGitRepoJob extends IndexBaseRepoJob {
      */
     public RepositoryChanged updateGitRepository(RepoResult repoResult, String repoLocations, boolean useCredentials) {
         boolean changed = false;
+        boolean delta = false;
+        String headCommit = null;
         List<String> changedFiles = new ArrayList<>();
         List<String> deletedFiles = new ArrayList<>();
         this.logger.info(String.format("6cffea0f::attempting to pull latest from %s for %s", repoLocations, repoResult.getName()));
@@ -308,56 +433,47 @@ public class IndexGitRepoJob extends IndexBaseRepoJob {
 
         try {
             localRepository = new FileRepository(new File(repoLocations + "/" + repoResult.getDirectoryName() + "/.git"));
-
-            Ref head = localRepository.getRef("HEAD");
             git = new Git(localRepository);
+            ObjectId newHead;
 
-            git.reset();
-            git.clean();
-
-            PullCommand pullCmd = git.pull();
-
-            if (useCredentials) {
-                pullCmd.setCredentialsProvider(new UsernamePasswordCredentialsProvider(repoResult.getUsername(), repoResult.getPassword()));
-            }
-
-            pullCmd.call();
-            Ref newHEAD = localRepository.getRef("HEAD");
-
-            if (!head.toString().equals(newHEAD.toString())) {
-                changed = true;
+            if (this.BAREINDEX) {
+                ObjectId head = localRepository.resolve(this.getBranchRef(repoResult.getBranch()));
+                newHead = this.fetchGitRepository(repoResult, localRepository, git, useCredentials);
+                changed = !newHead.equals(head);
+            } else {
+                Ref head = localRepository.getRef("HEAD");
 
-                // Get the differences between the the heads which we updated at
-                // and use these to just update the differences between them
-                ObjectId oldHead = localRepository.resolve(head.getObjectId().getName() + "^{tree}");
-                ObjectId newHead = localRepository.resolve(newHEAD.getObjectId().getName() + "^{tree}");
+                git.reset();
+                git.clean();
 
-                ObjectReader reader = localRepository.newObjectReader();
+                PullCommand pullCmd = git.pull();
 
-                CanonicalTreeParser oldTreeIter = new CanonicalTreeParser();
-                oldTreeIter.reset(reader, oldHead);
+                if (useCredentials) {
+                    pullCmd.setCredentialsProvider(new UsernamePasswordCredentialsProvider(repoResult.getUsername(), repoResult.getPassword()));
+                }
 
-                CanonicalTreeParser newTreeIter = new CanonicalTreeParser();
-                newTreeIter.reset(reader, newHead);
+                pullCmd.call();
+                Ref newHEAD = localRepository.getRef("HEAD");
 
+                if (!head.toString().equals(newHEAD.toString())) {
+                    changed = true;
+                }
 
-                List<DiffEntry> entries = git.diff()
-                        .setNewTree(newTreeIter)
-                        .setOldTree(oldTreeIter)
-                        .call();
+                newHead = newHEAD.getObjectId();
+            }
 
+            headCommit = newHead.getName();
 
-                for (DiffEntry entry : entries) {
-                    if ("DELETE".equals(entry.getChangeType().name())) {
-                        deletedFiles.add(FilenameUtils.separatorsToUnix(entry.getOldPath()));
-                    } else {
-                        changedFiles.add(FilenameUtils.separatorsToUnix(entry.getNewPath()));
-                    }
-                }
+            // Get the differences from the last commit we indexed rather than the head we updated from
+            // so that nothing is missed if the previous index of this repository did not finish
+            String lastIndexedCommit = repoResult.getData() == null ? Values.EMPTYSTRING : repoResult.getData().lastIndexedCommit;
+            if (!Singleton.getHelpers().isNullEmptyOrWhitespace(lastIndexedCommit)) {
+                delta = this.getChangesSinceCommit(localRepository, git, lastIndexedCommit, newHead, changedFiles, deletedFiles);
             }
 
         } catch (IOException | GitAPIException | InvalidPathException ex) {
             changed = false;
+            delta = false;
             String error = String.format("c6646806::error in class %s exception %s repository %s", ex.getClass(), ex.getMessage(), repoResult.getName());
             this.logger.severe(error);
             repoResult.getData().indexError = error;
@@ -367,7 +483,96 @@ public class IndexGitRepoJob extends IndexBaseRepoJob {
             Singleton.getHelpers().closeQuietly(git);
         }
 
-        return new RepositoryChanged(changed, changedFiles, deletedFiles);
+        RepositoryChanged repositoryChanged = new RepositoryChanged(changed, changedFiles, deletedFiles);
+        repositoryChanged.setDelta(delta);
+        repositoryChanged.setHeadCommit(headCommit);
+
+        return repositoryChanged;
+    }
+
+    /**
+     * Fetches only the branch being indexed straight into its branch of the repository, which HEAD of a clone
+     * without a working tree points at, returning the commit it now points at
+     */
+    private ObjectId fetchGitRepository(RepoResult repoResult, Repository localRepository, Git git, boolean useCredentials) throws IOException, GitAPIException {
+        String branchRef = this.getBranchRef(repoResult.getBranch());
+        FetchCommand fetchCmd = git.fetch().setRefSpecs(new RefSpec("+" + branchRef + ":" + branchRef));
+
+        if (useCredentials) {
+            fetchCmd.setCredentialsProvider(new UsernamePasswordCredentialsProvider(repoResult.getUsername(), repoResult.getPassword()));
+        }
+
+        fetchCmd.call();
+        ObjectId newHead = localRepository.resolve(branchRef);
+
+        if (newHead == null) {
+            throw new IOException(String.format("branch %s was not found", branchRef));
+        }
+
+        return newHead;
+    }
+
+    private String getBranchRef(String branch) {
+        if (Singleton.getHelpers().isNullEmptyOrWhitespace(branch)) {
+            return Constants.R_HEADS + Constants.MASTER;
+        }
+
+        return branch.startsWith(Constants.R_REFS) ? branch : Constants.R_HEADS + branch;
+    }
+
+    /**
+     * Works out the files added, modified and deleted between the supplied commit and the new head.
+     * Returns false if the changes cannot be determined, such as when the commit no longer exists or is not
+     * an ancestor of the new head after a force push, in which case the whole repository needs to be walked.
+     */
+    public boolean getChangesSinceCommit(Repository localRepository, Git git, String sinceCommit, ObjectId newHead, List<String> changedFiles, List<String> deletedFiles) {
+        try (RevWalk revWalk = new RevWalk(localRepository); ObjectReader reader = localRepository.newObjectReader()) {
+            RevCommit oldCommit = revWalk.parseCommit(ObjectId.fromString(sinceCommit));
+            RevCommit newCommit = revWalk.parseCommit(newHead);
+
+            if (oldCommit.equals(newCommit)) {
+                return true;
+            }
+
+            CanonicalTreeParser oldTreeIter = new CanonicalTreeParser();
+            oldTreeIter.reset(reader, oldCommit.getTree());
+
+            CanonicalTreeParser newTreeIter = new CanonicalTreeParser();
+            newTreeIter.reset(reader, newCommit.getTree());
+
+            if (!revWalk.isMergedInto(oldCommit, newCommit)) {
+                this.logger.info(String.format("3e0b6c59::commit %s is not an ancestor of %s history was rewritten so doing full index", sinceCommit, newHead.getName()));
+                return false;
+            }
+
+            List<DiffEntry> entries = git.diff()
+                    .setNewTree(newTreeIter)
+                    .setOldTree(oldTreeIter)
+                    .call();
+
+            for (DiffEntry entry : entries) {
+                switch (entry.getChangeType()) {
+                    case DELETE:
+                        deletedFiles.add(FilenameUtils.separatorsToUnix(entry.getOldPath()));
+                        break;
+                    case RENAME:
+                        deletedFiles.add(FilenameUtils.separatorsToUnix(entry.getOldPath()));
+                        changedFiles.add(FilenameUtils.separatorsToUnix(entry.getNewPath()));
+                        break;
+                    default:
+                        changedFiles.add(FilenameUtils.separatorsToUnix(entry.getNewPath()));
+                        break;
+                }
+            }
+
+            return true;
+        } catch (IOException | GitAPIException | IllegalArgumentException ex) {
+            this.logger.severe(String.format("b1e5c0d4::error in class %s exception %s unable to diff from commit %s doing full index", ex.getClass(), ex.getMessage(), sinceCommit));
+        }
+
+        changedFiles.clear();
+        deletedFiles.clear();
+        return false;
     }
 
     /**
@@ -375,6 +580,7 @@ public class IndexGitRepoJob extends IndexBaseRepoJob {
      */
     public RepositoryChanged cloneGitRepository(RepoResult repoResult, String repoLocations, boolean useCredentials) {
         boolean successful;
+        String headCommit = null;
         this.logger.info(String.format("664f20c7::attempting to clone %s", repoResult.getUrl()));
 
         Git call = null;
@@ -382,17 +588,30 @@ public class IndexGitRepoJob extends IndexBaseRepoJob {
         try {
             CloneCommand cloneCommand = Git.cloneRepository();
             cloneCommand.setURI(repoResult.getUrl());
-            cloneCommand.setDirectory(new File(repoLocations + "/" + repoResult.getDirectoryName() + "/"));
-            cloneCommand.setCloneAllBranches(true);
             cloneCommand.setBranch(repoResult.getBranch());
 
+            if (this.BAREINDEX) {
+                // Kept where the checkout would keep it so everything else finds the repository in the same place
+                cloneCommand.setDirectory(new File(repoLocations + "/" + repoResult.getDirectoryName() + "/.git/"));
+                cloneCommand.setBare(true);
+                cloneCommand.setBranchesToClone(Collections.singletonList(this.getBranchRef(repoResult.getBranch())));
+            } else {
+                cloneCommand.setDirectory(new File(repoLocations + "/" + repoResult.getDirectoryName() + "/"));
+                cloneCommand.setCloneAllBranches(true);
+            }
+
             if (useCredentials) {
                 cloneCommand.setCredentialsProvider(new UsernamePasswordCredentialsProvider(repoResult.getUsername(), repoResult.getPassword()));
             }
 
             call = cloneCommand.call();
             successful = true;
-        } catch (GitAPIException | InvalidPathException ex) {
+
+            ObjectId head = call.getRepository().resolve(Constants.HEAD);
+            if (head != null) {
+                headCommit = head.getName();
+            }
+        } catch (GitAPIException | InvalidPathException | IOException ex) {
             successful = false;
             String error = String.format("6e56fa26::error in class %s exception %s repository %s", ex.getClass(), ex.getMessage(), repoResult.getName());
             this.logger.severe(error);
@@ -404,6 +623,7 @@ public class IndexGitRepoJob extends IndexBaseRepoJob {
 
         RepositoryChanged repositoryChanged = new RepositoryChanged(successful);
         repositoryChanged.setClone(true);
+        repositoryChanged.setHeadCommit(headCommit);
 
         return repositoryChanged;
     }
@@ -6,21 +6,32 @@ import com.searchcode.app.model.RepoResult;
 import com.searchcode.app.service.Singleton;
 import com.searchcode.app.util.LoggerWrapper;
 import org.apache.commons.io.FilenameUtils;
-import org.apache.commons.lang3.StringUtils;
 
 import java.io.IOException;
 import java.nio.file.FileVisitResult;
 import java.nio.file.SimpleFileVisitor;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 
 /**
  * This class is responsible for walking the file tree after a checkout
  * and processing the files ready to be indexed.
+ *
+ * When the job has more than one index worker, reading, classifying, blaming and counting each file is handed to
+ * a pool of that many threads while the walk carries on. At most two files per worker are waiting at any time.
+ * Results are applied to the report list and file locations by the walking thread in the order the files were
+ * found, so what is removed or cleaned up afterwards is the same as a single threaded walk. Call finish once the
+ * walk is over to wait for the outstanding files before reading either.
  */
 public class SearchcodeFileVisitor<Path> extends SimpleFileVisitor<Path> {
 
@@ -29,10 +40,14 @@ public class SearchcodeFileVisitor<Path> extends SimpleFileVisitor<Path> {
     private final String fileRepoLocations;
     private final String repoRemoteLocation;
     private final LoggerWrapper logger;
+    private final int workers;
+    private final ExecutorService executorService;
+    private final Deque<Future<ProcessedFile>> pending = new ArrayDeque<>();
 
     // Used to hold the reports of what was indexed and what needs to be removed
     public List<String[]> reportList = new ArrayList<>();
     public Map<String, String> fileLocationsMap = new HashMap<>();
+    public volatile boolean terminated = false;
 
     public SearchcodeFileVisitor(IndexBaseRepoJob indexBaseRepoJob, RepoResult repoResult, String fileRepoLocations, String repoRemoteLocation) {
         this.indexBaseRepoJob = indexBaseRepoJob;
@@ -40,6 +55,18 @@ public class SearchcodeFileVisitor<Path> extends SimpleFileVisitor<Path> {
         this.fileRepoLocations = fileRepoLocations;
         this.repoRemoteLocation = repoRemoteLocation;
         this.logger = indexBaseRepoJob.logger;
+        this.workers = Math.max(1, indexBaseRepoJob.INDEXWORKERS);
+
+        if (this.workers > 1) {
+            this.executorService = Executors.newFixedThreadPool(this.workers, runnable -> {
+                var thread = new Thread(runnable, "repo-index-worker");
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            });
+        } else {
+            this.executorService = null;
+        }
     }
 
     @Override
@@ -54,12 +81,14 @@ public class SearchcodeFileVisitor<Path> extends SimpleFileVisitor<Path> {
             var filePath = (java.nio.file.Path) file;
 
             // If pause or terminate has been triggered than exit at first opportunity
-            if (this.indexBaseRepoJob.shouldJobPauseOrTerminate()) {
+            if (this.terminated || this.indexBaseRepoJob.shouldJobPauseOrTerminate()) {
+                this.terminated = true;
                 return FileVisitResult.TERMINATE;
             }
 
             // If this repository has since been deleted stop processing it
-            if (Singleton.getDataService().getPersistentDelete().contains(this.repoResult.getName())) {
+            if (Singleton.getDataService().isPersistentDelete(this.repoResult.getName())) {
+                this.terminated = true;
                 return FileVisitResult.TERMINATE;
             }
 
@@ -80,33 +109,115 @@ public class SearchcodeFileVisitor<Path> extends SimpleFileVisitor<Path> {
                 return FileVisitResult.CONTINUE;
             }
 
+            if (this.executorService == null) {
+                this.apply(this.processFile(file, fileToString, fileName));
+            } else {
+                this.pending.add(this.executorService.submit(() -> this.processFileInWorker(file, fileToString, fileName)));
+                this.applyCompleted(this.workers * 2);
+            }
+        } catch (Exception ex) {
+            this.logger.severe(String.format("5d2a8e91::error in class %s exception %s for repository %s file %s", ex.getClass(), ex.getMessage(), repoResult.getName(), file.toString()));
+        }
+
+        // Continue at all costs
+        return FileVisitResult.CONTINUE;
+    }
+
+    /**
+     * Waits for every file handed to the workers and applies their results. Must be called once the walk is over
+     * and before the report list or file locations are used. The visitor cannot be used afterwards.
+     */
+    public void finish() {
+        if (this.executorService == null) {
+            return;
+        }
+
+        try {
+            this.applyCompleted(0);
+        } finally {
+            this.executorService.shutdownNow();
+        }
+    }
+
+    /**
+     * Applies results in the order the files were found, stopping at the first still being worked on unless more
+     * than limit files are outstanding in which case it waits for it
+     */
+    private void applyCompleted(int limit) {
+        while (!this.pending.isEmpty() && (this.pending.size() > limit || this.pending.peek().isDone())) {
+            var future = this.pending.poll();
+
+            try {
+                this.apply(future.get());
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                this.terminated = true;
+                this.pending.forEach(x -> x.cancel(true));
+                this.pending.clear();
+            } catch (ExecutionException ex) {
+                this.logger.severe(String.format("b61e0c47::error in class %s exception %s for repository %s", ex.getClass(), ex.getMessage(), repoResult.getName()));
+            }
+        }
+    }
+
+    private void apply(ProcessedFile processedFile) {
+        this.reportList.addAll(processedFile.reportList);
+
+        if (processedFile.remove) {
+            this.fileLocationsMap.remove(processedFile.fileToString);
+        }
+    }
+
+    /**
+     * Workers check for pause and terminate themselves as files may be waiting when either is triggered
+     */
+    private ProcessedFile processFileInWorker(Object file, String fileToString, String fileName) {
+        if (this.terminated || this.indexBaseRepoJob.shouldJobPauseOrTerminate()) {
+            this.terminated = true;
+            return new ProcessedFile(fileToString);
+        }
+
+        return this.processFile(file, fileToString, fileName);
+    }
+
+    /**
+     * Reads, classifies and counts the file then hands it to be indexed. Returns what should be reported and if the
+     * file should be removed from the file locations rather than changing either directly.
+     */
+    private ProcessedFile processFile(Object file, String fileToString, String fileName) {
+        var processedFile = new ProcessedFile(fileToString);
+        var reportList = processedFile.reportList;
+
+        try {
             var codeLinesReturn = this.indexBaseRepoJob.getCodeLines(fileToString, reportList);
             if (codeLinesReturn.isError()) {
-                fileLocationsMap.remove(fileToString);
-                return FileVisitResult.CONTINUE;
+                processedFile.remove = true;
+                return processedFile;
             }
 
             var isMinified = this.indexBaseRepoJob.getIsMinified(codeLinesReturn.getCodeLines(), fileName, reportList);
             if (isMinified.isMinified()) {
-                return FileVisitResult.CONTINUE;
+                return processedFile;
             }
 
             if (this.indexBaseRepoJob.checkIfEmpty(codeLinesReturn.getCodeLines(), fileName, reportList)) {
-                return FileVisitResult.CONTINUE;
+                return processedFile;
             }
 
             if (this.indexBaseRepoJob.determineBinary(fileToString, fileName, codeLinesReturn.getCodeLines(), reportList)) {
-                fileLocationsMap.remove(fileToString);
-                return FileVisitResult.CONTINUE;
+                processedFile.remove = true;
+                return processedFile;
             }
 
-            var md5Hash = this.indexBaseRepoJob.getFileMd5(fileToString);
-            var languageName = Singleton.getFileClassifier().languageGuesser(fileName, StringUtils.join(codeLinesReturn.getCodeLines(), "\n"));
+            // Everything below works off what was read from disk above rather than reading the file again
+            var contents = codeLinesReturn.getContents();
+            var md5Hash = codeLinesReturn.getMd5hash();
+            var languageName = Singleton.getFileClassifier().languageGuesser(fileName, contents);
             var fileLocation = this.indexBaseRepoJob.getRelativeToProjectPath(file.toString(), fileToString);
             var fileLocationFilename = this.indexBaseRepoJob.getFileLocationFilename(fileToString, fileRepoLocations);
             var newString = this.indexBaseRepoJob.getBlameFilePath(fileLocationFilename);
             var codeOwner = this.indexBaseRepoJob.getCodeOwner(codeLinesReturn.getCodeLines(), newString, this.repoResult.getDirectoryName(), fileRepoLocations, Singleton.getSearchCodeLib());
-            var slocCount = Singleton.getSlocCounter().countStats(StringUtils.join(codeLinesReturn.getCodeLines(), "\n"), languageName);
+            var slocCount = Singleton.getSlocCounter().countStats(contents, languageName);
 
 
             var displayLocation = fileLocationFilename.substring(fileLocationFilename.indexOf("/") + 1);
@@ -131,7 +242,7 @@ public class SearchcodeFileVisitor<Path> extends SimpleFileVisitor<Path> {
                     .setCommentLines(slocCount.commentCount)
                     .setLines(slocCount.linesCount)
                     .setComplexity(slocCount.complexity)
-                    .setContents(StringUtils.join(codeLinesReturn.getCodeLines(), "\n"))
+                    .setContents(contents)
                     .setRepoRemoteLocation(repoRemoteLocation)
                     .setCodeOwner(codeOwner)
                     .setSchash(Values.EMPTYSTRING)
@@ -153,13 +264,14 @@ public class SearchcodeFileVisitor<Path> extends SimpleFileVisitor<Path> {
             this.logger.severe(String.format("e43cdddb::error in class %s exception %s for repository %s file %s", ex.getClass(), ex.getMessage(), repoResult.getName(), file.toString()));
         }
 
-        // Continue at all costs
-        return FileVisitResult.CONTINUE;
+        return processedFile;
     }
 
     @Override
     public FileVisitResult visitFileFailed(Object file, IOException ex) throws IOException {
         java.nio.file.Path filePath = (java.nio.file.Path) file;
+        // Applied in order with the files still being worked on
+        this.applyCompleted(0);
         reportList.add(new String[]{filePath.toString(), "excluded", ex.toString()});
         return FileVisitResult.CONTINUE;
     }
@@ -168,4 +280,17 @@ public class SearchcodeFileVisitor<Path> extends SimpleFileVisitor<Path> {
     public FileVisitResult postVisitDirectory(Object dir, IOException exc) throws IOException {
         return FileVisitResult.CONTINUE;
     }
+
+    /**
+     * What processing a file found, applied to the visitor in the order the files were walked
+     */
+    private static class ProcessedFile {
+        private final String fileToString;
+        private final List<String[]> reportList = new ArrayList<>();
+        private boolean remove = false;
+
+        private ProcessedFile(String fileToString) {
+            this.fileToString = fileToString;
+        }
+    }
 }
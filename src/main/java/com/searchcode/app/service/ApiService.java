@@ -30,14 +30,16 @@ public class ApiService {
 
     private final Api api;
     private final Helpers helpers;
+    private final StatsService statsService;
 
     public ApiService() {
-        this(Singleton.getApi(), Singleton.getHelpers());
+        this(Singleton.getApi(), Singleton.getHelpers(), Singleton.getStatsService());
     }
 
-    public ApiService(Api api, Helpers helpers) {
+    public ApiService(Api api, Helpers helpers, StatsService statsService) {
         this.api = api;
         this.helpers = helpers;
+        this.statsService = statsService;
     }
 
 
@@ -66,7 +68,13 @@ public class ApiService {
                 break;
         }
 
-        return myHmac.equals(hmac);
+        var valid = myHmac.equals(hmac);
+
+        if (valid) {
+            this.statsService.incrementCount(Values.STATS_API_KEY_PREFIX + publicKey);
+        }
+
+        return valid;
     }
 
     /**
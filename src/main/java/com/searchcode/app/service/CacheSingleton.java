@@ -7,6 +7,7 @@ import com.searchcode.app.model.SourceResult;
 import org.cache2k.Cache;
 import org.cache2k.Cache2kBuilder;
 
+import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.TimeUnit;
 
@@ -22,6 +23,7 @@ public final class CacheSingleton {
     private static Cache<String, Optional<SourceCodeDTO>> sourceCodeCache = null;
     private static Cache<String, Optional<RepoResult>> repoResultCache = null;
     private static Cache<String, ProjectStats> projectStatsCache = null;
+    private static Cache<String, List<CodeOwner>> codeOwnerCache = null;
 
     /**
      * This is intended as a generic L1 cache for searchcode which has no network
@@ -113,4 +115,21 @@ public final class CacheSingleton {
 
         return projectStatsCache;
     }
+
+    /**
+     * Owners of files keyed by repository directory, file path, git blob id and number of lines as
+     * repoDir:path:blobId:codeLinesSize. Owners never change for the same key so entries only need to be
+     * evicted to keep memory in check
+     */
+    public static synchronized Cache<String, List<CodeOwner>> getCodeOwnerCache() {
+        if (codeOwnerCache == null) {
+            codeOwnerCache = new Cache2kBuilder<String, List<CodeOwner>>() {}
+                    .name("codeOwnerCache")
+                    .expireAfterWrite(Values.HIGH_CACHE_DAYS, TimeUnit.DAYS)
+                    .entryCapacity(Values.LARGE_CACHE_SIZE)
+                    .build();
+        }
+
+        return codeOwnerCache;
+    }
 }
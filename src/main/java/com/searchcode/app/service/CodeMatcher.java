@@ -15,12 +15,15 @@ import com.searchcode.app.dao.Data;
 import com.searchcode.app.dto.CodeMatchResult;
 import com.searchcode.app.dto.CodeResult;
 import com.searchcode.app.util.LoggerWrapper;
+import com.searchcode.app.util.MultiTermMatcher;
 import org.apache.commons.lang3.StringEscapeUtils;
 import org.apache.commons.lang3.StringUtils;
 
 import java.util.ArrayList;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 import java.util.stream.Collectors;
 
 /**
@@ -48,11 +51,35 @@ public class CodeMatcher {
      */
     public ArrayList<CodeResult> formatResults(List<CodeResult> codeResult, String matchTerms, boolean highlightLine) {
         var lstMatchTerms = this.splitTerms(matchTerms);
+        // Compiled once and shared by every result for this query
+        var scanner = this.compileTerms(lstMatchTerms).newScanner();
 
         var results = new ArrayList<CodeResult>();
 
+        return this.formatResults(codeResult, this.termLineMatcher(lstMatchTerms, scanner), highlightLine);
+    }
+
+    /**
+     * Entry point for matching lines against a regular expression where matching lines are those the
+     * expression can be found in
+     */
+    public ArrayList<CodeResult> formatRegexResults(List<CodeResult> codeResult, String regex, boolean highlightLine) {
+        Pattern pattern;
+
+        try {
+            pattern = Pattern.compile(regex);
+        } catch (PatternSyntaxException ex) {
+            return new ArrayList<>();
+        }
+
+        return this.formatResults(codeResult, this.regexLineMatcher(pattern), highlightLine);
+    }
+
+    private ArrayList<CodeResult> formatResults(List<CodeResult> codeResult, LineMatcher lineMatcher, boolean highlightLine) {
+        var results = new ArrayList<CodeResult>();
+
         for (var code : codeResult) {
-            var result = this.matchResults(code.getCode(), lstMatchTerms, highlightLine);
+            var result = this.matchResults(code.getCode(), lineMatcher, highlightLine);
 
             if (result != null) {
                 code.setMatchingResults(result);
@@ -63,41 +90,68 @@ public class CodeMatcher {
         return results;
     }
 
+    /**
+     * Builds the automaton used to find matching lines for the terms, wildcards are removed from the terms
+     * as they only matter when highlighting
+     */
+    public MultiTermMatcher compileTerms(List<String> matchTerms) {
+        var terms = new ArrayList<String>(matchTerms.size());
+
+        for (var matchTerm : matchTerms) {
+            terms.add(matchTerm.replace("*", ""));
+        }
+
+        return new MultiTermMatcher(terms);
+    }
+
     /**
      * Actually does the matching for a single code result given the match terms
      */
     public ArrayList<CodeMatchResult> matchResults(List<String> code, ArrayList<String> matchTerms, boolean highlightLine) {
-        var resultLines = this.findMatchingLines(code, matchTerms, highlightLine);
+        return this.matchResults(code, matchTerms, this.compileTerms(matchTerms).newScanner(), highlightLine);
+    }
+
+    public ArrayList<CodeMatchResult> matchResults(List<String> code, ArrayList<String> matchTerms, MultiTermMatcher.Scanner scanner, boolean highlightLine) {
+        return this.matchResults(code, this.termLineMatcher(matchTerms, scanner), highlightLine);
+    }
+
+    private ArrayList<CodeMatchResult> matchResults(List<String> code, LineMatcher lineMatcher, boolean highlightLine) {
+        var resultLines = this.findMatchingLines(code, lineMatcher, highlightLine);
         var newResultLines = new ArrayList<CodeMatchResult>();
 
-        // get the top matching lines for this result
-        resultLines.sort((p1, p2) -> Integer.valueOf(p2.getLineMatches()).compareTo(p1.getLineMatches()));
+        // Line numbers are unique within the results so they can be looked up and marked off by line number
+        var maxLineNumber = -1;
+        for (var cmr : resultLines) {
+            maxLineNumber = Math.max(maxLineNumber, cmr.getLineNumber());
+        }
 
-        // gets the best snippets based on number of matches
-        for (var i = 0; i < resultLines.size(); i++) {
-            var match = resultLines.get(i);
-            match.setLineNumber(match.getLineNumber() + 1);
+        var resultsByLine = new CodeMatchResult[maxLineNumber + 2];
+        var added = new boolean[maxLineNumber + 2];
+        for (var cmr : resultLines) {
+            resultsByLine[cmr.getLineNumber()] = cmr;
+        }
 
-            if (!resultExists(newResultLines, match.getLineNumber())) {
-                newResultLines.add(match);
-            }
+        // get the top matching lines for this result
+        resultLines.sort((p1, p2) -> Integer.compare(p2.getLineMatches(), p1.getLineMatches()));
 
-            var resultBefore = getResultByLineNumber(resultLines, match.getLineNumber() - 1);
-            var resultAfter = getResultByLineNumber(resultLines, match.getLineNumber() + 1);
+        // gets the best snippets based on number of matches along with the lines either side
+        for (var match : resultLines) {
+            var lineNumber = match.getLineNumber();
 
-            if (resultBefore != null && !resultExists(newResultLines, match.getLineNumber() - 1)) {
-                newResultLines.add(resultBefore);
-            }
-            if (resultAfter != null && !resultExists(newResultLines, match.getLineNumber() + 1)) {
-                newResultLines.add(resultAfter);
-            }
+            this.addResult(newResultLines, resultsByLine, added, lineNumber);
+            this.addResult(newResultLines, resultsByLine, added, lineNumber - 1);
+            this.addResult(newResultLines, resultsByLine, added, lineNumber + 1);
 
             if (newResultLines.size() >= MATCHLINES) {
                 break;
             }
         }
 
-        newResultLines.sort((p1, p2) -> Integer.valueOf(p1.getLineNumber()).compareTo(p2.getLineNumber()));
+        for (var cmr : newResultLines) {
+            cmr.setLineNumber(cmr.getLineNumber() + 1);
+        }
+
+        newResultLines.sort((p1, p2) -> Integer.compare(p1.getLineNumber(), p2.getLineNumber()));
 
         if (!newResultLines.isEmpty()) {
             newResultLines.get(0).addBreak = false;
@@ -107,48 +161,54 @@ public class CodeMatcher {
         return null;
     }
 
+    public List<CodeMatchResult> findMatchingLines(List<String> code, ArrayList<String> matchTerms, boolean highlightLine) {
+        return this.findMatchingLines(code, matchTerms, this.compileTerms(matchTerms).newScanner(), highlightLine);
+    }
+
+    public List<CodeMatchResult> findMatchingLines(List<String> code, ArrayList<String> matchTerms, MultiTermMatcher.Scanner scanner, boolean highlightLine) {
+        return this.findMatchingLines(code, this.termLineMatcher(matchTerms, scanner), highlightLine);
+    }
+
     /**
      * If changing anything in here be wary of performance issues as it is the slowest method by a long shot.
-     * Be especially careful of branch prediction issues which is why this method has been re-written several times
-     * just to avoid those issues even though the result was a LONGER method
-     * TODO wring more performance out of this method where possible
+     * Each line is scanned once by the line matcher, for terms that is the automaton checking every term at
+     * the same time without lowercasing or otherwise copying the line, and results are kept in an array by
+     * line number so finding the adjacent lines does not need to search through the results.
      */
-    public List<CodeMatchResult> findMatchingLines(List<String> code, ArrayList<String> matchTerms, boolean highlightLine) {
+    private List<CodeMatchResult> findMatchingLines(List<String> code, LineMatcher lineMatcher, boolean highlightLine) {
         var resultLines = new ArrayList<CodeMatchResult>();
 
         int codesize = code.size();
         int searchThrough = codesize > this.MAXLINEDEPTH ? this.MAXLINEDEPTH : codesize;
-        int matching = 0;
+        var resultsByLine = new CodeMatchResult[Math.min(codesize, searchThrough + 1)];
+        int matching;
 
         // Go through each line finding matching lines
         for (var i = 0; i < searchThrough; i++) {
-            var matchRes = code.get(i).toLowerCase().replaceAll("\\s+", " ");
-            matching = 0;
-
-            for (var matchTerm : matchTerms) {
-                if (matchRes.contains(matchTerm.replace("*", ""))) {
-                    matching++;
-                }
-            }
+            var line = code.get(i);
+            matching = lineMatcher.countMatches(line);
 
             if (matching != 0) {
-                resultLines.add(new CodeMatchResult(code.get(i), true, false, matching, i));
+                var cmr = new CodeMatchResult(line, true, false, matching, i);
+                resultsByLine[i] = cmr;
+                resultLines.add(cmr);
             }
         }
 
         // Get the adjacent lines
         var adjacentLines = new ArrayList<CodeMatchResult>();
         for (var cmr : resultLines) {
-            int linenumber = cmr.getLineNumber();
-            int previouslinenumber = linenumber - 1;
-            int nextlinenumber = linenumber + 1;
+            int previouslinenumber = cmr.getLineNumber() - 1;
+            int nextlinenumber = cmr.getLineNumber() + 1;
 
-            if (previouslinenumber >= 0 && !this.resultExists(resultLines, previouslinenumber)) {
-                adjacentLines.add(new CodeMatchResult(code.get(previouslinenumber), false, false, 0, previouslinenumber));
+            if (previouslinenumber >= 0 && resultsByLine[previouslinenumber] == null) {
+                resultsByLine[previouslinenumber] = new CodeMatchResult(code.get(previouslinenumber), false, false, 0, previouslinenumber);
+                adjacentLines.add(resultsByLine[previouslinenumber]);
             }
 
-            if (nextlinenumber < codesize && !this.resultExists(resultLines, nextlinenumber)) {
-                adjacentLines.add(new CodeMatchResult(code.get(nextlinenumber), false, false, 0, nextlinenumber));
+            if (nextlinenumber < resultsByLine.length && resultsByLine[nextlinenumber] == null) {
+                resultsByLine[nextlinenumber] = new CodeMatchResult(code.get(nextlinenumber), false, false, 0, nextlinenumber);
+                adjacentLines.add(resultsByLine[nextlinenumber]);
             }
         }
 
@@ -167,13 +227,7 @@ public class CodeMatcher {
         if (highlightLine) {
             for (var cmr : resultLines) {
                 if (cmr.isMatching()) {
-                    String line = Values.EMPTYSTRING;
-                    try {
-                        line = this.highlightLine(cmr.getLine(), matchTerms);
-                    } catch (StringIndexOutOfBoundsException ex) {
-                        this.logger.severe(String.format("3d15e6ed::error in class %s exception %s unable to highlight line %s with terms %s", ex.getClass(), ex.getMessage(), cmr.getLine(), String.join(",", matchTerms)));
-                    }
-                    cmr.setLine(line);
+                    cmr.setLine(lineMatcher.highlightLine(cmr.getLine()));
                 } else {
                     cmr.setLine(StringEscapeUtils.escapeHtml4(cmr.getLine()));
                 }
@@ -308,26 +362,87 @@ public class CodeMatcher {
     }
 
     /**
-     * Helper to check if result exists in the collection based on line number
+     * Highlights every non empty match of the pattern in the line escaping everything
      */
-    private boolean resultExists(List<CodeMatchResult> lst, int value) {
-        for (var s : lst) {
-            if (s.getLineNumber() == value) {
-                return true;
+    public String highlightRegexLine(String line, Pattern pattern) {
+        var sb = new StringBuilder();
+        var matcher = pattern.matcher(line);
+        var last = 0;
+
+        while (matcher.find()) {
+            if (matcher.end() == matcher.start()) {
+                continue;
             }
+
+            sb.append(StringEscapeUtils.escapeHtml4(line.substring(last, matcher.start())))
+                    .append("<strong>")
+                    .append(StringEscapeUtils.escapeHtml4(matcher.group()))
+                    .append("</strong>");
+            last = matcher.end();
         }
-        return false;
+
+        sb.append(StringEscapeUtils.escapeHtml4(line.substring(last)));
+        return sb.toString();
+    }
+
+    private LineMatcher termLineMatcher(ArrayList<String> matchTerms, MultiTermMatcher.Scanner scanner) {
+        return new LineMatcher() {
+            @Override
+            public int countMatches(String line) {
+                return scanner.countMatchingTerms(line);
+            }
+
+            @Override
+            public String highlightLine(String line) {
+                try {
+                    return CodeMatcher.this.highlightLine(line, matchTerms);
+                } catch (StringIndexOutOfBoundsException ex) {
+                    logger.severe(String.format("3d15e6ed::error in class %s exception %s unable to highlight line %s with terms %s", ex.getClass(), ex.getMessage(), line, String.join(",", matchTerms)));
+                }
+
+                return Values.EMPTYSTRING;
+            }
+        };
+    }
+
+    private LineMatcher regexLineMatcher(Pattern pattern) {
+        return new LineMatcher() {
+            @Override
+            public int countMatches(String line) {
+                var matcher = pattern.matcher(line);
+                var count = 0;
+
+                while (matcher.find()) {
+                    count++;
+                }
+
+                return count;
+            }
+
+            @Override
+            public String highlightLine(String line) {
+                return highlightRegexLine(line, pattern);
+            }
+        };
     }
 
     /**
-     * Helper to pull value out of the list based on line number
+     * How lines are found and highlighted for a single query
      */
-    private CodeMatchResult getResultByLineNumber(List<CodeMatchResult> lst, int value) {
-        for (var s : lst) {
-            if (s.getLineNumber() == value) {
-                return s;
-            }
+    private interface LineMatcher {
+        int countMatches(String line);
+        String highlightLine(String line);
+    }
+
+    /**
+     * Helper to add the result for the line number if there is one and it has not already been added
+     */
+    private void addResult(List<CodeMatchResult> newResultLines, CodeMatchResult[] resultsByLine, boolean[] added, int lineNumber) {
+        if (lineNumber < 0 || lineNumber >= resultsByLine.length || added[lineNumber] || resultsByLine[lineNumber] == null) {
+            return;
         }
-        return null;
+
+        added[lineNumber] = true;
+        newResultLines.add(resultsByLine[lineNumber]);
     }
-}
\ No newline at end of file
+}
@@ -4,39 +4,110 @@ package com.searchcode.app.service;
 import com.google.gson.Gson;
 import com.searchcode.app.config.Values;
 import com.searchcode.app.dao.Data;
+import com.searchcode.app.dao.PersistentDelete;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 
+/**
+ * Repositories waiting to be deleted are saved in their own table and mirrored in memory, so checking if a
+ * repository is waiting to be deleted, which happens for every file indexed, never touches the database.
+ * Changes are written to the table first and only then to the mirror, one at a time. The mirror is replaced
+ * with a copy on every change so it can be read without locking while keeping the names in the order they were
+ * added, which is the order they are deleted in.
+ */
 public class DataService {
     private final Data data;
+    private final PersistentDelete persistentDelete;
+
+    private volatile Set<String> persistentDeleteNames = Collections.emptySet();
+    private volatile boolean persistentDeleteLoaded = false;
 
     public DataService() {
-        this.data = Singleton.getData();
+        this(Singleton.getData(), Singleton.getPersistentDelete());
     }
 
-    public DataService(Data data) {
+    public DataService(Data data, PersistentDelete persistentDelete) {
         this.data = data;
+        this.persistentDelete = persistentDelete;
     }
 
-    public void addToPersistentDelete(String value) {
-        List<String> persistentDelete = this.getPersistentDelete();
-        persistentDelete.add(value);
-        Gson gson = new Gson();
-        this.data.saveData(Values.PERSISTENT_DELETE_QUEUE, gson.toJson(persistentDelete));
+    public synchronized void addToPersistentDelete(String value) {
+        this.loadPersistentDelete();
+
+        if (this.persistentDelete.add(value)) {
+            var names = new LinkedHashSet<>(this.persistentDeleteNames);
+            names.add(value);
+            this.persistentDeleteNames = Collections.unmodifiableSet(names);
+        }
+    }
+
+    public synchronized void removeFromPersistentDelete(String value) {
+        this.loadPersistentDelete();
+
+        if (this.persistentDelete.remove(value)) {
+            var names = new LinkedHashSet<>(this.persistentDeleteNames);
+            names.remove(value);
+            this.persistentDeleteNames = Collections.unmodifiableSet(names);
+        }
     }
 
-    public void removeFromPersistentDelete(String value) {
-        List<String> persistentDelete = this.getPersistentDelete();
-        persistentDelete.remove(value);
-        Gson gson = new Gson();
-        this.data.saveData(Values.PERSISTENT_DELETE_QUEUE, gson.toJson(persistentDelete));
+    public boolean isPersistentDelete(String value) {
+        return this.loadPersistentDelete() && this.persistentDeleteNames.contains(value);
     }
 
+    public int getPersistentDeleteCount() {
+        return this.loadPersistentDelete() ? this.persistentDeleteNames.size() : 0;
+    }
+
+    /**
+     * Returns a copy of the names waiting to be deleted, oldest first
+     */
     public List<String> getPersistentDelete() {
-        String dataByName = this.data.getDataByName(Values.PERSISTENT_DELETE_QUEUE, "[]");
-        Gson gson = new Gson();
-        ArrayList<String> arrayList = gson.fromJson(dataByName, ArrayList.class);
-        return arrayList;
+        return this.loadPersistentDelete() ? new ArrayList<>(this.persistentDeleteNames) : new ArrayList<>();
+    }
+
+    /**
+     * Fills the mirror from the table the first time it is needed, returning false if the table could not be
+     * read in which case it is tried again next time
+     */
+    private boolean loadPersistentDelete() {
+        if (this.persistentDeleteLoaded) {
+            return true;
+        }
+
+        synchronized (this) {
+            if (this.persistentDeleteLoaded) {
+                return true;
+            }
+
+            this.migratePersistentDelete();
+
+            var names = this.persistentDelete.getAll();
+            names.ifPresent(x -> this.persistentDeleteNames = Collections.unmodifiableSet(new LinkedHashSet<>(x)));
+            this.persistentDeleteLoaded = names.isPresent();
+
+            return this.persistentDeleteLoaded;
+        }
+    }
+
+    /**
+     * Older versions kept the names as a JSON list in the data table so move any found there into the table
+     */
+    private void migratePersistentDelete() {
+        var dataByName = this.data.getDataByName(Values.PERSISTENT_DELETE_QUEUE, "[]");
+        if (dataByName == null || dataByName.equals("[]")) {
+            return;
+        }
+
+        ArrayList<String> legacy = new Gson().fromJson(dataByName, ArrayList.class);
+        var migrated = legacy == null || legacy.stream().allMatch(this.persistentDelete::add);
+
+        if (migrated) {
+            this.data.saveData(Values.PERSISTENT_DELETE_QUEUE, "[]");
+        }
     }
 }
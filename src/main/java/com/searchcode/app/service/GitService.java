@@ -7,19 +7,29 @@
 
 package com.searchcode.app.service;
 
+import org.apache.commons.io.FilenameUtils;
 import org.eclipse.jgit.errors.IncorrectObjectTypeException;
 import org.eclipse.jgit.errors.MissingObjectException;
 import org.eclipse.jgit.internal.storage.file.FileRepository;
+import org.eclipse.jgit.lib.Constants;
 import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectLoader;
 import org.eclipse.jgit.lib.ObjectReader;
 import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.lib.RepositoryCache;
 import org.eclipse.jgit.revwalk.RevCommit;
 import org.eclipse.jgit.revwalk.RevTree;
 import org.eclipse.jgit.revwalk.RevWalk;
 import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.util.FS;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Optional;
 
 public class GitService {
 
@@ -49,4 +59,62 @@ public class GitService {
             reader.close();
         }
     }
+
+    /**
+     * Reads the lines of the file at the revision straight from the object database of the repository without
+     * needing a checkout, guessing the encoding and limiting the lines the same way as reading from disk.
+     * Returns empty if the revision or file does not exist.
+     */
+    public Optional<List<String>> readFileLinesRevision(String repoLocation, String revision, String filePath, int maxFileLineDepth) throws IOException {
+        try (Repository localRepository = new FileRepository(new File(repoLocation))) {
+            return this.readFileLinesRevision(localRepository, revision, filePath, maxFileLineDepth);
+        }
+    }
+
+    /**
+     * Reads the lines of a file that would be in a checkout at HEAD from the object database, for repositories
+     * cloned without a working tree. The repository is the directory under the repository location that the
+     * file is in, which is opened through the JGit repository cache so looking at many files in the same
+     * repository does not open it each time. Returns empty if the file is not under the repository location,
+     * there is no such repository or the file is not in it.
+     */
+    public Optional<List<String>> readFileLinesFromRepository(String repositoryLocation, String filePath, int maxFileLineDepth) throws IOException {
+        Path root = Paths.get(repositoryLocation).toAbsolutePath().normalize();
+        Path file = Paths.get(filePath).toAbsolutePath().normalize();
+
+        if (!file.startsWith(root) || root.relativize(file).getNameCount() < 2) {
+            return Optional.empty();
+        }
+
+        Path relative = root.relativize(file);
+        File gitDirectory = root.resolve(relative.getName(0)).resolve(Constants.DOT_GIT).toFile();
+
+        if (!RepositoryCache.FileKey.isGitRepository(gitDirectory, FS.DETECTED)) {
+            return Optional.empty();
+        }
+
+        try (Repository localRepository = RepositoryCache.open(RepositoryCache.FileKey.exact(gitDirectory, FS.DETECTED))) {
+            String pathInRepository = FilenameUtils.separatorsToUnix(relative.subpath(1, relative.getNameCount()).toString());
+            return this.readFileLinesRevision(localRepository, Constants.HEAD, pathInRepository, maxFileLineDepth);
+        }
+    }
+
+    private Optional<List<String>> readFileLinesRevision(Repository localRepository, String revision, String filePath, int maxFileLineDepth) throws IOException {
+        try (ObjectReader reader = localRepository.newObjectReader(); RevWalk walk = new RevWalk(reader)) {
+            ObjectId id = localRepository.resolve(revision);
+            if (id == null) {
+                return Optional.empty();
+            }
+
+            TreeWalk treewalk = TreeWalk.forPath(reader, filePath, walk.parseCommit(id).getTree());
+            if (treewalk == null) {
+                return Optional.empty();
+            }
+
+            ObjectLoader loader = reader.open(treewalk.getObjectId(0));
+            try (InputStream inputStream = loader.openStream()) {
+                return Optional.of(Singleton.getHelpers().readLinesGuessEncoding(inputStream, loader.getSize(), maxFileLineDepth));
+            }
+        }
+    }
 }
@@ -478,7 +478,7 @@ public class JobService {
             return false;
         }
 
-        if (this.dataservice.getPersistentDelete().contains(repoResult.getName()) ||
+        if (this.dataservice.isPersistentDelete(repoResult.getName()) ||
                 Singleton.getRunningIndexRepoJobs().containsKey(repoResult.getName())) {
             return false;
         }
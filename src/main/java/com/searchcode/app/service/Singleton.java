@@ -15,10 +15,11 @@ import com.searchcode.app.config.MySQLDatabaseConfig;
 import com.searchcode.app.config.SQLiteDatabaseConfig;
 import com.searchcode.app.config.Values;
 import com.searchcode.app.dao.*;
-import com.searchcode.app.dto.CodeIndexDocument;
 import com.searchcode.app.dto.RunningIndexJob;
+import com.searchcode.app.service.index.CodeIndexSpool;
 import com.searchcode.app.service.index.IIndexService;
 import com.searchcode.app.service.index.IndexService;
+import com.searchcode.app.service.index.IndexWriterManager;
 import com.searchcode.app.service.index.SphinxIndexService;
 import com.searchcode.app.service.route.TimeSearchRouteService;
 import com.searchcode.app.util.*;
@@ -28,7 +29,6 @@ import org.quartz.SchedulerFactory;
 import org.quartz.impl.StdSchedulerFactory;
 
 import java.util.AbstractMap;
-import java.util.Queue;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
 
@@ -42,7 +42,7 @@ public final class Singleton {
 
     private static AbstractMap<String, RunningIndexJob> runningIndexRepoJobs = null; // Used to know which jobs are currently running
     private static ISpellingCorrector spellingCorrectorInstance = null;
-    private static Queue<CodeIndexDocument> codeIndexQueue = null; // Documents ready to be indexed
+    private static CodeIndexSpool codeIndexQueue = null; // Documents ready to be indexed
 
     private static SearchCodeLib searchcodeLib = null;
     private static FileClassifier fileClassifier = null;
@@ -51,6 +51,7 @@ public final class Singleton {
     private static IRepo repo = null;
     private static Data data = null;
     private static Api api = null;
+    private static PersistentDelete persistentDelete = null;
     private static Source source = null;
     private static SourceCode sourceCode = null;
     private static LanguageType languageType = null;
@@ -64,6 +65,7 @@ public final class Singleton {
     private static ValidatorService validatorService = null;
 
     private static IIndexService indexService = null;
+    private static IndexWriterManager indexWriterManager = null;
     private static CodeMatcher codematcher = null;
     private static SlocCounter slocCounter = null;
 
@@ -77,6 +79,7 @@ public final class Singleton {
 
     private static boolean enqueueRepositoryJobFirstRun = true;
     private static boolean enqueueFileRepositoryJobFirstRun = true;
+    private static boolean populateSpellingCorrectorJobFirstRun = true;
 
     private static MySQLDatabaseConfig mysqlDatabaseConfig = null;
 
@@ -96,6 +99,14 @@ public final class Singleton {
         return enqueueFileRepositoryJobFirstRun;
     }
 
+    public static synchronized void setPopulateSpellingCorrectorJobFirstRun(boolean value) {
+        populateSpellingCorrectorJobFirstRun = value;
+    }
+
+    public static synchronized boolean getPopulateSpellingCorrectorJobFirstRun() {
+        return populateSpellingCorrectorJobFirstRun;
+    }
+
     public static Timer getNewTimer() {
         return new Timer();
     }
@@ -218,9 +229,9 @@ public final class Singleton {
         return owaspClassifier;
     }
 
-    public static synchronized Queue<CodeIndexDocument> getCodeIndexQueue() {
+    public static synchronized CodeIndexSpool getCodeIndexQueue() {
         if (codeIndexQueue == null) {
-            codeIndexQueue = new ConcurrentLinkedQueue<>();
+            codeIndexQueue = new CodeIndexSpool();
         }
 
         return codeIndexQueue;
@@ -321,6 +332,14 @@ public final class Singleton {
         Singleton.api = api;
     }
 
+    public static synchronized PersistentDelete getPersistentDelete() {
+        if (persistentDelete == null) {
+            persistentDelete = new PersistentDelete();
+        }
+
+        return persistentDelete;
+    }
+
     public static synchronized LanguageType getLanguageType() {
         if (languageType == null) {
             languageType = new LanguageType();
@@ -399,6 +418,16 @@ public final class Singleton {
         return databaseConfig;
     }
 
+    public static synchronized IndexWriterManager getIndexWriterManager() {
+        if (indexWriterManager == null) {
+            indexWriterManager = new IndexWriterManager(getHelpers(), getLogger());
+            // Writers commit on close so anything buffered is not lost when shutting down
+            Runtime.getRuntime().addShutdownHook(new Thread(indexWriterManager::closeAll));
+        }
+
+        return indexWriterManager;
+    }
+
     public static synchronized Helpers getHelpers() {
         if (helpers == null) {
             helpers = new Helpers();
@@ -14,14 +14,23 @@ package com.searchcode.app.service;
 import com.searchcode.app.config.Values;
 import com.searchcode.app.dao.Data;
 import com.searchcode.app.util.Helpers;
+import com.searchcode.app.util.Properties;
 
 import java.lang.management.ManagementFactory;
 import java.lang.management.OperatingSystemMXBean;
 import java.text.NumberFormat;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * Simple class used to show basic stats such ad the total number of searches and how long the application
  * has been online for.
+ * Counters such as the total number of searches are kept in memory and written to the data table on an interval
+ * and at shutdown, so counting a search does not have to wait on a database write.
  * TODO add things such as most frequent searches, most recent search etc...
  */
 public class StatsService {
@@ -29,9 +38,25 @@ public class StatsService {
     private Data data;
     private Helpers helpers;
 
+    // Counts not yet written to the data table keyed by the name they are saved under
+    private final Map<String, LongAdder> counters = new ConcurrentHashMap<>();
+
     public StatsService() {
         this.data = Singleton.getData();
         this.helpers = Singleton.getHelpers();
+
+        var flushInterval = this.helpers.tryParseInt(Properties.getProperties().getProperty(Values.STATS_FLUSH_INTERVAL, Values.DEFAULT_STATS_FLUSH_INTERVAL), Values.DEFAULT_STATS_FLUSH_INTERVAL);
+        if (flushInterval <= 0) {
+            flushInterval = this.helpers.tryParseInt(Values.DEFAULT_STATS_FLUSH_INTERVAL, "30");
+        }
+
+        var executorService = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            var thread = new Thread(runnable, "stats-flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executorService.scheduleWithFixedDelay(this::flush, flushInterval, flushInterval, TimeUnit.SECONDS);
+        Runtime.getRuntime().addShutdownHook(new Thread(this::flush));
     }
 
     public StatsService(Data data, Helpers helpers) {
@@ -40,23 +65,89 @@ public class StatsService {
     }
 
     public void incrementSearchCount() {
-        var totalCount = this.helpers.tryParseInt(data.getDataByName(Values.CACHE_TOTAL_SEARCH, "0"), "0");
+        this.incrementCount(Values.CACHE_TOTAL_SEARCH);
+    }
 
-        if (totalCount == Integer.MAX_VALUE) {
-            totalCount = 0;
-        }
+    public synchronized void clearSearchCount() {
+        this.counters.remove(Values.CACHE_TOTAL_SEARCH);
+        this.data.saveData(Values.CACHE_TOTAL_SEARCH, "0");
+    }
 
-        totalCount++;
-        data.saveData(Values.CACHE_TOTAL_SEARCH, Values.EMPTYSTRING + totalCount);
+    public int getSearchCount() {
+        return (int) this.getCount(Values.CACHE_TOTAL_SEARCH);
     }
 
-    public void clearSearchCount() {
-        data.saveData(Values.CACHE_TOTAL_SEARCH, "0");
+    /**
+     * Adds one to the named counter, which is saved to the data table under the name on the next flush
+     */
+    public void incrementCount(String name) {
+        this.addCount(name, 1);
     }
 
-    public int getSearchCount() {
-        var totalCount = this.helpers.tryParseInt(data.getDataByName(Values.CACHE_TOTAL_SEARCH, "0"), "0");
-        return totalCount;
+    public void addCount(String name, long value) {
+        this.counters.computeIfAbsent(name, x -> new LongAdder()).add(value);
+    }
+
+    /**
+     * Returns the saved value of the named counter plus anything counted since the last flush
+     */
+    public long getCount(String name) {
+        var pending = this.counters.get(name);
+        return this.total(this.getSavedCount(name), pending == null ? 0 : pending.sum());
+    }
+
+    /**
+     * Returns every counter known about since startup with its current value, sorted by name
+     */
+    public String getCounts(String seperator) {
+        var counts = new TreeMap<String, Long>();
+        this.counters.keySet().forEach(x -> counts.put(x, this.getCount(x)));
+
+        var sb = new StringBuilder();
+        counts.forEach((name, count) -> sb.append(name).append(": ").append(count).append(seperator));
+
+        return sb.toString();
+    }
+
+    /**
+     * Adds anything counted since the last flush onto the values in the data table. Counts are only taken off
+     * the in memory counters once saved so a failed save is retried on the next flush.
+     */
+    public synchronized void flush() {
+        try {
+            for (var entry : this.counters.entrySet()) {
+                var pending = entry.getValue().sum();
+
+                if (pending == 0) {
+                    continue;
+                }
+
+                var total = this.total(this.getSavedCount(entry.getKey()), pending);
+
+                if (this.data.trySaveData(entry.getKey(), Values.EMPTYSTRING + total)) {
+                    entry.getValue().add(-pending);
+                }
+            }
+        } catch (Exception ex) {
+            Singleton.getLogger().severe(String.format("4e8a1c73::error in class %s exception %s", ex.getClass(), ex.getMessage()));
+        }
+    }
+
+    private int getSavedCount(String name) {
+        return this.helpers.tryParseInt(this.data.getDataByName(name, "0"), "0");
+    }
+
+    /**
+     * Counts are saved as integers so wrap back around once past the maximum
+     */
+    private long total(long saved, long pending) {
+        var total = saved + pending;
+
+        if (total > Integer.MAX_VALUE) {
+            total -= Integer.MAX_VALUE;
+        }
+
+        return total;
     }
 
     public String getLoadAverage() {
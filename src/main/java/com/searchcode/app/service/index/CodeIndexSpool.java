@@ -0,0 +1,935 @@
+/*
+ * Copyright (c) 2016 Boyter Online Services
+ *
+ * Use of this software is governed by the Fair Source License included
+ * in the LICENSE.TXT file, but will be eventually open under GNU General Public License Version 3
+ * see the README.md for when this clause will take effect
+ *
+ * Version 1.3.15
+ */
+
+package com.searchcode.app.service.index;
+
+import com.searchcode.app.config.Values;
+import com.searchcode.app.dto.CodeIndexDocument;
+import com.searchcode.app.service.Singleton;
+import com.searchcode.app.util.Helpers;
+import com.searchcode.app.util.LoggerWrapper;
+import com.searchcode.app.util.Properties;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+/**
+ * Disk backed queue of documents waiting to be indexed, which sits between the repository jobs adding documents
+ * and the IndexDocumentsJob indexing them. Documents are appended to segment files so memory use does not depend
+ * on how much is waiting, and anything not yet indexed is replayed when the application starts again.
+ *
+ * Reading moves through the spool in memory only. Each batch drained carries the position just after its last
+ * document, which should be passed to acknowledge once everything in the batch has been committed to the index,
+ * so anything read but not committed before a crash is indexed again. Segments before the acknowledged position
+ * are deleted. A batch that could not be indexed is passed to retry instead which reads it again in place, and
+ * after too many attempts moves it to a dead letter file with the same layout as a segment so it can be looked
+ * at or replayed by hand. Intended to have many threads adding but only one reading.
+ *
+ * Segment layout
+ * int magic, int version
+ * for each document: int payload length, int crc32 of payload, payload
+ */
+public class CodeIndexSpool extends AbstractQueue<CodeIndexDocument> {
+
+    private static final int MAGIC = 0x53504f4c;
+    private static final int VERSION = 1;
+    private static final int SEGMENT_HEADER_BYTES = 8;
+    private static final int RECORD_HEADER_BYTES = 8;
+    private static final long DEFAULT_SEGMENT_BYTES = 64L * 1024 * 1024;
+    private static final String SEGMENT_SUFFIX = ".segment";
+    private static final String CHECKPOINT = "checkpoint";
+    private static final String DEAD_LETTER = "deadletter";
+
+    private final Path location;
+    private final long maxBytes, segmentBytes, batchBytes;
+    private final int batchDocuments;
+    private final LoggerWrapper logger;
+    private final ReentrantLock lock = new ReentrantLock();
+
+    // Segment ids oldest first, the last is the one being appended to
+    private final TreeSet<Long> segments = new TreeSet<>();
+    private FileChannel writeChannel = null;
+    private long writeSegment, writeOffset;
+    private FileChannel readChannel = null;
+    private long readChannelSegment = -1;
+    private long readSegment, readOffset;
+    private long acknowledgedSegment, acknowledgedOffset;
+    private int unreadDocuments = 0;
+    private long unreadBytes = 0;
+    // How many times in a row reading has moved back to the acknowledged position
+    private long retrySegment = -1, retryOffset = -1;
+    private int retries = 0;
+
+    public CodeIndexSpool() {
+        this(Singleton.getHelpers(), Singleton.getLogger());
+    }
+
+    private CodeIndexSpool(Helpers helpers, LoggerWrapper logger) {
+        this(Paths.get(Properties.getProperties().getProperty(Values.SPOOL_LOCATION, Values.DEFAULT_SPOOL_LOCATION)),
+                1024L * 1024 * helpers.tryParseInt(Properties.getProperties().getProperty(Values.SPOOL_MAX_SIZE_MB, Values.DEFAULT_SPOOL_MAX_SIZE_MB), Values.DEFAULT_SPOOL_MAX_SIZE_MB),
+                DEFAULT_SEGMENT_BYTES,
+                helpers.tryParseInt(Properties.getProperties().getProperty(Values.MAXDOCUMENTQUEUESIZE, Values.DEFAULTMAXDOCUMENTQUEUESIZE), Values.DEFAULTMAXDOCUMENTQUEUESIZE),
+                1024L * 1024 * helpers.tryParseInt(Properties.getProperties().getProperty(Values.SPOOL_BATCH_SIZE_MB, Values.DEFAULT_SPOOL_BATCH_SIZE_MB), Values.DEFAULT_SPOOL_BATCH_SIZE_MB),
+                logger);
+    }
+
+    public CodeIndexSpool(Path location, long maxBytes, long segmentBytes, int batchDocuments, long batchBytes, LoggerWrapper logger) {
+        this.location = location;
+        this.maxBytes = maxBytes;
+        this.segmentBytes = segmentBytes;
+        this.batchDocuments = batchDocuments;
+        this.batchBytes = batchBytes;
+        this.logger = logger;
+
+        try {
+            this.recover();
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    public Path getLocation() {
+        return this.location;
+    }
+
+    /**
+     * Appends the document to the spool. Returns false if it could not be written.
+     */
+    @Override
+    public boolean offer(CodeIndexDocument codeIndexDocument) {
+        ByteBuffer record;
+
+        try {
+            record = this.encodeRecord(codeIndexDocument);
+        } catch (IOException ex) {
+            this.logger.severe(String.format("6a0d2f4e::error in class %s exception %s", ex.getClass(), ex.getMessage()));
+            return false;
+        }
+
+        this.lock.lock();
+
+        try {
+            if (this.writeOffset > SEGMENT_HEADER_BYTES && this.writeOffset + record.remaining() > this.segmentBytes) {
+                this.startSegment(this.writeSegment + 1);
+            }
+
+            var recordBytes = record.remaining();
+            var position = this.writeOffset;
+            while (record.hasRemaining()) {
+                position += this.writeChannel.write(record, position);
+            }
+
+            this.writeOffset = position;
+            this.unreadDocuments++;
+            this.unreadBytes += recordBytes;
+            return true;
+        } catch (IOException ex) {
+            this.logger.severe(String.format("c3e9b571::error in class %s exception %s unable to write to spool %s", ex.getClass(), ex.getMessage(), this.location));
+            return false;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    @Override
+    public CodeIndexDocument poll() {
+        this.lock.lock();
+
+        try {
+            var payload = this.readNext();
+            return payload == null ? null : this.decode(payload);
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    @Override
+    public CodeIndexDocument peek() {
+        this.lock.lock();
+
+        try {
+            var payload = this.readFrom(new Cursor(this.readSegment, this.readOffset));
+            return payload == null ? null : this.decode(payload);
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Reads the next batch of documents limited by the configured batch count and size
+     */
+    public Batch drain() {
+        return this.drain(this.batchDocuments, this.batchBytes);
+    }
+
+    /**
+     * Reads documents until either limit is reached, always returning at least one if any are waiting
+     */
+    public Batch drain(int maxDocuments, long maxBytes) {
+        var codeIndexDocuments = new ArrayList<CodeIndexDocument>();
+        var bytes = 0L;
+
+        this.lock.lock();
+
+        try {
+            while (codeIndexDocuments.size() < Math.max(1, maxDocuments) && (codeIndexDocuments.isEmpty() || bytes < maxBytes)) {
+                var payload = this.readNext();
+
+                if (payload == null) {
+                    break;
+                }
+
+                codeIndexDocuments.add(this.decode(payload));
+                bytes += RECORD_HEADER_BYTES + payload.length;
+            }
+
+            return new Batch(codeIndexDocuments, new Position(this.readSegment, this.readOffset));
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Saves the position so that nothing before it is replayed and removes segments that have been fully read.
+     * Positions at or before the one already saved are ignored so batches can be acknowledged in any order.
+     */
+    public void acknowledge(Position position) {
+        if (position == null) {
+            return;
+        }
+
+        this.lock.lock();
+
+        try {
+            if (position.segment < this.acknowledgedSegment || (position.segment == this.acknowledgedSegment && position.offset <= this.acknowledgedOffset)) {
+                return;
+            }
+
+            // Make sure the documents up to the checkpoint are on disk before it is
+            if (position.segment == this.writeSegment) {
+                this.writeChannel.force(false);
+            }
+
+            this.writeCheckpoint(position.segment, position.offset);
+            this.acknowledgedSegment = position.segment;
+            this.acknowledgedOffset = position.offset;
+
+            for (var segment : new ArrayList<>(this.segments.headSet(this.acknowledgedSegment))) {
+                this.deleteSegment(segment);
+            }
+        } catch (IOException ex) {
+            this.logger.severe(String.format("0f5b7c1d::error in class %s exception %s unable to save spool checkpoint", ex.getClass(), ex.getMessage()));
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Called instead of acknowledge when the documents up to the position could not be indexed. Reading moves back
+     * to the acknowledged position so they are read again in place, ahead of anything added since and so never
+     * behind a newer version of the same file. Once they have been tried maxAttempts times they are copied to the
+     * dead letter file and acknowledged, so a document that can never be indexed does not hold up everything
+     * behind it. Returns true if they will be read again.
+     */
+    public boolean retry(Position position, int maxAttempts) {
+        if (position == null) {
+            return false;
+        }
+
+        this.lock.lock();
+
+        try {
+            if (this.retrySegment != this.acknowledgedSegment || this.retryOffset != this.acknowledgedOffset) {
+                this.retrySegment = this.acknowledgedSegment;
+                this.retryOffset = this.acknowledgedOffset;
+                this.retries = 0;
+            }
+
+            if (++this.retries < maxAttempts) {
+                this.rewind();
+                return true;
+            }
+
+            try {
+                var moved = this.writeDeadLetter(position);
+                this.logger.severe(String.format("4f8a2d61::moved %d documents that failed to index %d times to %s", moved, this.retries, this.location.resolve(DEAD_LETTER)));
+            } catch (IOException ex) {
+                this.logger.severe(String.format("a9e05c3b::error in class %s exception %s unable to write spool dead letter file retrying", ex.getClass(), ex.getMessage()));
+                this.rewind();
+                return true;
+            }
+
+            this.acknowledge(position);
+            return false;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Number of documents waiting to be read
+     */
+    @Override
+    public int size() {
+        this.lock.lock();
+
+        try {
+            return this.unreadDocuments;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Size in bytes of the documents waiting to be read
+     */
+    public long getSizeBytes() {
+        this.lock.lock();
+
+        try {
+            return this.unreadBytes;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * True when the documents waiting are over the configured size and anything adding to the spool should wait
+     */
+    public boolean isFull() {
+        return this.getSizeBytes() >= this.maxBytes;
+    }
+
+    /**
+     * Removes everything from the spool including anything read but not acknowledged
+     */
+    @Override
+    public void clear() {
+        this.lock.lock();
+
+        try {
+            this.closeReadChannel();
+
+            for (var segment : new ArrayList<>(this.segments)) {
+                this.deleteSegment(segment);
+            }
+
+            this.startSegment(this.writeSegment + 1);
+            this.readSegment = this.writeSegment;
+            this.readOffset = SEGMENT_HEADER_BYTES;
+            this.writeCheckpoint(this.readSegment, this.readOffset);
+            this.acknowledgedSegment = this.readSegment;
+            this.acknowledgedOffset = this.readOffset;
+            this.unreadDocuments = 0;
+            this.unreadBytes = 0;
+        } catch (IOException ex) {
+            this.logger.severe(String.format("8e41d9a3::error in class %s exception %s unable to clear spool", ex.getClass(), ex.getMessage()));
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Iterates over the documents waiting to be read without removing them. Documents are read from disk one at
+     * a time as the iterator moves, so anything read by someone else in the meantime is skipped and anything added
+     * in the meantime is included.
+     */
+    @Override
+    public Iterator<CodeIndexDocument> iterator() {
+        Cursor cursor;
+
+        this.lock.lock();
+
+        try {
+            cursor = new Cursor(this.readSegment, this.readOffset);
+        } finally {
+            this.lock.unlock();
+        }
+
+        return new Iterator<>() {
+            private CodeIndexDocument next = null;
+
+            @Override
+            public boolean hasNext() {
+                if (this.next == null) {
+                    this.next = readAt(cursor);
+                }
+
+                return this.next != null;
+            }
+
+            @Override
+            public CodeIndexDocument next() {
+                if (!this.hasNext()) {
+                    throw new NoSuchElementException();
+                }
+
+                var codeIndexDocument = this.next;
+                this.next = null;
+                return codeIndexDocument;
+            }
+        };
+    }
+
+    public void close() {
+        this.lock.lock();
+
+        try {
+            this.closeReadChannel();
+            if (this.writeChannel != null) {
+                this.writeChannel.close();
+            }
+        } catch (IOException ex) {
+            this.logger.severe(String.format("5d7a3e60::error in class %s exception %s", ex.getClass(), ex.getMessage()));
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Works out where reading should start from the checkpoint and checks every record after it, cutting off
+     * anything that was only partly written when the application stopped. Appending always starts on a new segment.
+     */
+    private void recover() throws IOException {
+        Files.createDirectories(this.location);
+
+        try (var paths = Files.list(this.location)) {
+            paths.map(path -> path.getFileName().toString())
+                    .filter(name -> name.endsWith(SEGMENT_SUFFIX))
+                    .forEach(name -> {
+                        try {
+                            this.segments.add(Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length())));
+                        } catch (NumberFormatException ignored) {
+                        }
+                    });
+        }
+
+        var checkpoint = this.readCheckpoint();
+        // New segments always sort after the checkpoint even if everything before it was deleted
+        var lastSegment = Math.max(checkpoint[0], this.segments.isEmpty() ? 0 : this.segments.last());
+
+        for (var segment : new ArrayList<>(this.segments.headSet(checkpoint[0]))) {
+            this.deleteSegment(segment);
+        }
+
+        this.readSegment = -1;
+
+        for (var segment : new ArrayList<>(this.segments)) {
+            var start = segment == checkpoint[0] ? Math.max(checkpoint[1], SEGMENT_HEADER_BYTES) : SEGMENT_HEADER_BYTES;
+            this.recoverSegment(segment, start);
+
+            if (this.readSegment == -1 && this.segments.contains(segment)) {
+                this.readSegment = segment;
+                this.readOffset = start;
+            }
+        }
+
+        this.startSegment(lastSegment + 1);
+
+        if (this.readSegment == -1) {
+            this.readSegment = this.writeSegment;
+            this.readOffset = SEGMENT_HEADER_BYTES;
+        }
+
+        this.acknowledgedSegment = this.readSegment;
+        this.acknowledgedOffset = this.readOffset;
+
+        if (this.unreadDocuments != 0) {
+            this.logger.info(String.format("2e8c4b19::replaying %d documents from spool %s", this.unreadDocuments, this.location));
+        }
+    }
+
+    private void recoverSegment(long segment, long start) throws IOException {
+        boolean validHeader;
+
+        try (var channel = FileChannel.open(this.getSegmentPath(segment), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            validHeader = this.hasValidHeader(channel);
+            if (validHeader) {
+                this.recoverRecords(segment, channel, start);
+            }
+        }
+
+        if (!validHeader) {
+            this.logger.severe(String.format("b40e6f2a::spool segment %s has an invalid header removing it", this.getSegmentPath(segment)));
+            this.deleteSegment(segment);
+        }
+    }
+
+    private void recoverRecords(long segment, FileChannel channel, long start) throws IOException {
+        var size = channel.size();
+        var offset = start;
+
+        while (offset < size) {
+            var payload = this.readPayload(channel, offset, size);
+
+            if (payload == null) {
+                this.logger.severe(String.format("f1a7c08e::spool segment %s is damaged at %d dropping %d bytes", this.getSegmentPath(segment), offset, size - offset));
+                channel.truncate(offset);
+                break;
+            }
+
+            offset += RECORD_HEADER_BYTES + payload.length;
+            this.unreadDocuments++;
+            this.unreadBytes += RECORD_HEADER_BYTES + payload.length;
+        }
+    }
+
+    /**
+     * Moves reading back to the acknowledged position counting everything between it and the read position as
+     * waiting again
+     */
+    private void rewind() {
+        var cursor = new Cursor(this.acknowledgedSegment, this.acknowledgedOffset);
+
+        while (this.isBefore(cursor, this.readSegment, this.readOffset)) {
+            var payload = this.readFrom(cursor);
+
+            if (payload == null) {
+                break;
+            }
+
+            this.unreadDocuments++;
+            this.unreadBytes += RECORD_HEADER_BYTES + payload.length;
+        }
+
+        this.readSegment = this.acknowledgedSegment;
+        this.readOffset = this.acknowledgedOffset;
+    }
+
+    /**
+     * Appends the records from the acknowledged position up to the position to the dead letter file returning
+     * how many there were
+     */
+    private int writeDeadLetter(Position position) throws IOException {
+        var moved = 0;
+
+        try (var channel = FileChannel.open(this.location.resolve(DEAD_LETTER), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            if (channel.size() == 0) {
+                var header = ByteBuffer.allocate(SEGMENT_HEADER_BYTES);
+                header.putInt(MAGIC).putInt(VERSION).flip();
+                this.writeFully(channel, header);
+            }
+
+            var cursor = new Cursor(this.acknowledgedSegment, this.acknowledgedOffset);
+
+            while (this.isBefore(cursor, position.segment, position.offset)) {
+                var payload = this.readFrom(cursor);
+
+                if (payload == null) {
+                    break;
+                }
+
+                var crc = new CRC32();
+                crc.update(payload, 0, payload.length);
+
+                var record = ByteBuffer.allocate(RECORD_HEADER_BYTES + payload.length);
+                record.putInt(payload.length).putInt((int) crc.getValue()).put(payload).flip();
+                this.writeFully(channel, record);
+                moved++;
+            }
+
+            channel.force(false);
+        }
+
+        return moved;
+    }
+
+    private void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private boolean isBefore(Cursor cursor, long segment, long offset) {
+        return cursor.segment < segment || (cursor.segment == segment && cursor.offset < offset);
+    }
+
+    /**
+     * Returns the payload of the next record moving the read position past it, or null if nothing is waiting
+     */
+    private byte[] readNext() {
+        var cursor = new Cursor(this.readSegment, this.readOffset);
+        var payload = this.readFrom(cursor);
+
+        this.readSegment = cursor.segment;
+        this.readOffset = cursor.offset;
+
+        if (payload == null) {
+            // Everything written has been read so the counts are exact again
+            this.unreadDocuments = 0;
+            this.unreadBytes = 0;
+            return null;
+        }
+
+        var recordBytes = RECORD_HEADER_BYTES + payload.length;
+        this.unreadDocuments = Math.max(0, this.unreadDocuments - 1);
+        this.unreadBytes = Math.max(0, this.unreadBytes - recordBytes);
+        return payload;
+    }
+
+    /**
+     * Decodes the next document after the cursor for an iterator moving it past it, or returns null once there
+     * are none. A cursor behind the read position is moved up to it first as segments before it may be gone.
+     */
+    private CodeIndexDocument readAt(Cursor cursor) {
+        this.lock.lock();
+
+        try {
+            if (this.isBefore(cursor, this.readSegment, this.readOffset)) {
+                cursor.segment = this.readSegment;
+                cursor.offset = this.readOffset;
+            }
+
+            var payload = this.readFrom(cursor);
+            return payload == null ? null : this.decode(payload);
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the payload of the record at the cursor moving the cursor past it, or null with the cursor at the
+     * end of what has been written if there is nothing after it. Damaged or unreadable segments are skipped.
+     */
+    private byte[] readFrom(Cursor cursor) {
+        while (true) {
+            if (cursor.segment == this.writeSegment && cursor.offset >= this.writeOffset) {
+                return null;
+            }
+
+            try {
+                var channel = this.getReadChannel(cursor.segment);
+                var limit = cursor.segment == this.writeSegment ? this.writeOffset : channel.size();
+                var payload = cursor.offset < limit ? this.readPayload(channel, cursor.offset, limit) : null;
+
+                if (payload != null) {
+                    cursor.offset += RECORD_HEADER_BYTES + payload.length;
+                    return payload;
+                }
+
+                if (cursor.offset < limit) {
+                    this.logger.severe(String.format("93cd1e5b::spool segment %s is damaged at %d skipping the rest of it", this.getSegmentPath(cursor.segment), cursor.offset));
+                }
+            } catch (IOException ex) {
+                this.logger.severe(String.format("7b62a0f4::error in class %s exception %s skipping spool segment %d", ex.getClass(), ex.getMessage(), cursor.segment));
+            }
+
+            if (cursor.segment == this.writeSegment) {
+                cursor.offset = this.writeOffset;
+                continue;
+            }
+
+            var nextSegment = this.segments.higher(cursor.segment);
+            cursor.segment = nextSegment == null ? this.writeSegment : nextSegment;
+            cursor.offset = SEGMENT_HEADER_BYTES;
+        }
+    }
+
+    /**
+     * Reads the record at the offset returning null if it does not fit before the limit or fails its checksum
+     */
+    private byte[] readPayload(FileChannel channel, long offset, long limit) throws IOException {
+        if (offset + RECORD_HEADER_BYTES > limit) {
+            return null;
+        }
+
+        var header = ByteBuffer.allocate(RECORD_HEADER_BYTES);
+        this.readFully(channel, header, offset);
+        header.flip();
+
+        var length = header.getInt();
+        var checksum = header.getInt();
+
+        if (length < 0 || offset + RECORD_HEADER_BYTES + length > limit) {
+            return null;
+        }
+
+        var payload = ByteBuffer.allocate(length);
+        this.readFully(channel, payload, offset + RECORD_HEADER_BYTES);
+
+        var crc = new CRC32();
+        crc.update(payload.array(), 0, length);
+
+        return (int) crc.getValue() == checksum ? payload.array() : null;
+    }
+
+    private void readFully(FileChannel channel, ByteBuffer buffer, long offset) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, offset + buffer.position()) < 0) {
+                throw new EOFException();
+            }
+        }
+    }
+
+    private boolean hasValidHeader(FileChannel channel) throws IOException {
+        if (channel.size() < SEGMENT_HEADER_BYTES) {
+            return false;
+        }
+
+        var header = ByteBuffer.allocate(SEGMENT_HEADER_BYTES);
+        this.readFully(channel, header, 0);
+        header.flip();
+
+        return header.getInt() == MAGIC && header.getInt() == VERSION;
+    }
+
+    private FileChannel getReadChannel(long segment) throws IOException {
+        if (segment == this.writeSegment) {
+            return this.writeChannel;
+        }
+
+        if (this.readChannel == null || this.readChannelSegment != segment) {
+            this.closeReadChannel();
+            this.readChannel = FileChannel.open(this.getSegmentPath(segment), StandardOpenOption.READ);
+            this.readChannelSegment = segment;
+        }
+
+        return this.readChannel;
+    }
+
+    private void closeReadChannel() throws IOException {
+        if (this.readChannel != null) {
+            this.readChannel.close();
+            this.readChannel = null;
+            this.readChannelSegment = -1;
+        }
+    }
+
+    private void startSegment(long segment) throws IOException {
+        if (this.writeChannel != null) {
+            this.writeChannel.force(false);
+            this.writeChannel.close();
+        }
+
+        this.writeChannel = FileChannel.open(this.getSegmentPath(segment), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        var header = ByteBuffer.allocate(SEGMENT_HEADER_BYTES);
+        header.putInt(MAGIC).putInt(VERSION).flip();
+        while (header.hasRemaining()) {
+            this.writeChannel.write(header, header.position());
+        }
+
+        this.writeSegment = segment;
+        this.writeOffset = SEGMENT_HEADER_BYTES;
+        this.segments.add(segment);
+    }
+
+    private void deleteSegment(long segment) throws IOException {
+        if (this.readChannelSegment == segment) {
+            this.closeReadChannel();
+        }
+
+        Files.deleteIfExists(this.getSegmentPath(segment));
+        this.segments.remove(segment);
+    }
+
+    /**
+     * Returns the segment and offset saved by acknowledge or the start of the spool if there is none
+     */
+    private long[] readCheckpoint() {
+        var checkpointPath = this.location.resolve(CHECKPOINT);
+
+        if (!Files.exists(checkpointPath)) {
+            return new long[]{0, SEGMENT_HEADER_BYTES};
+        }
+
+        try (var input = new DataInputStream(new BufferedInputStream(Files.newInputStream(checkpointPath)))) {
+            if (input.readInt() == VERSION) {
+                return new long[]{input.readLong(), input.readLong()};
+            }
+        } catch (IOException ex) {
+            this.logger.severe(String.format("d5f0a2c7::error in class %s exception %s unable to read spool checkpoint replaying everything", ex.getClass(), ex.getMessage()));
+        }
+
+        return new long[]{0, SEGMENT_HEADER_BYTES};
+    }
+
+    private void writeCheckpoint(long segment, long offset) throws IOException {
+        var checkpointPath = this.location.resolve(CHECKPOINT);
+        var tempPath = Files.createTempFile(this.location, CHECKPOINT, ".tmp");
+
+        try (var output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempPath)))) {
+            output.writeInt(VERSION);
+            output.writeLong(segment);
+            output.writeLong(offset);
+        }
+
+        Files.move(tempPath, checkpointPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private Path getSegmentPath(long segment) {
+        return this.location.resolve(String.format("%020d%s", segment, SEGMENT_SUFFIX));
+    }
+
+    private ByteBuffer encodeRecord(CodeIndexDocument codeIndexDocument) throws IOException {
+        var bytes = new ByteArrayOutputStream();
+        var output = new DataOutputStream(bytes);
+
+        output.writeInt(codeIndexDocument.getId());
+        output.writeInt(codeIndexDocument.getRepoNameId());
+        output.writeInt(codeIndexDocument.getLanguageNameId());
+        output.writeInt(codeIndexDocument.getSourceId());
+        output.writeInt(codeIndexDocument.getLines());
+        output.writeInt(codeIndexDocument.getCodeLines());
+        output.writeInt(codeIndexDocument.getCommentLines());
+        output.writeInt(codeIndexDocument.getBlankLines());
+        output.writeInt(codeIndexDocument.getComplexity());
+        this.writeString(output, codeIndexDocument.getRepoLocationRepoNameLocationFilename());
+        this.writeString(output, codeIndexDocument.getRepoName());
+        this.writeString(output, codeIndexDocument.getFileName());
+        this.writeString(output, codeIndexDocument.getFileLocation());
+        this.writeString(output, codeIndexDocument.getFileLocationFilename());
+        this.writeString(output, codeIndexDocument.getMd5hash());
+        this.writeString(output, codeIndexDocument.getLanguageName());
+        this.writeString(output, codeIndexDocument.getContents());
+        this.writeString(output, codeIndexDocument.getRepoRemoteLocation());
+        this.writeString(output, codeIndexDocument.getCodeOwner());
+        this.writeString(output, codeIndexDocument.getSchash());
+        this.writeString(output, codeIndexDocument.getDisplayLocation());
+        this.writeString(output, codeIndexDocument.getSource());
+        this.writeString(output, codeIndexDocument.getRevision());
+        this.writeString(output, codeIndexDocument.getYearMonthDay());
+        this.writeString(output, codeIndexDocument.getYearMonth());
+        this.writeString(output, codeIndexDocument.getYear());
+        this.writeString(output, codeIndexDocument.getMessage());
+        this.writeString(output, codeIndexDocument.isDeleted());
+        output.flush();
+
+        var payload = bytes.toByteArray();
+        var crc = new CRC32();
+        crc.update(payload, 0, payload.length);
+
+        var record = ByteBuffer.allocate(RECORD_HEADER_BYTES + payload.length);
+        record.putInt(payload.length).putInt((int) crc.getValue()).put(payload).flip();
+        return record;
+    }
+
+    private CodeIndexDocument decode(byte[] payload) {
+        try (var input = new DataInputStream(new ByteArrayInputStream(payload))) {
+            var codeIndexDocument = new CodeIndexDocument()
+                    .setId(input.readInt())
+                    .setRepoNameId(input.readInt())
+                    .setLanguageNameId(input.readInt())
+                    .setSourceId(input.readInt())
+                    .setLines(input.readInt())
+                    .setCodeLines(input.readInt())
+                    .setCommentLines(input.readInt())
+                    .setBlankLines(input.readInt())
+                    .setComplexity(input.readInt());
+
+            var repoLocationRepoNameLocationFilename = this.readString(input);
+            if (repoLocationRepoNameLocationFilename != null) {
+                codeIndexDocument.setRepoLocationRepoNameLocationFilename(repoLocationRepoNameLocationFilename);
+            }
+
+            return codeIndexDocument
+                    .setRepoName(this.readString(input))
+                    .setFileName(this.readString(input))
+                    .setFileLocation(this.readString(input))
+                    .setFileLocationFilename(this.readString(input))
+                    .setMd5hash(this.readString(input))
+                    .setLanguageName(this.readString(input))
+                    .setContents(this.readString(input))
+                    .setRepoRemoteLocation(this.readString(input))
+                    .setCodeOwner(this.readString(input))
+                    .setSchash(this.readString(input))
+                    .setDisplayLocation(this.readString(input))
+                    .setSource(this.readString(input))
+                    .setRevision(this.readString(input))
+                    .setYearMonthDay(this.readString(input))
+                    .setYearMonth(this.readString(input))
+                    .setYear(this.readString(input))
+                    .setMessage(this.readString(input))
+                    .setDeleted(this.readString(input));
+        } catch (IOException ex) {
+            // The checksum already matched so this can only be a record from a different layout
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    private void writeString(DataOutputStream output, String value) throws IOException {
+        if (value == null) {
+            output.writeInt(-1);
+            return;
+        }
+
+        var bytes = value.getBytes(StandardCharsets.UTF_8);
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+
+    private String readString(DataInputStream input) throws IOException {
+        var length = input.readInt();
+
+        if (length == -1) {
+            return null;
+        }
+
+        var bytes = new byte[length];
+        input.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Where the next record will be read from, which moves as records are read
+     */
+    private static final class Cursor {
+        private long segment, offset;
+
+        private Cursor(long segment, long offset) {
+            this.segment = segment;
+            this.offset = offset;
+        }
+    }
+
+    /**
+     * Position in the spool just after the last document of a batch
+     */
+    public static final class Position {
+        private final long segment, offset;
+
+        private Position(long segment, long offset) {
+            this.segment = segment;
+            this.offset = offset;
+        }
+    }
+
+    /**
+     * Documents taken from a queue to be indexed along with the spool position to acknowledge once they are
+     * committed, which is null when they did not come from a spool
+     */
+    public static final class Batch {
+        private final List<CodeIndexDocument> documents;
+        private final Position position;
+
+        public Batch(List<CodeIndexDocument> documents, Position position) {
+            this.documents = documents;
+            this.position = position;
+        }
+
+        public List<CodeIndexDocument> getDocuments() {
+            return this.documents;
+        }
+
+        public Position getPosition() {
+            return this.position;
+        }
+    }
+}
@@ -22,7 +22,10 @@ public interface IIndexService {
     void indexDocument(CodeIndexDocument codeIndexDocument) throws IOException;
     void indexDocument(Queue<CodeIndexDocument> documentQueue) throws IOException;
 
+    void commit();
+
     void deleteByCodeId(String codeId) throws IOException;
+    void deleteByCodeIds(List<String> codeIds) throws IOException;
     void deleteByRepo(RepoResult repo) throws IOException;
     void deleteAll() throws IOException;
 
@@ -56,4 +59,5 @@ public interface IIndexService {
     List<String> getRepoDocuments(String repoName, int page);
     CodeResult getCodeResultByCodeId(String codeId);
     SearchResult search(String queryString, HashMap<String, String[]> facets, int page, boolean literal);
+    SearchResult regexSearch(String regex, HashMap<String, String[]> facets, int page);
 }
@@ -10,6 +10,7 @@ import com.searchcode.app.util.SearchCodeLib;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Queue;
 
 public abstract class IndexBaseService implements IIndexService {
 
@@ -60,6 +61,26 @@ public abstract class IndexBaseService implements IIndexService {
         return indexBuilder.toString();
     }
 
+    /**
+     * Removes the documents that should be indexed next from the queue. The spool only gives up a batch at a time
+     * so that the documents held in memory stay bounded, any other queue is emptied.
+     */
+    protected CodeIndexSpool.Batch takeDocuments(Queue<CodeIndexDocument> codeIndexDocumentQueue) {
+        if (codeIndexDocumentQueue instanceof CodeIndexSpool) {
+            return ((CodeIndexSpool) codeIndexDocumentQueue).drain();
+        }
+
+        var codeIndexDocumentList = new ArrayList<CodeIndexDocument>();
+        var codeIndexDocument = codeIndexDocumentQueue.poll();
+
+        while (codeIndexDocument != null) {
+            codeIndexDocumentList.add(codeIndexDocument);
+            codeIndexDocument = codeIndexDocumentQueue.poll();
+        }
+
+        return new CodeIndexSpool.Batch(codeIndexDocumentList, null);
+    }
+
     /**
      * Calculate the number of pages which can be searched through
      * TODO this needs more attention and testing on it as the results seem bizzare
@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2016 Boyter Online Services
+ *
+ * Use of this software is governed by the Fair Source License included
+ * in the LICENSE.TXT file, but will be eventually open under GNU General Public License Version 3
+ * see the README.md for when this clause will take effect
+ *
+ * Version 1.3.15
+ */
+
+package com.searchcode.app.service.index;
+
+import com.searchcode.app.service.Singleton;
+import com.searchcode.app.util.LoggerWrapper;
+import org.apache.lucene.facet.FacetResult;
+import org.apache.lucene.facet.FacetsCollector;
+import org.apache.lucene.facet.sortedset.DefaultSortedSetDocValuesReaderState;
+import org.apache.lucene.facet.sortedset.SortedSetDocValuesFacetCounts;
+import org.apache.lucene.facet.sortedset.SortedSetDocValuesReaderState;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TopDocs;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Collects any number of sorted set facet dimensions in the same pass over the index that collects the
+ * top documents, rather than running the query once per dimension.
+ * Building a SortedSetDocValuesReaderState is expensive so they are cached per reader and dimension and
+ * dropped when the reader is closed. Near real time search means several readers can be in use at once
+ * so each keeps its own states rather than every switch between them rebuilding the states.
+ * Every dimension is expected to be indexed into its own field of the same name which is how
+ * IndexService configures FacetsConfig.
+ */
+public class IndexFacets {
+
+    private final LoggerWrapper logger;
+    private final ConcurrentHashMap<Object, ConcurrentHashMap<String, SortedSetDocValuesReaderState>> readerStates = new ConcurrentHashMap<>();
+
+    public IndexFacets() {
+        this(Singleton.getLogger());
+    }
+
+    public IndexFacets(LoggerWrapper logger) {
+        this.logger = logger;
+    }
+
+    /**
+     * Runs the query once collecting the top numberOfDocs documents and the facet counts for every
+     * dimension requested. The dimensions map is the dimension name to the number of children to return
+     * for it. Dimensions missing from the index are left out of the returned facets.
+     */
+    public Result search(IndexSearcher searcher, Query query, int numberOfDocs, Map<String, Integer> dimensions) throws IOException {
+        var facetsCollector = new FacetsCollector();
+        var topDocs = FacetsCollector.search(searcher, query, numberOfDocs, facetsCollector);
+
+        return new Result(topDocs, this.getTopChildren(searcher.getIndexReader(), facetsCollector, dimensions));
+    }
+
+    /**
+     * Counts the dimensions requested against documents already gathered by the facets collector
+     */
+    public Map<String, FacetResult> getTopChildren(IndexReader reader, FacetsCollector facetsCollector, Map<String, Integer> dimensions) {
+        var facetResults = new LinkedHashMap<String, FacetResult>();
+
+        for (var dimension : dimensions.keySet()) {
+            try {
+                var facets = new SortedSetDocValuesFacetCounts(this.getReaderState(reader, dimension), facetsCollector);
+                var result = facets.getTopChildren(dimensions.get(dimension), dimension);
+
+                if (result != null) {
+                    facetResults.put(dimension, result);
+                }
+            } catch (IllegalArgumentException ignore) {
+                // Thrown when nothing with this dimension has been indexed yet
+            } catch (IOException | RuntimeException ex) {
+                this.logger.severe(String.format("e41b7d93::error in class %s exception %s unable to count facet %s", ex.getClass(), ex.getMessage(), dimension));
+            }
+        }
+
+        return facetResults;
+    }
+
+    /**
+     * The number of readers with states cached which is only used by tests
+     */
+    int getCachedReaderCount() {
+        return this.readerStates.size();
+    }
+
+    private SortedSetDocValuesReaderState getReaderState(IndexReader reader, String dimension) throws IOException {
+        var cacheKey = reader.getCoreCacheKey();
+        var states = this.readerStates.computeIfAbsent(cacheKey, key -> {
+            reader.addReaderClosedListener(closed -> this.readerStates.remove(key));
+            return new ConcurrentHashMap<>();
+        });
+
+        var readerState = states.get(dimension);
+
+        if (readerState == null) {
+            readerState = new DefaultSortedSetDocValuesReaderState(reader, dimension);
+            states.put(dimension, readerState);
+        }
+
+        return readerState;
+    }
+
+    /**
+     * The top documents and facet results for each dimension produced by a single search
+     */
+    public static class Result {
+        public final TopDocs topDocs;
+        public final Map<String, FacetResult> facetResults;
+
+        public Result(TopDocs topDocs, Map<String, FacetResult> facetResults) {
+            this.topDocs = topDocs;
+            this.facetResults = facetResults;
+        }
+
+        public FacetResult get(String dimension) {
+            return this.facetResults.get(dimension);
+        }
+    }
+}
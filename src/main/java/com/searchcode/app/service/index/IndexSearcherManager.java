@@ -0,0 +1,172 @@
+/*
+ * Copyright (c) 2016 Boyter Online Services
+ *
+ * Use of this software is governed by the Fair Source License included
+ * in the LICENSE.TXT file, but will be eventually open under GNU General Public License Version 3
+ * see the README.md for when this clause will take effect
+ *
+ * Version 1.3.15
+ */
+
+package com.searchcode.app.service.index;
+
+import com.searchcode.app.util.LoggerWrapper;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.SearcherFactory;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.store.AlreadyClosedException;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Holds a long lived reference counted SearcherManager for each index location (A/B) so that
+ * read methods do not need to open a new DirectoryReader for every request. Searchers acquired
+ * through this class must always be released using release in a finally block.
+ * Managers are refreshed when the IndexService writes to their location and are closed when the
+ * index is flipped away from or deleted, with any in flight searchers remaining valid until released.
+ * If near real time search is enabled and a writer is open for the location the searchers are opened
+ * from the writer so that documents are visible before they are committed.
+ */
+public class IndexSearcherManager {
+
+    private final LoggerWrapper logger;
+    private final IndexWriterManager indexWriterManager;
+    private final ConcurrentHashMap<Path, SearcherManager> searcherManagers = new ConcurrentHashMap<>();
+    // Directories opened for managers that are not near real time, closed along with their manager
+    private final ConcurrentHashMap<Path, Directory> directories = new ConcurrentHashMap<>();
+    private final Set<Path> nearRealTimeLocations = ConcurrentHashMap.newKeySet();
+
+    public IndexSearcherManager(LoggerWrapper logger) {
+        this(logger, null);
+    }
+
+    public IndexSearcherManager(LoggerWrapper logger, IndexWriterManager indexWriterManager) {
+        this.logger = logger;
+        this.indexWriterManager = indexWriterManager;
+    }
+
+    /**
+     * Acquires a searcher for the supplied index location creating the underlying manager if this is the
+     * first request for it. Throws if there is no index at the location yet which callers already handle.
+     */
+    public IndexSearcher acquire(Path indexLocation) throws IOException {
+        return this.getSearcherManager(indexLocation).acquire();
+    }
+
+    /**
+     * Releases a searcher previously returned by acquire. Safe to call with null so it can be
+     * used in a finally block without checking. The searcher must not be used after this call.
+     */
+    public void release(IndexSearcher searcher) {
+        if (searcher == null) {
+            return;
+        }
+
+        try {
+            searcher.getIndexReader().decRef();
+        } catch (IOException ex) {
+            this.logger.severe(String.format("7a1c5e02::error in class %s exception %s", ex.getClass(), ex.getMessage()));
+        }
+    }
+
+    /**
+     * Called after a write or commit to the given location such that searches pick up the changes. Does nothing
+     * if nothing has read from the location yet as the manager will open the latest changes when created.
+     */
+    public void refresh(Path indexLocation) {
+        var searcherManager = this.searcherManagers.get(indexLocation);
+
+        if (searcherManager == null) {
+            return;
+        }
+
+        // A writer has since been opened so swap over to a near real time manager on the next acquire
+        if (this.getNearRealTimeWriter(indexLocation) != null && !this.nearRealTimeLocations.contains(indexLocation)) {
+            this.close(indexLocation);
+            return;
+        }
+
+        try {
+            searcherManager.maybeRefreshBlocking();
+        } catch (AlreadyClosedException ex) {
+            // The writer this manager was opened from has been closed so recreate on the next acquire
+            this.close(indexLocation);
+        } catch (IOException ex) {
+            this.logger.severe(String.format("2d8b61f4::error in class %s exception %s", ex.getClass(), ex.getMessage()));
+        }
+    }
+
+    /**
+     * Closes the manager for the given location. Used when the read index is flipped or when the
+     * location is about to be deleted. Outstanding searchers stay usable until they are released.
+     */
+    public void close(Path indexLocation) {
+        var searcherManager = this.searcherManagers.remove(indexLocation);
+        var directory = this.directories.remove(indexLocation);
+        this.nearRealTimeLocations.remove(indexLocation);
+
+        try {
+            if (searcherManager != null) {
+                searcherManager.close();
+            }
+        } catch (IOException ex) {
+            this.logger.severe(String.format("c4f0937b::error in class %s exception %s", ex.getClass(), ex.getMessage()));
+        }
+
+        try {
+            if (directory != null) {
+                directory.close();
+            }
+        } catch (IOException ex) {
+            this.logger.severe(String.format("58e3a1d6::error in class %s exception %s unable to close index directory %s", ex.getClass(), ex.getMessage(), indexLocation));
+        }
+    }
+
+    public void closeAll() {
+        for (var indexLocation : this.searcherManagers.keySet()) {
+            this.close(indexLocation);
+        }
+    }
+
+    private synchronized SearcherManager getSearcherManager(Path indexLocation) throws IOException {
+        var searcherManager = this.searcherManagers.get(indexLocation);
+
+        if (searcherManager == null) {
+            var indexWriter = this.getNearRealTimeWriter(indexLocation);
+
+            if (indexWriter != null) {
+                searcherManager = new SearcherManager(indexWriter, true, new SearcherFactory());
+                this.nearRealTimeLocations.add(indexLocation);
+            } else {
+                var directory = FSDirectory.open(indexLocation);
+
+                try {
+                    searcherManager = new SearcherManager(directory, new SearcherFactory());
+                } catch (IOException | RuntimeException ex) {
+                    directory.close();
+                    throw ex;
+                }
+
+                this.directories.put(indexLocation, directory);
+            }
+
+            this.searcherManagers.put(indexLocation, searcherManager);
+        }
+
+        return searcherManager;
+    }
+
+    private IndexWriter getNearRealTimeWriter(Path indexLocation) {
+        if (this.indexWriterManager == null || !this.indexWriterManager.isNearRealTime()) {
+            return null;
+        }
+
+        return this.indexWriterManager.getOpenWriter(indexLocation);
+    }
+}
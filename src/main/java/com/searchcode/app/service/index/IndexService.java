@@ -11,10 +11,13 @@
 package com.searchcode.app.service.index;
 
 
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
 import com.searchcode.app.config.Values;
 import com.searchcode.app.dao.Data;
 import com.searchcode.app.dto.*;
 import com.searchcode.app.model.RepoResult;
+import com.searchcode.app.service.GitService;
 import com.searchcode.app.service.JobService;
 import com.searchcode.app.service.Singleton;
 import com.searchcode.app.service.StatsService;
@@ -25,29 +28,27 @@ import org.apache.commons.lang3.StringUtils;
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.document.*;
 import org.apache.lucene.facet.*;
-import org.apache.lucene.facet.sortedset.DefaultSortedSetDocValuesReaderState;
-import org.apache.lucene.facet.sortedset.SortedSetDocValuesFacetCounts;
 import org.apache.lucene.facet.sortedset.SortedSetDocValuesFacetField;
-import org.apache.lucene.facet.sortedset.SortedSetDocValuesReaderState;
-import org.apache.lucene.facet.taxonomy.TaxonomyWriter;
-import org.apache.lucene.facet.taxonomy.directory.DirectoryTaxonomyWriter;
 import org.apache.lucene.index.*;
 import org.apache.lucene.queryparser.classic.ParseException;
 import org.apache.lucene.queryparser.classic.QueryParser;
-import org.apache.lucene.search.IndexSearcher;
-import org.apache.lucene.search.Query;
-import org.apache.lucene.search.ScoreDoc;
-import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.*;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.FSDirectory;
 
 import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 import java.util.stream.Collectors;
 
 /**
@@ -61,13 +62,26 @@ public class IndexService extends IndexBaseService {
     private final Helpers helpers;
     private final JobService jobService;
 
-    private final int MAX_INDEX_SIZE, MAX_LINES_INDEX_SIZE;
+    private final int MAX_INDEX_SIZE, MAX_LINES_INDEX_SIZE, MAX_FILE_LINE_DEPTH;
+    private final boolean SNIPPET_STORE, INDEX_TRIGRAMS, OWASP_INDEX, GIT_BARE_INDEX;
+    private final String REPOSITORY_LOCATION;
+    private final int REGEX_MAX_CANDIDATES, REGEX_TIMEOUT_MILLIS;
     private final Path INDEX_A_LOCATION, INDEX_B_LOCATION, FACET_A_LOCATION, FACET_B_LOCATION;
     private Path INDEX_READ_LOCATION, INDEX_WRITE_LOCATION, FACET_WRITE_LOCATION;
 
-    private int CHILD_FACET_LIMIT;
+    private final int CHILD_FACET_LIMIT;
+    private volatile double backoffValue;
+    private final Consumer<String> backoffListener;
 
     private final Queue<CodeIndexDocument> codeIndexDocumentQueue;
+    private final IndexSearcherManager indexSearcherManager;
+    private final IndexFacets indexFacets;
+    private final RegexTrigramPlanner regexTrigramPlanner = new RegexTrigramPlanner();
+    private final OWASPClassifier owaspClassifier;
+    private final Gson gson = new Gson();
+    private final GitService gitService = new GitService();
+    private final CodeCleanAnalyzer fileNameAnalyzer, splitKeywordsAnalyzer, plainAnalyzer, contentsAnalyzer;
+    private final SnippetStore snippetStoreA, snippetStoreB;
     private final UniqueRepoQueue uniqueGitRepoQueue, uniqueFileRepoQueue, uniqueSvnRepoQueue;
 
     private boolean repoAdderPause = false;     // Controls if repo add job should pause, controlled through the UI
@@ -82,6 +96,14 @@ public class IndexService extends IndexBaseService {
 
     private ReentrantLock codeIndexLinesCountLock = new ReentrantLock();
 
+    // Writers share the read side so they can run concurrently, anything that moves or deletes index
+    // locations takes the write side so no documents are added to a location while it changes
+    private final ReentrantReadWriteLock indexLocationLock = new ReentrantReadWriteLock();
+    private final IndexWriterManager indexWriterManager;
+
+    // End of the last spool batch handed to the writer, acknowledged by the next commit of that location
+    private volatile SpoolWritten spoolWritten = null;
+
     public IndexService() {
         this(Singleton.getData(),
                 Singleton.getStatsService(),
@@ -103,12 +125,44 @@ public class IndexService extends IndexBaseService {
 
         this.MAX_INDEX_SIZE = this.helpers.tryParseInt(Properties.getProperties().getProperty(Values.MAXDOCUMENTQUEUESIZE, Values.DEFAULTMAXDOCUMENTQUEUESIZE), Values.DEFAULTMAXDOCUMENTQUEUESIZE);
         this.MAX_LINES_INDEX_SIZE = this.helpers.tryParseInt(Properties.getProperties().getProperty(Values.MAXDOCUMENTQUEUELINESIZE, Values.DEFAULTMAXDOCUMENTQUEUELINESIZE), Values.DEFAULTMAXDOCUMENTQUEUELINESIZE);
+        this.MAX_FILE_LINE_DEPTH = this.helpers.tryParseInt(Properties.getProperties().getProperty(Values.MAXFILELINEDEPTH, Values.DEFAULTMAXFILELINEDEPTH), Values.DEFAULTMAXFILELINEDEPTH);
+        this.SNIPPET_STORE = Boolean.parseBoolean(Properties.getProperties().getProperty(Values.SNIPPET_STORE, Values.DEFAULT_SNIPPET_STORE));
+        this.INDEX_TRIGRAMS = Boolean.parseBoolean(Properties.getProperties().getProperty(Values.INDEX_TRIGRAMS, Values.DEFAULT_INDEX_TRIGRAMS));
+        this.GIT_BARE_INDEX = Boolean.parseBoolean(Properties.getProperties().getProperty(Values.GIT_BARE_INDEX, Values.DEFAULT_GIT_BARE_INDEX));
+        this.REPOSITORY_LOCATION = Properties.getProperties().getProperty(Values.REPOSITORYLOCATION, Values.DEFAULTREPOSITORYLOCATION);
+        this.REGEX_MAX_CANDIDATES = this.helpers.tryParseInt(Properties.getProperties().getProperty(Values.REGEX_MAX_CANDIDATES, Values.DEFAULT_REGEX_MAX_CANDIDATES), Values.DEFAULT_REGEX_MAX_CANDIDATES);
+        this.REGEX_TIMEOUT_MILLIS = this.helpers.tryParseInt(Properties.getProperties().getProperty(Values.REGEX_TIMEOUT_MILLIS, Values.DEFAULT_REGEX_TIMEOUT_MILLIS), Values.DEFAULT_REGEX_TIMEOUT_MILLIS);
+
+        // When enabled OWASP findings are worked out once per file as it is indexed rather than on every view
+        this.OWASP_INDEX = Boolean.parseBoolean(Properties.getProperties().getProperty(Values.OWASP_INDEX, Values.DEFAULT_OWASP_INDEX));
+        this.owaspClassifier = this.OWASP_INDEX ? Singleton.getOwaspClassifier() : null;
+
+        // Checked for every file indexed so keep it here and let the settings page update it
+        this.backoffValue = this.helpers.tryParseDouble(this.data.getDataByName(Values.BACKOFFVALUE, Values.DEFAULTBACKOFFVALUE), Values.DEFAULTBACKOFFVALUE);
+        this.backoffListener = x -> this.backoffValue = this.helpers.tryParseDouble(x, Values.DEFAULTBACKOFFVALUE);
+        this.data.addListener(Values.BACKOFFVALUE, this.backoffListener);
+
+        // Analyzers for each part of the contents field, see indexContentPipeline for what each produces
+        var contentsVariants = EnumSet.noneOf(CodeCleanFilter.Variant.class);
+        if (this.indexAllFields.contains("content")) {
+            contentsVariants.add(CodeCleanFilter.Variant.SPLIT_KEYWORDS);
+            contentsVariants.add(CodeCleanFilter.Variant.CODE_CLEAN);
+        }
+        if (this.indexAllFields.contains("interesting")) {
+            contentsVariants.add(CodeCleanFilter.Variant.INTERESTING);
+        }
+        this.fileNameAnalyzer = new CodeCleanAnalyzer(EnumSet.of(CodeCleanFilter.Variant.CODE_CLEAN));
+        this.splitKeywordsAnalyzer = new CodeCleanAnalyzer(EnumSet.of(CodeCleanFilter.Variant.SPLIT_KEYWORDS));
+        this.plainAnalyzer = new CodeCleanAnalyzer(EnumSet.of(CodeCleanFilter.Variant.RAW));
+        this.contentsAnalyzer = new CodeCleanAnalyzer(contentsVariants);
 
         // Locations that should never change once class created
         this.INDEX_A_LOCATION = Paths.get(Properties.getProperties().getProperty(Values.INDEXLOCATION, Values.DEFAULTINDEXLOCATION) + "/" + Values.INDEX_A);
         this.INDEX_B_LOCATION = Paths.get(Properties.getProperties().getProperty(Values.INDEXLOCATION, Values.DEFAULTINDEXLOCATION) + "/" + Values.INDEX_B);
         this.FACET_A_LOCATION = Paths.get(Properties.getProperties().getProperty(Values.FACETSLOCATION, Values.DEFAULTFACETSLOCATION) + "/" + Values.INDEX_A);
         this.FACET_B_LOCATION = Paths.get(Properties.getProperties().getProperty(Values.FACETSLOCATION, Values.DEFAULTFACETSLOCATION) + "/" + Values.INDEX_B);
+        this.snippetStoreA = new SnippetStore(Paths.get(Properties.getProperties().getProperty(Values.SNIPPETLOCATION, Values.DEFAULTSNIPPETLOCATION) + "/" + Values.INDEX_A), this.logger);
+        this.snippetStoreB = new SnippetStore(Paths.get(Properties.getProperties().getProperty(Values.SNIPPETLOCATION, Values.DEFAULTSNIPPETLOCATION) + "/" + Values.INDEX_B), this.logger);
 
         // Where do we think we should be looking
         String indexRead = this.data.getDataByName(Values.INDEX_READ, Values.INDEX_A);
@@ -132,14 +186,25 @@ public class IndexService extends IndexBaseService {
         // Facet locations are keyed off the index so only needs write location
         this.FACET_WRITE_LOCATION = Values.INDEX_A.equals(indexRead) ? this.FACET_A_LOCATION : this.FACET_B_LOCATION;
 
-        this.CHILD_FACET_LIMIT = 200;
+        this.CHILD_FACET_LIMIT = this.helpers.tryParseInt(Properties.getProperties().getProperty(Values.FACET_CHILD_LIMIT, Values.DEFAULT_FACET_CHILD_LIMIT), Values.DEFAULT_FACET_CHILD_LIMIT);
 
         this.codeIndexDocumentQueue = codeIndexDocumentQueue;
+        this.indexWriterManager = Singleton.getIndexWriterManager();
+        this.indexSearcherManager = new IndexSearcherManager(this.logger, this.indexWriterManager);
+        this.indexFacets = new IndexFacets(this.logger);
         this.uniqueGitRepoQueue = Singleton.getUniqueGitRepoQueue();
         this.uniqueSvnRepoQueue = Singleton.getUniqueSvnRepoQueue();
         this.uniqueFileRepoQueue = Singleton.getUniqueFileRepoQueue();
     }
 
+    /**
+     * Stops listening for settings changes so the shared Data does not keep this instance alive.
+     * Needs to be called when an instance other than the shared one is no longer used.
+     */
+    public void close() {
+        this.data.removeListener(Values.BACKOFFVALUE, this.backoffListener);
+    }
+
     //////////////////////////////////////////////////////////////
     // Methods for controlling the index
     //////////////////////////////////////////////////////////////
@@ -170,7 +235,7 @@ public class IndexService extends IndexBaseService {
     }
 
     @Override
-    public synchronized void indexDocument(CodeIndexDocument codeIndexDocument) throws IOException {
+    public void indexDocument(CodeIndexDocument codeIndexDocument) throws IOException {
         Queue<CodeIndexDocument> queue = new ConcurrentLinkedQueue<>();
         queue.add(codeIndexDocument);
         this.indexDocument(queue);
@@ -178,58 +243,124 @@ public class IndexService extends IndexBaseService {
 
     /**
      * Given a queue of documents to index, index them by popping the queue supplied.
-     * This method must be synchronized as we have not added any logic to deal with multiple threads writing to the
-     * index.
+     * All documents go through the shared writer for the write location which is thread safe so this can be
+     * called from multiple threads at the same time. Changes are visible to searches straight away when near
+     * real time search is enabled and are committed based on the configured commit interval.
      */
     @Override
-    public synchronized void indexDocument(Queue<CodeIndexDocument> codeIndexDocumentQueue) throws IOException {
-        Directory indexDirectory = FSDirectory.open(this.INDEX_WRITE_LOCATION);
-        Directory facetDirectory = FSDirectory.open(this.FACET_WRITE_LOCATION);
+    public void indexDocument(Queue<CodeIndexDocument> codeIndexDocumentQueue) throws IOException {
+        this.indexLocationLock.readLock().lock();
+
+        try {
+            var indexWriteLocation = this.INDEX_WRITE_LOCATION;
+            IndexWriter writer = this.indexWriterManager.getWriter(indexWriteLocation);
+            SnippetStore snippetStore = this.getSnippetStore(indexWriteLocation);
+
+            var batch = this.takeDocuments(codeIndexDocumentQueue);
+            List<CodeIndexDocument> codeIndexDocumentList = batch.getDocuments();
+            this.statsService.addCount(Values.CACHE_TOTAL_INDEXED, codeIndexDocumentList.size());
+
+            try {
+                codeIndexDocumentList.parallelStream()
+                        .forEach(x -> {
+                            this.logger.info("843fb34b::indexing file " + x.getRepoLocationRepoNameLocationFilename());
+                            this.decrementCodeIndexLinesCount(x.getLines());
+
+                            FacetsConfig facetsConfig = new FacetsConfig();
+                            facetsConfig.setIndexFieldName(Values.LANGUAGENAME, Values.LANGUAGENAME);
+                            facetsConfig.setIndexFieldName(Values.REPONAME, Values.REPONAME);
+                            facetsConfig.setIndexFieldName(Values.CODEOWNER, Values.CODEOWNER);
+                            facetsConfig.setIndexFieldName(Values.SOURCE, Values.SOURCE);
+                            facetsConfig.setIndexFieldName(Values.OWASP, Values.OWASP);
+                            facetsConfig.setMultiValued(Values.OWASP, true);
+
+                            Document document = this.buildDocument(x);
+
+                            try {
+                                if (this.SNIPPET_STORE) {
+                                    snippetStore.write(x.getHash(), x.getMd5hash(), x.getContents());
+                                }
+
+                                // Facets are all sorted set doc values so no taxonomy writer is required
+                                writer.updateDocument(new Term(Values.PATH, x.getRepoLocationRepoNameLocationFilename()), facetsConfig.build(document));
+                            } catch (Exception ex) {
+                                this.logger.severe(String.format("b824ed70::error in class %s exception %s", ex.getClass(), ex.getMessage()));
+                            }
+                        });
+
+                // Every document of the batch is now with the writer so the next commit covers it
+                if (batch.getPosition() != null) {
+                    this.spoolWritten = new SpoolWritten(indexWriteLocation, batch.getPosition());
+                }
+            }
+            finally {
+                this.afterWrite(indexWriteLocation, false);
+            }
+        }
+        finally {
+            this.indexLocationLock.readLock().unlock();
+        }
+    }
 
-        Analyzer analyzer = new CodeAnalyzer();
-        IndexWriterConfig indexWriterConfig = new IndexWriterConfig(analyzer);
+    /**
+     * Commits anything written to the index if the commit interval has passed. Called by the indexer job
+     * when it has nothing else to do so that documents are not left uncommitted while the queue is idle.
+     */
+    @Override
+    public void commit() {
+        this.indexLocationLock.readLock().lock();
 
-        indexWriterConfig.setOpenMode(IndexWriterConfig.OpenMode.CREATE_OR_APPEND);
+        try {
+            var spoolWritten = this.spoolWritten;
 
-        IndexWriter writer = new IndexWriter(indexDirectory, indexWriterConfig);
-        TaxonomyWriter taxonomyWriter = new DirectoryTaxonomyWriter(facetDirectory);
+            if (this.indexWriterManager.commit(this.INDEX_WRITE_LOCATION, false)) {
+                this.logger.info("f32cef3e::committed index changes");
+                this.acknowledgeSpool(spoolWritten, this.INDEX_WRITE_LOCATION);
+                this.indexSearcherManager.refresh(this.INDEX_WRITE_LOCATION);
+            }
+        }
+        finally {
+            this.indexLocationLock.readLock().unlock();
+        }
+    }
 
-        CodeIndexDocument codeIndexDocument = codeIndexDocumentQueue.poll();
-        List<CodeIndexDocument> codeIndexDocumentList = new ArrayList<>();
+    /**
+     * Should be called after anything is written to a location to commit if due and expose the changes to
+     * searches. If near real time is disabled then changes only become visible once committed.
+     */
+    private void afterWrite(Path indexLocation, boolean forceCommit) {
+        // Taken before committing as only batches fully with the writer by then are covered by the commit
+        var spoolWritten = this.spoolWritten;
 
-        while (codeIndexDocument != null) {
-            codeIndexDocumentList.add(codeIndexDocument);
-            codeIndexDocument = codeIndexDocumentQueue.poll();
+        if (this.indexWriterManager.commit(indexLocation, forceCommit)) {
+            this.acknowledgeSpool(spoolWritten, indexLocation);
         }
+        this.indexSearcherManager.refresh(indexLocation);
+    }
 
-        try {
-            codeIndexDocumentList.parallelStream()
-                    .forEach(x -> {
-                        this.logger.info("843fb34b::indexing file " + x.getRepoLocationRepoNameLocationFilename());
-                        this.decrementCodeIndexLinesCount(x.getLines());
-
-                        FacetsConfig facetsConfig = new FacetsConfig();
-                        facetsConfig.setIndexFieldName(Values.LANGUAGENAME, Values.LANGUAGENAME);
-                        facetsConfig.setIndexFieldName(Values.REPONAME, Values.REPONAME);
-                        facetsConfig.setIndexFieldName(Values.CODEOWNER, Values.CODEOWNER);
-                        facetsConfig.setIndexFieldName(Values.SOURCE, Values.SOURCE);
-
-                        Document document = this.buildDocument(x);
-
-                        try {
-                            writer.updateDocument(new Term(Values.PATH, x.getRepoLocationRepoNameLocationFilename()), facetsConfig.build(taxonomyWriter, document));
-                        } catch (Exception ex) {
-                            this.logger.severe(String.format("b824ed70::error in class %s exception %s", ex.getClass(), ex.getMessage()));
-                        }
-                    });
+    /**
+     * Once a commit of the location a spool batch was written to has finished, nothing up to the end of that
+     * batch needs replaying after a restart. Batches drained but still being written are not covered.
+     */
+    private void acknowledgeSpool(SpoolWritten spoolWritten, Path indexLocation) {
+        if (spoolWritten != null && spoolWritten.indexLocation.equals(indexLocation) && this.codeIndexDocumentQueue instanceof CodeIndexSpool) {
+            ((CodeIndexSpool) this.codeIndexDocumentQueue).acknowledge(spoolWritten.position);
         }
-        finally {
-            this.helpers.closeQuietly(writer);
-            this.helpers.closeQuietly(taxonomyWriter);
-            this.logger.info("f32cef3e::closing writers");
+    }
+
+    /**
+     * Closes writers for any location which is no longer being read from or written to, which happens
+     * after the index is flipped, so the index is committed and file handles are released
+     */
+    private void closeUnusedLocations() {
+        for (var indexLocation : Arrays.asList(this.INDEX_A_LOCATION, this.INDEX_B_LOCATION)) {
+            if (!indexLocation.equals(this.INDEX_READ_LOCATION) && !indexLocation.equals(this.INDEX_WRITE_LOCATION)) {
+                this.indexSearcherManager.close(indexLocation);
+                this.indexWriterManager.close(indexLocation);
+            }
         }
     }
-    
+
     /**
      * Builds a document ready to be indexed by lucene
      */
@@ -256,7 +387,6 @@ public class IndexService extends IndexBaseService {
         }
 
         this.searchcodeLib.addToSpellingCorrector(codeIndexDocument.getContents());
-        String indexContents = this.indexContentPipeline(codeIndexDocument);
 
         document.add(new TextField(Values.REPONAME,                 codeIndexDocument.getRepoName().replace(" ", "_"), Field.Store.YES));
         document.add(new TextField(Values.REPO_NAME_LITERAL,        this.helpers.replaceForIndex(codeIndexDocument.getRepoName()).toLowerCase(), Field.Store.NO));
@@ -274,7 +404,13 @@ public class IndexService extends IndexBaseService {
         document.add(new IntField(Values.BLANKLINES,                codeIndexDocument.getBlankLines(), Field.Store.YES));
         document.add(new IntField(Values.COMMENTLINES,              codeIndexDocument.getCommentLines(), Field.Store.YES));
         document.add(new IntField(Values.COMPLEXITY,                codeIndexDocument.getComplexity(), Field.Store.YES));
-        document.add(new TextField(Values.CONTENTS,                 indexContents.toLowerCase(), Field.Store.NO));
+        this.addContentsFields(document, codeIndexDocument);
+        if (this.OWASP_INDEX) {
+            this.addOwaspFields(document, codeIndexDocument);
+        }
+        if (this.INDEX_TRIGRAMS) {
+            document.add(TrigramTokenStream.field(Values.CONTENTS_TRIGRAM, codeIndexDocument.getContents()));
+        }
         document.add(new TextField(Values.REPOLOCATION,             codeIndexDocument.getRepoRemoteLocation(), Field.Store.YES));
         document.add(new TextField(Values.CODEOWNER,                codeIndexDocument.getCodeOwner().replace(" ", "_"), Field.Store.YES));
         document.add(new TextField(Values.OWNER_NAME_LITERAL,       this.helpers.replaceForIndex(codeIndexDocument.getCodeOwner()).toLowerCase(), Field.Store.NO));
@@ -287,6 +423,52 @@ public class IndexService extends IndexBaseService {
         return document;
     }
 
+    /**
+     * Stores the OWASP findings for the file so viewing it does not need to classify it again and adds each
+     * finding as a facet so files with findings can be filtered on
+     */
+    private void addOwaspFields(Document document, CodeIndexDocument codeIndexDocument) {
+        var contents = codeIndexDocument.getContents() == null ? Values.EMPTYSTRING : codeIndexDocument.getContents();
+        var codeLines = Arrays.stream(contents.split("\\r\\n|\\n|\\r")).limit(this.MAX_FILE_LINE_DEPTH).collect(Collectors.toList());
+        var owaspResults = this.owaspClassifier.classifyCode(codeLines, codeIndexDocument.getLanguageName());
+
+        document.add(new StoredField(Values.OWASP_FINDINGS, this.gson.toJson(owaspResults)));
+
+        for (var name : owaspResults.stream().map(OWASPMatchingResult::getName).distinct().collect(Collectors.toList())) {
+            if (!this.helpers.isNullEmptyOrWhitespace(name)) {
+                document.add(new SortedSetDocValuesFacetField(Values.OWASP, name));
+                document.add(new TextField(Values.OWASP_NAME_LITERAL, this.helpers.replaceForIndex(name).toLowerCase(), Field.Store.NO));
+            }
+        }
+    }
+
+    /**
+     * Adds the same tokens to the contents field as indexContentPipeline would, split into one field per
+     * analyzer so that the code clean variants are produced while the document is inverted
+     */
+    private void addContentsFields(Document document, CodeIndexDocument codeIndexDocument) {
+        if (this.indexAllFields.contains("filename")) {
+            document.add(this.fileNameAnalyzer.field(Values.CONTENTS, codeIndexDocument.getFileName()));
+        }
+
+        var plain = new StringBuilder();
+        if (this.indexAllFields.contains("filenamereverse")) {
+            plain.append(new StringBuilder(codeIndexDocument.getFileName()).reverse()).append(" ");
+        }
+        if (this.indexAllFields.contains("path")) {
+            document.add(this.splitKeywordsAnalyzer.field(Values.CONTENTS, codeIndexDocument.getFileName()));
+            plain.append(codeIndexDocument.getFileLocationFilename()).append(" ");
+            plain.append(codeIndexDocument.getFileLocation());
+        }
+        if (plain.length() != 0) {
+            document.add(this.plainAnalyzer.field(Values.CONTENTS, plain.toString()));
+        }
+
+        if (this.indexAllFields.contains("content") || this.indexAllFields.contains("interesting")) {
+            document.add(this.contentsAnalyzer.field(Values.CONTENTS, codeIndexDocument.getContents()));
+        }
+    }
+
     /**
      * Deletes a file from the index using the code id which seems to be
      * the most reliable way of doing it. Code id being a hash of the file
@@ -294,27 +476,42 @@ public class IndexService extends IndexBaseService {
      * TODO Update the record and set the facets to a value we can ignore
      */
     @Override
-    public synchronized void deleteByCodeId(String codeId) throws IOException {
-        Directory dir = FSDirectory.open(this.INDEX_WRITE_LOCATION);
+    public void deleteByCodeId(String codeId) throws IOException {
+        this.deleteByCodeIds(Collections.singletonList(codeId));
+    }
 
-        Analyzer analyzer = new CodeAnalyzer();
-        IndexWriterConfig iwc = new IndexWriterConfig(analyzer);
-        iwc.setOpenMode(IndexWriterConfig.OpenMode.CREATE_OR_APPEND);
+    /**
+     * Deletes all the supplied code ids from the index in one write which avoids refreshing searchers
+     * for each individual file when a repository update removes a lot of files
+     */
+    @Override
+    public void deleteByCodeIds(List<String> codeIds) throws IOException {
+        if (codeIds.isEmpty()) {
+            return;
+        }
 
-        IndexWriter writer = null;
-        Query query;
+        this.indexLocationLock.readLock().lock();
 
         try {
-            writer = new IndexWriter(dir, iwc);
-            QueryParser parser = new QueryParser(Values.CONTENTS, analyzer);
+            var indexWriteLocation = this.INDEX_WRITE_LOCATION;
+            IndexWriter writer = this.indexWriterManager.getWriter(indexWriteLocation);
+            QueryParser parser = new QueryParser(Values.CONTENTS, new CodeAnalyzer());
+            var snippetStore = this.getSnippetStore(indexWriteLocation);
+
+            var queries = new Query[codeIds.size()];
+            for (var i = 0; i < codeIds.size(); i++) {
+                queries[i] = parser.parse(Values.CODEID + ":" + QueryParser.escape(codeIds.get(i)));
+            }
 
-            query = parser.parse(Values.CODEID + ":" + QueryParser.escape(codeId));
-            writer.deleteDocuments(query);
+            writer.deleteDocuments(queries);
+            codeIds.forEach(snippetStore::delete);
+            this.afterWrite(indexWriteLocation, false);
         } catch (ParseException | NoSuchFileException ex) {
             this.logger.severe(String.format("e9a71f33::error in class %s exception %s", ex.getClass(), ex.getMessage()));
         }
-
-        this.helpers.closeQuietly(writer);
+        finally {
+            this.indexLocationLock.readLock().unlock();
+        }
     }
 
     /**
@@ -322,27 +519,67 @@ public class IndexService extends IndexBaseService {
      * NB does not clean up from the facets
      */
     @Override
-    public synchronized void deleteByRepo(RepoResult repo) throws IOException {
+    public void deleteByRepo(RepoResult repo) throws IOException {
         if (repo == null) {
             return;
         }
 
-        Directory dir = FSDirectory.open(this.INDEX_READ_LOCATION);
-
-        Analyzer analyzer = new CodeAnalyzer();
-        IndexWriterConfig iwc = new IndexWriterConfig(analyzer);
-        iwc.setOpenMode(IndexWriterConfig.OpenMode.CREATE_OR_APPEND);
+        this.indexLocationLock.readLock().lock();
 
-        IndexWriter writer = new IndexWriter(dir, iwc);
+        try {
+            var indexReadLocation = this.INDEX_READ_LOCATION;
+            this.deleteSnippetsByRepo(repo);
 
-        writer.deleteDocuments(new Term(Values.REPONAME, repo.getName()));
-        this.helpers.closeQuietly(writer);
+            IndexWriter writer = this.indexWriterManager.getWriter(indexReadLocation);
+            writer.deleteDocuments(new Term(Values.REPONAME, repo.getName()));
+            this.afterWrite(indexReadLocation, true);
+        }
+        finally {
+            this.indexLocationLock.readLock().unlock();
+        }
     }
 
     @Override
-    public synchronized void deleteAll() throws IOException {
-        FileUtils.deleteDirectory(this.INDEX_READ_LOCATION.toFile());
-        FileUtils.deleteDirectory(this.INDEX_WRITE_LOCATION.toFile());
+    public void deleteAll() throws IOException {
+        this.indexLocationLock.writeLock().lock();
+
+        try {
+            this.indexSearcherManager.closeAll();
+            this.indexWriterManager.close(this.INDEX_A_LOCATION);
+            this.indexWriterManager.close(this.INDEX_B_LOCATION);
+            FileUtils.deleteDirectory(this.INDEX_READ_LOCATION.toFile());
+            FileUtils.deleteDirectory(this.INDEX_WRITE_LOCATION.toFile());
+            this.snippetStoreA.deleteAll();
+            this.snippetStoreB.deleteAll();
+        }
+        finally {
+            this.indexLocationLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes the stored snippets for every document in the repository before the documents themselves
+     * are deleted as once they are gone there is no way to know which code ids belonged to it
+     */
+    private void deleteSnippetsByRepo(RepoResult repo) {
+        IndexSearcher searcher = null;
+        var snippetStore = this.getSnippetStore(this.INDEX_READ_LOCATION);
+
+        try {
+            searcher = this.indexSearcherManager.acquire(this.INDEX_READ_LOCATION);
+            var results = searcher.search(new TermQuery(new Term(Values.REPONAME, repo.getName())), Integer.MAX_VALUE);
+
+            for (var hit : results.scoreDocs) {
+                var doc = searcher.doc(hit.doc, Collections.singleton(Values.CODEID));
+                snippetStore.delete(doc.get(Values.CODEID));
+            }
+        }
+        catch (Exception ex) {
+            this.logger.severe(String.format("5c3e8a71::error in class %s exception %s", ex.getClass(), ex.getMessage()));
+        }
+        finally {
+            this.indexSearcherManager.release(searcher);
+        }
     }
 
     @Override
@@ -361,16 +598,24 @@ public class IndexService extends IndexBaseService {
         this.uniqueFileRepoQueue.clear();
         this.uniqueSvnRepoQueue.clear();
 
-        // flip write index
-        this.flipWriteIndex();
+        this.indexLocationLock.writeLock().lock();
 
-        // Delete the new write index locations
         try {
+            // flip write index
+            this.flipWriteIndex();
+
+            // Delete the new write index locations
+            this.indexSearcherManager.close(this.INDEX_WRITE_LOCATION);
+            this.indexWriterManager.close(this.INDEX_WRITE_LOCATION);
             FileUtils.deleteDirectory(this.INDEX_WRITE_LOCATION.toFile());
             FileUtils.deleteDirectory(this.FACET_WRITE_LOCATION.toFile());
+            this.getSnippetStore(this.INDEX_WRITE_LOCATION).deleteAll();
         } catch (IOException ex) {
             this.logger.severe(String.format("c61dc3e1::error in class %s exception %s unable to delete index locations", ex.getClass(), ex.getMessage()));
         }
+        finally {
+            this.indexLocationLock.writeLock().unlock();
+        }
 
         // queue all repos to be parsed
         this.repoJobExit = false; // TODO add check to see if they have all exited needs to be fast!!!!!
@@ -504,17 +749,17 @@ public class IndexService extends IndexBaseService {
     @Override
     public int getIndexedDocumentCount() {
         int numDocs = 0;
-        IndexReader reader = null;
+        IndexSearcher searcher = null;
 
         try {
-            reader = DirectoryReader.open(FSDirectory.open(this.INDEX_READ_LOCATION));
-            numDocs = reader.numDocs();
+            searcher = this.indexSearcherManager.acquire(this.INDEX_READ_LOCATION);
+            numDocs = searcher.getIndexReader().numDocs();
         }
         catch (Exception ex) {
             this.logger.severe(String.format("f02f5a23::error in class %s exception %s unable to delete index locations", ex.getClass(), ex.getMessage()));
         }
         finally {
-            this.helpers.closeQuietly(reader);
+            this.indexSearcherManager.release(searcher);
         }
 
         return numDocs;
@@ -523,11 +768,10 @@ public class IndexService extends IndexBaseService {
     @Override
     public CodeResult getCodeResultByCodeId(String codeId) {
         CodeResult codeResult = null;
-        IndexReader reader = null;
+        IndexSearcher searcher = null;
 
         try {
-            reader = DirectoryReader.open(FSDirectory.open(this.INDEX_READ_LOCATION));
-            IndexSearcher searcher = new IndexSearcher(reader);
+            searcher = this.indexSearcherManager.acquire(this.INDEX_READ_LOCATION);
             Analyzer analyzer = new CodeAnalyzer();
             QueryParser parser = new QueryParser(Values.CONTENTS, analyzer);
 
@@ -544,19 +788,24 @@ public class IndexService extends IndexBaseService {
 
                 List<String> code = new ArrayList<>();
                 try {
-                    code = this.helpers.readFileLinesGuessEncoding(filePath, this.helpers.tryParseInt(Properties.getProperties().getProperty(Values.MAXFILELINEDEPTH, Values.DEFAULTMAXFILELINEDEPTH), Values.DEFAULTMAXFILELINEDEPTH));
+                    code = this.getCodeLines(doc);
                 } catch (Exception ex) {
                     this.logger.info(String.format("4e5f00d0::error in class %s exception %s file appears to be binary, this message should be safe to ignore", ex.getClass(), ex.getMessage()));
                 }
 
                 codeResult = this.createCodeResult(code, filePath, doc, hits[0].doc, hits[0].score);
+
+                var owaspFindings = doc.get(Values.OWASP_FINDINGS);
+                if (owaspFindings != null) {
+                    codeResult.setOwaspResults(this.gson.fromJson(owaspFindings, new TypeToken<ArrayList<OWASPMatchingResult>>(){}.getType()));
+                }
             }
         }
         catch (Exception ex) {
             this.logger.severe(String.format("4e5f00d0::error in class %s exception %s", ex.getClass(), ex.getMessage()));
         }
         finally {
-            this.helpers.closeQuietly(reader);
+            this.indexSearcherManager.release(searcher);
         }
 
         return codeResult;
@@ -572,10 +821,10 @@ public class IndexService extends IndexBaseService {
         var repoPageLimit = 1_000;
         var fileLocations = new ArrayList<String>(repoPageLimit);
         var start = repoPageLimit * page;
+        IndexSearcher searcher = null;
 
         try {
-            var reader = DirectoryReader.open(FSDirectory.open(this.INDEX_READ_LOCATION));
-            var searcher = new IndexSearcher(reader);
+            searcher = this.indexSearcherManager.acquire(this.INDEX_READ_LOCATION);
 
             var analyzer = new CodeAnalyzer();
             var parser = new QueryParser(Values.CONTENTS, analyzer);
@@ -589,12 +838,13 @@ public class IndexService extends IndexBaseService {
                 var doc = searcher.doc(hits[i].doc);
                 fileLocations.add(doc.get(Values.PATH));
             }
-
-            reader.close();
         }
         catch (Exception ex) {
             this.logger.severe(String.format("44df9064::error in class %s exception %s", ex.getClass(), ex.getMessage()));
         }
+        finally {
+            this.indexSearcherManager.release(searcher);
+        }
 
         return fileLocations;
     }
@@ -614,17 +864,17 @@ public class IndexService extends IndexBaseService {
         List<CodeFacetOwner> repoFacetOwners = new ArrayList<>();
         List<CodeFacetLanguage> codeByLines = new ArrayList<>();
 
-        IndexReader reader = null;
+        IndexSearcher searcher = null;
 
         try {
-            reader = DirectoryReader.open(FSDirectory.open(this.INDEX_READ_LOCATION));
-            var searcher = new IndexSearcher(reader);
+            searcher = this.indexSearcherManager.acquire(this.INDEX_READ_LOCATION);
 
             var analyzer = new CodeAnalyzer();
             var parser = new QueryParser(Values.CONTENTS, analyzer);
             var query = parser.parse(Values.REPO_NAME_LITERAL + ":" + this.helpers.replaceForIndex(repoName));
 
-            var results = searcher.search(query, Integer.MAX_VALUE);
+            var facetResults = this.indexFacets.search(searcher, query, Integer.MAX_VALUE, this.getFacetDimensions(Values.LANGUAGENAME, Values.CODEOWNER));
+            var results = facetResults.topDocs;
             var hits = results.scoreDocs;
 
             var linesCount = new HashMap<String, Integer>();
@@ -650,14 +900,14 @@ public class IndexService extends IndexBaseService {
             codeByLines.sort((a, b) -> b.getCount() - a.getCount());
 
             totalFiles = results.totalHits;
-            codeFacetLanguages = this.getLanguageFacetResults(searcher, reader, query);
-            repoFacetOwners = this.getOwnerFacetResults(searcher, reader, query);
+            codeFacetLanguages = this.getLanguageFacetResults(facetResults.get(Values.LANGUAGENAME));
+            repoFacetOwners = this.getOwnerFacetResults(facetResults.get(Values.CODEOWNER));
         }
         catch (Exception ex) {
             this.logger.severe(String.format("61b491eb::error in class %s exception %s", ex.getClass(), ex.getMessage()));
         }
         finally {
-            this.helpers.closeQuietly(reader);
+            this.indexSearcherManager.release(searcher);
         }
 
         return new ProjectStats(totalCodeLines, totalFiles, codeFacetLanguages, codeByLines, repoFacetOwners);
@@ -675,12 +925,10 @@ public class IndexService extends IndexBaseService {
             return new SearchResult(0, 0, Values.EMPTYSTRING, codeResults, null, null, null, null, null);
         }
 
-
-        IndexReader reader = null;
+        IndexSearcher searcher = null;
 
         try {
-            reader = DirectoryReader.open(FSDirectory.open(this.INDEX_READ_LOCATION));
-            IndexSearcher searcher = new IndexSearcher(reader);
+            searcher = this.indexSearcherManager.acquire(this.INDEX_READ_LOCATION);
 
             Analyzer analyzer = new CodeAnalyzer();
             QueryParser parser = new QueryParser(Values.CONTENTS, analyzer);
@@ -704,7 +952,7 @@ public class IndexService extends IndexBaseService {
             this.logger.severe(String.format("1c90b7f9::error in class %s exception %s", ex.getClass(), ex.getMessage()));
         }
         finally {
-            this.helpers.closeQuietly(reader);
+            this.indexSearcherManager.release(searcher);
         }
 
         codeResults.sort(Comparator.comparing(x -> x.displayLocation));
@@ -723,7 +971,7 @@ public class IndexService extends IndexBaseService {
 
         var searchResult = new SearchResult();
         this.statsService.incrementSearchCount();
-        IndexReader reader = null;
+        IndexSearcher searcher = null;
 
         // Required to ensure that results work the way we expect for the index
         if (!isLiteral) {
@@ -733,8 +981,7 @@ public class IndexService extends IndexBaseService {
         queryString += this.buildFacets(facets);
 
         try {
-            reader = DirectoryReader.open(FSDirectory.open(this.INDEX_READ_LOCATION));
-            IndexSearcher searcher = new IndexSearcher(reader);
+            searcher = this.indexSearcherManager.acquire(this.INDEX_READ_LOCATION);
 
             Analyzer analyzer = new CodeAnalyzer();
 
@@ -746,18 +993,215 @@ public class IndexService extends IndexBaseService {
             this.logger.info("14d57e05::searching for: " + query.toString(Values.CONTENTS));
             this.logger.searchLog("a8895274::query " + query.toString(Values.CONTENTS) + " page " + page);
 
-            searchResult = this.doPagingSearch(reader, searcher, query, page);
+            searchResult = this.doPagingSearch(searcher, query, page);
         }
         catch (Exception ex) {
             this.logger.severe(String.format("bc93074f::error in class %s exception %s", ex.getClass(), ex.getMessage()));
         }
         finally {
-            this.helpers.closeQuietly(reader);
+            this.indexSearcherManager.release(searcher);
+        }
+
+        return searchResult;
+    }
+
+    /**
+     * Finds documents with a line matching the regular expression. The trigram index narrows down the documents
+     * that could match and each candidate is then checked line by line, so totals are the number of documents
+     * confirmed to match out of at most the configured number of candidates. Checking stops once the configured
+     * time has passed, even part way through a line, returning whatever matched so far.
+     */
+    @Override
+    public SearchResult regexSearch(String regex, HashMap<String, String[]> facets, int page) {
+        var searchResult = new SearchResult();
+        this.statsService.incrementSearchCount();
+        IndexSearcher searcher = null;
+
+        Pattern pattern;
+        try {
+            pattern = Pattern.compile(regex);
+        } catch (PatternSyntaxException ex) {
+            this.logger.info(String.format("5f0c2a91::invalid regex %s %s", regex, ex.getDescription()));
+            return searchResult;
+        }
+
+        try {
+            searcher = this.indexSearcherManager.acquire(this.INDEX_READ_LOCATION);
+
+            var plan = this.INDEX_TRIGRAMS ? this.regexTrigramPlanner.plan(regex) : RegexTrigramPlanner.Plan.all();
+            var query = new BooleanQuery.Builder()
+                    .add(new ConstantScoreQuery(this.buildTrigramQuery(plan)), BooleanClause.Occur.MUST);
+
+            var filters = this.buildFacets(facets);
+            if (!filters.isEmpty()) {
+                var parser = new QueryParser(Values.CONTENTS, new CodeAnalyzer());
+                query.add(parser.parse("*:*" + filters), BooleanClause.Occur.FILTER);
+            }
+
+            this.logger.info("0e5d7c33::regex searching for: " + regex + " using " + plan);
+            this.logger.searchLog("7b2d94e0::regex " + regex + " page " + page);
+
+            var topDocsCollector = TopScoreDocCollector.create(this.NO_PAGES_LIMIT * this.PAGE_LIMIT);
+            var facetsCollector = new FacetsCollector();
+            var regexCollector = new RegexCollector(MultiCollector.wrap(topDocsCollector, facetsCollector), pattern, this.REGEX_MAX_CANDIDATES, this.REGEX_TIMEOUT_MILLIS);
+            searcher.search(query.build(), regexCollector);
+
+            if (regexCollector.timedOut) {
+                this.logger.info(String.format("9b4e27c1::regex %s ran out of time after %d candidates returning partial results", regex, regexCollector.candidates));
+            }
+
+            var facetResults = new IndexFacets.Result(topDocsCollector.topDocs(), this.indexFacets.getTopChildren(searcher.getIndexReader(), facetsCollector,
+                    this.getSearchFacetDimensions()));
+
+            searchResult = this.buildSearchResult(searcher, facetResults, regex, page);
+        }
+        catch (Exception ex) {
+            this.logger.severe(String.format("d2b7f3a6::error in class %s exception %s", ex.getClass(), ex.getMessage()));
+        }
+        finally {
+            this.indexSearcherManager.release(searcher);
         }
 
         return searchResult;
     }
 
+    /**
+     * Converts the plan into a query against the trigram field where ALL matches every document
+     */
+    private Query buildTrigramQuery(RegexTrigramPlanner.Plan plan) {
+        switch (plan.op) {
+            case TRIGRAM:
+                return new TermQuery(new Term(Values.CONTENTS_TRIGRAM, plan.trigram));
+            case AND:
+            case OR:
+                var builder = new BooleanQuery.Builder();
+                var occur = plan.op == RegexTrigramPlanner.Plan.Op.AND ? BooleanClause.Occur.MUST : BooleanClause.Occur.SHOULD;
+
+                for (var child : plan.children) {
+                    builder.add(this.buildTrigramQuery(child), occur);
+                }
+
+                return builder.build();
+            default:
+                return new MatchAllDocsQuery();
+        }
+    }
+
+    /**
+     * Only passes documents on to be collected if a line in them matches the pattern, stopping once the
+     * maximum number of candidates have been checked as each check needs the document contents, or once
+     * the deadline has passed as a pattern can take exponential time on a single line
+     */
+    private class RegexCollector extends FilterCollector {
+        private final Pattern pattern;
+        private final int maxCandidates;
+        private final long deadline;
+        private int candidates = 0;
+        private boolean timedOut = false;
+
+        RegexCollector(Collector collector, Pattern pattern, int maxCandidates, int timeoutMillis) {
+            super(collector);
+            this.pattern = pattern;
+            this.maxCandidates = maxCandidates;
+            this.deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        }
+
+        @Override
+        public LeafCollector getLeafCollector(LeafReaderContext context) throws IOException {
+            if (this.candidates >= this.maxCandidates || this.timedOut) {
+                throw new CollectionTerminatedException();
+            }
+
+            var leafReader = context.reader();
+
+            return new FilterLeafCollector(super.getLeafCollector(context)) {
+                @Override
+                public void collect(int doc) throws IOException {
+                    if (candidates++ >= maxCandidates) {
+                        throw new CollectionTerminatedException();
+                    }
+
+                    if (System.nanoTime() - deadline > 0) {
+                        timedOut = true;
+                        throw new CollectionTerminatedException();
+                    }
+
+                    boolean matched;
+                    try {
+                        matched = isMatch(leafReader.document(doc));
+                    } catch (DeadlineExceededException ex) {
+                        timedOut = true;
+                        throw new CollectionTerminatedException();
+                    }
+
+                    if (matched) {
+                        super.collect(doc);
+                    }
+                }
+            };
+        }
+
+        private boolean isMatch(Document doc) {
+            try {
+                for (var line : getCodeLines(doc)) {
+                    if (this.pattern.matcher(new DeadlineCharSequence(line, this.deadline)).find()) {
+                        return true;
+                    }
+                }
+            } catch (IOException ex) {
+                logger.severe(String.format("4c8e16d0::error in class %s exception %s", ex.getClass(), ex.getMessage()));
+            }
+
+            return false;
+        }
+    }
+
+    /**
+     * Wraps a line being matched so that the matcher, which reads every character through charAt, gives up by
+     * throwing once the deadline has passed rather than running on in a catastrophically backtracking pattern
+     */
+    static class DeadlineCharSequence implements CharSequence {
+        private final CharSequence inner;
+        private final long deadline;
+        private int reads = 0;
+
+        DeadlineCharSequence(CharSequence inner, long deadline) {
+            this.inner = inner;
+            this.deadline = deadline;
+        }
+
+        @Override
+        public char charAt(int index) {
+            // Reading the clock is far slower than a character so only check every so often
+            if ((++this.reads & 0xFFF) == 0 && System.nanoTime() - this.deadline > 0) {
+                throw new DeadlineExceededException();
+            }
+
+            return this.inner.charAt(index);
+        }
+
+        @Override
+        public int length() {
+            return this.inner.length();
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return new DeadlineCharSequence(this.inner.subSequence(start, end), this.deadline);
+        }
+
+        @Override
+        public String toString() {
+            return this.inner.toString();
+        }
+    }
+
+    static class DeadlineExceededException extends RuntimeException {
+        DeadlineExceededException() {
+            super(null, null, false, false);
+        }
+    }
+
     public String buildFacets(HashMap<String, String[]> facets) {
         if (facets == null) {
             return Values.EMPTYSTRING;
@@ -797,6 +1241,15 @@ public class IndexService extends IndexBaseService {
                 case "fl":
                     filters.append(" && (fl:").append(this.helpers.replaceForIndex(facets.get(key)[0])).append("*)");
                     break;
+                case "owasp":
+                    List<String> owaspList = Arrays.stream(facets.get(key))
+                            .map((s) -> Values.OWASP_NAME_LITERAL + ":" + QueryParser.escape(this.helpers.replaceForIndex(s)))
+                            .collect(Collectors.toList());
+
+                    if (!owaspList.isEmpty()) {
+                        filters.append(" && (").append(StringUtils.join(owaspList, " || ")).append(")");
+                    }
+                    break;
                 case "src":
                     List<String> srcList = Arrays.stream(facets.get(key))
                             .map((s) -> Values.SOURCE + ":" + QueryParser.escape(this.helpers.replaceForIndex(s)))
@@ -816,7 +1269,21 @@ public class IndexService extends IndexBaseService {
 
     @Override
     public synchronized void flipReadIndex() {
-        this.INDEX_READ_LOCATION = this.INDEX_READ_LOCATION.equals(this.INDEX_A_LOCATION) ? this.INDEX_B_LOCATION : this.INDEX_A_LOCATION;
+        this.indexLocationLock.writeLock().lock();
+
+        try {
+            // Searches already running against the old index keep their searcher until they release it
+            this.indexSearcherManager.close(this.INDEX_READ_LOCATION);
+            this.INDEX_READ_LOCATION = this.INDEX_READ_LOCATION.equals(this.INDEX_A_LOCATION) ? this.INDEX_B_LOCATION : this.INDEX_A_LOCATION;
+
+            // Anything written to the new read location needs to be committed in case near real time is disabled
+            this.indexWriterManager.commit(this.INDEX_READ_LOCATION, true);
+            this.indexSearcherManager.refresh(this.INDEX_READ_LOCATION);
+            this.closeUnusedLocations();
+        }
+        finally {
+            this.indexLocationLock.writeLock().unlock();
+        }
 
         if (this.INDEX_READ_LOCATION.equals(this.INDEX_A_LOCATION)) {
             this.data.saveData(Values.INDEX_READ, Values.INDEX_A);
@@ -827,8 +1294,16 @@ public class IndexService extends IndexBaseService {
 
     @Override
     public synchronized void flipWriteIndex() {
-        this.INDEX_WRITE_LOCATION = this.INDEX_WRITE_LOCATION.equals(this.INDEX_A_LOCATION) ? this.INDEX_B_LOCATION : this.INDEX_A_LOCATION;
-        this.FACET_WRITE_LOCATION = this.FACET_WRITE_LOCATION.equals(this.FACET_A_LOCATION) ? this.FACET_B_LOCATION : this.FACET_A_LOCATION;
+        this.indexLocationLock.writeLock().lock();
+
+        try {
+            this.INDEX_WRITE_LOCATION = this.INDEX_WRITE_LOCATION.equals(this.INDEX_A_LOCATION) ? this.INDEX_B_LOCATION : this.INDEX_A_LOCATION;
+            this.FACET_WRITE_LOCATION = this.FACET_WRITE_LOCATION.equals(this.FACET_A_LOCATION) ? this.FACET_B_LOCATION : this.FACET_A_LOCATION;
+            this.closeUnusedLocations();
+        }
+        finally {
+            this.indexLocationLock.writeLock().unlock();
+        }
 
         if (this.INDEX_WRITE_LOCATION.equals(this.INDEX_A_LOCATION)) {
             this.data.saveData(Values.INDEX_WRITE, Values.INDEX_A);
@@ -842,7 +1317,7 @@ public class IndexService extends IndexBaseService {
      * inside the settings page mute the index for a while
      */
     private boolean shouldBackOff() {
-        Double loadValue = this.helpers.tryParseDouble(this.data.getDataByName(Values.BACKOFFVALUE, Values.DEFAULTBACKOFFVALUE), Values.DEFAULTBACKOFFVALUE);
+        var loadValue = this.backoffValue;
         Double loadAverage = this.helpers.tryParseDouble(this.statsService.getLoadAverage(), "0");
 
         if (loadValue <= 0) {
@@ -861,8 +1336,19 @@ public class IndexService extends IndexBaseService {
      * Only really used internally but does the heavy lifting of actually converting the index document on disk to the
      * format used internally including reading the file from disk.
      */
-    private SearchResult doPagingSearch(IndexReader reader, IndexSearcher searcher, Query query, int page) throws IOException {
-        TopDocs results = searcher.search(query, this.NO_PAGES_LIMIT * this.PAGE_LIMIT); // 20 pages worth of documents
+    private SearchResult doPagingSearch(IndexSearcher searcher, Query query, int page) throws IOException {
+        // 20 pages worth of documents collected in the same pass as every facet
+        IndexFacets.Result facetResults = this.indexFacets.search(searcher, query, this.NO_PAGES_LIMIT * this.PAGE_LIMIT,
+                this.getSearchFacetDimensions());
+
+        return this.buildSearchResult(searcher, facetResults, query.toString(), page);
+    }
+
+    /**
+     * Pages through the top documents and facets already found converting them into the result returned
+     */
+    private SearchResult buildSearchResult(IndexSearcher searcher, IndexFacets.Result facetResults, String query, int page) throws IOException {
+        TopDocs results = facetResults.topDocs;
         ScoreDoc[] hits = results.scoreDocs;
 
         int numTotalHits = results.totalHits;
@@ -885,7 +1371,7 @@ public class IndexService extends IndexBaseService {
             if (filePath != null) {
                 List<String> code = new ArrayList<>();
                 try {
-                    code = this.helpers.readFileLinesGuessEncoding(filePath, this.helpers.tryParseInt(Properties.getProperties().getProperty(Values.MAXFILELINEDEPTH, Values.DEFAULTMAXFILELINEDEPTH), Values.DEFAULTMAXFILELINEDEPTH));
+                    code = this.getCodeLines(doc);
                 }
                 catch (Exception ex) {
                     this.logger.severe(String.format("cbd1868a::error in class %s exception %s", ex.getClass(), ex.getMessage()));
@@ -898,12 +1384,49 @@ public class IndexService extends IndexBaseService {
             }
         }
 
-        List<CodeFacetLanguage> codeFacetLanguages = this.getLanguageFacetResults(searcher, reader, query);
-        List<CodeFacetRepo> repoFacetLanguages = this.getRepoFacetResults(searcher, reader, query);
-        List<CodeFacetOwner> repoFacetOwner= this.getOwnerFacetResults(searcher, reader, query);
-        List<CodeFacetSource> repoFacetSource= this.getSourceFacetResults(searcher, reader, query);
+        List<CodeFacetLanguage> codeFacetLanguages = this.getLanguageFacetResults(facetResults.get(Values.LANGUAGENAME));
+        List<CodeFacetRepo> repoFacetLanguages = this.getRepoFacetResults(facetResults.get(Values.REPONAME));
+        List<CodeFacetOwner> repoFacetOwner= this.getOwnerFacetResults(facetResults.get(Values.CODEOWNER));
+        List<CodeFacetSource> repoFacetSource= this.getSourceFacetResults(facetResults.get(Values.SOURCE));
+
+        var searchResult = new SearchResult(numTotalHits, page, query, codeResults, pages, codeFacetLanguages, repoFacetLanguages, repoFacetOwner, repoFacetSource);
+        searchResult.setOwaspFacetResults(this.getOwaspFacetResults(facetResults.get(Values.OWASP)));
+
+        return searchResult;
+    }
+
+    /**
+     * Returns the lines of the document preferring the snippet store written at index time and only falling
+     * back to reading the file from disk if the snippet is missing or was built from a different version.
+     * Files of git repositories indexed without a working tree are read from the object database instead.
+     */
+    private List<String> getCodeLines(Document doc) throws IOException {
+        if (this.SNIPPET_STORE) {
+            var lines = this.getSnippetStore(this.INDEX_READ_LOCATION).getLines(doc.get(Values.CODEID), doc.get(Values.MD5HASH), 0, this.MAX_FILE_LINE_DEPTH);
+
+            if (lines.isPresent()) {
+                return lines.get();
+            }
+        }
+
+        var path = doc.get(Values.PATH);
+        if (this.GIT_BARE_INDEX && !Files.exists(Paths.get(path))) {
+            try {
+                var lines = this.gitService.readFileLinesFromRepository(this.REPOSITORY_LOCATION, path, this.MAX_FILE_LINE_DEPTH);
+
+                if (lines.isPresent()) {
+                    return lines.get();
+                }
+            } catch (IOException | RuntimeException ex) {
+                this.logger.severe(String.format("7d41c2b9::error in class %s exception %s unable to read %s from the repository", ex.getClass(), ex.getMessage(), path));
+            }
+        }
+
+        return this.helpers.readFileLinesGuessEncoding(path, this.MAX_FILE_LINE_DEPTH);
+    }
 
-        return new SearchResult(numTotalHits, page, query.toString(), codeResults, pages, codeFacetLanguages, repoFacetLanguages, repoFacetOwner, repoFacetSource);
+    private SnippetStore getSnippetStore(Path indexLocation) {
+        return this.INDEX_A_LOCATION.equals(indexLocation) ? this.snippetStoreA : this.snippetStoreB;
     }
 
     private CodeResult createCodeResult(List<String> code, String filePath, Document doc, int docId, float score) {
@@ -934,119 +1457,113 @@ public class IndexService extends IndexBaseService {
 
 
     /**
-     * Returns the matching language facets for a given query
+     * Dimensions shown with search results, OWASP only being counted when it is indexed as otherwise
+     * there is nothing to find for it
      */
-    private List<CodeFacetLanguage> getLanguageFacetResults(IndexSearcher searcher, IndexReader reader, Query query) {
-        List<CodeFacetLanguage> codeFacetLanguages = new ArrayList<>();
+    private LinkedHashMap<String, Integer> getSearchFacetDimensions() {
+        if (this.OWASP_INDEX) {
+            return this.getFacetDimensions(Values.LANGUAGENAME, Values.REPONAME, Values.CODEOWNER, Values.SOURCE, Values.OWASP);
+        }
 
-        try {
-            SortedSetDocValuesReaderState state = new DefaultSortedSetDocValuesReaderState(reader, Values.LANGUAGENAME);
-            FacetsCollector fc = new FacetsCollector();
-            FacetsCollector.search(searcher, query, 10, fc);
-            Facets facets = new SortedSetDocValuesFacetCounts(state, fc);
-            FacetResult result = facets.getTopChildren(this.CHILD_FACET_LIMIT, Values.LANGUAGENAME);
+        return this.getFacetDimensions(Values.LANGUAGENAME, Values.REPONAME, Values.CODEOWNER, Values.SOURCE);
+    }
 
-            if (result != null) {
-                int stepThru = result.childCount > this.CHILD_FACET_LIMIT ? this.CHILD_FACET_LIMIT : result.childCount;
+    /**
+     * Every dimension requested uses the configured child limit
+     */
+    private LinkedHashMap<String, Integer> getFacetDimensions(String... dimensions) {
+        var facetDimensions = new LinkedHashMap<String, Integer>();
 
-                for (int i = 0; i < stepThru; i++) {
-                    LabelAndValue lv = result.labelValues[i];
+        for (var dimension : dimensions) {
+            facetDimensions.put(dimension, this.CHILD_FACET_LIMIT);
+        }
 
-                    if (lv != null && lv.value != null) {
-                        codeFacetLanguages.add(new CodeFacetLanguage(lv.label, lv.value.intValue()));
-                    }
+        return facetDimensions;
+    }
+
+    /**
+     * Converts the language facet for a query into the format used by the UI
+     */
+    private List<CodeFacetLanguage> getLanguageFacetResults(FacetResult result) {
+        List<CodeFacetLanguage> codeFacetLanguages = new ArrayList<>();
+
+        if (result != null) {
+            for (LabelAndValue lv : result.labelValues) {
+                if (lv != null && lv.value != null) {
+                    codeFacetLanguages.add(new CodeFacetLanguage(lv.label, lv.value.intValue()));
                 }
             }
-        } catch (Exception ignore) {}
+        }
 
         return codeFacetLanguages;
     }
 
     /**
-     * Returns the matching repository facets for a given query
+     * Converts the repository facet for a query into the format used by the UI
      */
-    private List<CodeFacetRepo> getRepoFacetResults(IndexSearcher searcher, IndexReader reader, Query query) {
+    private List<CodeFacetRepo> getRepoFacetResults(FacetResult result) {
         List<CodeFacetRepo> codeFacetRepo = new ArrayList<>();
 
-        try {
-            SortedSetDocValuesReaderState state = new DefaultSortedSetDocValuesReaderState(reader, Values.REPONAME);
-            FacetsCollector fc = new FacetsCollector();
-            FacetsCollector.search(searcher, query, 10, fc);
-            Facets facets = new SortedSetDocValuesFacetCounts(state, fc);
-            FacetResult result = facets.getTopChildren(this.CHILD_FACET_LIMIT, Values.REPONAME);
-
-            if (result != null) {
-                int stepThru = result.childCount > this.CHILD_FACET_LIMIT ? this.CHILD_FACET_LIMIT : result.childCount;
-
-                for (int i = 0; i < stepThru; i++) {
-                    LabelAndValue lv = result.labelValues[i];
-
-                    if (lv != null && lv.value != null) {
-                        codeFacetRepo.add(new CodeFacetRepo(lv.label, lv.value.intValue()));
-                    }
+        if (result != null) {
+            for (LabelAndValue lv : result.labelValues) {
+                if (lv != null && lv.value != null) {
+                    codeFacetRepo.add(new CodeFacetRepo(lv.label, lv.value.intValue()));
                 }
             }
-        } catch (Exception ignore) {}
+        }
 
         return codeFacetRepo;
     }
 
     /**
-     * Returns the matching owner facets for a given query
+     * Converts the owner facet for a query into the format used by the UI
      */
-    private List<CodeFacetOwner> getOwnerFacetResults(IndexSearcher searcher, IndexReader reader, Query query) {
-        List<CodeFacetOwner> codeFacetRepo = new ArrayList<>();
-
-        try {
-            SortedSetDocValuesReaderState state = new DefaultSortedSetDocValuesReaderState(reader, Values.CODEOWNER);
-            FacetsCollector fc = new FacetsCollector();
-            FacetsCollector.search(searcher, query, 10, fc);
-            Facets facets = new SortedSetDocValuesFacetCounts(state, fc);
-            FacetResult result = facets.getTopChildren(this.CHILD_FACET_LIMIT, Values.CODEOWNER);
-
-            if (result != null) {
-                int stepThrough = result.childCount > this.CHILD_FACET_LIMIT ? this.CHILD_FACET_LIMIT : result.childCount;
+    private List<CodeFacetOwner> getOwnerFacetResults(FacetResult result) {
+        List<CodeFacetOwner> codeFacetOwner = new ArrayList<>();
 
-                for (int i = 0; i < stepThrough; i++) {
-                    LabelAndValue lv = result.labelValues[i];
-
-                    if (lv != null && lv.value != null) {
-                        codeFacetRepo.add(new CodeFacetOwner(lv.label, lv.value.intValue()));
-                    }
+        if (result != null) {
+            for (LabelAndValue lv : result.labelValues) {
+                if (lv != null && lv.value != null) {
+                    codeFacetOwner.add(new CodeFacetOwner(lv.label, lv.value.intValue()));
                 }
             }
-        } catch (Exception ignore) {}
+        }
 
-        return codeFacetRepo;
+        return codeFacetOwner;
     }
 
     /**
-     * Returns the matching source facets for a given query
+     * Converts the source facet for a query into the format used by the UI
      */
-    private List<CodeFacetSource> getSourceFacetResults(IndexSearcher searcher, IndexReader reader, Query query) {
+    private List<CodeFacetSource> getSourceFacetResults(FacetResult result) {
         List<CodeFacetSource> codeFacetSource = new ArrayList<>();
 
-        try {
-            SortedSetDocValuesReaderState state = new DefaultSortedSetDocValuesReaderState(reader, Values.SOURCE);
-            FacetsCollector fc = new FacetsCollector();
-            FacetsCollector.search(searcher, query, 10, fc);
-            Facets facets = new SortedSetDocValuesFacetCounts(state, fc);
-            FacetResult result = facets.getTopChildren(this.CHILD_FACET_LIMIT, Values.SOURCE);
+        if (result != null) {
+            for (LabelAndValue lv : result.labelValues) {
+                if (lv != null && lv.value != null) {
+                    codeFacetSource.add(new CodeFacetSource(lv.label, lv.value.intValue()));
+                }
+            }
+        }
 
-            if (result != null) {
-                int stepThrough = result.childCount > this.CHILD_FACET_LIMIT ? this.CHILD_FACET_LIMIT : result.childCount;
+        return codeFacetSource;
+    }
 
-                for (int i = 0; i < stepThrough; i++) {
-                    LabelAndValue lv = result.labelValues[i];
+    /**
+     * Converts the OWASP facet for a query into the format used by the UI
+     */
+    private List<CodeFacetOwasp> getOwaspFacetResults(FacetResult result) {
+        List<CodeFacetOwasp> codeFacetOwasp = new ArrayList<>();
 
-                    if (lv != null && lv.value != null) {
-                        codeFacetSource.add(new CodeFacetSource(lv.label, lv.value.intValue()));
-                    }
+        if (result != null) {
+            for (LabelAndValue lv : result.labelValues) {
+                if (lv != null && lv.value != null) {
+                    codeFacetOwasp.add(new CodeFacetOwasp(lv.label, lv.value.intValue()));
                 }
             }
-        } catch (Exception ignore) {}
+        }
 
-        return codeFacetSource;
+        return codeFacetOwasp;
     }
 
     /**
@@ -1070,11 +1587,21 @@ public class IndexService extends IndexBaseService {
      * the index queue.
      */
     private boolean shouldRepoJobPause() {
-        int indexQueueSize = this.codeIndexDocumentQueue.size();
+        if (this.codeIndexDocumentQueue instanceof CodeIndexSpool) {
+            // Documents waiting in the spool are on disk so only how much space they take matters
+            var spool = (CodeIndexSpool) this.codeIndexDocumentQueue;
 
-        if (indexQueueSize > MAX_INDEX_SIZE) {
-            this.logger.info("08d6e23a::indexqueuesize " + indexQueueSize + " larger than " + MAX_INDEX_SIZE);
-            return true;
+            if (spool.isFull()) {
+                this.logger.info("4c1e8b0d::index spool size " + spool.getSizeBytes() + " bytes is full");
+                return true;
+            }
+        } else {
+            int indexQueueSize = this.codeIndexDocumentQueue.size();
+
+            if (indexQueueSize > MAX_INDEX_SIZE) {
+                this.logger.info("08d6e23a::indexqueuesize " + indexQueueSize + " larger than " + MAX_INDEX_SIZE);
+                return true;
+            }
         }
 
         if (this.codeIndexLinesCount > MAX_LINES_INDEX_SIZE) {
@@ -1084,4 +1611,14 @@ public class IndexService extends IndexBaseService {
 
         return false;
     }
-}
\ No newline at end of file
+
+    private static class SpoolWritten {
+        private final Path indexLocation;
+        private final CodeIndexSpool.Position position;
+
+        private SpoolWritten(Path indexLocation, CodeIndexSpool.Position position) {
+            this.indexLocation = indexLocation;
+            this.position = position;
+        }
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright (c) 2016 Boyter Online Services
+ *
+ * Use of this software is governed by the Fair Source License included
+ * in the LICENSE.TXT file, but will be eventually open under GNU General Public License Version 3
+ * see the README.md for when this clause will take effect
+ *
+ * Version 1.3.15
+ */
+
+package com.searchcode.app.service.index;
+
+import com.searchcode.app.config.Values;
+import com.searchcode.app.util.CodeAnalyzer;
+import com.searchcode.app.util.Helpers;
+import com.searchcode.app.util.LoggerWrapper;
+import com.searchcode.app.util.Properties;
+import org.apache.lucene.index.*;
+import org.apache.lucene.store.AlreadyClosedException;
+import org.apache.lucene.store.FSDirectory;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps a single long lived IndexWriter open for each index location rather than opening and closing one
+ * for every batch of documents which forces a flush and commit each time. IndexWriter is thread safe so
+ * any number of threads may add documents through the same writer concurrently.
+ * Lucene only allows one writer per directory, so this should be shared through the Singleton and anything
+ * writing to the index must go through it.
+ * Commits happen at most every commit interval unless forced, with near real time searchers used so that
+ * documents are searchable before they are committed.
+ * Whoever creates the manager is responsible for calling closeAll, the shared instance does so on shutdown.
+ */
+public class IndexWriterManager {
+
+    private final LoggerWrapper logger;
+    private final double RAM_BUFFER_SIZE_MB;
+    private final String MERGE_POLICY;
+    private final long COMMIT_INTERVAL_MILLIS;
+    private final boolean NEAR_REAL_TIME;
+
+    private final ConcurrentHashMap<Path, IndexWriter> indexWriters = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Path, Long> lastCommits = new ConcurrentHashMap<>();
+
+    public IndexWriterManager(Helpers helpers, LoggerWrapper logger) {
+        this(helpers, logger, Properties.getProperties());
+    }
+
+    public IndexWriterManager(Helpers helpers, LoggerWrapper logger, java.util.Properties properties) {
+        this.logger = logger;
+        this.RAM_BUFFER_SIZE_MB = helpers.tryParseDouble(properties.getProperty(Values.INDEX_RAM_BUFFER_SIZE_MB, Values.DEFAULT_INDEX_RAM_BUFFER_SIZE_MB), Values.DEFAULT_INDEX_RAM_BUFFER_SIZE_MB);
+        this.MERGE_POLICY = properties.getProperty(Values.INDEX_MERGE_POLICY, Values.DEFAULT_INDEX_MERGE_POLICY);
+        this.COMMIT_INTERVAL_MILLIS = 1_000L * helpers.tryParseInt(properties.getProperty(Values.INDEX_COMMIT_INTERVAL, Values.DEFAULT_INDEX_COMMIT_INTERVAL), Values.DEFAULT_INDEX_COMMIT_INTERVAL);
+        this.NEAR_REAL_TIME = Boolean.parseBoolean(properties.getProperty(Values.INDEX_NEAR_REAL_TIME, Values.DEFAULT_INDEX_NEAR_REAL_TIME));
+    }
+
+    public boolean isNearRealTime() {
+        return this.NEAR_REAL_TIME;
+    }
+
+    /**
+     * Returns the writer for the location opening it if required which will create the index if it does not exist
+     */
+    public IndexWriter getWriter(Path indexLocation) throws IOException {
+        var indexWriter = this.indexWriters.get(indexLocation);
+
+        if (indexWriter != null && indexWriter.isOpen()) {
+            return indexWriter;
+        }
+
+        return this.openWriter(indexLocation);
+    }
+
+    /**
+     * Returns the writer for the location only if one is already open
+     */
+    public IndexWriter getOpenWriter(Path indexLocation) {
+        var indexWriter = this.indexWriters.get(indexLocation);
+
+        if (indexWriter != null && indexWriter.isOpen()) {
+            return indexWriter;
+        }
+
+        return null;
+    }
+
+    /**
+     * Commits changes for the location if there are any and either the commit interval has passed or
+     * the commit is forced. Returns true if a commit happened.
+     */
+    public boolean commit(Path indexLocation, boolean force) {
+        var indexWriter = this.getOpenWriter(indexLocation);
+
+        if (indexWriter == null || !indexWriter.hasUncommittedChanges()) {
+            return false;
+        }
+
+        var lastCommit = this.lastCommits.getOrDefault(indexLocation, 0L);
+        if (!force && System.currentTimeMillis() - lastCommit < this.COMMIT_INTERVAL_MILLIS) {
+            return false;
+        }
+
+        try {
+            indexWriter.commit();
+            this.lastCommits.put(indexLocation, System.currentTimeMillis());
+            return true;
+        } catch (IOException | AlreadyClosedException ex) {
+            this.logger.severe(String.format("a3d17e64::error in class %s exception %s", ex.getClass(), ex.getMessage()));
+        }
+
+        return false;
+    }
+
+    /**
+     * Commits and closes the writer for the location. Needs to be called before the location is deleted
+     * or when it is no longer being written to after the index has been flipped.
+     */
+    public synchronized void close(Path indexLocation) {
+        var indexWriter = this.indexWriters.remove(indexLocation);
+        this.lastCommits.remove(indexLocation);
+
+        if (indexWriter == null) {
+            return;
+        }
+
+        try {
+            indexWriter.close();
+        } catch (IOException | AlreadyClosedException ex) {
+            this.logger.severe(String.format("0b9e4c2d::error in class %s exception %s", ex.getClass(), ex.getMessage()));
+        }
+
+        // The writer does not close the directory it was given so it has to be closed here once the writer is done
+        try {
+            indexWriter.getDirectory().close();
+        } catch (IOException ex) {
+            this.logger.severe(String.format("7c2e95a4::error in class %s exception %s unable to close index directory %s", ex.getClass(), ex.getMessage(), indexLocation));
+        }
+    }
+
+    public synchronized void closeAll() {
+        for (var indexLocation : this.indexWriters.keySet()) {
+            this.close(indexLocation);
+        }
+    }
+
+    private synchronized IndexWriter openWriter(Path indexLocation) throws IOException {
+        var indexWriter = this.indexWriters.get(indexLocation);
+
+        if (indexWriter != null && indexWriter.isOpen()) {
+            return indexWriter;
+        }
+
+        var indexWriterConfig = new IndexWriterConfig(new CodeAnalyzer());
+        indexWriterConfig.setOpenMode(IndexWriterConfig.OpenMode.CREATE_OR_APPEND);
+        indexWriterConfig.setRAMBufferSizeMB(this.RAM_BUFFER_SIZE_MB);
+        indexWriterConfig.setMergePolicy(this.getMergePolicy());
+
+        var directory = FSDirectory.open(indexLocation);
+
+        try {
+            indexWriter = new IndexWriter(directory, indexWriterConfig);
+        } catch (IOException | RuntimeException ex) {
+            directory.close();
+            throw ex;
+        }
+
+        this.indexWriters.put(indexLocation, indexWriter);
+        this.lastCommits.put(indexLocation, System.currentTimeMillis());
+
+        return indexWriter;
+    }
+
+    private MergePolicy getMergePolicy() {
+        switch (this.MERGE_POLICY.toLowerCase()) {
+            case "log_byte_size":
+                return new LogByteSizeMergePolicy();
+            case "log_doc":
+                return new LogDocMergePolicy();
+            case "tiered":
+            default:
+                return new TieredMergePolicy();
+        }
+    }
+}
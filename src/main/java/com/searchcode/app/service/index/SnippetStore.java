@@ -0,0 +1,250 @@
+/*
+ * Copyright (c) 2016 Boyter Online Services
+ *
+ * Use of this software is governed by the Fair Source License included
+ * in the LICENSE.TXT file, but will be eventually open under GNU General Public License Version 3
+ * see the README.md for when this clause will take effect
+ *
+ * Version 1.3.15
+ */
+
+package com.searchcode.app.service.index;
+
+import com.searchcode.app.util.LoggerWrapper;
+import org.apache.commons.io.FileUtils;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Stores the content of each indexed document keyed by its code id so that search results can be built
+ * without going back to the repository checkout, which involves guessing the encoding and reading the file
+ * char by char. Each document is written to its own file containing the md5 of the file it was built from,
+ * a table of line offsets and the lines themselves compressed in fixed size blocks. Reading a window of
+ * lines only needs to inflate the blocks covering that window.
+ *
+ * File layout
+ * int version, UTF md5, int line count, int lines per block, int block count
+ * for each block: int compressed length, int uncompressed length
+ * for each line: int byte offset of the line within its uncompressed block
+ * compressed blocks
+ */
+public class SnippetStore {
+
+    private static final int VERSION = 1;
+    private static final int LINES_PER_BLOCK = 128;
+
+    private final Path location;
+    private final LoggerWrapper logger;
+
+    public SnippetStore(Path location, LoggerWrapper logger) {
+        this.location = location;
+        this.logger = logger;
+    }
+
+    public Path getLocation() {
+        return this.location;
+    }
+
+    /**
+     * Writes the content for a document replacing anything previously stored for the code id. The write
+     * goes to a temporary file which is moved into place so readers never see a partial document.
+     */
+    public void write(String codeId, String md5hash, String contents) throws IOException {
+        var lines = contents.split("\\r\\n|\\n|\\r");
+        var blockCount = (lines.length + LINES_PER_BLOCK - 1) / LINES_PER_BLOCK;
+
+        var lineOffsets = new int[lines.length];
+        var compressedLengths = new int[blockCount];
+        var uncompressedLengths = new int[blockCount];
+        var compressedBlocks = new ByteArrayOutputStream();
+        var deflater = new Deflater(Deflater.BEST_SPEED);
+        var buffer = new byte[8192];
+
+        try {
+            for (var block = 0; block < blockCount; block++) {
+                var uncompressed = new ByteArrayOutputStream();
+                var end = Math.min(lines.length, (block + 1) * LINES_PER_BLOCK);
+
+                for (var i = block * LINES_PER_BLOCK; i < end; i++) {
+                    lineOffsets[i] = uncompressed.size();
+                    uncompressed.write(lines[i].getBytes(StandardCharsets.UTF_8));
+                }
+
+                var input = uncompressed.toByteArray();
+                var before = compressedBlocks.size();
+
+                deflater.reset();
+                deflater.setInput(input);
+                deflater.finish();
+                while (!deflater.finished()) {
+                    var count = deflater.deflate(buffer);
+                    compressedBlocks.write(buffer, 0, count);
+                }
+
+                uncompressedLengths[block] = input.length;
+                compressedLengths[block] = compressedBlocks.size() - before;
+            }
+        } finally {
+            deflater.end();
+        }
+
+        var snippetPath = this.getSnippetPath(codeId);
+        Files.createDirectories(snippetPath.getParent());
+        var tempPath = Files.createTempFile(snippetPath.getParent(), codeId, ".tmp");
+
+        try (var output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempPath)))) {
+            output.writeInt(VERSION);
+            output.writeUTF(md5hash == null ? "" : md5hash);
+            output.writeInt(lines.length);
+            output.writeInt(LINES_PER_BLOCK);
+            output.writeInt(blockCount);
+
+            for (var block = 0; block < blockCount; block++) {
+                output.writeInt(compressedLengths[block]);
+                output.writeInt(uncompressedLengths[block]);
+            }
+
+            for (var lineOffset : lineOffsets) {
+                output.writeInt(lineOffset);
+            }
+
+            compressedBlocks.writeTo(output);
+        }
+
+        Files.move(tempPath, snippetPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Returns lines from startLine up to but not including endLine for the document. Returns empty if the
+     * document was never stored, was stored from a different version of the file according to the md5 or
+     * cannot be read, in which case the caller should fall back to reading the file from disk.
+     */
+    public Optional<List<String>> getLines(String codeId, String md5hash, int startLine, int endLine) {
+        var snippetPath = this.getSnippetPath(codeId);
+
+        try (var file = new RandomAccessFile(snippetPath.toFile(), "r")) {
+            var input = new DataInputStream(new BufferedInputStream(new FileInputStream(file.getFD())));
+
+            if (input.readInt() != VERSION) {
+                return Optional.empty();
+            }
+
+            var storedMd5hash = input.readUTF();
+            if (md5hash != null && !md5hash.equals(storedMd5hash)) {
+                this.logger.info(String.format("6b2f90ce::snippet for %s has md5 %s expected %s falling back to disk", codeId, storedMd5hash, md5hash));
+                return Optional.empty();
+            }
+
+            var lineCount = input.readInt();
+            var linesPerBlock = input.readInt();
+            var blockCount = input.readInt();
+
+            var compressedLengths = new int[blockCount];
+            var uncompressedLengths = new int[blockCount];
+            for (var block = 0; block < blockCount; block++) {
+                compressedLengths[block] = input.readInt();
+                uncompressedLengths[block] = input.readInt();
+            }
+
+            var lineOffsets = new int[lineCount];
+            for (var i = 0; i < lineCount; i++) {
+                lineOffsets[i] = input.readInt();
+            }
+
+            var dataStart = 4L + 2 + storedMd5hash.getBytes(StandardCharsets.UTF_8).length + 12 + (8L * blockCount) + (4L * lineCount);
+            startLine = Math.max(0, startLine);
+            endLine = Math.min(lineCount, endLine);
+
+            var lines = new ArrayList<String>(Math.max(0, endLine - startLine));
+            if (startLine >= endLine) {
+                return Optional.of(lines);
+            }
+
+            var firstBlock = startLine / linesPerBlock;
+            var lastBlock = (endLine - 1) / linesPerBlock;
+
+            var blockStart = dataStart;
+            for (var block = 0; block < firstBlock; block++) {
+                blockStart += compressedLengths[block];
+            }
+
+            for (var block = firstBlock; block <= lastBlock; block++) {
+                var compressed = new byte[compressedLengths[block]];
+                file.seek(blockStart);
+                file.readFully(compressed);
+                blockStart += compressedLengths[block];
+
+                var uncompressed = this.inflate(compressed, uncompressedLengths[block]);
+                var blockFirstLine = block * linesPerBlock;
+                var blockEndLine = Math.min(lineCount, blockFirstLine + linesPerBlock);
+
+                for (var i = Math.max(startLine, blockFirstLine); i < Math.min(endLine, blockEndLine); i++) {
+                    var lineEnd = (i + 1 < blockEndLine) ? lineOffsets[i + 1] : uncompressed.length;
+                    lines.add(new String(uncompressed, lineOffsets[i], lineEnd - lineOffsets[i], StandardCharsets.UTF_8));
+                }
+            }
+
+            return Optional.of(lines);
+        } catch (FileNotFoundException | NoSuchFileException ex) {
+            return Optional.empty();
+        } catch (IOException | DataFormatException | RuntimeException ex) {
+            this.logger.severe(String.format("d0e58a3f::error in class %s exception %s reading snippet for %s", ex.getClass(), ex.getMessage(), codeId));
+        }
+
+        return Optional.empty();
+    }
+
+    public void delete(String codeId) {
+        try {
+            Files.deleteIfExists(this.getSnippetPath(codeId));
+        } catch (IOException ex) {
+            this.logger.severe(String.format("1f7d3b88::error in class %s exception %s deleting snippet for %s", ex.getClass(), ex.getMessage(), codeId));
+        }
+    }
+
+    public void deleteAll() throws IOException {
+        FileUtils.deleteDirectory(this.location.toFile());
+    }
+
+    /**
+     * Spread files over sub directories using the first characters of the code id which is a sha1 hash
+     * to avoid millions of files in a single directory
+     */
+    private Path getSnippetPath(String codeId) {
+        var prefix = codeId.length() > 2 ? codeId.substring(0, 2) : codeId;
+        return this.location.resolve(prefix).resolve(codeId);
+    }
+
+    private byte[] inflate(byte[] compressed, int uncompressedLength) throws DataFormatException {
+        var inflater = new Inflater();
+
+        try {
+            inflater.setInput(compressed);
+            var uncompressed = new byte[uncompressedLength];
+            var offset = 0;
+
+            while (offset < uncompressedLength && !inflater.finished()) {
+                var count = inflater.inflate(uncompressed, offset, uncompressedLength - offset);
+                if (count == 0 && inflater.needsInput()) {
+                    break;
+                }
+                offset += count;
+            }
+
+            return uncompressed;
+        } finally {
+            inflater.end();
+        }
+    }
+}
@@ -0,0 +1,240 @@
+/*
+ * Copyright (c) 2016 Boyter Online Services
+ *
+ * Use of this software is governed by the Fair Source License included
+ * in the LICENSE.TXT file, but will be eventually open under GNU General Public License Version 3
+ * see the README.md for when this clause will take effect
+ *
+ * Version 1.3.15
+ */
+
+package com.searchcode.app.service.index;
+
+import com.searchcode.app.config.SphinxSearchConfig;
+import com.searchcode.app.config.Values;
+import com.searchcode.app.service.Singleton;
+import com.searchcode.app.util.LoggerWrapper;
+import com.searchcode.app.util.Properties;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Writes documents into the sphinx real time indexes. Rows are grouped by the shard they belong to and sent as
+ * multi row REPLACE statements limited by size, with each sphinx server written to on its own thread using a
+ * connection from the pool SphinxSearchConfig keeps for it. Shards on the same server are written one after the
+ * other. A statement that fails is retried on another connection.
+ */
+public class SphinxBulkWriter {
+
+    private static final int COLUMNS = 10;
+    private static final int ROW_OVERHEAD_BYTES = 64;
+
+    private final SphinxSearchConfig sphinxSearchConfig;
+    private final LoggerWrapper logger;
+    private final long BATCH_BYTES;
+    private final int RETRIES;
+    private final long RETRY_DELAY_MILLIS;
+    private final ExecutorService executorService;
+
+    public SphinxBulkWriter(SphinxSearchConfig sphinxSearchConfig) {
+        this(sphinxSearchConfig,
+                Singleton.getLogger(),
+                1024L * Singleton.getHelpers().tryParseInt(Properties.getProperties().getProperty(Values.SPHINX_WRITE_BATCH_SIZE_KB, Values.DEFAULT_SPHINX_WRITE_BATCH_SIZE_KB), Values.DEFAULT_SPHINX_WRITE_BATCH_SIZE_KB),
+                Singleton.getHelpers().tryParseInt(Properties.getProperties().getProperty(Values.SPHINX_WRITE_RETRIES, Values.DEFAULT_SPHINX_WRITE_RETRIES), Values.DEFAULT_SPHINX_WRITE_RETRIES),
+                500);
+    }
+
+    public SphinxBulkWriter(SphinxSearchConfig sphinxSearchConfig, LoggerWrapper logger, long batchBytes, int retries, long retryDelayMillis) {
+        this.sphinxSearchConfig = sphinxSearchConfig;
+        this.logger = logger;
+        this.BATCH_BYTES = batchBytes;
+        this.RETRIES = retries;
+        this.RETRY_DELAY_MILLIS = retryDelayMillis;
+        this.executorService = Executors.newCachedThreadPool(runnable -> {
+            var thread = new Thread(runnable, "sphinx-bulk-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Shard a document with the id belongs to which is how documents are spread over the real time indexes
+     */
+    public int getShard(int id) {
+        return (id % this.sphinxSearchConfig.getShardCount()) + 1;
+    }
+
+    /**
+     * Writes the rows returning how many were written. Returns once every server has been written to.
+     */
+    public int write(List<Row> rows) {
+        // Server to shard to rows sorted so writes always happen in the same order
+        var servers = new TreeMap<String, TreeMap<Integer, List<Row>>>();
+
+        for (var row : rows) {
+            var shard = this.getShard(row.id);
+            servers.computeIfAbsent(this.sphinxSearchConfig.getServerForShard(shard), x -> new TreeMap<>())
+                    .computeIfAbsent(shard, x -> new ArrayList<>())
+                    .add(row);
+        }
+
+        if (servers.size() == 1) {
+            var server = servers.firstEntry();
+            return this.writeServer(server.getKey(), server.getValue());
+        }
+
+        var futures = new ArrayList<Future<Integer>>();
+        for (var server : servers.entrySet()) {
+            futures.add(this.executorService.submit(() -> this.writeServer(server.getKey(), server.getValue())));
+        }
+
+        var written = 0;
+        for (var future : futures) {
+            try {
+                written += future.get();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                this.logger.severe(String.format("5e0c7a92::error in class %s exception %s", ex.getClass(), ex.getMessage()));
+            } catch (ExecutionException ex) {
+                this.logger.severe(String.format("b6d3f214::error in class %s exception %s", ex.getClass(), ex.getMessage()));
+            }
+        }
+
+        return written;
+    }
+
+    private int writeServer(String server, Map<Integer, List<Row>> shards) {
+        var written = 0;
+
+        for (var shard : shards.entrySet()) {
+            var batch = new ArrayList<Row>();
+            var batchBytes = 0L;
+
+            for (var row : shard.getValue()) {
+                if (!batch.isEmpty() && batchBytes + row.estimateBytes() > this.BATCH_BYTES) {
+                    written += this.writeBatch(server, shard.getKey(), batch);
+                    batch = new ArrayList<>();
+                    batchBytes = 0;
+                }
+
+                batch.add(row);
+                batchBytes += row.estimateBytes();
+            }
+
+            if (!batch.isEmpty()) {
+                written += this.writeBatch(server, shard.getKey(), batch);
+            }
+        }
+
+        return written;
+    }
+
+    /**
+     * Runs a single REPLACE for the batch retrying on a new connection if it fails
+     */
+    private int writeBatch(String server, int shard, List<Row> batch) {
+        var sql = this.replaceStatement(shard, batch.size());
+
+        for (var attempt = 0; attempt <= this.RETRIES; attempt++) {
+            try (var connection = this.sphinxSearchConfig.getConnection(server).orElseThrow(() -> new SQLException("unable to connect to sphinx server " + server))) {
+                try (var preparedStatement = connection.prepareStatement(sql)) {
+                    var index = 1;
+                    for (var row : batch) {
+                        preparedStatement.setInt(index++, row.id);
+                        preparedStatement.setString(index++, row.contents);
+                        preparedStatement.setString(index++, row.fileName);
+                        preparedStatement.setString(index++, row.location);
+                        preparedStatement.setInt(index++, row.repoId);
+                        preparedStatement.setInt(index++, row.languageId);
+                        preparedStatement.setInt(index++, row.sourceId);
+                        preparedStatement.setInt(index++, row.ownerId);
+                        preparedStatement.setInt(index++, row.licenseId);
+                        preparedStatement.setInt(index++, row.lines);
+                    }
+
+                    preparedStatement.execute();
+                }
+
+                return batch.size();
+            } catch (SQLException ex) {
+                // The pool throws away connections that failed so the next attempt gets a working one
+                this.logger.severe(String.format("893321b2::error in class %s exception %s writing %d documents to shard %d on %s attempt %d", ex.getClass(), ex.getMessage(), batch.size(), shard, server, attempt + 1));
+            }
+
+            if (attempt < this.RETRIES) {
+                try {
+                    Thread.sleep(this.RETRY_DELAY_MILLIS * (attempt + 1));
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+
+        this.logger.severe(String.format("e27a9c55::giving up writing %d documents to shard %d on %s", batch.size(), shard, server));
+        return 0;
+    }
+
+    private String replaceStatement(int shard, int rows) {
+        var values = "(" + "?,".repeat(COLUMNS - 1) + "?)";
+        var sql = new StringBuilder(String.format("REPLACE INTO codesearchrt%d VALUES ", shard));
+
+        for (var i = 0; i < rows; i++) {
+            if (i != 0) {
+                sql.append(",");
+            }
+            sql.append(values);
+        }
+
+        return sql.toString();
+    }
+
+    /**
+     * Values for a row of the codesearchrt indexes
+     */
+    public static class Row {
+        public final int id;
+        public final String contents;
+        public final String fileName;
+        public final String location;
+        public final int repoId;
+        public final int languageId;
+        public final int sourceId;
+        public final int ownerId;
+        public final int licenseId;
+        public final int lines;
+
+        public Row(int id, String contents, String fileName, String location, int repoId, int languageId, int sourceId, int ownerId, int licenseId, int lines) {
+            this.id = id;
+            this.contents = contents;
+            this.fileName = fileName;
+            this.location = location;
+            this.repoId = repoId;
+            this.languageId = languageId;
+            this.sourceId = sourceId;
+            this.ownerId = ownerId;
+            this.licenseId = licenseId;
+            this.lines = lines;
+        }
+
+        /**
+         * Rough size of the row once in the statement, which is enough to keep statements under the packet limit
+         */
+        long estimateBytes() {
+            return ROW_OVERHEAD_BYTES + length(this.contents) + length(this.fileName) + length(this.location);
+        }
+
+        private static long length(String value) {
+            // Escaping and multi byte characters can make a string larger than its length
+            return value == null ? 4 : 2L * value.length();
+        }
+    }
+}
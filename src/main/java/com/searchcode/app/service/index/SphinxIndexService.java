@@ -10,6 +10,7 @@ import com.searchcode.app.model.RepoResult;
 import com.searchcode.app.service.CacheSingleton;
 import com.searchcode.app.service.Singleton;
 import com.searchcode.app.util.Helpers;
+import com.searchcode.app.util.Properties;
 import com.searchcode.app.util.SearchCodeLib;
 import org.apache.lucene.document.Document;
 import org.cache2k.Cache;
@@ -26,18 +27,24 @@ public class SphinxIndexService extends IndexBaseService {
 
     private final Helpers helpers;
     private final SphinxSearchConfig sphinxSearchConfig;
+    private final SphinxBulkWriter sphinxBulkWriter;
     private final SourceCode sourceCode;
     private final SearchCodeLib searchcodeLib;
     private final LanguageType languageType;
     private final IRepo repo;
     private final com.searchcode.app.dao.Source source;
     private final Cache<String, ProjectStats> projectStatsCache;
+    private final int SPOOL_MAX_ATTEMPTS;
 
     public SphinxIndexService() {
         this(Singleton.getLanguageType(), Singleton.getRepo(), Singleton.getSource(), CacheSingleton.getProjectStatsCache());
     }
 
     public SphinxIndexService(LanguageType languageType, IRepo repo, com.searchcode.app.dao.Source source, Cache<String, ProjectStats> projectStatsCache) {
+        this(languageType, repo, source, projectStatsCache, null);
+    }
+
+    public SphinxIndexService(LanguageType languageType, IRepo repo, com.searchcode.app.dao.Source source, Cache<String, ProjectStats> projectStatsCache, SphinxBulkWriter sphinxBulkWriter) {
         super();
         this.languageType = languageType;
         this.repo = repo;
@@ -46,8 +53,10 @@ public class SphinxIndexService extends IndexBaseService {
 
         this.helpers = Singleton.getHelpers();
         this.sphinxSearchConfig = new SphinxSearchConfig();
+        this.sphinxBulkWriter = sphinxBulkWriter == null ? new SphinxBulkWriter(this.sphinxSearchConfig) : sphinxBulkWriter;
         this.sourceCode = Singleton.getSourceCode();
         this.searchcodeLib = Singleton.getSearchCodeLib();
+        this.SPOOL_MAX_ATTEMPTS = this.helpers.tryParseInt(Properties.getProperties().getProperty(Values.SPOOL_MAX_ATTEMPTS, Values.DEFAULT_SPOOL_MAX_ATTEMPTS), Values.DEFAULT_SPOOL_MAX_ATTEMPTS);
     }
 
     @Override
@@ -56,61 +65,56 @@ public class SphinxIndexService extends IndexBaseService {
 
     @Override
     public void indexDocument(Queue<CodeIndexDocument> documentQueue) throws IOException {
-
-        PreparedStatement preparedStatement = null;
-        HashMap<String, Optional<Connection>> connections = null;
-
-        try {
-            connections = this.sphinxSearchConfig.getAllConnection();
-        } catch (SQLException ex) {
-            this.logger.severe(String.format("90cf00ef::error in class %s exception %s unable to connect to sphinx", ex.getClass(), ex.getMessage()));
-            return;
-        }
-
         // Pull out documents from the queue ready to be indexed
-        var codeIndexDocument = documentQueue.poll();
-        var codeIndexDocumentList = new ArrayList<CodeIndexDocument>();
+        var batch = this.takeDocuments(documentQueue);
+        var codeIndexDocumentList = batch.getDocuments();
+        var rows = new ArrayList<SphinxBulkWriter.Row>(codeIndexDocumentList.size());
+
+        for (var codeResult : codeIndexDocumentList) {
+            rows.add(new SphinxBulkWriter.Row(
+                    codeResult.getId(),
+                    this.indexContentPipeline(codeResult),
+                    codeResult.getFileName(),
+                    this.helpers.replaceForIndex(codeResult.getDisplayLocation()),
+                    codeResult.getRepoNameId(),
+                    codeResult.getLanguageNameId(),
+                    codeResult.getSourceId(),
+                    1, // OwnerId
+                    1, // LicenseId
+                    codeResult.getLines()));
+        }
 
-        while (codeIndexDocument != null) {
-            codeIndexDocumentList.add(codeIndexDocument);
-            codeIndexDocument = documentQueue.poll();
+        var written = this.sphinxBulkWriter.write(rows);
+        Singleton.getStatsService().addCount(Values.CACHE_TOTAL_INDEXED, written);
+        if (written != rows.size()) {
+            this.logger.severe(String.format("1c7f4e3a::only wrote %d of %d documents to sphinx", written, rows.size()));
         }
 
-        try {
-            // TODO should batch these
-            for (var codeResult : codeIndexDocumentList) {
-                try {
-                    var shard = (codeResult.getId() % this.sphinxSearchConfig.getShardCount()) + 1;
-                    preparedStatement = connections.get(Integer.toString(shard)).get()
-                            .prepareStatement(String.format("REPLACE INTO codesearchrt%s VALUES(?,?,?,?,?,?,?,?,?,?)", shard));
-
-                    var indexContents = this.indexContentPipeline(codeResult);
-
-                    preparedStatement.setInt(1, codeResult.getId());
-                    preparedStatement.setString(2, indexContents);
-                    preparedStatement.setString(3, codeResult.getFileName());
-                    preparedStatement.setString(4, this.helpers.replaceForIndex(codeResult.getDisplayLocation()));
-                    preparedStatement.setInt(5, codeResult.getRepoNameId()); // RepoId
-                    preparedStatement.setInt(6, codeResult.getLanguageNameId()); // LanguageId
-                    preparedStatement.setInt(7, codeResult.getSourceId()); // SourceId
-                    preparedStatement.setInt(8, 1); // OwnerId
-                    preparedStatement.setInt(9, 1); // LicenseId
-                    preparedStatement.setInt(10, codeResult.getLines());
-                    preparedStatement.execute();
-                } catch (SQLException ex) {
-                    this.logger.severe(String.format("893321b2::error in class %s exception %s", ex.getClass(), ex.getMessage()));
-                }
+        // Sphinx real time indexes apply each replace straight away so there is nothing to wait for. The writer
+        // does not say which rows failed so the whole batch is read again in place, replacing is safe to repeat
+        if (documentQueue instanceof CodeIndexSpool) {
+            var spool = (CodeIndexSpool) documentQueue;
+
+            if (written == rows.size()) {
+                spool.acknowledge(batch.getPosition());
+            } else {
+                spool.retry(batch.getPosition(), this.SPOOL_MAX_ATTEMPTS);
             }
-        } finally {
-            this.helpers.closeQuietly(preparedStatement);
-            this.helpers.closeQuietly(connections);
         }
     }
 
+    @Override
+    public void commit() {
+    }
+
     @Override
     public void deleteByCodeId(String codeId) throws IOException {
     }
 
+    @Override
+    public void deleteByCodeIds(List<String> codeIds) throws IOException {
+    }
+
     @Override
     public void deleteByRepo(RepoResult repo) throws IOException {
     }
@@ -163,6 +167,10 @@ public class SphinxIndexService extends IndexBaseService {
 
     @Override
     public String getProperty(String propertyValue) {
+        if ("sphinx_pool_stats".equals(propertyValue.toLowerCase())) {
+            return this.sphinxSearchConfig.getPoolStats(Values.LINE_BREAK);
+        }
+
         return Values.EMPTYSTRING;
     }
 
@@ -274,6 +282,14 @@ public class SphinxIndexService extends IndexBaseService {
         }).orElse(null);
     }
 
+    /**
+     * Sphinx has no trigram index to narrow down candidates so regex search is not supported
+     */
+    @Override
+    public SearchResult regexSearch(String regex, HashMap<String, String[]> facets, int page) {
+        return new SearchResult();
+    }
+
     @Override
     public SearchResult search(String queryString, HashMap<String, String[]> facets, int page, boolean isLiteral) {
         // NB you cannot cache SearchResult because it seems to strip out parts of the object for some reason
@@ -282,7 +298,7 @@ public class SphinxIndexService extends IndexBaseService {
         PreparedStatement stmt = null;
         ResultSet resultSet = null;
 
-        var codeResultList = new ArrayList<CodeResult>();
+        var codeResultIds = new ArrayList<Integer>();
         var codeFacetLanguages = new ArrayList<CodeFacetLanguage>();
         var codeFacetRepository = new ArrayList<CodeFacetRepo>();
         var codeFacetSource = new ArrayList<CodeFacetSource>();
@@ -315,14 +331,7 @@ public class SphinxIndexService extends IndexBaseService {
                 resultSet = stmt.getResultSet();
 
                 while (resultSet.next()) {
-                    int id = resultSet.getInt("id");
-                    var sourceCodeDTO = this.sourceCode.getById(id);
-
-                    sourceCodeDTO.ifPresent(sourceCodeDTO1 -> {
-                        var repoDto = this.repo.getRepoById(sourceCodeDTO1.repoId);
-                        repoDto.ifPresent(repoDto1 -> sourceCodeDTO1.setRepo(repoDto1.getUrl()));
-                        codeResultList.add(this.sourceCodeDTOtoCodeResult(sourceCodeDTO1));
-                    });
+                    codeResultIds.add(resultSet.getInt("id"));
                 }
 
                 isResultSet = stmt.getMoreResults();
@@ -377,8 +386,11 @@ public class SphinxIndexService extends IndexBaseService {
         } finally {
             this.helpers.closeQuietly(resultSet);
             this.helpers.closeQuietly(stmt);
+            this.helpers.closeQuietly(connection);
         }
 
+        var codeResultList = this.hydrateCodeResults(codeResultIds);
+
         int noPages = numTotalHits / this.PAGE_LIMIT;
         List<Integer> pages = this.calculatePages(numTotalHits, noPages);
 
@@ -391,6 +403,29 @@ public class SphinxIndexService extends IndexBaseService {
         return searchResult;
     }
 
+    /**
+     * Turns the ids of the documents sphinx matched into results in the same order. The code, repositories
+     * and languages for the whole page are each fetched at once rather than per result.
+     */
+    public List<CodeResult> hydrateCodeResults(List<Integer> codeResultIds) {
+        if (codeResultIds.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        var sourceCodeDTOs = this.sourceCode.getByIds(codeResultIds);
+        var repos = this.repo.getRepoByIds(sourceCodeDTOs.stream().map(x -> x.repoId).collect(Collectors.toSet()));
+        var languages = this.languageType.getByIds(sourceCodeDTOs.stream().map(x -> x.languageName).collect(Collectors.toSet()));
+
+        // Anything belonging to a repository that has since been removed is dropped
+        return sourceCodeDTOs.stream()
+                .filter(x -> repos.containsKey(x.repoId))
+                .map(x -> {
+                    x.setRepo(repos.get(x.repoId).getUrl());
+                    return this.sourceCodeDTOtoCodeResult(x, repos.get(x.repoId), languages.getOrDefault(x.languageName, new LanguageTypeDTO()));
+                })
+                .collect(Collectors.toList());
+    }
+
     /**
      * Given the list of language facet id's from Sphinx convert them into a string
      * which matches the name EG 23 -> Ruby
@@ -398,10 +433,15 @@ public class SphinxIndexService extends IndexBaseService {
     public ArrayList<CodeFacetLanguage> transformLanguageType(ArrayList<CodeFacetLanguage> codeFacetLanguages) {
         for (var codeFacetLanguage : codeFacetLanguages) {
             codeFacetLanguage.languageId = Integer.parseInt(codeFacetLanguage.languageName);
-            var byId = this.languageType.getById(codeFacetLanguage.languageId);
-            byId.ifPresent(x -> {
-                codeFacetLanguage.languageName = x.getType();
-            });
+        }
+
+        var byIds = this.languageType.getByIds(codeFacetLanguages.stream().map(x -> x.languageId).collect(Collectors.toSet()));
+
+        for (var codeFacetLanguage : codeFacetLanguages) {
+            var byId = byIds.get(codeFacetLanguage.languageId);
+            if (byId != null) {
+                codeFacetLanguage.languageName = byId.getType();
+            }
         }
 
         return codeFacetLanguages;
@@ -412,11 +452,13 @@ public class SphinxIndexService extends IndexBaseService {
      * known which repository they actually are based on the name EG 763 -> github.com/boyter/scc/
      */
     public ArrayList<CodeFacetRepo> transformRepositoryType(ArrayList<CodeFacetRepo> codeFacetRepos) {
+        var byIds = this.repo.getRepoByIds(codeFacetRepos.stream().map(x -> Integer.parseInt(x.repoName)).collect(Collectors.toSet()));
+
         for (var codeFacetRepo : codeFacetRepos) {
-            var byId = this.repo.getRepoById(Integer.parseInt(codeFacetRepo.repoName));
-            byId.ifPresent(x -> {
-                codeFacetRepo.repoName = x.getName();
-            });
+            var byId = byIds.get(Integer.parseInt(codeFacetRepo.repoName));
+            if (byId != null) {
+                codeFacetRepo.repoName = byId.getName();
+            }
         }
 
         return codeFacetRepos;
@@ -427,31 +469,35 @@ public class SphinxIndexService extends IndexBaseService {
      * known which repository they actually are based on the name EG 763 -> github.com/boyter/scc/
      */
     public ArrayList<CodeFacetSource> transformSourceType(ArrayList<CodeFacetSource> codeFacetSources) {
+        var byIds = this.source.getSourceByIds(codeFacetSources.stream().map(x -> Integer.parseInt(x.source)).collect(Collectors.toSet()));
+
         for (var source : codeFacetSources) {
-            var byId = this.source.getSourceById(Integer.parseInt(source.source));
-            byId.ifPresent(x -> {
-                source.source = x.name;
-            });
+            var byId = byIds.get(Integer.parseInt(source.source));
+            if (byId != null) {
+                source.source = byId.name;
+            }
         }
 
         return codeFacetSources;
     }
 
     public CodeResult sourceCodeDTOtoCodeResult(SourceCodeDTO sourceCodeDTO) {
+        var languageType = this.languageType.getById(sourceCodeDTO.languageName).orElse(new LanguageTypeDTO());
+        return this.sourceCodeDTOtoCodeResult(sourceCodeDTO, this.repo.getRepoById(sourceCodeDTO.repoId).get(), languageType);
+    }
+
+    public CodeResult sourceCodeDTOtoCodeResult(SourceCodeDTO sourceCodeDTO, RepoResult repoResult, LanguageTypeDTO languageType) {
         var codeResult = new CodeResult(Arrays.asList(sourceCodeDTO.content.split(Values.ALL_NEWLINE)), null);
         codeResult.setFilePath(sourceCodeDTO.location);
 
         codeResult.setCodePath(sourceCodeDTO.location);
         codeResult.setFileName(sourceCodeDTO.filename);
-//        codeResult.setLanguageName(this.languageType.getById(sourceCodeDTO.languageName).get().getType());
-
-        var languageType = this.languageType.getById(sourceCodeDTO.languageName).orElse(new LanguageTypeDTO());
         codeResult.setLanguageName(languageType.getType());
 
         codeResult.setMd5hash(sourceCodeDTO.hash);
         codeResult.setCodeLines(Integer.toString(sourceCodeDTO.linesCount));
         codeResult.setDocumentId(sourceCodeDTO.id);
-        codeResult.setRepoName(this.repo.getRepoById(sourceCodeDTO.repoId).get().getName());
+        codeResult.setRepoName(repoResult.getName());
         codeResult.setRepoId(sourceCodeDTO.repoId);
         codeResult.setRepoLocation(sourceCodeDTO.location + Values.EMPTYSTRING);
         codeResult.setCodeId(sourceCodeDTO.id + Values.EMPTYSTRING);
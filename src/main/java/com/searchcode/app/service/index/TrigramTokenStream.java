@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2016 Boyter Online Services
+ *
+ * Use of this software is governed by the Fair Source License included
+ * in the LICENSE.TXT file, but will be eventually open under GNU General Public License Version 3
+ * see the README.md for when this clause will take effect
+ *
+ * Version 1.3.15
+ */
+
+package com.searchcode.app.service.index;
+
+import com.searchcode.app.util.RegexTrigramPlanner;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.FieldType;
+import org.apache.lucene.index.IndexOptions;
+
+import java.io.IOException;
+
+/**
+ * Emits every lowercase trigram in the contents in place without creating a string for each one. Duplicates
+ * are left for the index to fold together as the field only records which documents contain a trigram.
+ * Bypasses the analyzer the writer is configured with so that the trigrams match RegexTrigramPlanner exactly.
+ */
+public final class TrigramTokenStream extends TokenStream {
+
+    public static final FieldType TYPE = new FieldType();
+
+    static {
+        TYPE.setIndexOptions(IndexOptions.DOCS);
+        TYPE.setTokenized(true);
+        TYPE.setOmitNorms(true);
+        TYPE.setStored(false);
+        TYPE.freeze();
+    }
+
+    private final CharTermAttribute termAttribute = this.addAttribute(CharTermAttribute.class);
+    private final String contents;
+    private int offset = 0;
+
+    public TrigramTokenStream(String contents) {
+        this.contents = contents == null ? "" : contents;
+    }
+
+    /**
+     * Field holding the trigrams of the contents ready to be added to a document
+     */
+    public static Field field(String name, String contents) {
+        return new Field(name, new TrigramTokenStream(contents), TYPE);
+    }
+
+    @Override
+    public boolean incrementToken() {
+        if (this.offset + RegexTrigramPlanner.GRAM_SIZE > this.contents.length()) {
+            return false;
+        }
+
+        this.clearAttributes();
+        var buffer = this.termAttribute.resizeBuffer(RegexTrigramPlanner.GRAM_SIZE);
+
+        for (var i = 0; i < RegexTrigramPlanner.GRAM_SIZE; i++) {
+            buffer[i] = Character.toLowerCase(this.contents.charAt(this.offset + i));
+        }
+
+        this.termAttribute.setLength(RegexTrigramPlanner.GRAM_SIZE);
+        this.offset++;
+
+        return true;
+    }
+
+    @Override
+    public void reset() throws IOException {
+        super.reset();
+        this.offset = 0;
+    }
+}
@@ -96,7 +96,7 @@ public class AdminRouteService {
                 return "Indexed ✓";
             }
 
-            if (this.dataService.getPersistentDelete().contains(reponame)) {
+            if (this.dataService.isPersistentDelete(reponame)) {
                 return "Pending Delete";
             }
 
@@ -168,7 +168,7 @@ public class AdminRouteService {
         map.put("sysArch", this.statsService.getArch());
         map.put("sysVersion", this.statsService.getOsVersion());
         map.put("processorCount", this.statsService.getProcessorCount());
-        map.put("deletionQueue", this.dataService.getPersistentDelete().size());
+        map.put("deletionQueue", this.dataService.getPersistentDeleteCount());
         map.put("version", App.VERSION);
         map.put("logoImage", CommonRouteService.getLogo());
         map.put("isCommunity", App.IS_COMMUNITY);
@@ -526,6 +526,10 @@ public class AdminRouteService {
                 return this.statsService.getUpTime();
             case "searchcount":
                 return Values.EMPTYSTRING + this.statsService.getSearchCount();
+            case "indexedcount":
+                return Values.EMPTYSTRING + this.statsService.getCount(Values.CACHE_TOTAL_INDEXED);
+            case "statscounters":
+                return this.statsService.getCounts(Values.LINE_BREAK);
             case "runningjobs":
                 var collect = Singleton.getRunningIndexRepoJobs().keySet().stream()
                         .filter(x -> Singleton.getRunningIndexRepoJobs().get(x) != null)
@@ -541,7 +545,7 @@ public class AdminRouteService {
             case "servertime":
                 return new Date().toString();
             case "deletionqueue":
-                return Values.EMPTYSTRING + Singleton.getDataService().getPersistentDelete().size();
+                return Values.EMPTYSTRING + Singleton.getDataService().getPersistentDeleteCount();
             case "alllogs":
                 return StringUtils.join(this.logger.getAllLogs(), System.lineSeparator());
             case "infologs":
@@ -570,6 +574,8 @@ public class AdminRouteService {
                 return Values.EMPTYSTRING + this.indexService.getCodeIndexLinesCount();
             case "codeindexqueuesize":
                 return Values.EMPTYSTRING + Singleton.getCodeIndexQueue().size();
+            case "sphinxpoolstats":
+                return this.indexService.getProperty("sphinx_pool_stats");
         }
 
         return Values.EMPTYSTRING;
@@ -173,9 +173,10 @@ public class CodeRouteService {
 
         map.putAll(this.highlight.highlightCodeResult(codeResult));
 
-        var owaspResults = new ArrayList<OWASPMatchingResult>();
+        List<OWASPMatchingResult> owaspResults = new ArrayList<>();
         if (CommonRouteService.owaspAdvisoriesEnabled()) {
-            owaspResults = this.owaspClassifier.classifyCode(codeResult.code, codeResult.languageName);
+            // Findings stored when the file was indexed save classifying it again on every view
+            owaspResults = codeResult.owaspResults != null ? codeResult.owaspResults : this.owaspClassifier.classifyCode(codeResult.code, codeResult.languageName);
         }
 
         var highlight = this.helpers.tryParseInt(codeResult.codeLines, "0") <= this.highlightLimit;
@@ -23,11 +23,19 @@ import java.util.HashMap;
 public class SearchRouteService {
 
     public SearchResult codeSearch(Request request, Response response) {
-        return this.getSearchResult(request, false, true);
+        return this.getSearchResult(request, false, false, true);
     }
 
     public SearchResult literalCodeSearch(Request request, Response response) {
-        return this.getSearchResult(request, true, true);
+        return this.getSearchResult(request, true, false, true);
+    }
+
+    /**
+     * Search where the query is a regular expression matched against each line of code. Substring search
+     * is a regular expression with the special characters escaped.
+     */
+    public SearchResult regexCodeSearch(Request request, Response response) {
+        return this.getSearchResult(request, false, true, true);
     }
 
     /**
@@ -36,7 +44,7 @@ public class SearchRouteService {
      */
     public codesearch_I codeSearch_I(Request request, Response response) {
         // TODO need to be able to turn off the escaping
-        var results = this.getSearchResult(request, false, false);
+        var results = this.getSearchResult(request, false, false, false);
 
         var res = new codesearch_I();
 
@@ -112,7 +120,7 @@ public class SearchRouteService {
         return resp;
     }
 
-    private SearchResult getSearchResult(Request request, boolean isLiteral, boolean highlight) {
+    private SearchResult getSearchResult(Request request, boolean isLiteral, boolean isRegex, boolean highlight) {
         if (!request.queryParams().contains("q") || request.queryParams("q").trim().equals(Values.EMPTYSTRING)) {
             return null;
         }
@@ -138,6 +146,19 @@ public class SearchRouteService {
         if (request.queryParams().contains("src")) {
             facets.put("src", request.queryParamsValues("src"));
         }
+        if (request.queryParams().contains("owasp")) {
+            facets.put("owasp", request.queryParamsValues("owasp"));
+        }
+
+        if (isRegex) {
+            var searchResult = Singleton.getIndexService().regexSearch(query, facets, page);
+
+            searchResult.setCodeResultList(Singleton.getCodeMatcher().formatRegexResults(searchResult.getCodeResultList(), query, highlight));
+            searchResult.setQuery(query);
+            searchResult.getCodeResultList().forEach(x -> x.setCode(null));
+
+            return searchResult;
+        }
 
         if (query.trim().startsWith("/") && query.trim().endsWith("/")) {
             isLiteral = true;
@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2016 Boyter Online Services
+ *
+ * Use of this software is governed by the Fair Source License included
+ * in the LICENSE.TXT file, but will be eventually open under GNU General Public License Version 3
+ * see the README.md for when this clause will take effect
+ *
+ * Version 1.3.15
+ */
+
+package com.searchcode.app.util;
+
+import com.searchcode.app.config.Values;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.Tokenizer;
+import org.apache.lucene.analysis.miscellaneous.LengthFilter;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.OffsetAttribute;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.TextField;
+
+import java.io.IOException;
+import java.util.EnumSet;
+
+/**
+ * Analyzer that runs the code clean pipeline as part of the token stream so that indexing never has to build
+ * the large lowercased string that indexContentPipeline creates. Words are only split on whitespace and handed
+ * whole to CodeCleanFilter which emits every variant of them, so the tokens are the same as CodeAnalyzer
+ * produces over the output of the pipeline.
+ */
+public class CodeCleanAnalyzer extends CodeAnalyzer {
+
+    private final EnumSet<CodeCleanFilter.Variant> variants;
+    private final int maxSplitLength;
+
+    public CodeCleanAnalyzer(EnumSet<CodeCleanFilter.Variant> variants) {
+        this(variants, SearchCodeLib.MAX_SPLIT_LENGTH);
+    }
+
+    public CodeCleanAnalyzer(EnumSet<CodeCleanFilter.Variant> variants, int maxSplitLength) {
+        this.variants = EnumSet.copyOf(variants);
+        this.maxSplitLength = maxSplitLength;
+    }
+
+    @Override
+    protected TokenStreamComponents createComponents(String fieldName) {
+        final Tokenizer source = new WordTokenizer();
+        TokenStream result = new CodeCleanFilter(source, this.variants, this.maxSplitLength);
+        result = new LengthFilter(result, 0, 500);
+        return new TokenStreamComponents(source, result);
+    }
+
+    /**
+     * Unstored text field over the value which is only analysed when the index writer inverts it. Uses the token
+     * stream this analyzer keeps for the indexing thread rather than the analyzer the writer is configured with,
+     * which is safe as the writer consumes each field fully before moving on to the next one.
+     */
+    public Field field(String name, String value) {
+        return new Field(name, value == null ? Values.EMPTYSTRING : value, TextField.TYPE_NOT_STORED) {
+            @Override
+            public TokenStream tokenStream(Analyzer analyzer, TokenStream reuse) {
+                return CodeCleanAnalyzer.this.tokenStream(this.name(), this.stringValue());
+            }
+        };
+    }
+}
+
+/**
+ * Splits on whitespace the same as CodeTokenizer but without its limit on the length of a word as the limit is
+ * applied by CodeCleanFilter to each token it produces
+ */
+final class WordTokenizer extends Tokenizer {
+
+    private final CharTermAttribute termAttribute = this.addAttribute(CharTermAttribute.class);
+    private final OffsetAttribute offsetAttribute = this.addAttribute(OffsetAttribute.class);
+
+    private final char[] ioBuffer = new char[4096];
+    private int bufferLength = 0;
+    private int bufferIndex = 0;
+    private int offset = 0;
+
+    @Override
+    public boolean incrementToken() throws IOException {
+        this.clearAttributes();
+
+        var length = 0;
+        var start = -1;
+        var buffer = this.termAttribute.buffer();
+
+        while (true) {
+            if (this.bufferIndex >= this.bufferLength) {
+                this.bufferLength = Math.max(this.input.read(this.ioBuffer), 0);
+                this.bufferIndex = 0;
+
+                if (this.bufferLength == 0) {
+                    break;
+                }
+            }
+
+            var c = this.ioBuffer[this.bufferIndex++];
+            this.offset++;
+
+            // Every whitespace character is in the basic plane so a surrogate is always part of a word
+            if (Character.isWhitespace(c)) {
+                if (length > 0) {
+                    break;
+                }
+                continue;
+            }
+
+            if (length == 0) {
+                start = this.offset - 1;
+            }
+
+            if (length == buffer.length) {
+                buffer = this.termAttribute.resizeBuffer(length + 1);
+            }
+            buffer[length++] = c;
+        }
+
+        if (length == 0) {
+            return false;
+        }
+
+        this.termAttribute.setLength(length);
+        this.offsetAttribute.setOffset(this.correctOffset(start), this.correctOffset(start + length));
+        return true;
+    }
+
+    @Override
+    public void reset() throws IOException {
+        super.reset();
+        this.bufferLength = 0;
+        this.bufferIndex = 0;
+        this.offset = 0;
+    }
+
+    @Override
+    public void end() throws IOException {
+        super.end();
+        var finalOffset = this.correctOffset(this.offset);
+        this.offsetAttribute.setOffset(finalOffset, finalOffset);
+    }
+}
@@ -0,0 +1,326 @@
+/*
+ * Copyright (c) 2016 Boyter Online Services
+ *
+ * Use of this software is governed by the Fair Source License included
+ * in the LICENSE.TXT file, but will be eventually open under GNU General Public License Version 3
+ * see the README.md for when this clause will take effect
+ *
+ * Version 1.3.15
+ */
+
+package com.searchcode.app.util;
+
+import org.apache.lucene.analysis.TokenFilter;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.OffsetAttribute;
+import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
+import org.apache.lucene.util.ArrayUtil;
+
+import java.io.IOException;
+import java.util.EnumSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Produces from each whitespace separated word the same tokens that SearchCodeLib.codeCleanPipeline,
+ * splitKeywords, findInterestingKeywords and findInterestingCharacters produce for it once the results are
+ * lowercased and tokenized by CodeAnalyzer, without building any of those strings. Every token is a range of
+ * the current word which is lowercased as it is copied into the term, and the ranges are worked out in a single
+ * pass over the word for each variant. All tokens of a word are stacked at the position of the word.
+ */
+public final class CodeCleanFilter extends TokenFilter {
+
+    public enum Variant {
+        RAW,            // The word itself
+        CODE_CLEAN,     // SearchCodeLib.codeCleanPipeline
+        SPLIT_KEYWORDS, // SearchCodeLib.splitKeywords with a running join
+        INTERESTING     // SearchCodeLib.findInterestingKeywords and findInterestingCharacters
+    }
+
+    // Longest token the CharTokenizer behind CodeAnalyzer emits before starting a new one
+    private static final int MAX_TOKEN_LENGTH = 255;
+    private static final int MIN_SPLIT_LENGTH = 7;
+    private static final Pattern INTERESTING_KEYWORD = Pattern.compile("[a-z]+(\\d+\\.)?(\\d+\\.)?(\\*|\\d+)");
+
+    // Characters replaced by each step of codeCleanPipeline, each step keeping the replacements before it
+    // apart from the last which starts again from the original contents
+    private static final boolean[][] CODE_CLEAN_SEPARATORS = separators(
+            "<>)([]|=,:",
+            "<>)([]|=,:.",
+            "<>)([]|=,:.;{}/",
+            "<>)([]|=,:.;{}/\"'",
+            "<>)([]|=,:.;{}/\"'_@#",
+            "<>)([]|=,:.;{}/\"'_@#-",
+            "()<>");
+
+    private final CharTermAttribute termAttribute = this.addAttribute(CharTermAttribute.class);
+    private final PositionIncrementAttribute positionIncrementAttribute = this.addAttribute(PositionIncrementAttribute.class);
+    private final OffsetAttribute offsetAttribute = this.addAttribute(OffsetAttribute.class);
+
+    private final boolean raw, codeClean, splitKeywords, interesting;
+    private final int maxSplitLength;
+    private final Matcher interestingKeywordMatcher;
+    private final WordSequence wordSequence = new WordSequence();
+
+    private char[] word = new char[64];
+    private int wordLength = 0;
+    private int[] ranges = new int[64];
+    private int rangeCount = 0;
+    private int rangeIndex = 0;
+    private int pendingPositionIncrement = 0;
+
+    /**
+     * Words starting at or after maxSplitLength characters into the value are not split or searched for
+     * interesting keywords, which is the same cut off that SearchCodeLib uses
+     */
+    public CodeCleanFilter(TokenStream input, EnumSet<Variant> variants, int maxSplitLength) {
+        super(input);
+        this.raw = variants.contains(Variant.RAW);
+        this.codeClean = variants.contains(Variant.CODE_CLEAN);
+        this.splitKeywords = variants.contains(Variant.SPLIT_KEYWORDS);
+        this.interesting = variants.contains(Variant.INTERESTING);
+        this.maxSplitLength = maxSplitLength;
+        this.interestingKeywordMatcher = INTERESTING_KEYWORD.matcher(this.wordSequence);
+    }
+
+    @Override
+    public boolean incrementToken() throws IOException {
+        while (this.rangeIndex >= this.rangeCount) {
+            if (!this.input.incrementToken()) {
+                return false;
+            }
+
+            this.pendingPositionIncrement += this.positionIncrementAttribute.getPositionIncrement();
+            this.wordLength = this.termAttribute.length();
+            this.word = ArrayUtil.grow(this.word, this.wordLength);
+            System.arraycopy(this.termAttribute.buffer(), 0, this.word, 0, this.wordLength);
+
+            this.rangeCount = 0;
+            this.rangeIndex = 0;
+            this.addWordRanges(this.offsetAttribute.startOffset());
+        }
+
+        var start = this.ranges[this.rangeIndex * 2];
+        var end = this.ranges[this.rangeIndex * 2 + 1];
+        this.rangeIndex++;
+
+        var buffer = this.termAttribute.resizeBuffer(end - start);
+        for (var i = start; i < end; i++) {
+            buffer[i - start] = Character.toLowerCase(this.word[i]);
+        }
+        this.termAttribute.setLength(end - start);
+
+        this.positionIncrementAttribute.setPositionIncrement(this.pendingPositionIncrement);
+        this.pendingPositionIncrement = 0;
+
+        return true;
+    }
+
+    @Override
+    public void reset() throws IOException {
+        super.reset();
+        this.wordLength = 0;
+        this.rangeCount = 0;
+        this.rangeIndex = 0;
+        this.pendingPositionIncrement = 0;
+    }
+
+    @Override
+    public void end() throws IOException {
+        super.end();
+        this.positionIncrementAttribute.setPositionIncrement(this.positionIncrementAttribute.getPositionIncrement() + this.pendingPositionIncrement);
+        this.pendingPositionIncrement = 0;
+    }
+
+    private void addWordRanges(int wordOffset) {
+        // Where the cut off falls relative to the start of this word
+        var splitLimit = this.maxSplitLength - wordOffset;
+
+        if (this.raw) {
+            this.addRange(0, this.wordLength);
+        }
+
+        if (this.codeClean) {
+            for (var separators : CODE_CLEAN_SEPARATORS) {
+                this.addSplitRanges(separators);
+            }
+        }
+
+        if (this.splitKeywords && splitLimit > 0) {
+            this.addSplitKeywordRanges(splitLimit);
+        }
+
+        if (this.interesting) {
+            if (splitLimit > 0) {
+                this.wordSequence.length = this.wordLength;
+                this.interestingKeywordMatcher.reset();
+                this.interestingKeywordMatcher.region(0, Math.min(this.wordLength, splitLimit));
+
+                while (this.interestingKeywordMatcher.find()) {
+                    this.addRange(this.interestingKeywordMatcher.start(), this.interestingKeywordMatcher.end());
+                }
+            }
+
+            for (var i = 0; i < this.wordLength; i++) {
+                if (!isWordCharacter(this.word[i])) {
+                    this.addRange(i, i + 1);
+                }
+            }
+        }
+    }
+
+    /**
+     * Ranges of the word between any of the separators
+     */
+    private void addSplitRanges(boolean[] separators) {
+        var start = 0;
+
+        for (var i = 0; i <= this.wordLength; i++) {
+            if (i == this.wordLength || (this.word[i] < separators.length && separators[this.word[i]])) {
+                this.addRange(start, i);
+                start = i + 1;
+            }
+        }
+    }
+
+    /**
+     * Runs of letters and digits at least seven long with no uppercase next to each other are split before each
+     * uppercase letter, adding the parts and then each part joined to those before it
+     */
+    private void addSplitKeywordRanges(int splitLimit) {
+        var start = 0;
+
+        for (var i = 0; i <= this.wordLength; i++) {
+            if (i < this.wordLength && isLetterOrDigit(this.word[i])) {
+                continue;
+            }
+
+            // A run that reaches the cut off would have had AAA appended so is never split
+            if (i - start >= MIN_SPLIT_LENGTH && i < splitLimit && !this.hasMultipleUppercase(start, i)) {
+                this.addCamelCaseRanges(start, i);
+            }
+
+            start = i + 1;
+        }
+    }
+
+    private void addCamelCaseRanges(int start, int end) {
+        var parts = 1;
+        for (var i = start + 1; i < end; i++) {
+            if (isUppercase(this.word[i])) {
+                parts++;
+            }
+        }
+
+        if (parts == 1) {
+            return;
+        }
+
+        var partStart = start;
+        for (var i = start + 1; i <= end; i++) {
+            if (i == end || isUppercase(this.word[i])) {
+                this.addRange(partStart, i);
+                partStart = i;
+            }
+        }
+
+        for (var i = start + 1; i <= end; i++) {
+            if (i == end || isUppercase(this.word[i])) {
+                this.addRange(start, i);
+            }
+        }
+    }
+
+    private boolean hasMultipleUppercase(int start, int end) {
+        for (var i = start + 1; i < end; i++) {
+            if (isUppercase(this.word[i]) && isUppercase(this.word[i - 1])) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Adds the range split the same way the tokenizer would split anything too long
+     */
+    private void addRange(int start, int end) {
+        while (end - start > MAX_TOKEN_LENGTH) {
+            var chunkEnd = start + MAX_TOKEN_LENGTH;
+
+            // The tokenizer reads whole code points so a surrogate pair is never split
+            if (Character.isHighSurrogate(this.word[chunkEnd - 1]) && Character.isLowSurrogate(this.word[chunkEnd])) {
+                chunkEnd++;
+            }
+
+            this.appendRange(start, chunkEnd);
+            start = chunkEnd;
+        }
+
+        if (end > start) {
+            this.appendRange(start, end);
+        }
+    }
+
+    private void appendRange(int start, int end) {
+        this.ranges = ArrayUtil.grow(this.ranges, (this.rangeCount + 1) * 2);
+        this.ranges[this.rangeCount * 2] = start;
+        this.ranges[this.rangeCount * 2 + 1] = end;
+        this.rangeCount++;
+    }
+
+    private static boolean isUppercase(char c) {
+        return c >= 'A' && c <= 'Z';
+    }
+
+    private static boolean isLetterOrDigit(char c) {
+        return (c >= 'a' && c <= 'z') || isUppercase(c) || (c >= '0' && c <= '9');
+    }
+
+    /**
+     * Same as \w in a Java regular expression
+     */
+    private static boolean isWordCharacter(char c) {
+        return isLetterOrDigit(c) || c == '_';
+    }
+
+    private static boolean[][] separators(String... steps) {
+        var separators = new boolean[steps.length][128];
+
+        for (var i = 0; i < steps.length; i++) {
+            for (var c : steps[i].toCharArray()) {
+                separators[i][c] = true;
+            }
+        }
+
+        return separators;
+    }
+
+    /**
+     * View of the current word so the interesting keyword matcher can be reused without copying it
+     */
+    private final class WordSequence implements CharSequence {
+        private int length = 0;
+
+        @Override
+        public int length() {
+            return this.length;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return word[index];
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return new String(word, start, end - start);
+        }
+
+        @Override
+        public String toString() {
+            return new String(word, 0, this.length);
+        }
+    }
+}
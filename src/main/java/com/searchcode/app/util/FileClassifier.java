@@ -12,12 +12,17 @@ import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.lang.reflect.Type;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * This class uses the database from the scc project in order to classify files under a specific language.
  * It used to work by allowing for duplicate entries, but now assumes that there is only 1 extension for each
  * file type.
+ * The database is indexed by extension and filename whenever it is set so classifying a file is a lookup rather
+ * than a walk over every language. Changes made to the map returned by getDatabase are not seen until it is set again.
  */
 public class FileClassifier {
 
@@ -25,17 +30,18 @@ public class FileClassifier {
     private final Helpers helpers;
     private String DATABASE_PATH = Properties.getProperties().getProperty(Values.CLASSIFIER_DATABASE_LOCATION, Values.DEFAULT_CLASSIFIER_DATABASE_LOCATION);
     private HashMap<String, FileClassifierResult> database;
+    private volatile ClassifierIndex index;
 
     public FileClassifier() {
-        this.database = this.loadDatabase();
         this.logger = Singleton.getLogger();
         this.helpers = Singleton.getHelpers();
+        this.setDatabase(this.loadDatabase());
     }
 
     public FileClassifier(HashMap<String, FileClassifierResult> database) {
-        this.database = database;
         this.logger = Singleton.getLogger();
         this.helpers = Singleton.getHelpers();
+        this.setDatabase(database);
     }
 
     public HashMap<String, FileClassifierResult> getDatabase() {
@@ -43,9 +49,25 @@ public class FileClassifier {
     }
 
     public void setDatabase(HashMap<String, FileClassifierResult> database) {
+        this.index = new ClassifierIndex(database);
         this.database = database;
     }
 
+    /**
+     * True if the lowercase file name ends with a dot followed by any extension in the database
+     */
+    public boolean hasKnownExtension(String fileName) {
+        var extensions = this.index.extensions;
+
+        for (var i = fileName.indexOf('.'); i != -1; i = fileName.indexOf('.', i + 1)) {
+            if (extensions.containsKey(fileName.substring(i + 1))) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
     public String getExtension(String fileName) {
         if (fileName.lastIndexOf('.') == 0) {
             return fileName;
@@ -68,87 +90,92 @@ public class FileClassifier {
      * Given a filename guesses the file type
      */
     public String languageGuesser(String fileName, String content) {
+        var index = this.index;
         fileName = fileName.toLowerCase();
-        var matches = new ArrayList<String>();
         var extension = Values.EMPTYSTRING;
 
         // Try finding based on full name match
-        matches = this.checkIfFilenameExists(fileName);
+        var matches = index.filenames.get(fileName);
 
         // Try finding using the whole name EG LICENSE
-        if (matches.isEmpty()) {
-            matches = this.checkIfExtentionExists(fileName);
+        if (matches == null) {
+            matches = index.extensions.get(fileName);
         }
 
         // Try matching based on one level EG d.ts OR ts
-        if (matches.isEmpty()) {
+        if (matches == null) {
             extension = this.getExtension(fileName);
-            matches = this.checkIfExtentionExists(extension);
+            matches = index.extensions.get(extension);
         }
 
         // Catch all if the above did not work, IE turn d.ts into ts
-        if (matches.isEmpty()) {
+        if (matches == null) {
             extension = this.getExtension(extension);
-            matches = this.checkIfExtentionExists(extension);
+            matches = index.extensions.get(extension);
         }
 
         // If no idea at this point return that we don't know
-        if (matches.isEmpty()) {
+        if (matches == null) {
             return Values.UNKNOWN_LANGUAGE;
         }
 
         // If we have a single match then return it
-        if (matches.size() == 1) {
-            return matches.get(0);
+        if (matches.languages.size() == 1) {
+            return matches.languages.get(0);
         }
 
         // We have multiple matches, so try to work out which one is the most likely result
         var toSort = new HashMap<String, Integer>();
 
-        for (var m : matches) {
-            toSort.put(m, 0);
-            for (var keyword : this.database.get(m).keywords) {
-                if (content.contains(keyword)) {
-                    toSort.put(m, toSort.get(m) + 1);
-                }
-            }
+        for (var i = 0; i < matches.languages.size(); i++) {
+            toSort.put(matches.languages.get(i), matches.keywords.get(i).newScanner().countMatchingTerms(content));
         }
 
         return this.helpers.sortByValue(toSort).keySet().stream().findFirst().orElse(Values.UNKNOWN_LANGUAGE);
     }
 
-    private ArrayList<String> checkIfExtentionExists(String extension) {
-        var matches = new ArrayList<String>();
+    /**
+     * Languages sharing an extension or filename along with a matcher for the keywords of each which counts
+     * the keywords in the content the same way as calling contains for each one
+     */
+    private static class Candidates {
+        private final List<String> languages = new ArrayList<>();
+        private final List<MultiTermMatcher> keywords = new ArrayList<>();
+    }
 
-        for (String key : database.keySet()) {
-            var fileClassifierResult = database.get(key);
+    private static class ClassifierIndex {
+        private final Map<String, Candidates> extensions = new HashMap<>();
+        private final Map<String, Candidates> filenames = new HashMap<>();
 
-            for (var ext : fileClassifierResult.extensions) {
-                if (extension.equals(ext)) {
-                    matches.add(key);
-                }
+        private ClassifierIndex(HashMap<String, FileClassifierResult> database) {
+            if (database == null) {
+                return;
             }
-        }
 
-        return matches;
-    }
-
-    private ArrayList<String> checkIfFilenameExists(String extension) {
-        var matches = new ArrayList<String>();
+            // Walks the database in the same order the lookups used to so ties are broken the same way
+            for (var key : database.keySet()) {
+                var fileClassifierResult = database.get(key);
+                var keywords = new MultiTermMatcher(fileClassifierResult.keywords == null ? new ArrayList<>() : Arrays.asList(fileClassifierResult.keywords), true);
 
-        for (String key : database.keySet()) {
-            var fileClassifierResult = database.get(key);
+                if (fileClassifierResult.extensions != null) {
+                    for (var ext : fileClassifierResult.extensions) {
+                        this.add(this.extensions, ext, key, keywords);
+                    }
+                }
 
-            if (fileClassifierResult.filenames != null) {
-                for (var ext : fileClassifierResult.filenames) {
-                    if (extension.equals(ext)) {
-                        matches.add(key);
+                if (fileClassifierResult.filenames != null) {
+                    for (var name : fileClassifierResult.filenames) {
+                        this.add(this.filenames, name, key, keywords);
                     }
                 }
             }
         }
 
-        return matches;
+        private void add(Map<String, Candidates> index, String name, String language, MultiTermMatcher keywords) {
+            var candidates = index.computeIfAbsent(name, x -> new Candidates());
+            candidates.languages.add(language);
+            candidates.keywords.add(keywords);
+        }
     }
 
     /**
@@ -14,8 +14,11 @@ package com.searchcode.app.util;
 import com.glaforge.i18n.io.CharsetToolkit;
 import com.searchcode.app.config.Values;
 import com.searchcode.app.dto.ConnStmtRs;
+import com.searchcode.app.dto.IngestedFile;
 import com.searchcode.app.model.RepoResult;
 import com.searchcode.app.service.Singleton;
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
 import org.apache.http.client.methods.HttpPost;
@@ -29,8 +32,12 @@ import org.eclipse.jgit.lib.Repository;
 
 import java.io.*;
 import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Paths;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
@@ -70,7 +77,7 @@ public class Helpers {
 
     public List<RepoResult> filterRunningAndDeletedRepoJobs(List<RepoResult> repoResultList) {
         return repoResultList.stream()
-                .filter(x -> !Singleton.getDataService().getPersistentDelete().contains(x.getName()))
+                .filter(x -> !Singleton.getDataService().isPersistentDelete(x.getName()))
                 .filter(x -> !Singleton.getRunningIndexRepoJobs().keySet().contains(x.getName()))
                 .collect(Collectors.toList());
     }
@@ -156,36 +163,172 @@ public class Helpers {
      * everything down considerably if implemented poorly
      */
     public List<String> readFileLinesGuessEncoding(String filePath, int maxFileLineDepth) throws IOException {
-        BufferedReader bufferedReader = null;
-        StringBuilder stringBuilder = new StringBuilder();
+        return this.readFileGuessEncoding(filePath, maxFileLineDepth, false).getCodeLines();
+    }
 
-        try {
-            bufferedReader = new BufferedReader(new InputStreamReader(new FileInputStream(filePath), this.guessCharset(new File(filePath))));
+    /**
+     * Reads the bytes of a file from disk once and derives everything the indexer needs from them, being the
+     * guessed encoding, the md5 of the file, the decoded content and the offsets of each line. Lines are split
+     * and limited in the same way as readFileLinesGuessEncoding.
+     */
+    public IngestedFile ingestFile(String filePath, int maxFileLineDepth) throws IOException {
+        return this.readFileGuessEncoding(filePath, maxFileLineDepth, true);
+    }
+
+    /**
+     * Same as readFileLinesGuessEncoding but reads from the stream, which is not closed, where size is the number
+     * of bytes the stream holds. Used for content that is not on disk such as a file in the git object database.
+     */
+    public List<String> readLinesGuessEncoding(InputStream inputStream, long size, int maxFileLineDepth) throws IOException {
+        return this.readStreamGuessEncoding(inputStream, size, maxFileLineDepth, false).getCodeLines();
+    }
+
+    /**
+     * Same as ingestFile but reads from the stream, which is not closed, where size is the number of bytes the
+     * stream holds
+     */
+    public IngestedFile ingestStream(InputStream inputStream, long size, int maxFileLineDepth) throws IOException {
+        return this.readStreamGuessEncoding(inputStream, size, maxFileLineDepth, true);
+    }
+
+    private IngestedFile readFileGuessEncoding(String filePath, int maxFileLineDepth, boolean computeMd5) throws IOException {
+        try (FileInputStream fileInputStream = new FileInputStream(filePath)) {
+            return this.readStreamGuessEncoding(fileInputStream, fileInputStream.getChannel().size(), maxFileLineDepth, computeMd5);
+        }
+    }
+
+    private IngestedFile readStreamGuessEncoding(InputStream inputStream, long size, int maxFileLineDepth, boolean computeMd5) throws IOException {
+        MessageDigest messageDigest = computeMd5 ? DigestUtils.getMd5Digest() : null;
+        InputStream source = new BufferedInputStream(messageDigest == null ? inputStream : new DigestInputStream(inputStream, messageDigest), 8192);
+
+        // Only the start of the file is needed to guess the encoding after which it is read again to decode
+        byte[] head = new byte[4096];
+        int headLength = 0;
+        int read;
+        source.mark(head.length);
+        while (headLength < head.length && (read = source.read(head, headLength, head.length - headLength)) != -1) {
+            headLength += read;
+        }
+        source.reset();
+
+        // Decode as the file is read stopping at MAX_FILE_LENGTH_READ chars so memory use is bound by that
+        // rather than the size of the file
+        Charset charset = this.guessCharset(head);
+        CharsetDecoder charsetDecoder = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        Reader reader = new InputStreamReader(source, charsetDecoder);
+
+        int maxChars = Math.max(0, MAX_FILE_LENGTH_READ);
+        StringBuilder decoded = new StringBuilder((int) Math.min(maxChars, Math.max(16, size)));
+        char[] chars = new char[8192];
+        while (decoded.length() < maxChars && (read = reader.read(chars, 0, Math.min(chars.length, maxChars - decoded.length()))) != -1) {
+            decoded.append(chars, 0, read);
+        }
 
-            int i = 0;
-            int count = 0;
-            while ((i = bufferedReader.read()) != -1 && count < MAX_FILE_LENGTH_READ) {
-                stringBuilder.append((char) i);
-                count++;
+        if (messageDigest != null) {
+            // Anything past what is kept still needs to be part of the md5
+            byte[] buffer = new byte[8192];
+            while (source.read(buffer) != -1) {
+                // DigestInputStream updates the digest as it is read
             }
-        } finally {
-            IOUtils.closeQuietly(bufferedReader);
         }
 
-        String temp = stringBuilder.toString();
-        String[] split = temp.split("\\r\\n|\\n|\\r");
+        String md5hash = messageDigest == null ? null : Hex.encodeHexString(messageDigest.digest());
+        return this.splitLines(charset, md5hash, decoded.toString(), maxFileLineDepth);
+    }
+
+    /**
+     * Splits the content into lines the same way as split("\\r\\n|\\n|\\r") so trailing empty lines are dropped
+     * and an empty file is a single empty line. Only the first maxFileLineDepth lines are kept.
+     */
+    private IngestedFile splitLines(Charset charset, String md5hash, String decoded, int maxFileLineDepth) {
+        int contentEnd = decoded.length();
+        while (contentEnd > 0 && (decoded.charAt(contentEnd - 1) == '\n' || decoded.charAt(contentEnd - 1) == '\r')) {
+            contentEnd--;
+        }
+
+        if (decoded.isEmpty()) {
+            return new IngestedFile(charset, md5hash, Values.EMPTYSTRING, new int[]{0}, new int[]{0});
+        }
+
+        int maxLines = Math.max(0, maxFileLineDepth);
+        int[] lineStarts = new int[16];
+        int[] lineEnds = new int[16];
+        int lineCount = 0;
+        boolean hasCarriageReturn = false;
+        int start = 0;
+
+        for (int i = 0; i < contentEnd && lineCount < maxLines; i++) {
+            char c = decoded.charAt(i);
+
+            if (c == '\n' || c == '\r') {
+                if (lineCount == lineStarts.length) {
+                    lineStarts = Arrays.copyOf(lineStarts, lineCount * 2);
+                    lineEnds = Arrays.copyOf(lineEnds, lineCount * 2);
+                }
+
+                lineStarts[lineCount] = start;
+                lineEnds[lineCount] = i;
+                lineCount++;
+
+                if (c == '\r') {
+                    hasCarriageReturn = true;
+                    if (i + 1 < contentEnd && decoded.charAt(i + 1) == '\n') {
+                        i++;
+                    }
+                }
+
+                start = i + 1;
+            }
+        }
+
+        if (contentEnd > 0 && lineCount < maxLines) {
+            if (lineCount == lineStarts.length) {
+                lineStarts = Arrays.copyOf(lineStarts, lineCount + 1);
+                lineEnds = Arrays.copyOf(lineEnds, lineCount + 1);
+            }
+
+            lineStarts[lineCount] = start;
+            lineEnds[lineCount] = contentEnd;
+            lineCount++;
+        }
+
+        lineStarts = Arrays.copyOf(lineStarts, lineCount);
+        lineEnds = Arrays.copyOf(lineEnds, lineCount);
+
+        if (lineCount == 0) {
+            return new IngestedFile(charset, md5hash, Values.EMPTYSTRING, lineStarts, lineEnds);
+        }
+
+        // Without carriage returns every line is already separated by a single \n so the content can be used as is
+        if (!hasCarriageReturn) {
+            return new IngestedFile(charset, md5hash, decoded.substring(0, lineEnds[lineCount - 1]), lineStarts, lineEnds);
+        }
 
-        List<String> strings = Arrays.asList(split);
+        StringBuilder contents = new StringBuilder(lineEnds[lineCount - 1]);
+        for (int i = 0; i < lineCount; i++) {
+            if (i != 0) {
+                contents.append('\n');
+            }
 
-        if (strings.size() > maxFileLineDepth) {
-            return strings.subList(0, maxFileLineDepth);
+            int newStart = contents.length();
+            contents.append(decoded, lineStarts[i], lineEnds[i]);
+            lineEnds[i] = contents.length();
+            lineStarts[i] = newStart;
         }
 
-        return strings;
+        return new IngestedFile(charset, md5hash, contents.toString(), lineStarts, lineEnds);
     }
 
-    private Charset guessCharset(File file) throws IOException {
-        return CharsetToolkit.guessEncoding(file, 4096, StandardCharsets.UTF_8);
+    /**
+     * Guesses using the first 4096 bytes padded out with zeros if the file is smaller which is the same
+     * as CharsetToolkit.guessEncoding for a file
+     */
+    private Charset guessCharset(byte[] bytes) {
+        CharsetToolkit charsetToolkit = new CharsetToolkit(Arrays.copyOf(bytes, 4096));
+        charsetToolkit.setDefaultCharset(StandardCharsets.UTF_8);
+        return charsetToolkit.guessEncoding();
     }
 
     /**
@@ -316,6 +459,13 @@ public class Helpers {
         return path;
     }
 
+    /**
+     * Placeholders for a SQL IN clause with the given number of values EG 3 -> ?,?,?
+     */
+    public String sqlPlaceholders(int count) {
+        return String.join(",", Collections.nCopies(count, "?"));
+    }
+
     public String replaceForIndex(String toReplace) {
         if (toReplace == null) {
             return Values.EMPTYSTRING;
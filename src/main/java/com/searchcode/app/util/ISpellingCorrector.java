@@ -11,6 +11,7 @@
 package com.searchcode.app.util;
 
 
+import java.nio.file.Path;
 import java.util.List;
 
 public interface ISpellingCorrector {
@@ -25,4 +26,8 @@ public interface ISpellingCorrector {
     boolean reset();
 
     List<String> getSampleWords(int count);
+
+    boolean saveSnapshot(Path path);
+
+    boolean loadSnapshot(Path path);
 }
@@ -0,0 +1,317 @@
+/*
+ * Copyright (c) 2016 Boyter Online Services
+ *
+ * Use of this software is governed by the Fair Source License included
+ * in the LICENSE.TXT file, but will be eventually open under GNU General Public License Version 3
+ * see the README.md for when this clause will take effect
+ *
+ * Version 1.3.15
+ */
+
+package com.searchcode.app.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.function.IntConsumer;
+
+/**
+ * Aho-Corasick automaton over a set of terms which finds how many of the terms appear in a line with a single
+ * pass over the line. Matching is case insensitive and treats any run of whitespace in the line as a single
+ * space, which is the same as calling contains for every term on line.toLowerCase().replaceAll("\\s+", " ")
+ * without creating any new strings. An exact matcher skips both so it is the same as calling contains for every
+ * term on the line as is.
+ * Once built the matcher is immutable and can be shared between threads, each thread scanning through its
+ * own Scanner which holds the little state needed to count each term once per line.
+ */
+public final class MultiTermMatcher {
+
+    private static final int ROOT = 0;
+    private static final int NO_STATE = -1;
+
+    // Goto function for each state as sorted characters with the state each leads to
+    private final char[][] transitionChars;
+    private final int[][] transitionStates;
+    // Longest proper suffix of the state that is also a state
+    private final int[] failure;
+    // Term ending at this state or NO_STATE
+    private final int[] output;
+    // Closest state along the failure chain that has an output or NO_STATE
+    private final int[] outputLink;
+    // How many of the original terms each distinct term stands for
+    private final int[] termWeights;
+    private final int alwaysMatching;
+    private final int totalWeight;
+    private final boolean exact;
+
+    public MultiTermMatcher(List<String> terms) {
+        this(terms, false);
+    }
+
+    public MultiTermMatcher(List<String> terms, boolean exact) {
+        this.exact = exact;
+        var builder = new ArrayList<TreeMap<Character, Integer>>();
+        var outputs = new ArrayList<Integer>();
+        var termIds = new HashMap<String, Integer>();
+        var weights = new ArrayList<Integer>();
+        var empty = 0;
+
+        builder.add(new TreeMap<>());
+        outputs.add(NO_STATE);
+
+        for (var term : terms) {
+            var normalised = exact ? term : normalise(term);
+
+            // An empty term is contained in every line
+            if (normalised.isEmpty()) {
+                empty++;
+                continue;
+            }
+
+            var termId = termIds.get(normalised);
+            if (termId != null) {
+                weights.set(termId, weights.get(termId) + 1);
+                continue;
+            }
+
+            termId = weights.size();
+            termIds.put(normalised, termId);
+            weights.add(1);
+
+            var state = ROOT;
+            for (var i = 0; i < normalised.length(); i++) {
+                var next = builder.get(state).get(normalised.charAt(i));
+
+                if (next == null) {
+                    next = builder.size();
+                    builder.get(state).put(normalised.charAt(i), next);
+                    builder.add(new TreeMap<>());
+                    outputs.add(NO_STATE);
+                }
+
+                state = next;
+            }
+
+            outputs.set(state, termId);
+        }
+
+        var stateCount = builder.size();
+        this.transitionChars = new char[stateCount][];
+        this.transitionStates = new int[stateCount][];
+        this.failure = new int[stateCount];
+        this.output = new int[stateCount];
+        this.outputLink = new int[stateCount];
+
+        for (var state = 0; state < stateCount; state++) {
+            var transitions = builder.get(state);
+            this.transitionChars[state] = new char[transitions.size()];
+            this.transitionStates[state] = new int[transitions.size()];
+
+            var i = 0;
+            for (var entry : transitions.entrySet()) {
+                this.transitionChars[state][i] = entry.getKey();
+                this.transitionStates[state][i] = entry.getValue();
+                i++;
+            }
+
+            this.output[state] = outputs.get(state);
+        }
+
+        this.buildFailureLinks(stateCount);
+
+        this.termWeights = weights.stream().mapToInt(Integer::intValue).toArray();
+        this.alwaysMatching = empty;
+        this.totalWeight = empty + Arrays.stream(this.termWeights).sum();
+    }
+
+    /**
+     * Creates the per thread state required to scan lines
+     */
+    public Scanner newScanner() {
+        return new Scanner();
+    }
+
+    /**
+     * Breadth first walk setting the failure and output links, every state at a lower depth is done
+     * before the states that rely on it
+     */
+    private void buildFailureLinks(int stateCount) {
+        var queue = new int[stateCount];
+        var head = 0;
+        var tail = 0;
+
+        this.failure[ROOT] = ROOT;
+        this.outputLink[ROOT] = NO_STATE;
+
+        for (var child : this.transitionStates[ROOT]) {
+            this.failure[child] = ROOT;
+            this.outputLink[child] = NO_STATE;
+            queue[tail++] = child;
+        }
+
+        while (head < tail) {
+            var state = queue[head++];
+
+            for (var i = 0; i < this.transitionChars[state].length; i++) {
+                var c = this.transitionChars[state][i];
+                var child = this.transitionStates[state][i];
+
+                var fallback = this.failure[state];
+                var next = this.transition(fallback, c);
+                while (next == NO_STATE && fallback != ROOT) {
+                    fallback = this.failure[fallback];
+                    next = this.transition(fallback, c);
+                }
+
+                var failState = next == NO_STATE ? ROOT : next;
+                this.failure[child] = failState;
+                this.outputLink[child] = this.output[failState] != NO_STATE ? failState : this.outputLink[failState];
+                queue[tail++] = child;
+            }
+        }
+    }
+
+    private int transition(int state, char c) {
+        var index = Arrays.binarySearch(this.transitionChars[state], c);
+        return index < 0 ? NO_STATE : this.transitionStates[state][index];
+    }
+
+    private static String normalise(String term) {
+        var sb = new StringBuilder(term.length());
+        var lastWhitespace = false;
+
+        for (var i = 0; i < term.length(); i++) {
+            var c = term.charAt(i);
+
+            if (isWhitespace(c)) {
+                if (!lastWhitespace) {
+                    sb.append(' ');
+                }
+                lastWhitespace = true;
+            } else {
+                sb.append(Character.toLowerCase(c));
+                lastWhitespace = false;
+            }
+        }
+
+        return sb.toString();
+    }
+
+    /**
+     * The same characters as \s in a Java regular expression
+     */
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    /**
+     * Not thread safe, create one per thread using newScanner
+     */
+    public final class Scanner {
+        // Line each term was last seen on so a term is only counted once per line without clearing anything
+        private final int[] lastSeen = new int[termWeights.length];
+        private int lineStamp = 0;
+
+        private Scanner() {
+        }
+
+        /**
+         * Returns how many of the terms are contained in the line, where a term that was passed in multiple
+         * times counts once for each time it was passed in
+         */
+        public int countMatchingTerms(CharSequence line) {
+            if (++this.lineStamp == 0) {
+                Arrays.fill(this.lastSeen, 0);
+                this.lineStamp = 1;
+            }
+
+            var matching = alwaysMatching;
+            var state = ROOT;
+            var lastWhitespace = false;
+
+            for (var i = 0; i < line.length() && matching != totalWeight; i++) {
+                var c = line.charAt(i);
+
+                if (!exact) {
+                    if (isWhitespace(c)) {
+                        if (lastWhitespace) {
+                            continue;
+                        }
+                        c = ' ';
+                        lastWhitespace = true;
+                    } else {
+                        c = Character.toLowerCase(c);
+                        lastWhitespace = false;
+                    }
+                }
+
+                var next = transition(state, c);
+                while (next == NO_STATE && state != ROOT) {
+                    state = failure[state];
+                    next = transition(state, c);
+                }
+                state = next == NO_STATE ? ROOT : next;
+
+                for (var found = output[state] != NO_STATE ? state : outputLink[state]; found != NO_STATE; found = outputLink[found]) {
+                    var termId = output[found];
+
+                    if (this.lastSeen[termId] != this.lineStamp) {
+                        this.lastSeen[termId] = this.lineStamp;
+                        matching += termWeights[termId];
+                    }
+                }
+            }
+
+            return matching;
+        }
+
+        /**
+         * Calls the consumer once with the id of each term contained in the line, where the id is the position of
+         * the term among the distinct non empty terms in the order they were passed in. Empty terms are not reported.
+         */
+        public void forEachMatchingTerm(CharSequence line, IntConsumer consumer) {
+            if (++this.lineStamp == 0) {
+                Arrays.fill(this.lastSeen, 0);
+                this.lineStamp = 1;
+            }
+
+            var state = ROOT;
+            var lastWhitespace = false;
+
+            for (var i = 0; i < line.length(); i++) {
+                var c = line.charAt(i);
+
+                if (!exact) {
+                    if (isWhitespace(c)) {
+                        if (lastWhitespace) {
+                            continue;
+                        }
+                        c = ' ';
+                        lastWhitespace = true;
+                    } else {
+                        c = Character.toLowerCase(c);
+                        lastWhitespace = false;
+                    }
+                }
+
+                var next = transition(state, c);
+                while (next == NO_STATE && state != ROOT) {
+                    state = failure[state];
+                    next = transition(state, c);
+                }
+                state = next == NO_STATE ? ROOT : next;
+
+                for (var found = output[state] != NO_STATE ? state : outputLink[state]; found != NO_STATE; found = outputLink[found]) {
+                    var termId = output[found];
+
+                    if (this.lastSeen[termId] != this.lineStamp) {
+                        this.lastSeen[termId] = this.lineStamp;
+                        consumer.accept(termId);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -21,18 +21,26 @@ import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Map;
 
+/**
+ * Finds lines of code matching the OWASP rules. Rules are compiled once per language into a single automaton
+ * over their names so each line is scanned once no matter how many rules apply. The compiled rules are rebuilt
+ * the next time code is classified after the database is changed.
+ */
 public class OWASPClassifier {
 
     private final LoggerWrapper logger;
     private String DATABASEPATH = Properties.getProperties().getProperty(Values.OWASPDATABASELOCATION, Values.DEFAULTOWASPDATABASELOCATION);
     private ArrayList<OWASPResult> database;
+    private volatile CompiledRules compiledRules = null;
 
     public OWASPClassifier() {
-        this.database = this.loadDatabase();
         this.logger = Singleton.getLogger();
+        this.database = this.loadDatabase();
     }
 
     /**
@@ -46,21 +54,52 @@ public class OWASPClassifier {
             return matching;
         }
 
-        for (var result : this.database.stream().filter(x -> x.lang.equalsIgnoreCase(languageName) || x.lang.isEmpty()).collect(Collectors.toList())) {
-            for (int i = 0; i < codeLines.size(); i++) {
-                if (codeLines.get(i).contains(result.name)) {
+        var rules = this.getCompiledRules().forLanguage(languageName);
+        if (rules.names.isEmpty()) {
+            return matching;
+        }
+
+        // Lines each rule name matched on indexed the same as rules.names
+        var matchingLines = new ArrayList<List<Integer>>(rules.names.size());
+        for (var i = 0; i < rules.names.size(); i++) {
+            matchingLines.add(null);
+        }
 
-                    // If the matching result already exists, just add the line number, otherwise
-                    var matchingResult = this.getMatchingResult(matching, result.name);
+        var scanner = rules.matcher.newScanner();
+        for (int i = 0; i < codeLines.size(); i++) {
+            var lineNumber = i + 1;
+
+            scanner.forEachMatchingTerm(codeLines.get(i), termId -> this.addLine(matchingLines, rules.termNames[termId], lineNumber));
+
+            // An empty name is contained in every line
+            for (var name : rules.emptyNames) {
+                this.addLine(matchingLines, name, lineNumber);
+            }
+        }
+
+        for (var i = 0; i < rules.names.size(); i++) {
+            var lines = matchingLines.get(i);
+            if (lines == null) {
+                continue;
+            }
 
-                    if (matchingResult != null) {
-                        matchingResult.addMatchingLine(i + 1);
+            var rule = rules.rules.get(i);
+            OWASPMatchingResult result = null;
+
+            // Rules sharing a name are merged into the first with each adding its own lines
+            for (var count = 0; count < rules.counts[i]; count++) {
+                for (var line : lines) {
+                    if (result == null) {
+                        result = new OWASPMatchingResult(rule.name, rule.desc, rule.type, line);
                     } else {
-                        matching.add(new OWASPMatchingResult(result.name, result.desc, result.type, i + 1));
+                        result.addMatchingLine(line);
                     }
                 }
             }
+
+            matching.add(result);
         }
+
         return matching;
     }
 
@@ -70,20 +109,116 @@ public class OWASPClassifier {
 
     public void clearDatabase() {
         this.database.clear();
+        this.compiledRules = null;
     }
 
     public void addToDatabase(OWASPResult result) {
         this.database.add(result);
+        this.compiledRules = null;
+    }
+
+    private void addLine(List<List<Integer>> matchingLines, int name, int lineNumber) {
+        var lines = matchingLines.get(name);
+
+        if (lines == null) {
+            lines = new ArrayList<>();
+            matchingLines.set(name, lines);
+        }
+
+        lines.add(lineNumber);
+    }
+
+    private CompiledRules getCompiledRules() {
+        var rules = this.compiledRules;
+
+        if (rules == null) {
+            rules = new CompiledRules(new ArrayList<>(this.database));
+            this.compiledRules = rules;
+        }
+
+        return rules;
     }
 
-    private OWASPMatchingResult getMatchingResult(ArrayList<OWASPMatchingResult> results, String name) {
-        for (OWASPMatchingResult result : results) {
-            if (result.getName().equals(name)) {
-                return result;
+    /**
+     * The rules for every language in the database along with the rules that apply to any language
+     */
+    private static class CompiledRules {
+        private final Map<String, LanguageRules> languages = new HashMap<>();
+        private final LanguageRules anyLanguage;
+
+        private CompiledRules(List<OWASPResult> database) {
+            this.anyLanguage = new LanguageRules(database, Values.EMPTYSTRING);
+
+            for (var rule : database) {
+                var language = rule.lang.toLowerCase();
+
+                if (!language.isEmpty() && !this.languages.containsKey(language)) {
+                    this.languages.put(language, new LanguageRules(database, language));
+                }
             }
         }
 
-        return null;
+        private LanguageRules forLanguage(String languageName) {
+            if (languageName == null) {
+                return this.anyLanguage;
+            }
+
+            return this.languages.getOrDefault(languageName.toLowerCase(), this.anyLanguage);
+        }
+    }
+
+    /**
+     * Rules for one language kept in database order with rules of the same name merged
+     */
+    private static class LanguageRules {
+        // First rule for each distinct name and how many rules share that name
+        private final List<OWASPResult> rules = new ArrayList<>();
+        private final List<String> names = new ArrayList<>();
+        private final int[] counts;
+        // Position in names for each term in the matcher
+        private final int[] termNames;
+        private final int[] emptyNames;
+        private final MultiTermMatcher matcher;
+
+        private LanguageRules(List<OWASPResult> database, String language) {
+            var positions = new LinkedHashMap<String, Integer>();
+            var counts = new ArrayList<Integer>();
+
+            for (var rule : database) {
+                if (!rule.lang.isEmpty() && !rule.lang.equalsIgnoreCase(language)) {
+                    continue;
+                }
+
+                var position = positions.get(rule.name);
+                if (position == null) {
+                    positions.put(rule.name, this.names.size());
+                    this.names.add(rule.name);
+                    this.rules.add(rule);
+                    counts.add(1);
+                } else {
+                    counts.set(position, counts.get(position) + 1);
+                }
+            }
+
+            this.counts = counts.stream().mapToInt(Integer::intValue).toArray();
+
+            var terms = new ArrayList<String>();
+            var termNames = new ArrayList<Integer>();
+            var emptyNames = new ArrayList<Integer>();
+
+            for (var i = 0; i < this.names.size(); i++) {
+                if (this.names.get(i).isEmpty()) {
+                    emptyNames.add(i);
+                } else {
+                    terms.add(this.names.get(i));
+                    termNames.add(i);
+                }
+            }
+
+            this.termNames = termNames.stream().mapToInt(Integer::intValue).toArray();
+            this.emptyNames = emptyNames.stream().mapToInt(Integer::intValue).toArray();
+            this.matcher = new MultiTermMatcher(terms, true);
+        }
     }
 
     /**
@@ -0,0 +1,449 @@
+/*
+ * Copyright (c) 2016 Boyter Online Services
+ *
+ * Use of this software is governed by the Fair Source License included
+ * in the LICENSE.TXT file, but will be eventually open under GNU General Public License Version 3
+ * see the README.md for when this clause will take effect
+ *
+ * Version 1.3.15
+ */
+
+package com.searchcode.app.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+/**
+ * Turns a regular expression into a boolean plan of the trigrams any matching document has to contain so that
+ * an index of trigrams can narrow down which documents need to be checked against the regular expression.
+ * The plan only has to be a superset of the real matches so anything not understood is planned as matching
+ * every document. Trigrams are lowercase so the plan works for case insensitive expressions as well.
+ */
+public class RegexTrigramPlanner {
+
+    public static final int GRAM_SIZE = 3;
+
+    /**
+     * Returns the plan for the regular expression which is ALL if no trigrams are required
+     */
+    public Plan plan(String regex) {
+        try {
+            var parser = new Parser(regex);
+            var plan = parser.parseAlternation();
+
+            return parser.pos == regex.length() ? plan : Plan.all();
+        } catch (UnsupportedSyntaxException ex) {
+            return Plan.all();
+        }
+    }
+
+    /**
+     * Returns the plan for finding a literal string which is every trigram in it
+     */
+    public Plan planLiteral(String literal) {
+        var trigrams = new ArrayList<Plan>();
+
+        for (var trigram : trigrams(literal)) {
+            trigrams.add(Plan.trigram(trigram));
+        }
+
+        return Plan.and(trigrams);
+    }
+
+    /**
+     * The distinct lowercase trigrams in order of first appearance
+     */
+    public static LinkedHashSet<String> trigrams(CharSequence contents) {
+        var trigrams = new LinkedHashSet<String>();
+        var chars = new char[GRAM_SIZE];
+
+        for (var i = 0; i + GRAM_SIZE <= contents.length(); i++) {
+            for (var j = 0; j < GRAM_SIZE; j++) {
+                chars[j] = Character.toLowerCase(contents.charAt(i + j));
+            }
+            trigrams.add(new String(chars));
+        }
+
+        return trigrams;
+    }
+
+    /**
+     * Node of the boolean plan, either a single trigram or the AND or OR of other nodes. ALL means that
+     * any document could match.
+     */
+    public static final class Plan {
+        public enum Op { ALL, TRIGRAM, AND, OR }
+
+        private static final Plan ALL = new Plan(Op.ALL, null, Collections.emptyList());
+
+        public final Op op;
+        public final String trigram;
+        public final List<Plan> children;
+
+        private Plan(Op op, String trigram, List<Plan> children) {
+            this.op = op;
+            this.trigram = trigram;
+            this.children = children;
+        }
+
+        public static Plan all() {
+            return ALL;
+        }
+
+        public static Plan trigram(String trigram) {
+            return new Plan(Op.TRIGRAM, trigram, Collections.emptyList());
+        }
+
+        /**
+         * Anything that matches every document adds nothing to an AND so is dropped
+         */
+        public static Plan and(List<Plan> plans) {
+            var children = new ArrayList<Plan>();
+
+            for (var plan : plans) {
+                if (plan.op == Op.AND) {
+                    children.addAll(plan.children);
+                } else if (plan.op != Op.ALL) {
+                    children.add(plan);
+                }
+            }
+
+            if (children.isEmpty()) {
+                return ALL;
+            }
+
+            return children.size() == 1 ? children.get(0) : new Plan(Op.AND, null, Collections.unmodifiableList(children));
+        }
+
+        /**
+         * If any branch can match every document then so can the OR
+         */
+        public static Plan or(List<Plan> plans) {
+            var children = new ArrayList<Plan>();
+
+            for (var plan : plans) {
+                if (plan.op == Op.ALL) {
+                    return ALL;
+                }
+
+                if (plan.op == Op.OR) {
+                    children.addAll(plan.children);
+                } else {
+                    children.add(plan);
+                }
+            }
+
+            if (children.isEmpty()) {
+                return ALL;
+            }
+
+            return children.size() == 1 ? children.get(0) : new Plan(Op.OR, null, Collections.unmodifiableList(children));
+        }
+
+        public boolean isAll() {
+            return this.op == Op.ALL;
+        }
+
+        @Override
+        public String toString() {
+            switch (this.op) {
+                case TRIGRAM:
+                    return "\"" + this.trigram + "\"";
+                case AND:
+                case OR:
+                    var joined = new ArrayList<String>();
+                    for (var child : this.children) {
+                        joined.add(child.toString());
+                    }
+                    return "(" + String.join(this.op == Op.AND ? " AND " : " OR ", joined) + ")";
+                default:
+                    return "ALL";
+            }
+        }
+    }
+
+    /**
+     * Recursive descent over the java.util.regex syntax. Runs of literal characters that must appear are
+     * collected and turned into trigrams, everything else breaks the run. Syntax that is rare or would change
+     * the meaning of literals such as \Q or comments mode throws UnsupportedSyntaxException.
+     */
+    private class Parser {
+        private static final int ONE = 0;
+        private static final int OPTIONAL = 1;
+        private static final int REPEATED = 2;
+
+        private final String regex;
+        private int pos = 0;
+
+        Parser(String regex) {
+            this.regex = regex;
+        }
+
+        Plan parseAlternation() {
+            var branches = new ArrayList<Plan>();
+            branches.add(this.parseSequence());
+
+            while (this.pos < this.regex.length() && this.regex.charAt(this.pos) == '|') {
+                this.pos++;
+                branches.add(this.parseSequence());
+            }
+
+            return Plan.or(branches);
+        }
+
+        private Plan parseSequence() {
+            var parts = new ArrayList<Plan>();
+            var run = new StringBuilder();
+
+            while (this.pos < this.regex.length()) {
+                var c = this.regex.charAt(this.pos);
+
+                if (c == '|' || c == ')') {
+                    break;
+                }
+
+                Character literal = null;
+
+                switch (c) {
+                    case '(':
+                        this.flush(run, parts);
+                        var group = this.parseGroup();
+                        if (this.parseQuantifier() != OPTIONAL) {
+                            parts.add(group);
+                        }
+                        continue;
+                    case '[':
+                        this.flush(run, parts);
+                        this.skipClass();
+                        this.parseQuantifier();
+                        continue;
+                    case '.':
+                    case '^':
+                    case '$':
+                        this.flush(run, parts);
+                        this.pos++;
+                        this.parseQuantifier();
+                        continue;
+                    case '*':
+                    case '+':
+                    case '?':
+                    case '{':
+                        throw new UnsupportedSyntaxException();
+                    case '\\':
+                        literal = this.parseEscape();
+                        break;
+                    default:
+                        literal = c;
+                        this.pos++;
+                }
+
+                var quantifier = this.parseQuantifier();
+
+                if (literal == null || quantifier == OPTIONAL) {
+                    this.flush(run, parts);
+                } else {
+                    run.append(Character.toLowerCase(literal));
+
+                    // Must appear at least once but what follows it may be another copy
+                    if (quantifier == REPEATED) {
+                        this.flush(run, parts);
+                    }
+                }
+            }
+
+            this.flush(run, parts);
+            return Plan.and(parts);
+        }
+
+        private void flush(StringBuilder run, List<Plan> parts) {
+            if (run.length() >= GRAM_SIZE) {
+                parts.add(planLiteral(run.toString()));
+            }
+
+            run.setLength(0);
+        }
+
+        private Plan parseGroup() {
+            this.pos++;
+
+            if (this.peek('?')) {
+                this.pos++;
+
+                if (this.peek(':') || this.peek('>')) {
+                    this.pos++;
+                } else if (this.peek('=') || this.peek('!') || this.regex.startsWith("<=", this.pos) || this.regex.startsWith("<!", this.pos)) {
+                    // Lookaround is zero width so contributes nothing
+                    this.parseAlternation();
+                    this.expect(')');
+                    return Plan.all();
+                } else if (this.peek('<')) {
+                    var end = this.regex.indexOf('>', this.pos);
+                    if (end == -1) {
+                        throw new UnsupportedSyntaxException();
+                    }
+                    this.pos = end + 1;
+                } else {
+                    // Inline flags either for the rest of the expression (?i) or a group (?i:...)
+                    var start = this.pos;
+                    while (this.pos < this.regex.length() && Character.isLetter(this.regex.charAt(this.pos)) || this.peek('-')) {
+                        this.pos++;
+                    }
+
+                    if (this.regex.substring(start, this.pos).contains("x")) {
+                        throw new UnsupportedSyntaxException();
+                    }
+
+                    if (this.peek(')')) {
+                        this.pos++;
+                        return Plan.all();
+                    }
+
+                    this.expect(':');
+                }
+            }
+
+            var plan = this.parseAlternation();
+            this.expect(')');
+            return plan;
+        }
+
+        /**
+         * Returns the literal character for the escape or null if it is a class, assertion or back reference
+         */
+        private Character parseEscape() {
+            this.pos++;
+            if (this.pos >= this.regex.length()) {
+                throw new UnsupportedSyntaxException();
+            }
+
+            var c = this.regex.charAt(this.pos++);
+
+            switch (c) {
+                case 't':
+                    return '\t';
+                case 'n':
+                    return '\n';
+                case 'r':
+                    return '\r';
+                case 'f':
+                    return '\f';
+                case 'a':
+                    return '\u0007';
+                case 'e':
+                    return '\u001B';
+                case 'd': case 'D': case 'w': case 'W': case 's': case 'S': case 'h': case 'H': case 'v': case 'V':
+                case 'b': case 'B': case 'A': case 'G': case 'z': case 'Z': case 'R': case 'X':
+                    return null;
+                default:
+                    if (c >= '1' && c <= '9') {
+                        while (this.pos < this.regex.length() && Character.isDigit(this.regex.charAt(this.pos))) {
+                            this.pos++;
+                        }
+                        return null;
+                    }
+
+                    if (Character.isLetterOrDigit(c)) {
+                        throw new UnsupportedSyntaxException();
+                    }
+
+                    return c;
+            }
+        }
+
+        private void skipClass() {
+            this.pos++;
+            var depth = 1;
+
+            if (this.peek('^')) {
+                this.pos++;
+            }
+            // A leading ] is a literal
+            if (this.peek(']')) {
+                this.pos++;
+            }
+
+            while (this.pos < this.regex.length()) {
+                var c = this.regex.charAt(this.pos++);
+
+                if (c == '\\') {
+                    this.pos++;
+                } else if (c == '[') {
+                    depth++;
+                } else if (c == ']' && --depth == 0) {
+                    return;
+                }
+            }
+
+            throw new UnsupportedSyntaxException();
+        }
+
+        private int parseQuantifier() {
+            if (this.pos >= this.regex.length()) {
+                return ONE;
+            }
+
+            int quantifier;
+
+            switch (this.regex.charAt(this.pos)) {
+                case '*':
+                case '?':
+                    quantifier = OPTIONAL;
+                    this.pos++;
+                    break;
+                case '+':
+                    quantifier = REPEATED;
+                    this.pos++;
+                    break;
+                case '{':
+                    var end = this.regex.indexOf('}', this.pos);
+                    if (end == -1) {
+                        throw new UnsupportedSyntaxException();
+                    }
+
+                    var bounds = this.regex.substring(this.pos + 1, end).split(",", -1);
+                    int min;
+                    try {
+                        min = Integer.parseInt(bounds[0].trim());
+                    } catch (NumberFormatException ex) {
+                        throw new UnsupportedSyntaxException();
+                    }
+
+                    quantifier = min == 0 ? OPTIONAL : (bounds.length == 1 && min == 1) ? ONE : REPEATED;
+                    this.pos = end + 1;
+                    break;
+                default:
+                    return ONE;
+            }
+
+            // Lazy and possessive quantifiers match the same text
+            if (this.peek('?') || this.peek('+')) {
+                this.pos++;
+            }
+
+            return quantifier;
+        }
+
+        private boolean peek(char c) {
+            return this.pos < this.regex.length() && this.regex.charAt(this.pos) == c;
+        }
+
+        private void expect(char c) {
+            if (!this.peek(c)) {
+                throw new UnsupportedSyntaxException();
+            }
+            this.pos++;
+        }
+    }
+
+    /**
+     * Thrown by the parser to give up on syntax it does not handle. There is no stack trace as it is only
+     * ever caught by plan and is expected for any unusual expression.
+     */
+    private static class UnsupportedSyntaxException extends RuntimeException {
+        UnsupportedSyntaxException() {
+            super(null, null, false, false);
+        }
+    }
+}
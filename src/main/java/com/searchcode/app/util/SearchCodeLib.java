@@ -28,7 +28,7 @@ public class SearchCodeLib {
     private final FileClassifier fileClassifier;
     private final int MINIFIED_LENGTH;
 
-    private final int MAX_SPLIT_LENGTH = 100_000;
+    public static final int MAX_SPLIT_LENGTH = 100_000;
     private final Pattern MULTIPLE_UPPERCASE = Pattern.compile("[A-Z]{2,}");
     private final boolean GUESS_BINARY = Boolean.parseBoolean(Properties.getProperties().getProperty(Values.GUESS_BINARY, Values.DEFAULT_GUESS_BINARY));
     private final boolean AND_MATCH = Boolean.parseBoolean(com.searchcode.app.util.Properties.getProperties().getProperty(Values.AND_MATCH, Values.DEFAULT_AND_MATCH));
@@ -69,7 +69,7 @@ public class SearchCodeLib {
         contents = contents.replaceAll("[^a-zA-Z0-9]", " ");
 
         // Performance improvement hack
-        if (contents.length() > this.MAX_SPLIT_LENGTH) {
+        if (contents.length() > MAX_SPLIT_LENGTH) {
 
             // Add AAA to ensure we dont split the last word if it was cut off
             contents = contents.substring(0, MAX_SPLIT_LENGTH) + "AAA";
@@ -108,7 +108,7 @@ public class SearchCodeLib {
         StringBuilder indexContents = new StringBuilder();
 
         // Performance improvement hack
-        if (contents.length() > this.MAX_SPLIT_LENGTH) {
+        if (contents.length() > MAX_SPLIT_LENGTH) {
             // Add AAA to ensure we dont split the last word if it was cut off
             contents = contents.substring(0, MAX_SPLIT_LENGTH) + "AAA";
         }
@@ -175,7 +175,7 @@ public class SearchCodeLib {
         }
 
         // Limit to reduce performance impacts
-        if (contents.length() > this.MAX_SPLIT_LENGTH) {
+        if (contents.length() > MAX_SPLIT_LENGTH) {
             contents = contents.substring(0, MAX_SPLIT_LENGTH);
         }
 
@@ -240,14 +240,8 @@ public class SearchCodeLib {
         }
 
         // Check if whitelisted extension IE what we know about
-        var database = fileClassifier.getDatabase();
-        for (var key : database.keySet()) {
-            var fileClassifierResult = database.get(key);
-            for (var extension : fileClassifierResult.extensions) {
-                if (lowerFileName.endsWith("." + extension)) {
-                    return new BinaryFinding(false, "appears in internal extension whitelist");
-                }
-            }
+        if (fileClassifier.hasKnownExtension(lowerFileName)) {
+            return new BinaryFinding(false, "appears in internal extension whitelist");
         }
 
         // If we aren't meant to guess then assume it isn't binary
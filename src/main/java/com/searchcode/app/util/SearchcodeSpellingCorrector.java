@@ -14,65 +14,82 @@ package com.searchcode.app.util;
 import com.searchcode.app.config.Values;
 import com.searchcode.app.service.Singleton;
 
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.stream.Collectors;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 /**
- * A simple spell checker based on a few implementations such as the infamous Peter Noving spell checker and
- * the like. Attempts to be highly performing by never changing the first character (for the first pass)
- * since we can usually assume that the user got that correct.
+ * A spell checker that never takes a global lock so that indexing threads adding words and search threads
+ * correcting words do not contend with each other. Word counts are kept in a concurrent map and the words
+ * are kept in a BK-tree which allows finding everything within two edits of a word without generating every
+ * possible variation of it. When the dictionary grows past the configured size the least common words are
+ * dropped and the tree is rebuilt by the thread that triggered it while searches carry on against
+ * the old tree. The dictionary can be saved to and loaded from a snapshot to avoid rebuilding it
+ * from the repositories on restart.
  */
 public class SearchcodeSpellingCorrector implements ISpellingCorrector {
 
-    // How many terms to keep in the LRUCACHE
-    private int LRUCOUNT = Integer.parseInt(Values.DEFAULTSPELLINGCORRECTORSIZE);
+    private static final int MAX_EDIT_DISTANCE = 2;
+    private static final String SNAPSHOT_HEADER = "searchcode-spelling-1";
 
-    private int VARIATIONSCOUNT = 200000;
+    // How many terms to keep in the dictionary
+    private int MAX_WORDS = Integer.parseInt(Values.DEFAULTSPELLINGCORRECTORSIZE);
 
     // word to count map - how may times a word is present - or a weight attached to a word
-    private Map<String, Integer> dictionary = null;
+    private final ConcurrentHashMap<String, LongAdder> dictionary = new ConcurrentHashMap<>();
+    private final AtomicReference<BkTree> bkTree = new AtomicReference<>(new BkTree());
+    private final AtomicBoolean evicting = new AtomicBoolean(false);
 
     public SearchcodeSpellingCorrector() {
-        this.LRUCOUNT = Integer.parseInt(Properties.getProperties().getProperty(Values.SPELLINGCORRECTORSIZE, Values.DEFAULTSPELLINGCORRECTORSIZE));
-        if (this.LRUCOUNT <= 0) {
-            this.LRUCOUNT = Integer.parseInt(Values.DEFAULTSPELLINGCORRECTORSIZE);
-        }
+        this(Singleton.getHelpers().tryParseInt(Properties.getProperties().getProperty(Values.SPELLINGCORRECTORSIZE, Values.DEFAULTSPELLINGCORRECTORSIZE), Values.DEFAULTSPELLINGCORRECTORSIZE));
+    }
 
-        this.dictionary = Collections.synchronizedMap(new LruCache<>(this.LRUCOUNT));
+    public SearchcodeSpellingCorrector(int maxWords) {
+        this.MAX_WORDS = maxWords;
+        if (this.MAX_WORDS <= 0) {
+            this.MAX_WORDS = Integer.parseInt(Values.DEFAULTSPELLINGCORRECTORSIZE);
+        }
     }
 
     @Override
     public int getWordCount() {
-        return dictionary.size();
+        return this.dictionary.size();
     }
 
     @Override
     public boolean reset() {
         this.dictionary.clear();
+        this.bkTree.set(new BkTree());
         return true;
     }
 
+    /**
+     * Returns the most common words with their counts
+     */
     @Override
     public List<String> getSampleWords(int count) {
-        List<String> sampleWords = new ArrayList<>();
-
-        for (Map.Entry<String, Integer> entry : this.dictionary.entrySet()) {
-            sampleWords.add(entry.getValue() + " - " + entry.getKey());
-        }
-
-        int end = sampleWords.size() >= 10 ? 10 : sampleWords.size();
-
-        return sampleWords.subList(0, end);
+        return this.dictionary.entrySet().stream()
+                .map(x -> new AbstractMap.SimpleEntry<>(x.getKey(), x.getValue().sum()))
+                .sorted((a, b) -> Long.compare(b.getValue(), a.getValue()))
+                .limit(Math.max(0, count))
+                .map(x -> x.getValue() + " - " + x.getKey())
+                .collect(Collectors.toList());
     }
 
     @Override
     public void putWord(String word) {
-        word = word.toLowerCase();
-        if (dictionary.containsKey(word)) {
-            dictionary.put(word, (dictionary.get(word) + 1));
-        } else {
-            dictionary.put(word, 1);
-        }
+        this.putWord(word.toLowerCase(), 1);
     }
 
     @Override
@@ -84,130 +101,357 @@ public class SearchcodeSpellingCorrector implements ISpellingCorrector {
         word = word.toLowerCase();
 
         // If the word exists in our dictionary then return
-        if (dictionary.containsKey(word)) {
+        if (this.dictionary.containsKey(word)) {
             return word;
         }
 
-        Map<String, Integer> possibleMatches = new HashMap<>();
+        // Closest wins, then anything of the same length, then the most common
+        String bestMatch = null;
+        int bestDistance = Integer.MAX_VALUE;
+        boolean bestSameLength = false;
+        long bestCount = 0;
+
+        for (Map.Entry<String, Integer> match : this.bkTree.get().search(word, MAX_EDIT_DISTANCE).entrySet()) {
+            LongAdder adder = this.dictionary.get(match.getKey());
+            if (adder == null) {
+                // Removed from the dictionary but the tree has not been rebuilt yet
+                continue;
+            }
 
-        List<String> closeEdits = this.wordEdits(word);
-        for (String closeEdit : closeEdits) {
-            if (dictionary.containsKey(closeEdit)) {
-                possibleMatches.put(closeEdit, this.dictionary.get(closeEdit));
+            int distance = match.getValue();
+            boolean sameLength = match.getKey().length() == word.length();
+            long count = adder.sum();
+
+            boolean better = bestMatch == null
+                    || distance < bestDistance
+                    || (distance == bestDistance && sameLength && !bestSameLength)
+                    || (distance == bestDistance && sameLength == bestSameLength && (count > bestCount || (count == bestCount && match.getKey().compareTo(bestMatch) < 0)));
+
+            if (better) {
+                bestMatch = match.getKey();
+                bestDistance = distance;
+                bestSameLength = sameLength;
+                bestCount = count;
             }
         }
 
-        if (closeEdits.size() > VARIATIONSCOUNT) {
-            closeEdits = closeEdits.subList(0, VARIATIONSCOUNT);
-        }
+        // If unable to find something better return the same string
+        return bestMatch == null ? word : bestMatch;
+    }
 
-        if (!possibleMatches.isEmpty()) {
-            // Sorted least likely first
-            Object[] matches = Singleton.getHelpers().sortByValue(possibleMatches).keySet().toArray();
+    @Override
+    public boolean containsWord(String word) {
+        return this.dictionary.containsKey(word);
+    }
 
-            // Try to match anything of the same length first
-            String bestMatch = Values.EMPTYSTRING;
-            for (Object o : matches) {
-                if (o.toString().length() == word.length()) {
-                    bestMatch = o.toString();
+    /**
+     * Writes every word and its count to the supplied path most common first. The snapshot is written to a
+     * temporary file which is moved into place so a crash while saving never leaves a partial snapshot.
+     */
+    @Override
+    public boolean saveSnapshot(Path path) {
+        try {
+            Path parent = path.toAbsolutePath().getParent();
+            Files.createDirectories(parent);
+            Path tempPath = Files.createTempFile(parent, path.getFileName().toString(), ".tmp");
+
+            List<Map.Entry<String, Long>> words = this.dictionary.entrySet().stream()
+                    .map(x -> new AbstractMap.SimpleEntry<>(x.getKey(), x.getValue().sum()))
+                    .sorted((a, b) -> Long.compare(b.getValue(), a.getValue()))
+                    .collect(Collectors.toList());
+
+            try (BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(new GZIPOutputStream(Files.newOutputStream(tempPath)), StandardCharsets.UTF_8))) {
+                writer.write(SNAPSHOT_HEADER);
+                writer.newLine();
+
+                for (Map.Entry<String, Long> word : words) {
+                    writer.write(word.getKey());
+                    writer.write('\t');
+                    writer.write(Long.toString(word.getValue()));
+                    writer.newLine();
                 }
             }
 
-            if (!Singleton.getHelpers().isNullEmptyOrWhitespace(bestMatch)) {
-                return bestMatch;
+            Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return true;
+        } catch (IOException ex) {
+            Singleton.getLogger().severe(String.format("a7c31e52::error in class %s exception %s unable to save spelling snapshot %s", ex.getClass(), ex.getMessage(), path));
+        }
+
+        return false;
+    }
+
+    /**
+     * Adds the words and counts from a snapshot to the dictionary. Returns false if there is no snapshot
+     * or it cannot be read.
+     */
+    @Override
+    public boolean loadSnapshot(Path path) {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new GZIPInputStream(Files.newInputStream(path)), StandardCharsets.UTF_8))) {
+            if (!SNAPSHOT_HEADER.equals(reader.readLine())) {
+                Singleton.getLogger().info(String.format("5d0e9b17::spelling snapshot %s has unknown format ignoring", path));
+                return false;
             }
 
-            // Just return whatever is the best match
-            return matches[matches.length - 1].toString();
+            String line;
+            while ((line = reader.readLine()) != null && this.dictionary.size() < this.MAX_WORDS) {
+                int split = line.lastIndexOf('\t');
+                if (split <= 0) {
+                    continue;
+                }
+
+                long count;
+                try {
+                    count = Long.parseLong(line.substring(split + 1));
+                } catch (NumberFormatException ex) {
+                    count = 1;
+                }
+
+                this.putWord(line.substring(0, split), Math.max(1, count));
+            }
+
+            return true;
+        } catch (FileNotFoundException | NoSuchFileException ex) {
+            return false;
+        } catch (IOException ex) {
+            Singleton.getLogger().severe(String.format("e3f6a0c8::error in class %s exception %s unable to load spelling snapshot %s", ex.getClass(), ex.getMessage(), path));
         }
 
-        // Ok we did't find anything, so lets run the edits function on the previous results and use those
-        // this gives us results which are 2 characters away from whatever was entered
-        List<String> furtherEdits = new ArrayList<>();
-        for (String closeEdit : closeEdits) {
-            furtherEdits.addAll(this.wordEdits(closeEdit));
+        return false;
+    }
+
+    private void putWord(String word, long count) {
+        LongAdder adder = this.dictionary.get(word);
 
-            if (furtherEdits.size() > this.VARIATIONSCOUNT) {
-                break;
+        if (adder == null) {
+            LongAdder created = new LongAdder();
+            adder = this.dictionary.putIfAbsent(word, created);
+
+            if (adder == null) {
+                adder = created;
+                this.bkTree.get().add(word);
+
+                if (this.dictionary.size() > this.MAX_WORDS) {
+                    this.evict();
+                }
             }
         }
 
-        for (String furtherEdit : furtherEdits) {
-            if (dictionary.containsKey(furtherEdit)) {
-                possibleMatches.put(furtherEdit, this.dictionary.get(furtherEdit));
+        adder.add(count);
+    }
+
+    /**
+     * Drops the least common words to get back under the limit with some headroom so this is not run for every
+     * new word, then rebuilds the tree without them. Only one thread evicts at a time, anyone else adding words
+     * at the same time carries on without waiting.
+     */
+    private void evict() {
+        if (!this.evicting.compareAndSet(false, true)) {
+            return;
+        }
+
+        try {
+            int keep = Math.max(1, (int) (this.MAX_WORDS * 0.9));
+
+            List<String> remove = this.dictionary.entrySet().stream()
+                    .map(x -> new AbstractMap.SimpleEntry<>(x.getKey(), x.getValue().sum()))
+                    .sorted((a, b) -> Long.compare(b.getValue(), a.getValue()))
+                    .skip(keep)
+                    .map(AbstractMap.SimpleEntry::getKey)
+                    .collect(Collectors.toList());
+
+            remove.forEach(this.dictionary::remove);
+
+            BkTree newTree = new BkTree();
+            this.dictionary.keySet().forEach(newTree::add);
+            this.bkTree.set(newTree);
+
+            // Anything added to the old tree while the new one was being built needs to be in the new one
+            this.dictionary.keySet().forEach(newTree::add);
+        } finally {
+            this.evicting.set(false);
+        }
+    }
+
+    /**
+     * Damerau-Levenshtein distance which counts insertions, deletions, substitutions and transpositions of
+     * adjacent characters as a single edit. Unlike the cheaper optimal string alignment distance it allows
+     * editing between transposed characters, which makes it a true metric as the BK-tree requires to
+     * safely skip children when searching. Called for every node visited so works in buffers kept per thread.
+     */
+    static int editDistance(String source, String target) {
+        int sourceLength = source.length();
+        int targetLength = target.length();
+        int maxDistance = sourceLength + targetLength;
+        int columns = targetLength + 2;
+
+        var buffers = EDIT_DISTANCE_BUFFERS.get();
+        // Shifted by one so row and column 0 can hold the sentinel for transpositions past the start
+        int[] distances = buffers.distances = grow(buffers.distances, (sourceLength + 2) * columns);
+        char[] alphabet = buffers.alphabet = grow(buffers.alphabet, sourceLength);
+        int[] sourceSymbols = buffers.sourceSymbols = grow(buffers.sourceSymbols, sourceLength);
+        int[] targetSymbols = buffers.targetSymbols = grow(buffers.targetSymbols, targetLength);
+        int[] lastRow = buffers.lastRow = grow(buffers.lastRow, sourceLength);
+
+        // Number each distinct character of the source so the last row it was seen on can be kept in an array,
+        // characters only in the target are never transposed with anything so have no number
+        int alphabetSize = 0;
+        for (int i = 0; i < sourceLength; i++) {
+            int symbol = indexOf(alphabet, alphabetSize, source.charAt(i));
+            if (symbol == -1) {
+                symbol = alphabetSize;
+                alphabet[alphabetSize++] = source.charAt(i);
             }
+            sourceSymbols[i] = symbol;
+        }
+        for (int j = 0; j < targetLength; j++) {
+            targetSymbols[j] = indexOf(alphabet, alphabetSize, target.charAt(j));
         }
+        Arrays.fill(lastRow, 0, alphabetSize, 0);
 
-        if (!possibleMatches.isEmpty()) {
-            // Sorted least likely first
-            Object[] matches = Singleton.getHelpers().sortByValue(possibleMatches).keySet().toArray();
+        distances[0] = maxDistance;
+        for (int i = 0; i <= sourceLength; i++) {
+            distances[(i + 1) * columns] = maxDistance;
+            distances[(i + 1) * columns + 1] = i;
+        }
+        for (int j = 0; j <= targetLength; j++) {
+            distances[j + 1] = maxDistance;
+            distances[columns + j + 1] = j;
+        }
+
+        for (int i = 1; i <= sourceLength; i++) {
+            char sourceChar = source.charAt(i - 1);
+            int lastMatchColumn = 0;
+
+            for (int j = 1; j <= targetLength; j++) {
+                int transposeRow = targetSymbols[j - 1] == -1 ? 0 : lastRow[targetSymbols[j - 1]];
+                int transposeColumn = lastMatchColumn;
+                int cost = 1;
 
-            // Try to match anything of the same length first
-            String bestMatch = Values.EMPTYSTRING;
-            for (Object o : matches) {
-                if (o.toString().length() == word.length()) {
-                    bestMatch = o.toString();
+                if (sourceChar == target.charAt(j - 1)) {
+                    cost = 0;
+                    lastMatchColumn = j;
                 }
-            }
 
-            if (!Singleton.getHelpers().isNullEmptyOrWhitespace(bestMatch)) {
-                return bestMatch;
+                distances[(i + 1) * columns + j + 1] = Math.min(
+                        Math.min(distances[i * columns + j] + cost, distances[(i + 1) * columns + j] + 1),
+                        Math.min(distances[i * columns + j + 1] + 1,
+                                distances[transposeRow * columns + transposeColumn] + (i - transposeRow - 1) + 1 + (j - transposeColumn - 1)));
             }
 
-            // Just return whatever is the best match
-            return matches[matches.length - 1].toString();
+            lastRow[sourceSymbols[i - 1]] = i;
         }
 
+        return distances[(sourceLength + 1) * columns + targetLength + 1];
+    }
 
-        // If unable to find something better return the same string
-        return word;
+    private static int indexOf(char[] alphabet, int alphabetSize, char c) {
+        for (int i = 0; i < alphabetSize; i++) {
+            if (alphabet[i] == c) {
+                return i;
+            }
+        }
+
+        return -1;
     }
 
-    @Override
-    public boolean containsWord(String word) {
-        return dictionary.containsKey(word);
+    private static int[] grow(int[] buffer, int size) {
+        return buffer.length >= size ? buffer : new int[Math.max(size, buffer.length * 2)];
     }
 
+    private static char[] grow(char[] buffer, int size) {
+        return buffer.length >= size ? buffer : new char[Math.max(size, buffer.length * 2)];
+    }
+
+    private static final ThreadLocal<EditDistanceBuffers> EDIT_DISTANCE_BUFFERS = ThreadLocal.withInitial(EditDistanceBuffers::new);
+
+    /**
+     * Working space for editDistance which only ever grows to fit the longest words seen by the thread
+     */
+    private static class EditDistanceBuffers {
+        private int[] distances = new int[256];
+        private char[] alphabet = new char[16];
+        private int[] sourceSymbols = new int[16];
+        private int[] targetSymbols = new int[16];
+        private int[] lastRow = new int[16];
+    }
 
     /**
-     * Return a list of strings which are words similar to our one which could potentially be misspellings
-     * Abuse the fact that a char can be used as an integer
-     * Assume that they got the first letter correct for all edits to cut on CPU burn time
+     * BK-tree where every child of a node is keyed by its edit distance from that node. Adding only ever
+     * appends nodes using putIfAbsent so any number of threads can add and search at the same time.
      */
-    private List<String> wordEdits(String word) {
-        List<String> closeWords = new ArrayList<String>();
-
-        for (int i = 1; i < word.length() + 1; i++) {
-            for (char character = 'a'; character <= 'z'; character++) {
-                // Maybe they forgot to type a letter? Try adding one
-                StringBuilder sb = new StringBuilder(word);
-                sb.insert(i, character);
-                closeWords.add(sb.toString());
+    private static class BkTree {
+        private final AtomicReference<Node> root = new AtomicReference<>();
+
+        void add(String word) {
+            Node node = this.root.get();
+
+            if (node == null) {
+                if (this.root.compareAndSet(null, new Node(word))) {
+                    return;
+                }
+                node = this.root.get();
             }
 
-            if (closeWords.size() > this.VARIATIONSCOUNT) {
-                return closeWords;
+            while (true) {
+                int distance = editDistance(word, node.word);
+                if (distance == 0) {
+                    return;
+                }
+
+                Node child = node.children.get(distance);
+                if (child == null) {
+                    child = node.children.putIfAbsent(distance, new Node(word));
+                    if (child == null) {
+                        return;
+                    }
+                }
+
+                node = child;
             }
         }
 
-        for (int i = 1; i < word.length(); i++) {
-            for (char character = 'a'; character <= 'z'; character++) {
-                // Maybe they mistyped a single letter? Try replacing them all
-                StringBuilder sb = new StringBuilder(word);
-                sb.setCharAt(i, character);
-                closeWords.add(sb.toString());
+        /**
+         * Returns every word within maxDistance edits of the supplied word and its distance
+         */
+        Map<String, Integer> search(String word, int maxDistance) {
+            Map<String, Integer> matches = new HashMap<>();
+            Node root = this.root.get();
 
-                // Maybe they added an extra letter? Try deleting one
-                sb = new StringBuilder(word);
-                sb.deleteCharAt(i);
-                closeWords.add(sb.toString());
+            if (root == null) {
+                return matches;
             }
 
-            if (closeWords.size() > this.VARIATIONSCOUNT) {
-                return closeWords;
+            Deque<Node> toVisit = new ArrayDeque<>();
+            toVisit.push(root);
+
+            while (!toVisit.isEmpty()) {
+                Node node = toVisit.pop();
+                int distance = editDistance(word, node.word);
+
+                if (distance <= maxDistance) {
+                    matches.put(node.word, distance);
+                }
+
+                // Only children whose distance from this node is within range can possibly match
+                for (int i = Math.max(1, distance - maxDistance); i <= distance + maxDistance; i++) {
+                    Node child = node.children.get(i);
+                    if (child != null) {
+                        toVisit.push(child);
+                    }
+                }
             }
+
+            return matches;
         }
+    }
 
-        return closeWords;
+    private static class Node {
+        private final String word;
+        private final ConcurrentHashMap<Integer, Node> children = new ConcurrentHashMap<>(4);
+
+        Node(String word) {
+            this.word = word;
+        }
     }
 }
@@ -18,14 +18,31 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
+/**
+ * Counts lines of code, comments and blanks along with complexity. The tokens for each language are compiled into
+ * tries once when created so each position in a file is checked with a single walk rather than a loop over every
+ * token. Changes made to the classifier database after this is created are not seen.
+ */
 public class SlocCounter {
 
-    private final HashMap<String, FileClassifierResult> database;
+    // Buffers larger than this are not kept between files so one huge file does not pin its memory to a thread
+    private static final int MAX_RETAINED_BUFFER = 1024 * 1024;
+
+    private final Map<String, Language> languages = new HashMap<>();
     private final ArrayList<java.util.List<Integer>> byteOrderMarks;
+    private final char[][] byteOrderMarkChars;
+    private final ThreadLocal<Counter> counters = ThreadLocal.withInitial(Counter::new);
 
     public SlocCounter() {
-        this.database = Singleton.getFileClassifier().getDatabase();
+        this(Singleton.getFileClassifier().getDatabase());
+    }
+
+    public SlocCounter(Map<String, FileClassifierResult> database) {
+        for (var entry : database.entrySet()) {
+            this.languages.put(entry.getKey(), new Language(entry.getValue()));
+        }
 
         // Taken from https://en.wikipedia.org/wiki/Byte_order_mark#Byte_order_marks_by_encoding
         byteOrderMarks = new ArrayList<>(Arrays.asList(
@@ -45,283 +62,439 @@ public class SlocCounter {
                 Arrays.asList(251, 238, 40),        // BOCU-1
                 Arrays.asList(132, 49, 149, 51)     // GB-18030
         ));
+
+        this.byteOrderMarkChars = new char[this.byteOrderMarks.size()][];
+        for (int i = 0; i < this.byteOrderMarks.size(); i++) {
+            var bom = this.byteOrderMarks.get(i);
+            this.byteOrderMarkChars[i] = new char[bom.size()];
+
+            for (int j = 0; j < bom.size(); j++) {
+                this.byteOrderMarkChars[i][j] = (char) (int) bom.get(j);
+            }
+        }
     }
 
     public ArrayList<List<Integer>> getByteOrderMarks() {
         return byteOrderMarks;
     }
 
-    public boolean checkForMatch(char currentByte, int index, int endPoint, String[] matches, String content) {
-        if (matches == null) {
-            return false;
-        }
+    public boolean isWhitespace(char currentByte) {
+        return currentByte == ' ' || currentByte == '\t' || currentByte == '\n' || currentByte == '\r';
+    }
+
+    /**
+     * Reimplementation of scc https://github.com/boyter/scc/ 1.9.0 ported from
+     * Go into Java and specific for the searchcode project. Safe to call from any thread as the
+     * counting itself is done by a counter confined to the calling thread.
+     */
+    public SlocCount countStats(String contents, String languageName) {
+        return this.counters.get().countStats(contents, languageName);
+    }
 
-        for (int i = 0; i < matches.length; i++) { // For each match
-            if (currentByte == matches[i].charAt(0)) { // If the first character matches
-                boolean potentialMatch = true;
+    /**
+     * Returns a new counter which reuses its buffers between files. It must only be used by one thread at a time.
+     */
+    public Counter newCounter() {
+        return new Counter();
+    }
+
+    public int checkBomSkip(String contents) {
+        int start = 0;
 
-                for (int j = 0; j < matches[i].length(); j++) { // Check if the rest match
-                    if (index + j <= endPoint && matches[i].charAt(j) != content.charAt(index + j)) {
-                        potentialMatch = false;
+        for (char[] bom : this.byteOrderMarkChars) {
+            if (contents.length() >= bom.length) {
+                boolean isMatch = true;
+                for (int i = 0; i < bom.length; i++) {
+                    if (contents.charAt(i) != bom[i]) {
+                        isMatch = false;
+                        break;
                     }
                 }
 
-                if (potentialMatch) {
-                    return true;
+                if (isMatch) {
+                    start = bom.length;
                 }
             }
         }
 
-        return false;
+        return start;
     }
 
-    public boolean checkForMatchSingle(char currentByte, int index, int endPoint, String match, String content) {
-        if (match == null) {
-            return false;
+    /**
+     * Counts files one at a time keeping the copy of the contents and the stack of open comments between calls
+     */
+    public class Counter {
+        private char[] buffer = new char[0];
+        private char[][] endComments = new char[8][];
+
+        private Counter() {
         }
 
-        if (match.length() != 0 && currentByte == match.charAt(0)) { // If the first character matches
-            boolean potentialMatch = true;
+        public SlocCount countStats(String contents, String languageName) {
+            if (contents == null || contents.isEmpty()) {
+                return new SlocCount();
+            }
+
+            var language = languages.get(languageName);
+
+            if (language == null) {
+                return new SlocCount(contents.split("\n").length, 0, 0, 0, 0);
+            }
 
-            for (int j = 0; j < match.length(); j++) { // Check if the rest match
-                if (index + j <= endPoint && match.charAt(j) != content.charAt(index + j)) {
-                    potentialMatch = false;
+            var length = contents.length();
+            var content = this.buffer;
+            if (content.length < length) {
+                content = new char[length];
+
+                if (length <= MAX_RETAINED_BUFFER) {
+                    this.buffer = content;
                 }
             }
+            contents.getChars(0, length, content, 0);
+
+            State currentState = State.S_BLANK;
+
+            int endPoint = length - 1;
+            char[] endString = null;
+            int endCommentsSize = 0;
+            int linesCount = 0;
+            int blankCount = 0;
+            int codeCount = 0;
+            int commentCount = 0;
+            int complexity = 0;
+            int match;
+
+            int start = checkBomSkip(contents);
+
+            for (int index = start; index < length; index++) {
+                if (!isWhitespace(content[index])) {
+                    switch (currentState) {
+                        case S_CODE:
+                            if (language.nestedMultiLine || endCommentsSize == 0) {
+                                match = language.multiLineOpen.firstMatch(content, index, endPoint);
+                                if (match != TokenTrie.NO_MATCH) {
+                                    endString = language.multiLineClose[match];
+                                    index += endString.length - 1;
+                                    endCommentsSize = this.pushEndComment(endCommentsSize, endString);
+                                    currentState = State.S_MULTICOMMENT_CODE;
+                                    break;
+                                }
+                            }
 
-            return potentialMatch;
-        }
+                            if (language.lineComment.anyMatch(content, index, endPoint)) {
+                                currentState = State.S_COMMENT_CODE;
+                                break;
+                            }
 
-        return false;
-    }
+                            match = language.quoteOpen.firstMatch(content, index, endPoint);
+                            if (match != TokenTrie.NO_MATCH) {
+                                endString = language.quoteClose[match];
+                                currentState = State.S_STRING;
+                                break;
+                            } else if (language.complexityChecks.anyMatch(content, index, endPoint)) {
+                                complexity++;
+                            }
+                            break;
+                        case S_STRING:
+                            if (content[index - 1] != '\\' && this.matchesAt(content, index, endPoint, endString)) {
+                                currentState = State.S_CODE;
+                            }
+                            break;
+                        case S_MULTICOMMENT:
+                        case S_MULTICOMMENT_CODE:
+                            if (language.nestedMultiLine || endCommentsSize == 0) {
+                                match = language.multiLineOpen.firstMatch(content, index, endPoint);
+                                if (match != TokenTrie.NO_MATCH) {
+                                    endString = language.multiLineClose[match];
+                                    index += endString.length - 1;
+                                    endCommentsSize = this.pushEndComment(endCommentsSize, endString);
+                                    currentState = State.S_MULTICOMMENT_CODE;
+                                    break;
+                                }
+                            }
 
-    public String checkForMatchMultiOpen(char currentByte, int index, int endPoint, String[][] matches, String content) {
-        if (matches == null) {
-            return null;
-        }
+                            if (this.matchesAt(content, index, endPoint, this.endComments[endCommentsSize - 1])) {
+                                index += this.endComments[endCommentsSize - 1].length - 1;
+                                endCommentsSize--;
 
-        for (int i = 0; i < matches.length; i++) { // For each match
-            if (currentByte == matches[i][0].charAt(0)) { // If the first character matches
-                boolean potentialMatch = true;
+                                if (endCommentsSize == 0) {
+                                    if (currentState == State.S_MULTICOMMENT_CODE) {
+                                        currentState = State.S_CODE;
+                                    } else {
+                                        currentState = State.S_MULTICOMMENT_BLANK;
+                                    }
+                                }
+                            }
+                            break;
+                        case S_BLANK:
+                        case S_MULTICOMMENT_BLANK:
+                            if (language.lineComment.anyMatch(content, index, endPoint)) {
+                                currentState = State.S_COMMENT;
+                                break;
+                            }
 
-                for (int j = 0; j < matches[i][0].length(); j++) { // Check if the rest match
-                    if (index + j <= endPoint && matches[i][0].charAt(j) != content.charAt(index + j)) {
-                        potentialMatch = false;
-                        break;
+                            if (language.nestedMultiLine || endCommentsSize == 0) {
+                                match = language.multiLineOpen.firstMatch(content, index, endPoint);
+                                if (match != TokenTrie.NO_MATCH) {
+                                    endString = language.multiLineClose[match];
+                                    index += endString.length - 1;
+                                    endCommentsSize = this.pushEndComment(endCommentsSize, endString);
+                                    currentState = State.S_MULTICOMMENT;
+                                    break;
+                                }
+                            }
+
+                            match = language.quoteOpen.firstMatch(content, index, endPoint);
+                            if (match != TokenTrie.NO_MATCH) {
+                                endString = language.quoteClose[match];
+                                currentState = State.S_STRING;
+                                break;
+                            }
+
+                            currentState = State.S_CODE;
+                            if (language.complexityChecks.anyMatch(content, index, endPoint)) {
+                                complexity++;
+                            }
+                            break;
                     }
                 }
 
-                if (potentialMatch) {
-                    // Refers to the closing condition for the matching open
-                    return matches[i][1];
+                // This means the end of processing the line so calculate the stats according to what state
+                // we are currently in. A token running past the end of the file also ends the last line.
+                if (index >= endPoint || content[index] == '\n') {
+                    linesCount++;
+
+                    switch (currentState) {
+                        case S_BLANK:
+                            blankCount++;
+                            break;
+                        case S_COMMENT:
+                        case S_MULTICOMMENT:
+                        case S_MULTICOMMENT_BLANK:
+                            commentCount++;
+                            break;
+                        case S_CODE:
+                        case S_STRING:
+                        case S_COMMENT_CODE:
+                        case S_MULTICOMMENT_CODE:
+                            codeCount++;
+                            break;
+                    }
+
+
+                    if (currentState == State.S_MULTICOMMENT || currentState == State.S_MULTICOMMENT_CODE) {
+                        currentState = State.S_MULTICOMMENT;
+                    } else if (currentState == State.S_STRING) {
+                        currentState = State.S_STRING;
+                    } else {
+                        currentState = State.S_BLANK;
+                    }
                 }
             }
-        }
 
-        return null;
-    }
+            // Do not hold on to the closing tokens of the last file
+            Arrays.fill(this.endComments, 0, endCommentsSize, null);
 
-    public String checkForMatchMultiOpenQuote(char currentByte, int index, int endPoint, Quote[] matches, String content) {
-        if (matches == null) {
-            return null;
+            return new SlocCount(linesCount, blankCount, codeCount, commentCount, complexity);
         }
 
-        for (int i = 0; i < matches.length; i++) { // For each match
-            if (currentByte == matches[i].start.charAt(0)) { // If the first character matches
-                boolean potentialMatch = true;
+        private int pushEndComment(int size, char[] endComment) {
+            if (size == this.endComments.length) {
+                this.endComments = Arrays.copyOf(this.endComments, size * 2);
+            }
 
-                for (int j = 0; j < matches[i].start.length(); j++) { // Check if the rest match
-                    if (index + j <= endPoint && matches[i].start.charAt(j) != content.charAt(index + j)) {
-                        potentialMatch = false;
-                        break;
-                    }
-                }
+            this.endComments[size] = endComment;
+            return size + 1;
+        }
 
-                if (potentialMatch) {
-                    // Refers to the closing condition for the matching open
-                    return matches[i].end;
-                }
+        /**
+         * True if the token starts at the index, where any part of the token past the end of the content is
+         * treated as matching which is how scc 1.9.0 behaves
+         */
+        private boolean matchesAt(char[] content, int index, int endPoint, char[] token) {
+            if (token == null || token.length == 0 || content[index] != token[0]) {
+                return false;
             }
-        }
 
-        return null;
-    }
+            for (int j = 1; j < token.length && index + j <= endPoint; j++) {
+                if (content[index + j] != token[j]) {
+                    return false;
+                }
+            }
 
-    public boolean isWhitespace(char currentByte) {
-        return currentByte == ' ' || currentByte == '\t' || currentByte == '\n' || currentByte == '\r';
+            return true;
+        }
     }
 
     /**
-     * Reimplementation of scc https://github.com/boyter/scc/ 1.9.0 ported from
-     * Go into Java and specific for the searchcode project.
+     * The tokens for a language compiled ready for counting
      */
-    public SlocCount countStats(String contents, String languageName) {
-        if (contents == null || contents.isEmpty()) {
-            return new SlocCount();
+    private static class Language {
+        private final boolean nestedMultiLine;
+        private final TokenTrie lineComment;
+        private final TokenTrie complexityChecks;
+        private final TokenTrie multiLineOpen;
+        private final char[][] multiLineClose;
+        private final TokenTrie quoteOpen;
+        private final char[][] quoteClose;
+
+        private Language(FileClassifierResult result) {
+            this.nestedMultiLine = result.nestedmultiline;
+            this.lineComment = new TokenTrie(result.line_comment);
+            this.complexityChecks = new TokenTrie(result.complexitychecks);
+
+            var multiLine = result.multi_line == null ? new String[0][] : result.multi_line;
+            var opens = new String[multiLine.length];
+            this.multiLineClose = new char[multiLine.length][];
+            for (int i = 0; i < multiLine.length; i++) {
+                if (multiLine[i] != null && multiLine[i].length == 2 && multiLine[i][1] != null) {
+                    opens[i] = multiLine[i][0];
+                    this.multiLineClose[i] = multiLine[i][1].toCharArray();
+                }
+            }
+            this.multiLineOpen = new TokenTrie(opens);
+
+            var quotes = result.quotes == null ? new Quote[0] : result.quotes;
+            var starts = new String[quotes.length];
+            this.quoteClose = new char[quotes.length][];
+            for (int i = 0; i < quotes.length; i++) {
+                if (quotes[i] != null && quotes[i].end != null) {
+                    starts[i] = quotes[i].start;
+                    this.quoteClose[i] = quotes[i].end.toCharArray();
+                }
+            }
+            this.quoteOpen = new TokenTrie(starts);
         }
+    }
 
-        FileClassifierResult fileClassifierResult = this.database.get(languageName);
+    /**
+     * Trie over a list of tokens which finds the tokens starting at a position in one walk. As with scc 1.9.0 a
+     * token which runs past the end of the content matches if the part before the end does.
+     */
+    static class TokenTrie {
+        static final int NO_MATCH = -1;
+
+        // Children of each node as parallel arrays of labels and node ids, nodes rarely have more than a few
+        private char[][] labels = new char[1][0];
+        private int[][] children = new int[1][0];
+        // Lowest token position ending at each node and anywhere at or below it
+        private int[] terminal = {NO_MATCH};
+        private int[] lowest = {NO_MATCH};
+        private int size = 1;
+
+        TokenTrie(String[] tokens) {
+            if (tokens == null) {
+                return;
+            }
 
-        if (fileClassifierResult == null) {
-            return new SlocCount(contents.split("\n").length, 0, 0, 0, 0);
+            for (int i = 0; i < tokens.length; i++) {
+                if (tokens[i] != null && !tokens[i].isEmpty()) {
+                    this.add(tokens[i], i);
+                }
+            }
         }
 
-        State currentState = State.S_BLANK;
-
-        int endPoint = contents.length() - 1;
-        String endString = null;
-        ArrayList<String> endComments = new ArrayList<>();
-        int linesCount = 0;
-        int blankCount = 0;
-        int codeCount = 0;
-        int commentCount = 0;
-        int complexity = 0;
-
-        int start = this.checkBomSkip(contents);
-
-        for (int index = start; index < contents.length(); index++) {
-            if (!isWhitespace(contents.charAt(index))) {
-                switch (currentState) {
-                    case S_CODE:
-                        if (fileClassifierResult.nestedmultiline || endComments.isEmpty()) {
-                            endString = this.checkForMatchMultiOpen(contents.charAt(index), index, endPoint, fileClassifierResult.multi_line, contents);
-                            if (endString != null) {
-                                index += endString.length() - 1;
-                                endComments.add(endString);
-                                currentState = State.S_MULTICOMMENT_CODE;
-                                break;
-                            }
-                        }
+        /**
+         * True if any token starts at the index
+         */
+        boolean anyMatch(char[] content, int index, int endPoint) {
+            var node = 0;
 
-                        if (this.checkForMatch(contents.charAt(index), index, endPoint, fileClassifierResult.line_comment, contents)) {
-                            currentState = State.S_COMMENT_CODE;
-                            break;
-                        }
+            for (int i = index; i <= endPoint; i++) {
+                node = this.child(node, content[i]);
 
-                        endString = this.checkForMatchMultiOpenQuote(contents.charAt(index), index, endPoint, fileClassifierResult.quotes, contents);
-                        if (endString != null) {
-                            currentState = State.S_STRING;
-                            break;
-                        } else if (this.checkForMatch(contents.charAt(index), index, endPoint, fileClassifierResult.complexitychecks, contents)) {
-                            complexity++;
-                        }
-                        break;
-                    case S_STRING:
-                        if (contents.charAt(index - 1) != '\\' && this.checkForMatchSingle(contents.charAt(index), index, endPoint, endString, contents)) {
-                            currentState = State.S_CODE;
-                        }
-                        break;
-                    case S_MULTICOMMENT:
-                    case S_MULTICOMMENT_CODE:
-                        if (fileClassifierResult.nestedmultiline || endComments.isEmpty()) {
-                            endString = this.checkForMatchMultiOpen(contents.charAt(index), index, endPoint, fileClassifierResult.multi_line, contents);
-                            if (endString != null) {
-                                index += endString.length() - 1;
-                                endComments.add(endString);
-                                currentState = State.S_MULTICOMMENT_CODE;
-                                break;
-                            }
-                        }
+                if (node == NO_MATCH) {
+                    return false;
+                }
+                if (this.terminal[node] != NO_MATCH) {
+                    return true;
+                }
+            }
 
-                        if (this.checkForMatchSingle(contents.charAt(index), index, endPoint, endComments.get(endComments.size() - 1), contents)) {
-                            index += endComments.get(endComments.size() - 1).length() - 1;
-                            endComments.remove(endComments.size() - 1);
+            return node != 0;
+        }
 
-                            if (endComments.isEmpty()) {
-                                if (currentState == State.S_MULTICOMMENT_CODE) {
-                                    currentState = State.S_CODE;
-                                } else {
-                                    currentState = State.S_MULTICOMMENT_BLANK;
-                                }
-                            }
-                        }
-                        break;
-                    case S_BLANK:
-                    case S_MULTICOMMENT_BLANK:
-                        if (this.checkForMatch(contents.charAt(index), index, endPoint, fileClassifierResult.line_comment, contents)) {
-                            currentState = State.S_COMMENT;
-                            break;
-                        }
-
-                        if (fileClassifierResult.nestedmultiline || endComments.isEmpty()) {
-                            endString = this.checkForMatchMultiOpen(contents.charAt(index), index, endPoint, fileClassifierResult.multi_line, contents);
-                            if (endString != null) {
-                                index += endString.length() - 1;
-                                endComments.add(endString);
-                                currentState = State.S_MULTICOMMENT;
-                                break;
-                            }
-                        }
+        /**
+         * Returns the lowest position of the tokens starting at the index or NO_MATCH if there are none
+         */
+        int firstMatch(char[] content, int index, int endPoint) {
+            var node = 0;
+            var best = NO_MATCH;
 
-                        endString = this.checkForMatchMultiOpenQuote(contents.charAt(index), index, endPoint, fileClassifierResult.quotes, contents);
-                        if (endString != null) {
-                            currentState = State.S_STRING;
-                            break;
-                        }
+            for (int i = index; i <= endPoint; i++) {
+                node = this.child(node, content[i]);
 
-                        currentState = State.S_CODE;
-                        if (this.checkForMatch(contents.charAt(index), index, endPoint, fileClassifierResult.complexitychecks, contents)) {
-                            complexity++;
-                        }
-                        break;
+                if (node == NO_MATCH) {
+                    return best;
+                }
+                if (this.terminal[node] != NO_MATCH && (best == NO_MATCH || this.terminal[node] < best)) {
+                    best = this.terminal[node];
+                }
+                if (best != NO_MATCH && best <= this.lowest[node]) {
+                    return best;
                 }
             }
 
-            // This means the end of processing the line so calculate the stats according to what state
-            // we are currently in
-            if (contents.charAt(index) == '\n' || index == endPoint) {
-                linesCount++;
+            // Ran out of content part way through so every token below here matches
+            if (node != 0 && (best == NO_MATCH || this.lowest[node] < best)) {
+                best = this.lowest[node];
+            }
 
-                switch (currentState) {
-                    case S_BLANK:
-                        blankCount++;
-                        break;
-                    case S_COMMENT:
-                    case S_MULTICOMMENT:
-                    case S_MULTICOMMENT_BLANK:
-                        commentCount++;
-                        break;
-                    case S_CODE:
-                    case S_STRING:
-                    case S_COMMENT_CODE:
-                    case S_MULTICOMMENT_CODE:
-                        codeCount++;
-                        break;
-                }
+            return best;
+        }
 
+        private int child(int node, char c) {
+            var nodeLabels = this.labels[node];
 
-                if (currentState == State.S_MULTICOMMENT || currentState == State.S_MULTICOMMENT_CODE) {
-                    currentState = State.S_MULTICOMMENT;
-                } else if (currentState == State.S_STRING) {
-                    currentState = State.S_STRING;
-                } else {
-                    currentState = State.S_BLANK;
+            for (int i = 0; i < nodeLabels.length; i++) {
+                if (nodeLabels[i] == c) {
+                    return this.children[node][i];
                 }
             }
+
+            return NO_MATCH;
         }
 
-        return new SlocCount(linesCount, blankCount, codeCount, commentCount, complexity);
-    }
+        private void add(String token, int position) {
+            var node = 0;
+            this.lowest[node] = this.lowest[node] == NO_MATCH ? position : Math.min(this.lowest[node], position);
 
-    public int checkBomSkip(String contents) {
-        int start = 0;
+            for (int i = 0; i < token.length(); i++) {
+                var next = this.child(node, token.charAt(i));
 
-        for (List<Integer> bom : byteOrderMarks) {
-            if (contents.length() >= bom.size()) {
-                boolean isMatch = true;
-                for (int i = 0; i < bom.size(); i++) {
-                    if (contents.charAt(i) != bom.get(i)) {
-                        isMatch = false;
-                    }
+                if (next == NO_MATCH) {
+                    next = this.newNode();
+                    this.labels[node] = Arrays.copyOf(this.labels[node], this.labels[node].length + 1);
+                    this.labels[node][this.labels[node].length - 1] = token.charAt(i);
+                    this.children[node] = Arrays.copyOf(this.children[node], this.children[node].length + 1);
+                    this.children[node][this.children[node].length - 1] = next;
                 }
 
-                if (isMatch) {
-                    start = bom.size();
-                }
+                node = next;
+                this.lowest[node] = this.lowest[node] == NO_MATCH ? position : Math.min(this.lowest[node], position);
+            }
+
+            if (this.terminal[node] == NO_MATCH || position < this.terminal[node]) {
+                this.terminal[node] = position;
             }
         }
 
-        return start;
+        private int newNode() {
+            if (this.size == this.terminal.length) {
+                var capacity = this.size * 2;
+                this.labels = Arrays.copyOf(this.labels, capacity);
+                this.children = Arrays.copyOf(this.children, capacity);
+                this.terminal = Arrays.copyOf(this.terminal, capacity);
+                this.lowest = Arrays.copyOf(this.lowest, capacity);
+            }
+
+            this.labels[this.size] = new char[0];
+            this.children[this.size] = new int[0];
+            this.terminal[this.size] = NO_MATCH;
+            this.lowest[this.size] = NO_MATCH;
+
+            return this.size++;
+        }
     }
 
     // Used to hold the state of the pointer so we know what type of code we
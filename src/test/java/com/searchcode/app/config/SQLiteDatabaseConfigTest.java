@@ -0,0 +1,85 @@
+package com.searchcode.app.config;
+
+import com.searchcode.app.util.Properties;
+import junit.framework.TestCase;
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SQLiteDatabaseConfigTest extends TestCase {
+
+    private File directory;
+    private SQLiteDatabaseConfig sqliteDatabaseConfig;
+
+    public void setUp() throws Exception {
+        super.setUp();
+        this.directory = Files.createTempDirectory("sqlitedatabaseconfigtest").toFile();
+        Properties.getProperties().setProperty(Values.SQLITE_FILE, new File(this.directory, "test.sqlite").getAbsolutePath());
+        this.sqliteDatabaseConfig = new SQLiteDatabaseConfig();
+    }
+
+    public void tearDown() throws Exception {
+        Properties.getProperties().remove(Values.SQLITE_FILE);
+        FileUtils.deleteQuietly(this.directory);
+        super.tearDown();
+    }
+
+    public void testWriterUsesWriteAheadLog() throws SQLException {
+        try (var statement = this.sqliteDatabaseConfig.getConnection().prepareStatement("PRAGMA journal_mode;");
+             var resultSet = statement.executeQuery()) {
+            resultSet.next();
+            assertThat(resultSet.getString(1)).isEqualToIgnoringCase("wal");
+        }
+    }
+
+    public void testReadersSeeWritesAndCannotWrite() throws SQLException {
+        var writer = this.sqliteDatabaseConfig.getConnection();
+        writer.prepareStatement("CREATE TABLE test (value VARCHAR)").execute();
+        writer.prepareStatement("INSERT INTO test VALUES ('one')").execute();
+
+        try (var reader = this.sqliteDatabaseConfig.getReadConnection()) {
+            try (var resultSet = reader.prepareStatement("SELECT value FROM test").executeQuery()) {
+                assertThat(resultSet.next()).isTrue();
+                assertThat(resultSet.getString(1)).isEqualTo("one");
+            }
+
+            try {
+                reader.prepareStatement("INSERT INTO test VALUES ('two')").execute();
+                fail("read connection should not be able to write");
+            } catch (SQLException ignored) {
+            }
+        }
+    }
+
+    public void testConcurrentReadsDuringWrites() throws Exception {
+        var writer = this.sqliteDatabaseConfig.getConnection();
+        writer.prepareStatement("CREATE TABLE test (value INTEGER)").execute();
+
+        var executorService = Executors.newFixedThreadPool(4);
+        var futures = new ArrayList<Future<Integer>>();
+
+        for (var i = 0; i < 100; i++) {
+            futures.add(executorService.submit(() -> {
+                try (var reader = this.sqliteDatabaseConfig.getReadConnection();
+                     var resultSet = reader.prepareStatement("SELECT count(*) FROM test").executeQuery()) {
+                    resultSet.next();
+                    return resultSet.getInt(1);
+                }
+            }));
+
+            writer.prepareStatement("INSERT INTO test VALUES (" + i + ")").execute();
+        }
+
+        for (var future : futures) {
+            assertThat(future.get()).isBetween(0, 100);
+        }
+        executorService.shutdown();
+    }
+}
@@ -7,7 +7,11 @@ import com.searchcode.app.util.LoggerWrapper;
 import junit.framework.TestCase;
 import org.apache.commons.lang3.RandomStringUtils;
 
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.assertj.core.api.AssertionsForInterfaceTypes.assertThat;
 
@@ -102,6 +106,46 @@ public class SQLiteDataTest extends TestCase {
         assertThat(data.getAllData().size()).isEqualTo(200);
     }
 
+    public void testReadsServedFromMemoryOnceLoaded() {
+        var connections = new AtomicInteger();
+        var countingData = new Data(new SQLiteMemoryDatabaseConfig() {
+            @Override
+            public synchronized Connection getConnection() throws SQLException {
+                connections.incrementAndGet();
+                return super.getConnection();
+            }
+        }, new Helpers(), new LoggerWrapper());
+        countingData.createTableIfMissing();
+        countingData.saveData("testReadsServedFromMemoryOnceLoaded", "value");
+
+        countingData.getDataByName("testReadsServedFromMemoryOnceLoaded");
+        var afterLoad = connections.get();
+
+        for (int i = 0; i < 200; i++) {
+            assertThat(countingData.getDataByName("testReadsServedFromMemoryOnceLoaded")).isEqualTo("value");
+            assertThat(countingData.getDataByName("testReadsServedFromMemoryOnceLoadedMissing", "default")).isEqualTo("default");
+        }
+        assertThat(connections.get()).isEqualTo(afterLoad);
+
+        countingData.saveData("testReadsServedFromMemoryOnceLoaded", "updated");
+        assertThat(countingData.getDataByName("testReadsServedFromMemoryOnceLoaded")).isEqualTo("updated");
+        assertThat(countingData.getAllData()).extracting("value").containsExactly("updated");
+    }
+
+    public void testSaveNotifiesListeners() {
+        var first = new ArrayList<String>();
+        var second = new ArrayList<String>();
+        this.data.addListener("testSaveNotifiesListeners", first::add);
+        this.data.addListener("testSaveNotifiesListeners", second::add);
+        this.data.addListener("testSaveNotifiesListenersOther", x -> fail("listener for a different key called"));
+
+        this.data.saveData("testSaveNotifiesListeners", "one");
+        this.data.saveData("testSaveNotifiesListeners", "two");
+
+        assertThat(first).containsExactly("one", "two");
+        assertThat(second).containsExactly("one", "two");
+    }
+
     public void testCreateTable() {
         data.createTableIfMissing();
         data.createTableIfMissing();
@@ -1,11 +1,23 @@
 package com.searchcode.app.dao;
 
+import com.searchcode.app.config.IDatabaseConfig;
 import com.searchcode.app.dto.CodeIndexDocument;
+import com.searchcode.app.dto.SourceCodeDTO;
 import com.searchcode.app.model.searchcode.SearchcodeCodeResult;
 import com.searchcode.app.service.Singleton;
 import junit.framework.TestCase;
+import org.cache2k.Cache2kBuilder;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.stream.Collectors;
 
 import static org.assertj.core.api.AssertionsForInterfaceTypes.assertThat;
+import static org.mockito.Mockito.*;
 
 public class SourceCodeTest extends TestCase {
 
@@ -70,4 +82,35 @@ public class SourceCodeTest extends TestCase {
         );
         assertThat(location).isEqualTo("displaylocation/");
     }
+
+    public void testGetByIdsSingleQueryKeepsOrder() throws SQLException {
+        var mockDatabaseConfig = mock(IDatabaseConfig.class);
+        var mockConnection = mock(Connection.class);
+        var mockStatement = mock(PreparedStatement.class);
+        var mockResultSet = mock(ResultSet.class);
+
+        when(mockDatabaseConfig.getConnection()).thenReturn(mockConnection);
+        when(mockConnection.prepareStatement(anyString())).thenReturn(mockStatement);
+        when(mockStatement.executeQuery()).thenReturn(mockResultSet);
+        when(mockResultSet.next()).thenReturn(true, true, false);
+        when(mockResultSet.getInt("id")).thenReturn(2, 3);
+        when(mockResultSet.getString("content")).thenReturn("two", "three");
+
+        var cache = new Cache2kBuilder<String, Optional<SourceCodeDTO>>() {}.build();
+        cache.put("d.s.1", Optional.of(new SourceCodeDTO().setId(1).setContent("one")));
+
+        var sourceCode = new SourceCode(mockDatabaseConfig, Singleton.getHelpers(), null, Singleton.getLogger(), cache);
+        var result = sourceCode.getByIds(Arrays.asList(3, 1, 4, 2));
+
+        assertThat(result.stream().map(x -> x.id).collect(Collectors.toList())).containsExactly(3, 1, 2);
+        assertThat(result.stream().map(x -> x.content).collect(Collectors.toList())).containsExactly("three", "one", "two");
+        verify(mockConnection, times(1)).prepareStatement("   SELECT id, repoid, filetypeid, location, filename, UNCOMPRESS(content) AS content, hash, languagename, linescount     FROM code    WHERE id IN (?,?,?);");
+        verify(mockStatement).setInt(1, 3);
+        verify(mockStatement).setInt(2, 4);
+        verify(mockStatement).setInt(3, 2);
+
+        // Everything found is now cached so nothing more is queried
+        sourceCode.getByIds(Arrays.asList(1, 2, 3));
+        verify(mockConnection, times(1)).prepareStatement(anyString());
+    }
 }
@@ -0,0 +1,105 @@
+package com.searchcode.app.jobs;
+
+import com.searchcode.app.TestHelpers;
+import com.searchcode.app.dto.CodeOwner;
+import com.searchcode.app.jobs.repository.GitCodeOwners;
+import com.searchcode.app.service.Singleton;
+import junit.framework.TestCase;
+import org.cache2k.Cache;
+import org.cache2k.Cache2kBuilder;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.errors.GitAPIException;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import static org.assertj.core.api.AssertionsForInterfaceTypes.assertThat;
+
+public class GitCodeOwnersTest extends TestCase {
+
+    private Cache<String, List<CodeOwner>> createCache() {
+        return new Cache2kBuilder<String, List<CodeOwner>>() {}.entryCapacity(100).build();
+    }
+
+    private File createRepository(String unique) throws IOException, GitAPIException {
+        File location = TestHelpers.clearAndCreateTempPath(unique);
+
+        try (Git git = Git.init().setDirectory(location).call()) {
+            TestHelpers.createFile(location, "owned.java", "line one\nline two\nline three");
+            git.add().addFilepattern(".").call();
+            git.commit().setMessage("first").setAuthor("first", "first@example.com").call();
+
+            TestHelpers.createFile(location, "owned.java", "line four");
+            git.add().addFilepattern(".").call();
+            git.commit().setMessage("second").setAuthor("second", "second@example.com").call();
+        }
+
+        return location;
+    }
+
+    public void testGetCodeOwners() throws IOException, GitAPIException {
+        File location = this.createRepository("testGetCodeOwners");
+
+        try (GitCodeOwners gitCodeOwners = new GitCodeOwners(location + "/.git", this.createCache(), Singleton.getLogger())) {
+            List<CodeOwner> codeOwners = gitCodeOwners.getCodeOwners("owned.java", 100);
+
+            assertThat(codeOwners).hasSize(2);
+            assertThat(codeOwners.stream().filter(x -> x.getName().equals("first")).findFirst().get().getNoLines()).isEqualTo(3);
+            assertThat(codeOwners.stream().filter(x -> x.getName().equals("second")).findFirst().get().getNoLines()).isEqualTo(1);
+            assertThat(Singleton.getSearchCodeLib().codeOwner(codeOwners)).isEqualTo("first");
+        }
+    }
+
+    public void testGetCodeOwnersWithRepositoryDirectory() throws IOException, GitAPIException {
+        File location = this.createRepository("testGetCodeOwnersWithRepositoryDirectory");
+
+        try (GitCodeOwners gitCodeOwners = new GitCodeOwners(location + "/.git", this.createCache(), Singleton.getLogger())) {
+            assertThat(gitCodeOwners.getCodeOwners("reponame/owned.java", 100)).hasSize(2);
+            assertThat(gitCodeOwners.getCodeOwners("missing.java", 100)).isEmpty();
+        }
+    }
+
+    public void testGetCodeOwnersUsesCache() throws IOException, GitAPIException {
+        File location = this.createRepository("testGetCodeOwnersUsesCache");
+        Cache<String, List<CodeOwner>> cache = this.createCache();
+
+        try (GitCodeOwners gitCodeOwners = new GitCodeOwners(location + "/.git", cache, Singleton.getLogger())) {
+            List<CodeOwner> codeOwners = gitCodeOwners.getCodeOwners("owned.java", 100);
+            codeOwners.get(0).incrementLines();
+
+            assertThat(cache.asMap()).hasSize(1);
+            assertThat(gitCodeOwners.getCodeOwners("owned.java", 100).stream().mapToInt(CodeOwner::getNoLines).sum()).isEqualTo(4);
+        }
+    }
+
+    public void testGetCodeOwnersIdenticalFilesKeepTheirOwners() throws IOException, GitAPIException {
+        File location = TestHelpers.clearAndCreateTempPath("testGetCodeOwnersIdenticalFilesKeepTheirOwners");
+        Cache<String, List<CodeOwner>> cache = this.createCache();
+
+        try (Git git = Git.init().setDirectory(location).call()) {
+            TestHelpers.createFile(location, "first.java", "same content");
+            git.add().addFilepattern(".").call();
+            git.commit().setMessage("first").setAuthor("first", "first@example.com").call();
+
+            TestHelpers.createFile(location, "second.java", "same content");
+            git.add().addFilepattern(".").call();
+            git.commit().setMessage("second").setAuthor("second", "second@example.com").call();
+        }
+
+        try (GitCodeOwners gitCodeOwners = new GitCodeOwners(location + "/.git", cache, Singleton.getLogger())) {
+            assertThat(gitCodeOwners.getCodeOwners("first.java", 100).get(0).getName()).isEqualTo("first");
+            assertThat(gitCodeOwners.getCodeOwners("second.java", 100).get(0).getName()).isEqualTo("second");
+            assertThat(cache.asMap()).hasSize(2);
+        }
+    }
+
+    public void testGetCodeOwnersEmptyRepository() throws IOException, GitAPIException {
+        File location = TestHelpers.clearAndCreateTempPath("testGetCodeOwnersEmptyRepository");
+        Git.init().setDirectory(location).call().close();
+
+        try (GitCodeOwners gitCodeOwners = new GitCodeOwners(location + "/.git", this.createCache(), Singleton.getLogger())) {
+            assertThat(gitCodeOwners.getCodeOwners("owned.java", 100)).isEmpty();
+        }
+    }
+}
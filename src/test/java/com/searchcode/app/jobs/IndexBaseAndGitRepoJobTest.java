@@ -1,13 +1,23 @@
 package com.searchcode.app.jobs;
 
 import com.searchcode.app.TestHelpers;
+import com.searchcode.app.dto.RepoData;
+import com.searchcode.app.dto.RepositoryChanged;
+import com.searchcode.app.jobs.repository.IndexBaseRepoJob;
 import com.searchcode.app.jobs.repository.IndexGitRepoJob;
+import com.searchcode.app.model.RepoResult;
+import com.searchcode.app.service.GitService;
 import com.searchcode.app.service.index.IndexService;
 import junit.framework.TestCase;
+import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.io.FileUtils;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.revwalk.RevCommit;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
@@ -205,6 +215,147 @@ public class IndexBaseAndGitRepoJobTest extends TestCase {
         assertThat(toCheck.exists()).isFalse();
     }
 
+    public void testGetChangesSinceCommit() throws IOException, GitAPIException {
+        File location = TestHelpers.clearAndCreateTempPath("testGetChangesSinceCommit");
+        Git git = Git.init().setDirectory(location).call();
+
+        TestHelpers.createFile(location, "changed.java", "original");
+        TestHelpers.createFile(location, "deleted.java", "deleted");
+        git.add().addFilepattern(".").call();
+        RevCommit first = git.commit().setMessage("first").setAuthor("test", "test@example.com").call();
+
+        TestHelpers.createFile(location, "changed.java", "modified");
+        TestHelpers.createFile(location, "added.java", "added");
+        new File(location, "deleted.java").delete();
+        git.add().addFilepattern(".").call();
+        git.rm().addFilepattern("deleted.java").call();
+        RevCommit second = git.commit().setMessage("second").setAuthor("test", "test@example.com").call();
+
+        IndexGitRepoJob gitRepoJob = new IndexGitRepoJob(mock(IndexService.class));
+        List<String> changedFiles = new ArrayList<>();
+        List<String> deletedFiles = new ArrayList<>();
+
+        boolean delta = gitRepoJob.getChangesSinceCommit(git.getRepository(), git, first.getName(), second.getId(), changedFiles, deletedFiles);
+        assertThat(delta).isTrue();
+        assertThat(changedFiles).containsExactlyInAnyOrder("changed.java", "added.java");
+        assertThat(deletedFiles).containsExactly("deleted.java");
+
+        // Commit that is not an ancestor of head such as after a force push
+        changedFiles.clear();
+        deletedFiles.clear();
+        delta = gitRepoJob.getChangesSinceCommit(git.getRepository(), git, second.getName(), first.getId(), changedFiles, deletedFiles);
+        assertThat(delta).isFalse();
+        assertThat(changedFiles).isEmpty();
+
+        // Commit that does not exist
+        delta = gitRepoJob.getChangesSinceCommit(git.getRepository(), git, "not a commit", second.getId(), changedFiles, deletedFiles);
+        assertThat(delta).isFalse();
+
+        git.close();
+    }
+
+    public void testCanIndexDelta() {
+        IndexService indexServiceMock = mock(IndexService.class);
+        IndexGitRepoJob gitRepoJob = new IndexGitRepoJob(indexServiceMock);
+        RepoResult repoResult = new RepoResult().setName("testRepoName");
+
+        RepositoryChanged repositoryChanged = new RepositoryChanged(true);
+        assertThat(gitRepoJob.canIndexDelta(repoResult, true, repositoryChanged)).isFalse();
+
+        repositoryChanged.setDelta(true);
+        when(indexServiceMock.getRepoDocuments("testRepoName", 0)).thenReturn(new ArrayList<>());
+        assertThat(gitRepoJob.canIndexDelta(repoResult, true, repositoryChanged)).isFalse();
+
+        when(indexServiceMock.getRepoDocuments("testRepoName", 0)).thenReturn(Arrays.asList("file"));
+        assertThat(gitRepoJob.canIndexDelta(repoResult, false, repositoryChanged)).isFalse();
+        assertThat(gitRepoJob.canIndexDelta(repoResult, true, repositoryChanged)).isTrue();
+
+        when(indexServiceMock.getReindexingAll()).thenReturn(true);
+        assertThat(gitRepoJob.canIndexDelta(repoResult, true, repositoryChanged)).isFalse();
+    }
+
+    public void testIndexDocsByDeltaRemovesDeletedFiles() throws IOException {
+        IndexService indexServiceMock = mock(IndexService.class);
+        IndexGitRepoJob gitRepoJob = new IndexGitRepoJob(indexServiceMock);
+        RepoResult repoResult = new RepoResult().setName("testRepoName");
+
+        RepositoryChanged repositoryChanged = new RepositoryChanged(true, new ArrayList<>(), Arrays.asList("src/deleted.java"));
+        boolean completed = gitRepoJob.indexDocsByDelta(Paths.get("./repo/testRepoName"), repoResult, "./repo/", "", repositoryChanged);
+
+        assertThat(completed).isTrue();
+        verify(indexServiceMock, times(1)).deleteByCodeIds(Arrays.asList(DigestUtils.sha1Hex("./repo/testRepoName/src/deleted.java")));
+    }
+
+    public void testBareIndexReadsFromObjectDatabase() throws IOException, GitAPIException {
+        File source = TestHelpers.clearAndCreateTempPath("testBareIndexReadsFromObjectDatabaseSource");
+        File repoLocations = TestHelpers.clearAndCreateTempPath("testBareIndexReadsFromObjectDatabaseRepo");
+        Git git = Git.init().setDirectory(source).call();
+
+        TestHelpers.createFile(source, "changed.java", "public class Changed {}");
+        TestHelpers.createFile(source, "same.java", "public class Same {}");
+        TestHelpers.createFile(TestHelpers.createDirectory(source, "dir"), "deleted.java", "public class Deleted {}");
+        git.add().addFilepattern(".").call();
+        RevCommit first = git.commit().setMessage("first").setAuthor("test", "test@example.com").call();
+
+        IndexService indexServiceMock = mock(IndexService.class);
+        IndexGitRepoJob gitRepoJob = spy(new IndexGitRepoJob(indexServiceMock));
+        gitRepoJob.BAREINDEX = true;
+        gitRepoJob.INDEXDELTA = false;
+        HashMap<String, String> read = new HashMap<>();
+        doAnswer(invocation -> {
+            IndexBaseRepoJob.CodeLinesReturn codeLinesReturn = (IndexBaseRepoJob.CodeLinesReturn) invocation.callRealMethod();
+            read.put((String) invocation.getArguments()[0], codeLinesReturn.getContents());
+            return codeLinesReturn;
+        }).when(gitRepoJob).getCodeLines(anyString(), anyList());
+
+        RepoResult repoResult = new RepoResult().setName("testBareIndex").setUrl(source.toURI().toString()).setBranch("master").setData(new RepoData());
+        String repoPath = Paths.get(repoLocations.getPath() + "/" + repoResult.getDirectoryName()).toString();
+
+        // Cloned without a working tree and every file read from the object database
+        RepositoryChanged repositoryChanged = gitRepoJob.cloneGitRepository(repoResult, repoLocations.getPath(), false);
+        assertThat(repositoryChanged.isChanged()).isTrue();
+        assertThat(repositoryChanged.getHeadCommit()).isEqualTo(first.getName());
+        assertThat(new File(repoPath, ".git/objects")).isDirectory();
+        assertThat(new File(repoPath, "same.java")).doesNotExist();
+
+        gitRepoJob.updateIndex(repoResult, repoLocations.getPath(), "", false, repositoryChanged);
+        assertThat(read.keySet()).containsOnly(repoPath + "/changed.java", repoPath + "/same.java", repoPath + "/dir/deleted.java");
+        assertThat(read.get(repoPath + "/same.java")).isEqualTo("public class Same {}");
+        assertThat(repoResult.getData().lastIndexedCommit).isEqualTo(first.getName());
+
+        new File(source, "changed.java").delete();
+        TestHelpers.createFile(source, "changed.java", "public class Modified {}");
+        git.add().addFilepattern(".").call();
+        git.rm().addFilepattern("dir/deleted.java").call();
+        RevCommit second = git.commit().setMessage("second").setAuthor("test", "test@example.com").call();
+
+        // Only the branch is fetched and the changes since the last indexed commit worked out
+        repositoryChanged = gitRepoJob.updateGitRepository(repoResult, repoLocations.getPath(), false);
+        assertThat(repositoryChanged.isChanged()).isTrue();
+        assertThat(repositoryChanged.isDelta()).isTrue();
+        assertThat(repositoryChanged.getHeadCommit()).isEqualTo(second.getName());
+        assertThat(repositoryChanged.getChangedFiles()).containsExactly("changed.java");
+        assertThat(repositoryChanged.getDeletedFiles()).containsExactly("dir/deleted.java");
+
+        // Walking the whole tree skips the blobs which are the same as the last indexed commit
+        read.clear();
+        when(indexServiceMock.getRepoDocuments("testBareIndex", 0)).thenReturn(Arrays.asList(repoPath + "/same.java", repoPath + "/dir/deleted.java"));
+        gitRepoJob.updateIndex(repoResult, repoLocations.getPath(), "", true, repositoryChanged);
+        assertThat(read.keySet()).containsOnly(repoPath + "/changed.java");
+        assertThat(read.get(repoPath + "/changed.java")).isEqualTo("public class Modified {}");
+        assertThat(repoResult.getData().lastIndexedCommit).isEqualTo(second.getName());
+        verify(indexServiceMock, times(1)).deleteByCodeId(DigestUtils.sha1Hex(repoPath + "/dir/deleted.java"));
+        verify(indexServiceMock, never()).deleteByCodeId(DigestUtils.sha1Hex(repoPath + "/same.java"));
+
+        // Files can be shown without a working tree
+        assertThat(new GitService().readFileLinesFromRepository(repoLocations.getPath(), repoPath + "/changed.java", 100).get()).containsExactly("public class Modified {}");
+        assertThat(new GitService().readFileLinesFromRepository(repoLocations.getPath(), repoPath + "/dir/deleted.java", 100).isPresent()).isFalse();
+        assertThat(new GitService().readFileLinesFromRepository(repoPath, repoPath + "/changed.java", 100).isPresent()).isFalse();
+        assertThat(new GitService().readFileLinesFromRepository(repoLocations.getPath(), "/elsewhere/changed.java", 100).isPresent()).isFalse();
+
+        git.close();
+    }
+
     // TODO implement this to speed up the Owner portion
 //    public void testTesty() throws IOException, GitAPIException {
 //        //public List<CodeOwner> getBlameInfo(int codeLinesSize, String repoName, String repoLocations, String fileName) {
@@ -1,7 +1,12 @@
 package com.searchcode.app.jobs;
 
+import com.searchcode.app.TestHelpers;
+import com.searchcode.app.dto.RepoData;
 import com.searchcode.app.jobs.repository.IndexBaseRepoJob;
+import com.searchcode.app.jobs.repository.IndexFileRepoJob;
 import com.searchcode.app.jobs.repository.IndexGitRepoJob;
+import com.searchcode.app.jobs.repository.SearchcodeFileVisitor;
+import com.searchcode.app.model.RepoResult;
 import com.searchcode.app.service.index.IIndexService;
 import com.searchcode.app.service.index.IndexService;
 import com.searchcode.app.util.UniqueRepoQueue;
@@ -11,8 +16,12 @@ import org.quartz.JobDetail;
 import org.quartz.JobExecutionContext;
 import org.quartz.JobExecutionException;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.stream.Collectors;
 
 import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
 import static org.mockito.Mockito.*;
@@ -111,4 +120,40 @@ public class IndexBaseRepoJobTest extends TestCase {
         assertThat(isMinified.isMinified()).isFalse();
         assertThat(isMinified.getReportList().isEmpty()).isTrue();
     }
+
+    public void testIndexWorkersMatchSingleThreadedWalk() throws IOException {
+        var location = TestHelpers.clearAndCreateTempPath("testIndexWorkersMatchSingleThreadedWalk");
+        for (var i = 0; i < 40; i++) {
+            TestHelpers.createFile(location, "file" + i + ".java", "public class File" + i + " {}");
+        }
+
+        var single = this.walk(location.toPath(), 1);
+        var parallel = this.walk(location.toPath(), 4);
+
+        assertThat(parallel.terminated).isFalse();
+        assertThat(parallel.fileLocationsMap).isEqualTo(single.fileLocationsMap);
+        assertThat(this.report(parallel)).isEqualTo(this.report(single));
+        assertThat(this.report(parallel).size()).isEqualTo(40);
+    }
+
+    private SearchcodeFileVisitor<Path> walk(Path path, int workers) throws IOException {
+        var job = new IndexFileRepoJob(this.indexServiceMock);
+        job.INDEXWORKERS = workers;
+        job.LOGINDEXED = true;
+
+        var repoResult = new RepoResult().setName("testIndexWorkers").setData(new RepoData());
+        var visitor = new SearchcodeFileVisitor<Path>(job, repoResult, path.toString(), "");
+
+        try {
+            Files.walkFileTree(path, visitor);
+        } finally {
+            visitor.finish();
+        }
+
+        return visitor;
+    }
+
+    private List<String> report(SearchcodeFileVisitor<Path> visitor) {
+        return visitor.reportList.stream().map(x -> String.join(",", x)).collect(Collectors.toList());
+    }
 }
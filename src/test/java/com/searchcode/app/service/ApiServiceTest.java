@@ -17,7 +17,7 @@ public class ApiServiceTest extends TestCase {
         var apiMock = mock(Api.class);
         when(apiMock.getApiByPublicKey("publicKey")).thenReturn(Optional.empty());
 
-        var service = new ApiService(apiMock, new Helpers());
+        var service = new ApiService(apiMock, new Helpers(), mock(StatsService.class));
 
         var actual = service.validateRequest("publicKey", "", "", ApiService.HmacType.SHA1);
         assertFalse(actual);
@@ -27,7 +27,7 @@ public class ApiServiceTest extends TestCase {
         var apiMock = mock(Api.class);
         when(apiMock.getApiByPublicKey("publicKey")).thenReturn(Optional.of(new ApiResult(1, "publicKey", "privateKey", "", "")));
 
-        var service = new ApiService(apiMock, new Helpers());
+        var service = new ApiService(apiMock, new Helpers(), mock(StatsService.class));
 
         var actual = service.validateRequest("publicKey", "3eb4cb7c8a30ac3814bbfae935cbe3c1f4f2acce", "stringtohmac", ApiService.HmacType.SHA1);
         assertTrue(actual);
@@ -37,7 +37,7 @@ public class ApiServiceTest extends TestCase {
         var apiMock = mock(Api.class);
         when(apiMock.getApiByPublicKey("publicKey")).thenReturn(Optional.of(new ApiResult(1, "publicKey", "privateKey", "", "")));
 
-        var service = new ApiService(apiMock, new Helpers());
+        var service = new ApiService(apiMock, new Helpers(), mock(StatsService.class));
 
         var actual = service.validateRequest("publicKey", "incorrecthmac", "stringtohmac", ApiService.HmacType.SHA1);
         assertFalse(actual);
@@ -47,7 +47,7 @@ public class ApiServiceTest extends TestCase {
         var apiMock = mock(Api.class);
         when(apiMock.getApiByPublicKey("publicKey")).thenReturn(Optional.of(new ApiResult(1, "publicKey", "privateKey", "", "")));
 
-        var service = new ApiService(apiMock, new Helpers());
+        var service = new ApiService(apiMock, new Helpers(), mock(StatsService.class));
 
         var actual = service.validateRequest("publicKey", "e15db69d711f0f25ce07a9c11ebebe821e6fc312", "", ApiService.HmacType.SHA1);
         assertTrue(actual);
@@ -57,7 +57,7 @@ public class ApiServiceTest extends TestCase {
         var apiMock = mock(Api.class);
         when(apiMock.getApiByPublicKey("publicKey")).thenReturn(Optional.of(new ApiResult(1, "publicKey", "privateKey", "", "")));
 
-        var service = new ApiService(apiMock, new Helpers());
+        var service = new ApiService(apiMock, new Helpers(), mock(StatsService.class));
 
         var actual = service.validateRequest("publicKey", "1577b8c8f5781bf2817a45bfb47ded066c579c37", "testmessage1", ApiService.HmacType.SHA1);
         assertTrue(actual);
@@ -67,7 +67,7 @@ public class ApiServiceTest extends TestCase {
         var apiMock = mock(Api.class);
         when(apiMock.getApiByPublicKey("publicKey")).thenReturn(Optional.of(new ApiResult(1, "publicKey", "privateKey", "", "")));
 
-        var service = new ApiService(apiMock, new Helpers());
+        var service = new ApiService(apiMock, new Helpers(), mock(StatsService.class));
 
         var actual = service.validateRequest("publicKey", "0cb1ae7ab0db51dd82c4d29000523e643d8a1fcb", "?pub=publicKey&reponame=test&repourl=http://github.com/&reposource=&repobranch=master", ApiService.HmacType.SHA1);
         assertTrue(actual);
@@ -77,7 +77,7 @@ public class ApiServiceTest extends TestCase {
         var apiMock = mock(Api.class);
         when(apiMock.getApiByPublicKey("publicKey")).thenReturn(Optional.of(new ApiResult(1, "publicKey", "privateKey", "", "")));
 
-        var service = new ApiService(apiMock, new Helpers());
+        var service = new ApiService(apiMock, new Helpers(), mock(StatsService.class));
 
         var actual = service.validateRequest("publicKey", "3eb4cb7c8a30ac3814bbfae935cbe3c1f4f2acce", "stringtohmac", ApiService.HmacType.SHA1);
         assertTrue(actual);
@@ -87,7 +87,7 @@ public class ApiServiceTest extends TestCase {
         var apiMock = mock(Api.class);
         when(apiMock.getApiByPublicKey("publicKey")).thenReturn(Optional.of(new ApiResult(1, "publicKey", "privateKey", "", "")));
 
-        var service = new ApiService(apiMock, new Helpers());
+        var service = new ApiService(apiMock, new Helpers(), mock(StatsService.class));
 
         var actual = service.validateRequest("publicKey", "3eb4cb7c8a30ac3814bbfae935cbe3c1f4f2acce", "stringtohmac", ApiService.HmacType.SHA1);
         assertTrue(actual);
@@ -97,7 +97,7 @@ public class ApiServiceTest extends TestCase {
         var apiMock = mock(Api.class);
         when(apiMock.getApiByPublicKey("publicKey")).thenReturn(Optional.of(new ApiResult(1, "publicKey", "privateKey", "", "")));
 
-        var service = new ApiService(apiMock, new Helpers());
+        var service = new ApiService(apiMock, new Helpers(), mock(StatsService.class));
 
         var actual = service.validateRequest("publicKey", "8d8219101eecb1ae62e025c79379872d7461cf201a737893afc172aa9c98c505c7d1f4d864d9adbc17f8e2694fb0287fb7533e942c34589fc2daefc068e0cad3", "stringtohmac", ApiService.HmacType.SHA512);
         assertTrue(actual);
@@ -107,7 +107,7 @@ public class ApiServiceTest extends TestCase {
         var apiMock = mock(Api.class);
         when(apiMock.getApiByPublicKey("publicKey")).thenReturn(Optional.of(new ApiResult(1, "publicKey", "privateKey", "", "")));
 
-        var service = new ApiService(apiMock, new Helpers());
+        var service = new ApiService(apiMock, new Helpers(), mock(StatsService.class));
 
         var actual = service.validateRequest("publicKey", "thisiswrong", "stringtohmac", ApiService.HmacType.SHA512);
         assertFalse(actual);
@@ -117,7 +117,7 @@ public class ApiServiceTest extends TestCase {
         var apiMock = mock(Api.class);
         when(apiMock.saveApi(anyObject())).thenReturn(true);
 
-        var service = new ApiService(apiMock, new Helpers());
+        var service = new ApiService(apiMock, new Helpers(), mock(StatsService.class));
 
         var actual = service.createKeys();
         assertNotNull(actual);
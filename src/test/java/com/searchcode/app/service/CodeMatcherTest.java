@@ -0,0 +1,97 @@
+package com.searchcode.app.service;
+
+import com.searchcode.app.config.Values;
+import com.searchcode.app.dao.Data;
+import com.searchcode.app.util.LoggerWrapper;
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class CodeMatcherTest extends TestCase {
+
+    private CodeMatcher getCodeMatcher() {
+        var dataMock = mock(Data.class);
+        when(dataMock.getDataByName(Values.MATCHLINES, Values.DEFAULTMATCHLINES)).thenReturn(Values.DEFAULTMATCHLINES);
+        when(dataMock.getDataByName(Values.MAXLINEDEPTH, Values.DEFAULTMAXLINEDEPTH)).thenReturn(Values.DEFAULTMAXLINEDEPTH);
+
+        return new CodeMatcher(dataMock, mock(LoggerWrapper.class));
+    }
+
+    public void testFindMatchingLinesIncludesAdjacentLinesOnce() {
+        var codeMatcher = this.getCodeMatcher();
+        var code = Arrays.asList("one", "Foo", "two", "foo", "three");
+
+        var result = codeMatcher.findMatchingLines(code, codeMatcher.splitTerms("foo"), false);
+
+        assertThat(result).hasSize(5);
+        assertThat(result.stream().filter(x -> x.isMatching()).count()).isEqualTo(2);
+        assertThat(result.stream().mapToInt(x -> x.getLineNumber()).distinct().count()).isEqualTo(5);
+    }
+
+    public void testFindMatchingLinesNoMatchReturnsTopLines() {
+        var codeMatcher = this.getCodeMatcher();
+        var code = Arrays.asList("one", "two");
+
+        var result = codeMatcher.findMatchingLines(code, codeMatcher.splitTerms("foo"), false);
+
+        assertThat(result).hasSize(2);
+        assertThat(result.get(0).isMatching()).isFalse();
+    }
+
+    public void testMatchResultsLineNumbersStartAtOne() {
+        var codeMatcher = this.getCodeMatcher();
+        var code = new ArrayList<String>();
+        for (var i = 0; i < 100; i++) {
+            code.add("line " + i);
+        }
+        code.set(50, "the matching line");
+
+        var result = codeMatcher.matchResults(code, codeMatcher.splitTerms("matching"), false);
+
+        assertThat(result).hasSize(3);
+        assertThat(result.get(0).getLineNumber()).isEqualTo(50);
+        assertThat(result.get(1).getLineNumber()).isEqualTo(51);
+        assertThat(result.get(1).isMatching()).isTrue();
+        assertThat(result.get(2).getLineNumber()).isEqualTo(52);
+        assertThat(result.get(0).addBreak).isFalse();
+    }
+
+    public void testMatchResultsLimitedToMatchLines() {
+        var codeMatcher = this.getCodeMatcher();
+        var code = new ArrayList<String>();
+        for (var i = 0; i < 1000; i++) {
+            code.add(i % 3 == 0 ? "foo bar" : "baz");
+        }
+
+        var result = codeMatcher.matchResults(code, codeMatcher.splitTerms("foo"), false);
+
+        assertThat(result.size()).isLessThan(codeMatcher.MATCHLINES + 3);
+        for (var i = 1; i < result.size(); i++) {
+            assertThat(result.get(i).getLineNumber()).isGreaterThan(result.get(i - 1).getLineNumber());
+        }
+    }
+
+    public void testFormatRegexResults() {
+        var codeMatcher = this.getCodeMatcher();
+        var codeResult = new com.searchcode.app.dto.CodeResult().setCode(Arrays.asList("int a = 1;", "if (a < b) {", "}"));
+
+        var result = codeMatcher.formatRegexResults(Arrays.asList(codeResult), "a < [a-z]", true);
+
+        assertThat(result).hasSize(1);
+        var matching = result.get(0).getMatchingResults().stream().filter(x -> x.isMatching()).findFirst().get();
+        assertThat(matching.getLineNumber()).isEqualTo(2);
+        assertThat(matching.getLine()).isEqualTo("if (<strong>a &lt; b</strong>) {");
+    }
+
+    public void testFormatRegexResultsInvalidRegex() {
+        var codeMatcher = this.getCodeMatcher();
+        var codeResult = new com.searchcode.app.dto.CodeResult().setCode(Arrays.asList("int a = 1;"));
+
+        assertThat(codeMatcher.formatRegexResults(Arrays.asList(codeResult), "([", true)).isEmpty();
+    }
+}
@@ -1,32 +1,106 @@
 package com.searchcode.app.service;
 
+import com.searchcode.app.config.SQLiteMemoryDatabaseConfig;
 import com.searchcode.app.config.Values;
 import com.searchcode.app.dao.Data;
+import com.searchcode.app.dao.PersistentDelete;
+import com.searchcode.app.util.Helpers;
+import com.searchcode.app.util.LoggerWrapper;
 import junit.framework.TestCase;
 import org.mockito.Mockito;
 
-import static org.mockito.Matchers.any;
+import java.util.ArrayList;
+import java.util.Optional;
+
+import static org.assertj.core.api.AssertionsForInterfaceTypes.assertThat;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 public class DataServiceTest extends TestCase {
 
+    private PersistentDelete persistentDelete;
+
+    public void setUp() throws Exception {
+        super.setUp();
+        this.persistentDelete = new PersistentDelete(new SQLiteMemoryDatabaseConfig(), new Helpers(), new LoggerWrapper());
+        this.persistentDelete.createTableIfMissing();
+    }
+
     public void testTestAddToPersistent() {
         Data mockData = Mockito.mock(Data.class);
-        DataService dataService = new DataService(mockData);
-        when(mockData.getDataByName(Values.PERSISTENT_DELETE_QUEUE, "[]")).thenReturn("[]");
+        DataService dataService = new DataService(mockData, this.persistentDelete);
 
         dataService.addToPersistentDelete("test");
-        verify(mockData, times(1)).saveData(any(), any());
+        dataService.addToPersistentDelete("test");
+
+        assertThat(dataService.isPersistentDelete("test")).isTrue();
+        assertThat(dataService.getPersistentDeleteCount()).isEqualTo(1);
+        assertThat(this.persistentDelete.getAll().get()).containsExactly("test");
     }
 
     public void testTestRemoveFromPersistent() {
         Data mockData = Mockito.mock(Data.class);
-        DataService dataService = new DataService(mockData);
-        when(mockData.getDataByName(Values.PERSISTENT_DELETE_QUEUE, "[]")).thenReturn("[]");
+        DataService dataService = new DataService(mockData, this.persistentDelete);
 
+        dataService.addToPersistentDelete("test");
         dataService.removeFromPersistentDelete("test");
-        verify(mockData, times(1)).saveData(any(), any());
+
+        assertThat(dataService.isPersistentDelete("test")).isFalse();
+        assertThat(dataService.getPersistentDelete()).isEmpty();
+        assertThat(this.persistentDelete.getAll().get()).isEmpty();
+    }
+
+    public void testLoadsSavedNames() {
+        this.persistentDelete.add("one");
+        this.persistentDelete.add("two");
+
+        DataService dataService = new DataService(Mockito.mock(Data.class), this.persistentDelete);
+
+        assertThat(dataService.isPersistentDelete("one")).isTrue();
+        assertThat(dataService.isPersistentDelete("three")).isFalse();
+        assertThat(dataService.getPersistentDelete()).containsOnly("one", "two");
+    }
+
+    public void testGetPersistentDeleteOldestFirst() {
+        this.persistentDelete.add("zulu");
+        this.persistentDelete.add("alpha");
+
+        DataService dataService = new DataService(Mockito.mock(Data.class), this.persistentDelete);
+
+        for (int i = 0; i < 50; i++) {
+            dataService.addToPersistentDelete("name" + i);
+        }
+        dataService.removeFromPersistentDelete("name10");
+        dataService.addToPersistentDelete("alpha");
+
+        var names = dataService.getPersistentDelete();
+        assertThat(names).hasSize(51);
+        assertThat(names.get(0)).isEqualTo("zulu");
+        assertThat(names.get(1)).isEqualTo("alpha");
+        assertThat(names.get(50)).isEqualTo("name49");
+        assertThat(names).isEqualTo(this.persistentDelete.getAll().get());
+    }
+
+    public void testMigratesLegacyQueue() {
+        Data mockData = Mockito.mock(Data.class);
+        when(mockData.getDataByName(Values.PERSISTENT_DELETE_QUEUE, "[]")).thenReturn("[\"one\",\"two\"]");
+
+        DataService dataService = new DataService(mockData, this.persistentDelete);
+
+        assertThat(dataService.getPersistentDeleteCount()).isEqualTo(2);
+        assertThat(this.persistentDelete.getAll().get()).containsExactly("one", "two");
+        verify(mockData, times(1)).saveData(Values.PERSISTENT_DELETE_QUEUE, "[]");
+    }
+
+    public void testFailedSaveNotMirrored() {
+        PersistentDelete mockPersistentDelete = Mockito.mock(PersistentDelete.class);
+        when(mockPersistentDelete.getAll()).thenReturn(Optional.of(new ArrayList<>()));
+        when(mockPersistentDelete.add("test")).thenReturn(false);
+
+        DataService dataService = new DataService(Mockito.mock(Data.class), mockPersistentDelete);
+        dataService.addToPersistentDelete("test");
+
+        assertThat(dataService.isPersistentDelete("test")).isFalse();
     }
 }
@@ -1,12 +1,15 @@
 package com.searchcode.app.service;
 
+import com.searchcode.app.config.SQLiteMemoryDatabaseConfig;
 import com.searchcode.app.config.Values;
 import com.searchcode.app.dao.Data;
 import com.searchcode.app.util.Helpers;
+import com.searchcode.app.util.LoggerWrapper;
 import junit.framework.TestCase;
 import org.mockito.Mockito;
 
 import static org.assertj.core.api.AssertionsForInterfaceTypes.assertThat;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -19,8 +22,9 @@ public class StatsServiceTest extends TestCase {
 
         StatsService statsService = new StatsService(dataMock, new Helpers());
         statsService.incrementSearchCount();
+        statsService.flush();
 
-        verify(dataMock, times(1)).saveData(Values.CACHE_TOTAL_SEARCH, "1");
+        verify(dataMock, times(1)).trySaveData(Values.CACHE_TOTAL_SEARCH, "1");
     }
 
     public void testIncrementSearchCountTwo() {
@@ -30,8 +34,9 @@ public class StatsServiceTest extends TestCase {
 
         StatsService statsService = new StatsService(dataMock, new Helpers());
         statsService.incrementSearchCount();
+        statsService.flush();
 
-        verify(dataMock, times(1)).saveData(Values.CACHE_TOTAL_SEARCH, "101");
+        verify(dataMock, times(1)).trySaveData(Values.CACHE_TOTAL_SEARCH, "101");
     }
 
     public void testIncrementSearchIntergerOverflow() {
@@ -41,7 +46,64 @@ public class StatsServiceTest extends TestCase {
 
         StatsService statsService = new StatsService(dataMock, new Helpers());
         statsService.incrementSearchCount();
+        statsService.flush();
 
-        verify(dataMock, times(1)).saveData(Values.CACHE_TOTAL_SEARCH, "1");
+        verify(dataMock, times(1)).trySaveData(Values.CACHE_TOTAL_SEARCH, "1");
+    }
+
+    public void testCountsAreOnlySavedOnFlush() {
+        Data dataMock = Mockito.mock(Data.class);
+
+        when(dataMock.getDataByName(Values.CACHE_TOTAL_SEARCH, "0")).thenReturn("10");
+        when(dataMock.trySaveData(Values.CACHE_TOTAL_SEARCH, "13")).thenReturn(true);
+
+        StatsService statsService = new StatsService(dataMock, new Helpers());
+        statsService.incrementSearchCount();
+        statsService.incrementSearchCount();
+        statsService.incrementSearchCount();
+
+        verify(dataMock, never()).trySaveData(Mockito.anyString(), Mockito.anyString());
+        assertThat(statsService.getSearchCount()).isEqualTo(13);
+
+        statsService.flush();
+        statsService.flush();
+
+        verify(dataMock, times(1)).trySaveData(Values.CACHE_TOTAL_SEARCH, "13");
+    }
+
+    public void testFailedFlushIsRetried() {
+        Data dataMock = Mockito.mock(Data.class);
+
+        when(dataMock.getDataByName(Values.STATS_ROUTE_PREFIX + "/", "0")).thenReturn("0");
+        when(dataMock.trySaveData(Values.STATS_ROUTE_PREFIX + "/", "2")).thenReturn(false).thenReturn(true);
+
+        StatsService statsService = new StatsService(dataMock, new Helpers());
+        statsService.addCount(Values.STATS_ROUTE_PREFIX + "/", 2);
+        statsService.flush();
+        statsService.flush();
+        statsService.flush();
+
+        verify(dataMock, times(2)).trySaveData(Values.STATS_ROUTE_PREFIX + "/", "2");
+        assertThat(statsService.getCounts(",")).isEqualTo(Values.STATS_ROUTE_PREFIX + "/: 0,");
+    }
+
+    public void testFlushAgainstExistingKey() {
+        Data data = new Data(new SQLiteMemoryDatabaseConfig(), new Helpers(), new LoggerWrapper());
+        data.createTableIfMissing();
+        data.saveData(Values.STATS_ROUTE_PREFIX + "/existing", "10");
+
+        StatsService statsService = new StatsService(data, new Helpers());
+        statsService.addCount(Values.STATS_ROUTE_PREFIX + "/existing", 5);
+        statsService.flush();
+        statsService.flush();
+
+        assertThat(data.getDataByName(Values.STATS_ROUTE_PREFIX + "/existing")).isEqualTo("15");
+        assertThat(statsService.getCount(Values.STATS_ROUTE_PREFIX + "/existing")).isEqualTo(15);
+
+        statsService.addCount(Values.STATS_ROUTE_PREFIX + "/existing", 1);
+        statsService.flush();
+        statsService.flush();
+
+        assertThat(data.getDataByName(Values.STATS_ROUTE_PREFIX + "/existing")).isEqualTo("16");
     }
 }
@@ -0,0 +1,339 @@
+package com.searchcode.app.service.index;
+
+import com.searchcode.app.dto.CodeIndexDocument;
+import com.searchcode.app.service.Singleton;
+import junit.framework.TestCase;
+import org.apache.commons.io.FileUtils;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.AssertionsForInterfaceTypes.assertThat;
+
+public class CodeIndexSpoolTest extends TestCase {
+
+    private Path location;
+
+    @Override
+    protected void setUp() throws IOException {
+        this.location = Files.createTempDirectory("spool");
+    }
+
+    @Override
+    protected void tearDown() throws IOException {
+        FileUtils.deleteDirectory(this.location.toFile());
+    }
+
+    public void testRoundTripsEveryField() {
+        var spool = this.spool(1024 * 1024);
+        var codeIndexDocument = new CodeIndexDocument()
+                .setId(1)
+                .setRepoNameId(2)
+                .setLanguageNameId(3)
+                .setSourceId(4)
+                .setLines(5)
+                .setCodeLines(6)
+                .setCommentLines(7)
+                .setBlankLines(8)
+                .setComplexity(9)
+                .setRepoLocationRepoNameLocationFilename("repo/name/location/file.java")
+                .setRepoName("name")
+                .setFileName("file.java")
+                .setFileLocation("location")
+                .setFileLocationFilename("location/file.java")
+                .setMd5hash("md5hash")
+                .setLanguageName("Java")
+                .setContents("public class Test {}\né中😀")
+                .setRepoRemoteLocation("https://example.com/repo.git")
+                .setCodeOwner("owner")
+                .setDisplayLocation("name/location/file.java")
+                .setSource("source")
+                .setRevision("revision")
+                .setYear("2016");
+
+        assertThat(spool.add(codeIndexDocument)).isTrue();
+        var result = spool.poll();
+
+        assertThat(result.getId()).isEqualTo(1);
+        assertThat(result.getRepoNameId()).isEqualTo(2);
+        assertThat(result.getLanguageNameId()).isEqualTo(3);
+        assertThat(result.getSourceId()).isEqualTo(4);
+        assertThat(result.getLines()).isEqualTo(5);
+        assertThat(result.getCodeLines()).isEqualTo(6);
+        assertThat(result.getCommentLines()).isEqualTo(7);
+        assertThat(result.getBlankLines()).isEqualTo(8);
+        assertThat(result.getComplexity()).isEqualTo(9);
+        assertThat(result.getRepoLocationRepoNameLocationFilename()).isEqualTo("repo/name/location/file.java");
+        assertThat(result.getHash()).isEqualTo(codeIndexDocument.getHash());
+        assertThat(result.getContents()).isEqualTo(codeIndexDocument.getContents());
+        assertThat(result.getSchash()).isEmpty();
+        assertThat(result.getRepoRemoteLocation()).isEqualTo("https://example.com/repo.git");
+        assertThat(result.getDisplayLocation()).isEqualTo("name/location/file.java");
+        assertThat(result.getSource()).isEqualTo("source");
+        assertThat(result.getYear()).isEqualTo("2016");
+        assertThat(result.getMessage()).isNull();
+        assertThat(spool.poll()).isNull();
+    }
+
+    public void testFirstInFirstOutAcrossSegments() {
+        var spool = this.spool(256);
+
+        for (var i = 0; i < 50; i++) {
+            spool.add(this.document(i));
+        }
+
+        assertThat(spool.size()).isEqualTo(50);
+        assertThat(spool.peek().getId()).isEqualTo(0);
+
+        for (var i = 0; i < 50; i++) {
+            assertThat(spool.poll().getId()).isEqualTo(i);
+        }
+
+        assertThat(spool.poll()).isNull();
+        assertThat(spool.size()).isZero();
+        assertThat(spool.getSizeBytes()).isZero();
+    }
+
+    public void testDrainLimitsBatch() {
+        var spool = this.spool(1024 * 1024);
+
+        for (var i = 0; i < 10; i++) {
+            spool.add(this.document(i));
+        }
+
+        assertThat(spool.drain(4, Long.MAX_VALUE).getDocuments()).hasSize(4);
+        assertThat(spool.drain(100, 1).getDocuments()).hasSize(1);
+        assertThat(spool.drain().getDocuments()).hasSize(5);
+        assertThat(spool.drain().getDocuments()).isEmpty();
+    }
+
+    public void testReplaysUnacknowledgedAfterRestart() {
+        var spool = this.spool(256);
+
+        for (var i = 0; i < 20; i++) {
+            spool.add(this.document(i));
+        }
+
+        var first = spool.drain(5, Long.MAX_VALUE);
+        spool.drain(5, Long.MAX_VALUE);
+        spool.acknowledge(first.getPosition());
+        spool.close();
+
+        var reopened = this.spool(256);
+        assertThat(reopened.size()).isEqualTo(15);
+        assertThat(reopened.drain(100, Long.MAX_VALUE).getDocuments().stream().map(CodeIndexDocument::getId).collect(Collectors.toList()))
+                .containsExactly(5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16, 17, 18, 19);
+    }
+
+    public void testAcknowledgeIgnoresEarlierPosition() {
+        var spool = this.spool(256);
+
+        for (var i = 0; i < 20; i++) {
+            spool.add(this.document(i));
+        }
+
+        var first = spool.drain(5, Long.MAX_VALUE);
+        var second = spool.drain(5, Long.MAX_VALUE);
+        spool.acknowledge(second.getPosition());
+        spool.acknowledge(first.getPosition());
+        spool.acknowledge(null);
+        spool.close();
+
+        assertThat(this.spool(256).size()).isEqualTo(10);
+    }
+
+    public void testAcknowledgeRemovesReadSegments() throws IOException {
+        var spool = this.spool(256);
+
+        for (var i = 0; i < 20; i++) {
+            spool.add(this.document(i));
+        }
+
+        var before = this.segmentCount();
+        spool.acknowledge(spool.drain(100, Long.MAX_VALUE).getPosition());
+
+        assertThat(before).isGreaterThan(1);
+        assertThat(this.segmentCount()).isEqualTo(1);
+
+        spool.close();
+        assertThat(this.spool(256).size()).isZero();
+    }
+
+    public void testTruncatesPartialRecordOnRecovery() throws IOException {
+        var spool = this.spool(1024 * 1024);
+        spool.add(this.document(1));
+        spool.add(this.document(2));
+        spool.close();
+
+        var segment = this.lastSegment();
+        try (var file = new RandomAccessFile(segment.toFile(), "rw")) {
+            file.setLength(file.length() - 3);
+        }
+
+        var reopened = this.spool(1024 * 1024);
+        assertThat(reopened.size()).isEqualTo(1);
+        assertThat(reopened.poll().getId()).isEqualTo(1);
+        assertThat(reopened.poll()).isNull();
+    }
+
+    public void testDropsRecordsFailingChecksum() throws IOException {
+        var spool = this.spool(1024 * 1024);
+        spool.add(this.document(1));
+        spool.add(this.document(2));
+        spool.close();
+
+        var segment = this.lastSegment();
+        try (var file = new RandomAccessFile(segment.toFile(), "rw")) {
+            file.seek(file.length() - 1);
+            var last = file.read();
+            file.seek(file.length() - 1);
+            file.write(last ^ 0xFF);
+        }
+
+        var reopened = this.spool(1024 * 1024);
+        assertThat(reopened.size()).isEqualTo(1);
+        assertThat(reopened.poll().getId()).isEqualTo(1);
+        assertThat(reopened.poll()).isNull();
+    }
+
+    public void testIsFullBasedOnBytes() {
+        var spool = new CodeIndexSpool(this.location, 1000, 1024 * 1024, 100, 1024 * 1024, Singleton.getLogger());
+
+        spool.add(this.document(1).setContents("a".repeat(500)));
+        assertThat(spool.isFull()).isFalse();
+
+        spool.add(this.document(2).setContents("a".repeat(500)));
+        assertThat(spool.isFull()).isTrue();
+
+        spool.poll();
+        assertThat(spool.isFull()).isFalse();
+    }
+
+    public void testClearRemovesEverything() {
+        var spool = this.spool(256);
+
+        for (var i = 0; i < 20; i++) {
+            spool.add(this.document(i));
+        }
+
+        spool.poll();
+        spool.clear();
+
+        assertThat(spool.size()).isZero();
+        assertThat(spool.poll()).isNull();
+
+        spool.add(this.document(100));
+        spool.close();
+
+        var reopened = this.spool(256);
+        assertThat(reopened.poll().getId()).isEqualTo(100);
+    }
+
+    public void testIteratorDoesNotConsume() {
+        var spool = this.spool(256);
+
+        for (var i = 0; i < 10; i++) {
+            spool.add(this.document(i));
+        }
+
+        var ids = new ArrayList<Integer>();
+        spool.forEach(x -> ids.add(x.getId()));
+
+        assertThat(ids).containsExactly(0, 1, 2, 3, 4, 5, 6, 7, 8, 9);
+        assertThat(spool.size()).isEqualTo(10);
+        assertThat(spool.poll().getId()).isEqualTo(0);
+    }
+
+    public void testIteratorReadsAsItMoves() {
+        var spool = this.spool(256);
+
+        for (var i = 0; i < 10; i++) {
+            spool.add(this.document(i));
+        }
+
+        var iterator = spool.iterator();
+        assertThat(iterator.next().getId()).isEqualTo(0);
+
+        // Documents read by someone else are skipped and ones added later are included
+        spool.drain(3, Long.MAX_VALUE);
+        spool.add(this.document(10));
+
+        var ids = new ArrayList<Integer>();
+        iterator.forEachRemaining(x -> ids.add(x.getId()));
+
+        assertThat(ids).containsExactly(3, 4, 5, 6, 7, 8, 9, 10);
+        assertThat(spool.peek().getId()).isEqualTo(3);
+        assertThat(spool.size()).isEqualTo(8);
+    }
+
+    public void testRetryReadsBatchAgainInPlace() {
+        var spool = this.spool(256);
+
+        for (var i = 0; i < 5; i++) {
+            spool.add(this.document(i));
+        }
+
+        var batch = spool.drain(3, Long.MAX_VALUE);
+        spool.add(this.document(5));
+
+        assertThat(spool.retry(batch.getPosition(), 3)).isTrue();
+        assertThat(spool.size()).isEqualTo(6);
+        assertThat(spool.drain(100, Long.MAX_VALUE).getDocuments().stream().map(CodeIndexDocument::getId).collect(Collectors.toList()))
+                .containsExactly(0, 1, 2, 3, 4, 5);
+    }
+
+    public void testRetryMovesToDeadLetterAfterMaxAttempts() throws IOException {
+        var spool = this.spool(256);
+
+        for (var i = 0; i < 4; i++) {
+            spool.add(this.document(i));
+        }
+
+        var batch = spool.drain(2, Long.MAX_VALUE);
+        assertThat(spool.retry(batch.getPosition(), 2)).isTrue();
+
+        batch = spool.drain(2, Long.MAX_VALUE);
+        assertThat(spool.retry(batch.getPosition(), 2)).isFalse();
+        assertThat(Files.size(this.location.resolve("deadletter"))).isGreaterThan(8L);
+
+        assertThat(spool.poll().getId()).isEqualTo(2);
+        spool.close();
+
+        // The dead letter documents were acknowledged so are not replayed
+        var reopened = this.spool(256);
+        assertThat(reopened.poll().getId()).isEqualTo(2);
+        reopened.close();
+    }
+
+    private CodeIndexSpool spool(long segmentBytes) {
+        return new CodeIndexSpool(this.location, Long.MAX_VALUE, segmentBytes, 100, 1024 * 1024, Singleton.getLogger());
+    }
+
+    private CodeIndexDocument document(int id) {
+        return new CodeIndexDocument()
+                .setId(id)
+                .setRepoLocationRepoNameLocationFilename("repo/file" + id)
+                .setFileName("file" + id)
+                .setContents("contents of file " + id);
+    }
+
+    private long segmentCount() throws IOException {
+        try (var paths = Files.list(this.location)) {
+            return paths.filter(x -> x.toString().endsWith(".segment")).count();
+        }
+    }
+
+    private Path lastSegment() throws IOException {
+        try (var paths = Files.list(this.location)) {
+            return paths.filter(x -> x.toString().endsWith(".segment"))
+                    .filter(x -> x.toFile().length() > 8)
+                    .sorted()
+                    .reduce((first, second) -> second)
+                    .get();
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.searchcode.app.service.index;
+
+import com.searchcode.app.config.Values;
+import junit.framework.TestCase;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.facet.FacetsConfig;
+import org.apache.lucene.facet.sortedset.SortedSetDocValuesFacetField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.store.RAMDirectory;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+
+import static org.assertj.core.api.AssertionsForInterfaceTypes.assertThat;
+
+public class IndexFacetsTest extends TestCase {
+
+    private IndexSearcher createSearcher() throws IOException {
+        var directory = new RAMDirectory();
+        var facetsConfig = new FacetsConfig();
+        facetsConfig.setIndexFieldName(Values.LANGUAGENAME, Values.LANGUAGENAME);
+        facetsConfig.setIndexFieldName(Values.REPONAME, Values.REPONAME);
+
+        try (var writer = new IndexWriter(directory, new IndexWriterConfig(new StandardAnalyzer()))) {
+            String[][] documents = {{"Java", "one"}, {"Java", "two"}, {"Python", "two"}};
+
+            for (var values : documents) {
+                var document = new Document();
+                document.add(new SortedSetDocValuesFacetField(Values.LANGUAGENAME, values[0]));
+                document.add(new SortedSetDocValuesFacetField(Values.REPONAME, values[1]));
+                writer.addDocument(facetsConfig.build(document));
+            }
+        }
+
+        return new IndexSearcher(DirectoryReader.open(directory));
+    }
+
+    public void testSearchCollectsAllDimensions() throws IOException {
+        var indexFacets = new IndexFacets();
+        var dimensions = new LinkedHashMap<String, Integer>();
+        dimensions.put(Values.LANGUAGENAME, 10);
+        dimensions.put(Values.REPONAME, 10);
+
+        var result = indexFacets.search(this.createSearcher(), new MatchAllDocsQuery(), 10, dimensions);
+
+        assertThat(result.topDocs.totalHits).isEqualTo(3);
+        assertThat(result.get(Values.LANGUAGENAME).labelValues[0].label).isEqualTo("Java");
+        assertThat(result.get(Values.LANGUAGENAME).labelValues[0].value.intValue()).isEqualTo(2);
+        assertThat(result.get(Values.REPONAME).labelValues[0].label).isEqualTo("two");
+    }
+
+    public void testSearchRespectsChildLimit() throws IOException {
+        var indexFacets = new IndexFacets();
+        var dimensions = new LinkedHashMap<String, Integer>();
+        dimensions.put(Values.LANGUAGENAME, 1);
+
+        var result = indexFacets.search(this.createSearcher(), new MatchAllDocsQuery(), 10, dimensions);
+
+        assertThat(result.get(Values.LANGUAGENAME).labelValues).hasSize(1);
+        assertThat(result.get(Values.LANGUAGENAME).childCount).isEqualTo(2);
+    }
+
+    public void testSearchMissingDimension() throws IOException {
+        var indexFacets = new IndexFacets();
+        var dimensions = new LinkedHashMap<String, Integer>();
+        dimensions.put(Values.CODEOWNER, 10);
+        dimensions.put(Values.LANGUAGENAME, 10);
+
+        var result = indexFacets.search(this.createSearcher(), new MatchAllDocsQuery(), 10, dimensions);
+
+        assertThat(result.get(Values.CODEOWNER)).isNull();
+        assertThat(result.get(Values.LANGUAGENAME)).isNotNull();
+    }
+
+    public void testReaderStatesCachedPerReader() throws IOException {
+        var indexFacets = new IndexFacets();
+        var dimensions = new LinkedHashMap<String, Integer>();
+        dimensions.put(Values.LANGUAGENAME, 10);
+
+        var first = this.createSearcher();
+        var second = this.createSearcher();
+
+        for (int i = 0; i < 3; i++) {
+            assertThat(indexFacets.search(first, new MatchAllDocsQuery(), 10, dimensions).get(Values.LANGUAGENAME)).isNotNull();
+            assertThat(indexFacets.search(second, new MatchAllDocsQuery(), 10, dimensions).get(Values.LANGUAGENAME)).isNotNull();
+        }
+
+        assertThat(indexFacets.getCachedReaderCount()).isEqualTo(2);
+
+        first.getIndexReader().close();
+        assertThat(indexFacets.getCachedReaderCount()).isEqualTo(1);
+
+        second.getIndexReader().close();
+        assertThat(indexFacets.getCachedReaderCount()).isZero();
+    }
+}
@@ -11,15 +11,21 @@ import com.searchcode.app.model.RepoResult;
 import com.searchcode.app.service.JobService;
 import com.searchcode.app.service.Singleton;
 import com.searchcode.app.service.StatsService;
+import com.searchcode.app.util.CodeAnalyzer;
 import com.searchcode.app.util.Helpers;
 import com.searchcode.app.util.LoggerWrapper;
+import com.searchcode.app.util.Properties;
 import junit.framework.TestCase;
+import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang3.RandomStringUtils;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.index.IndexableField;
 import org.assertj.core.api.AssertionsForClassTypes;
 
 import java.io.IOException;
+import java.nio.file.Files;
 import java.util.*;
 import java.util.concurrent.ConcurrentLinkedQueue;
 
@@ -124,9 +130,9 @@ public class IndexServiceTest extends TestCase {
     }
 
 
-    public void testBuildDocument() {
+    public void testBuildDocument() throws IOException {
         this.indexService = new IndexService();
-        Document indexFields = this.indexService.buildDocument(new CodeIndexDocument()
+        var codeIndexDocument = new CodeIndexDocument()
                 .setRepoLocationRepoNameLocationFilename("repoLocationRepoNameLocationFilename")
                 .setRepoName("repo Name")
                 .setFileName("fileName")
@@ -143,9 +149,10 @@ public class IndexServiceTest extends TestCase {
                 .setRepoRemoteLocation("repoRemoteLocation")
                 .setCodeOwner("code Owner")
                 .setDisplayLocation("displayLocation")
-                .setSource("code source"));
+                .setSource("code source");
+        Document indexFields = this.indexService.buildDocument(codeIndexDocument);
 
-        AssertionsForClassTypes.assertThat(indexFields.getFields().size()).isEqualTo(29);
+        AssertionsForClassTypes.assertThat(indexFields.getFields().size()).isEqualTo(33);
 
         IndexableField[] fields = indexFields.getFields(Values.REPONAME);
         AssertionsForClassTypes.assertThat(fields[0].stringValue()).isEqualTo("repo_Name");
@@ -160,8 +167,17 @@ public class IndexServiceTest extends TestCase {
         AssertionsForClassTypes.assertThat(fields[0].stringValue()).isEqualTo("code_source");
 
         // Verifies that we ran through the pipeline
-        fields = indexFields.getFields(Values.CONTENTS);
-        AssertionsForClassTypes.assertThat(fields[0].stringValue()).isEqualTo(" filename filename filename filename filename filename filename emanelif  file name file filename filelocationfilename filelocation   contents contents contents contents contents contents contents  ");
+        var tokens = new ArrayList<String>();
+        for (var field : indexFields.getFields(Values.CONTENTS)) {
+            tokens.addAll(this.tokens(field.tokenStream(null, null)));
+        }
+        Collections.sort(tokens);
+
+        var expected = this.tokens(new CodeAnalyzer().tokenStream(Values.CONTENTS, this.indexService.indexContentPipeline(codeIndexDocument).toLowerCase()));
+        Collections.sort(expected);
+
+        assertThat(tokens).isEqualTo(expected);
+        assertThat(tokens).contains("filename", "emanelif", "filelocationfilename", "filelocation", "contents");
     }
 
     public void testSearch() throws IOException {
@@ -182,6 +198,47 @@ public class IndexServiceTest extends TestCase {
         this.indexService.deleteByCodeId(this.codeId);
     }
 
+    public void testOwaspIndexEndToEnd() throws IOException {
+        Properties.getProperties().setProperty(Values.OWASP_INDEX, "true");
+
+        try {
+            this.indexService = new IndexService();
+
+            var owaspDocument = new CodeIndexDocument()
+                    .setRepoLocationRepoNameLocationFilename("owaspRepoLocationRepoNameLocationFilename")
+                    .setRepoName(this.repoName)
+                    .setFileName("owaspFileName")
+                    .setFileLocation("fileLocation")
+                    .setFileLocationFilename("fileLocationFilename")
+                    .setMd5hash("md5hash")
+                    .setLanguageName(this.languageName)
+                    .setCodeLines(2)
+                    .setLines(2)
+                    .setContents("a1f4c09e7d2b\nTrace.Warn(message);")
+                    .setRepoRemoteLocation("repoRemoteLocation")
+                    .setCodeOwner(this.codeOwner)
+                    .setDisplayLocation("mydisplaylocation")
+                    .setSource("source");
+            this.indexService.indexDocument(owaspDocument);
+
+            var codeResult = this.indexService.getCodeResultByCodeId(owaspDocument.getHash());
+            assertThat(codeResult.getOwaspResults()).extracting("name").contains("Trace.Warn");
+
+            var facets = new HashMap<String, String[]>();
+            facets.put("owasp", new String[]{"Trace.Warn"});
+            var searchResult = this.indexService.search("a1f4c09e7d2b", facets, 0, false);
+            assertThat(searchResult.getTotalHits()).isEqualTo(1);
+            assertThat(searchResult.getOwaspFacetResults()).extracting("name").contains("Trace.Warn");
+
+            facets.put("owasp", new String[]{"nothing_matches_this"});
+            assertThat(this.indexService.search("a1f4c09e7d2b", facets, 0, false).getTotalHits()).isZero();
+
+            this.indexService.deleteByCodeId(owaspDocument.getHash());
+        } finally {
+            Properties.getProperties().remove(Values.OWASP_INDEX);
+        }
+    }
+
     public void testSearchLiteral() throws IOException {
         this.indexService = new IndexService();
 
@@ -202,6 +259,80 @@ public class IndexServiceTest extends TestCase {
         this.indexService.deleteByCodeId(this.codeId);
     }
 
+    public void testRegexSearch() throws IOException {
+        this.indexService = new IndexService();
+
+        var queue = new ConcurrentLinkedQueue<CodeIndexDocument>();
+        queue.add(this.codeIndexDocument);
+        this.indexService.indexDocument(queue);
+
+        var contents = this.indexService.regexSearch("06e3e5[0-9a-f]+c2628(2|3)", null, 0);
+        assertThat(contents.getTotalHits()).isEqualTo(1);
+        assertThat(contents.getLanguageFacetResults().size()).isNotZero();
+        assertThat(contents.getRepoFacetResults().size()).isNotZero();
+        assertThat(contents.getCodeResultList().get(0).codeId).isEqualTo(this.codeId);
+
+        // Has every trigram but does not match when checked
+        contents = this.indexService.regexSearch("06e3e59f5189[a-f]", null, 0);
+        assertThat(contents.getTotalHits()).isZero();
+
+        contents = this.indexService.regexSearch("([", null, 0);
+        assertThat(contents.getTotalHits()).isZero();
+
+        this.indexService.deleteByCodeId(this.codeId);
+    }
+
+    public void testRegexSearchStopsAtDeadline() throws IOException {
+        Properties.getProperties().setProperty(Values.REGEX_TIMEOUT_MILLIS, "100");
+
+        try {
+            this.indexService = new IndexService();
+
+            var backtrackDocument = new CodeIndexDocument()
+                    .setRepoLocationRepoNameLocationFilename("backtrackRepoLocationRepoNameLocationFilename")
+                    .setRepoName(this.repoName)
+                    .setFileName("backtrackFileName")
+                    .setFileLocation("fileLocation")
+                    .setFileLocationFilename("fileLocationFilename")
+                    .setMd5hash("md5hash")
+                    .setLanguageName(this.languageName)
+                    .setCodeLines(1)
+                    .setLines(1)
+                    .setContents("aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa")
+                    .setRepoRemoteLocation("repoRemoteLocation")
+                    .setCodeOwner(this.codeOwner)
+                    .setDisplayLocation("mydisplaylocation")
+                    .setSource("source");
+            this.indexService.indexDocument(backtrackDocument);
+
+            var start = System.currentTimeMillis();
+            var contents = this.indexService.regexSearch("(a|aa)+b", null, 0);
+
+            assertThat(System.currentTimeMillis() - start).isLessThan(10000);
+            assertThat(contents.getTotalHits()).isZero();
+
+            this.indexService.deleteByCodeId(backtrackDocument.getHash());
+        } finally {
+            Properties.getProperties().remove(Values.REGEX_TIMEOUT_MILLIS);
+        }
+    }
+
+    public void testDeadlineCharSequence() {
+        var expired = new IndexService.DeadlineCharSequence("abc", System.nanoTime() - 1);
+
+        assertThat(expired.length()).isEqualTo(3);
+        assertThat(expired.toString()).isEqualTo("abc");
+
+        try {
+            for (int i = 0; i < 10000; i++) {
+                expired.charAt(i % 3);
+            }
+            fail("expected the deadline to be exceeded");
+        } catch (IndexService.DeadlineExceededException ex) {
+            // expected
+        }
+    }
+
     public void testSearchRepo() throws IOException {
         this.indexService = new IndexService();
 
@@ -272,6 +403,60 @@ public class IndexServiceTest extends TestCase {
         this.indexService.deleteByCodeId(this.codeId);
     }
 
+    public void testSearchSeesChangesAfterCommit() throws IOException {
+        this.indexService = new IndexService();
+
+        // Open the shared searcher before anything is written so the refresh path is exercised
+        this.indexService.deleteByCodeId(this.codeId);
+        var contents = this.indexService.search(this.contents, null, 0, false);
+        assertThat(contents.getTotalHits()).isZero();
+
+        this.indexService.indexDocument(this.codeIndexDocument);
+        contents = this.indexService.search(this.contents, null, 0, false);
+        assertThat(contents.getTotalHits()).isNotZero();
+
+        this.indexService.deleteByCodeId(this.codeId);
+        contents = this.indexService.search(this.contents, null, 0, false);
+        assertThat(contents.getTotalHits()).isZero();
+    }
+
+    public void testSearchReadsCodeFromSnippetStore() throws IOException {
+        this.indexService = new IndexService();
+        this.indexService.indexDocument(this.codeIndexDocument);
+
+        // The file does not exist on disk so the code can only come from the snippet store
+        var contents = this.indexService.search(this.contents, null, 0, false);
+        assertThat(contents.getCodeResultList().get(0).getCode()).containsExactly(this.contents);
+
+        this.indexService.deleteByCodeId(this.codeId);
+    }
+
+    public void testSpoolOnlyAcknowledgedOnceBatchCommitted() throws IOException {
+        var location = Files.createTempDirectory("spool");
+        var spool = new CodeIndexSpool(location, Long.MAX_VALUE, 1024 * 1024, 100, 1024 * 1024, Singleton.getLogger());
+        this.indexService = new IndexService(Singleton.getData(),
+                Singleton.getStatsService(),
+                Singleton.getSearchCodeLib(),
+                Singleton.getLogger(),
+                Singleton.getHelpers(),
+                spool,
+                Singleton.getJobService());
+
+        spool.add(this.codeIndexDocument);
+        this.indexService.indexDocument(spool);
+
+        // Drained but not yet written so a forced commit from elsewhere must not acknowledge it
+        spool.add(this.codeIndexDocument);
+        spool.drain();
+        this.indexService.deleteByRepo(new RepoResult().setName("testSpoolOnlyAcknowledgedOnceBatchCommitted"));
+        spool.close();
+
+        var reopened = new CodeIndexSpool(location, Long.MAX_VALUE, 1024 * 1024, 100, 1024 * 1024, Singleton.getLogger());
+        assertThat(reopened.size()).isEqualTo(1);
+        reopened.close();
+        FileUtils.deleteDirectory(location.toFile());
+    }
+
     public void testChangeCodeIndexLinesCount() {
         this.indexService = new IndexService();
 
@@ -372,6 +557,21 @@ public class IndexServiceTest extends TestCase {
         assertThat(this.indexService.shouldPause(IIndexService.JobType.REPO_PARSER)).isFalse();
     }
 
+    public void testBackoffFollowsSettingUntilClosed() {
+        Data data = new Data(new SQLiteMemoryDatabaseConfig(), new Helpers(), new LoggerWrapper());
+        StatsService statsServiceMock = mock(StatsService.class);
+        when(statsServiceMock.getLoadAverage()).thenReturn("0.21");
+
+        this.indexService = new IndexService(data, statsServiceMock, null, Singleton.getLogger(), Singleton.getHelpers(), new ConcurrentLinkedQueue<>(), null);
+
+        data.saveData(Values.BACKOFFVALUE, "0.2");
+        assertThat(this.indexService.shouldPause(IIndexService.JobType.REPO_PARSER)).isTrue();
+
+        this.indexService.close();
+        data.saveData(Values.BACKOFFVALUE, "1");
+        assertThat(this.indexService.shouldPause(IIndexService.JobType.REPO_PARSER)).isTrue();
+    }
+
     public void testGetRepoDocuments() throws IOException {
         this.indexService = new IndexService();
         Queue<CodeIndexDocument> queue = new ConcurrentLinkedQueue<>();
@@ -728,4 +928,19 @@ public class IndexServiceTest extends TestCase {
     public interface MethodRunner {
         void run(Object arg);
     }
+
+    private List<String> tokens(TokenStream tokenStream) throws IOException {
+        var tokens = new ArrayList<String>();
+
+        try (tokenStream) {
+            var termAttribute = tokenStream.addAttribute(CharTermAttribute.class);
+            tokenStream.reset();
+            while (tokenStream.incrementToken()) {
+                tokens.add(termAttribute.toString());
+            }
+            tokenStream.end();
+        }
+
+        return tokens;
+    }
 }
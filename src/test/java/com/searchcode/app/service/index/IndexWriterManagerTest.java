@@ -0,0 +1,97 @@
+package com.searchcode.app.service.index;
+
+import com.searchcode.app.config.Values;
+import com.searchcode.app.service.Singleton;
+import junit.framework.TestCase;
+import org.apache.commons.io.FileUtils;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.TieredMergePolicy;
+import org.apache.lucene.store.AlreadyClosedException;
+import org.apache.lucene.store.FSDirectory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+
+import static org.assertj.core.api.AssertionsForInterfaceTypes.assertThat;
+
+public class IndexWriterManagerTest extends TestCase {
+
+    private IndexWriterManager createIndexWriterManager(String commitInterval) {
+        var properties = new Properties();
+        properties.setProperty(Values.INDEX_COMMIT_INTERVAL, commitInterval);
+        return new IndexWriterManager(Singleton.getHelpers(), Singleton.getLogger(), properties);
+    }
+
+    private Document createDocument(String path) {
+        var document = new Document();
+        document.add(new StringField(Values.PATH, path, Field.Store.YES));
+        return document;
+    }
+
+    private int committedDocumentCount(Path location) throws IOException {
+        try (var reader = DirectoryReader.open(FSDirectory.open(location))) {
+            return reader.numDocs();
+        }
+    }
+
+    public void testGetWriterReturnsSameWriter() throws IOException {
+        var location = Files.createTempDirectory("indexwritermanagertest");
+        var indexWriterManager = this.createIndexWriterManager("10");
+
+        var writer = indexWriterManager.getWriter(location);
+        assertThat(indexWriterManager.getWriter(location)).isSameAs(writer);
+        assertThat(indexWriterManager.getOpenWriter(location)).isSameAs(writer);
+        assertThat(writer.getConfig().getMergePolicy()).isInstanceOf(TieredMergePolicy.class);
+
+        indexWriterManager.close(location);
+        assertThat(indexWriterManager.getOpenWriter(location)).isNull();
+        FileUtils.deleteDirectory(location.toFile());
+    }
+
+    public void testCommitRespectsInterval() throws IOException {
+        var location = Files.createTempDirectory("indexwritermanagertest");
+        var indexWriterManager = this.createIndexWriterManager("3600");
+
+        indexWriterManager.getWriter(location).addDocument(this.createDocument("one"));
+        assertThat(indexWriterManager.commit(location, false)).isFalse();
+        assertThat(indexWriterManager.commit(location, true)).isTrue();
+        assertThat(this.committedDocumentCount(location)).isEqualTo(1);
+        assertThat(indexWriterManager.commit(location, true)).isFalse();
+
+        indexWriterManager.close(location);
+        FileUtils.deleteDirectory(location.toFile());
+    }
+
+    public void testCloseCommitsChanges() throws IOException {
+        var location = Files.createTempDirectory("indexwritermanagertest");
+        var indexWriterManager = this.createIndexWriterManager("3600");
+
+        indexWriterManager.getWriter(location).addDocument(this.createDocument("one"));
+        indexWriterManager.getWriter(location).addDocument(this.createDocument("two"));
+        indexWriterManager.close(location);
+
+        assertThat(this.committedDocumentCount(location)).isEqualTo(2);
+        FileUtils.deleteDirectory(location.toFile());
+    }
+
+    public void testCloseClosesDirectory() throws IOException {
+        var location = Files.createTempDirectory("indexwritermanagertest");
+        var indexWriterManager = this.createIndexWriterManager("3600");
+
+        var directory = indexWriterManager.getWriter(location).getDirectory();
+        indexWriterManager.close(location);
+
+        try {
+            directory.listAll();
+            fail("directory should be closed along with the writer");
+        } catch (AlreadyClosedException ignored) {
+        }
+
+        FileUtils.deleteDirectory(location.toFile());
+    }
+}
@@ -0,0 +1,83 @@
+package com.searchcode.app.service.index;
+
+import com.searchcode.app.service.Singleton;
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+
+import static org.assertj.core.api.AssertionsForInterfaceTypes.assertThat;
+
+public class SnippetStoreTest extends TestCase {
+
+    private SnippetStore createSnippetStore() throws IOException {
+        return new SnippetStore(Files.createTempDirectory("snippetstoretest"), Singleton.getLogger());
+    }
+
+    private String createContents(int lineCount) {
+        var lines = new ArrayList<String>();
+        for (var i = 0; i < lineCount; i++) {
+            lines.add("line " + i + " λ");
+        }
+        return String.join("\n", lines);
+    }
+
+    public void testWriteAndReadAllLines() throws IOException {
+        var snippetStore = this.createSnippetStore();
+        snippetStore.write("codeid", "md5", this.createContents(10));
+
+        var lines = snippetStore.getLines("codeid", "md5", 0, 10_000);
+        assertThat(lines.isPresent()).isTrue();
+        assertThat(lines.get()).hasSize(10);
+        assertThat(lines.get().get(0)).isEqualTo("line 0 λ");
+        assertThat(lines.get().get(9)).isEqualTo("line 9 λ");
+
+        snippetStore.deleteAll();
+    }
+
+    public void testReadWindowAcrossBlocks() throws IOException {
+        var snippetStore = this.createSnippetStore();
+        snippetStore.write("codeid", "md5", this.createContents(1_000));
+
+        var lines = snippetStore.getLines("codeid", "md5", 120, 300);
+        assertThat(lines.get()).hasSize(180);
+        assertThat(lines.get().get(0)).isEqualTo("line 120 λ");
+        assertThat(lines.get().get(179)).isEqualTo("line 299 λ");
+
+        lines = snippetStore.getLines("codeid", "md5", 999, 5_000);
+        assertThat(lines.get()).containsExactly("line 999 λ");
+
+        snippetStore.deleteAll();
+    }
+
+    public void testEmptyLinesAndLineEndings() throws IOException {
+        var snippetStore = this.createSnippetStore();
+        snippetStore.write("codeid", "md5", "first\r\n\r\nthird\rfourth");
+
+        var lines = snippetStore.getLines("codeid", "md5", 0, 100);
+        assertThat(lines.get()).containsExactly("first", "", "third", "fourth");
+
+        snippetStore.deleteAll();
+    }
+
+    public void testMd5MismatchReturnsEmpty() throws IOException {
+        var snippetStore = this.createSnippetStore();
+        snippetStore.write("codeid", "md5", this.createContents(10));
+
+        assertThat(snippetStore.getLines("codeid", "othermd5", 0, 10).isPresent()).isFalse();
+
+        snippetStore.deleteAll();
+    }
+
+    public void testMissingAndDeleted() throws IOException {
+        var snippetStore = this.createSnippetStore();
+        assertThat(snippetStore.getLines("codeid", "md5", 0, 10).isPresent()).isFalse();
+
+        snippetStore.write("codeid", "md5", this.createContents(10));
+        snippetStore.delete("codeid");
+        assertThat(snippetStore.getLines("codeid", "md5", 0, 10).isPresent()).isFalse();
+
+        snippetStore.deleteAll();
+    }
+}
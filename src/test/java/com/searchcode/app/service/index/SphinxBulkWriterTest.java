@@ -0,0 +1,107 @@
+package com.searchcode.app.service.index;
+
+import com.searchcode.app.config.SphinxSearchConfig;
+import com.searchcode.app.service.Singleton;
+import junit.framework.TestCase;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.AssertionsForInterfaceTypes.assertThat;
+import static org.mockito.Mockito.*;
+
+public class SphinxBulkWriterTest extends TestCase {
+
+    public void testGroupsRowsIntoOneStatementPerShard() throws SQLException {
+        var config = new SphinxSearchConfig();
+        config.setSphinxServersShards("server1:1,2;server2:3,4");
+        var mockConfig = spy(config);
+
+        var statements = Collections.synchronizedList(new ArrayList<String>());
+        doReturn(Optional.of(this.connection(statements))).when(mockConfig).getConnection(anyString());
+
+        var writer = new SphinxBulkWriter(mockConfig, Singleton.getLogger(), Long.MAX_VALUE, 0, 0);
+        var written = writer.write(this.rows(20));
+
+        assertThat(written).isEqualTo(20);
+        assertThat(statements).hasSize(4);
+        verify(mockConfig, atLeastOnce()).getConnection("server1");
+        verify(mockConfig, atLeastOnce()).getConnection("server2");
+
+        for (var shard = 1; shard <= 4; shard++) {
+            assertThat(statements).contains("REPLACE INTO codesearchrt" + shard + " VALUES " + String.join(",", Collections.nCopies(5, "(?,?,?,?,?,?,?,?,?,?)")));
+        }
+    }
+
+    public void testSplitsStatementsOnBatchSize() throws SQLException {
+        var config = new SphinxSearchConfig();
+        config.setSphinxServersShards("server1:1");
+        var mockConfig = spy(config);
+
+        var statements = new ArrayList<String>();
+        doReturn(Optional.of(this.connection(statements))).when(mockConfig).getConnection(anyString());
+
+        var rows = this.rows(10);
+        var writer = new SphinxBulkWriter(mockConfig, Singleton.getLogger(), rows.get(0).estimateBytes() * 3, 0, 0);
+
+        assertThat(writer.write(rows)).isEqualTo(10);
+        assertThat(statements).hasSize(4);
+        assertThat(statements.get(3)).isEqualTo("REPLACE INTO codesearchrt1 VALUES (?,?,?,?,?,?,?,?,?,?)");
+    }
+
+    public void testRetriesFailedStatement() throws SQLException {
+        var config = new SphinxSearchConfig();
+        config.setSphinxServersShards("server1:1");
+        var mockConfig = spy(config);
+
+        var mockConnection = mock(Connection.class);
+        var mockStatement = mock(PreparedStatement.class);
+        when(mockConnection.prepareStatement(anyString())).thenReturn(mockStatement);
+        when(mockStatement.execute()).thenThrow(new SQLException("connection reset")).thenReturn(false);
+        doReturn(Optional.of(mockConnection)).when(mockConfig).getConnection(anyString());
+
+        var writer = new SphinxBulkWriter(mockConfig, Singleton.getLogger(), Long.MAX_VALUE, 1, 0);
+
+        assertThat(writer.write(this.rows(3))).isEqualTo(3);
+        verify(mockStatement, times(2)).execute();
+        verify(mockConnection, times(2)).close();
+    }
+
+    public void testGivesUpAfterRetries() throws SQLException {
+        var config = new SphinxSearchConfig();
+        config.setSphinxServersShards("server1:1");
+        var mockConfig = spy(config);
+        doReturn(Optional.empty()).when(mockConfig).getConnection(anyString());
+
+        var writer = new SphinxBulkWriter(mockConfig, Singleton.getLogger(), Long.MAX_VALUE, 2, 0);
+
+        assertThat(writer.write(this.rows(3))).isZero();
+        verify(mockConfig, times(3)).getConnection("server1");
+    }
+
+    private Connection connection(List<String> statements) throws SQLException {
+        var mockConnection = mock(Connection.class);
+
+        when(mockConnection.prepareStatement(anyString())).thenAnswer(invocation -> {
+            statements.add((String) invocation.getArguments()[0]);
+            return mock(PreparedStatement.class);
+        });
+
+        return mockConnection;
+    }
+
+    private List<SphinxBulkWriter.Row> rows(int count) {
+        var rows = new ArrayList<SphinxBulkWriter.Row>();
+
+        for (var i = 0; i < count; i++) {
+            rows.add(new SphinxBulkWriter.Row(i, "contents " + i, "file" + i, "repo/file" + i, 1, 2, 3, 1, 1, 10));
+        }
+
+        return rows;
+    }
+}
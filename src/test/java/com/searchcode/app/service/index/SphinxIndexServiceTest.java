@@ -4,14 +4,21 @@ import com.searchcode.app.dao.LanguageType;
 import com.searchcode.app.dao.MySQLRepo;
 import com.searchcode.app.dao.Source;
 import com.searchcode.app.dto.CodeFacetLanguage;
+import com.searchcode.app.dto.CodeFacetRepo;
 import com.searchcode.app.dto.CodeIndexDocument;
+import com.searchcode.app.model.RepoResult;
 import com.searchcode.app.service.CacheSingleton;
 import com.searchcode.app.service.Singleton;
 import junit.framework.TestCase;
+import org.apache.commons.io.FileUtils;
 import org.mockito.Mockito;
 
+import java.io.IOException;
+import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.stream.Collectors;
 
 import static org.assertj.core.api.AssertionsForInterfaceTypes.assertThat;
 
@@ -58,6 +65,29 @@ public class SphinxIndexServiceTest extends TestCase {
             .setSource("source");
 
 
+    public void testTransformRepositoryTypeLooksUpOnce() {
+        var mock = Mockito.mock(LanguageType.class);
+        var mockRepo = Mockito.mock(MySQLRepo.class);
+        var mockSource = Mockito.mock(Source.class);
+        var sphinxIndexService = new SphinxIndexService(mock, mockRepo, mockSource, CacheSingleton.getProjectStatsCache());
+
+        var repos = new HashMap<Integer, RepoResult>();
+        repos.put(1, new RepoResult().setRowId(1).setName("first"));
+        repos.put(2, new RepoResult().setRowId(2).setName("second"));
+        Mockito.when(mockRepo.getRepoByIds(Mockito.anyCollection())).thenReturn(repos);
+
+        var codeFacetRepos = new ArrayList<CodeFacetRepo>();
+        codeFacetRepos.add(new CodeFacetRepo("2", 10));
+        codeFacetRepos.add(new CodeFacetRepo("1", 5));
+        codeFacetRepos.add(new CodeFacetRepo("3", 1));
+
+        var result = sphinxIndexService.transformRepositoryType(codeFacetRepos);
+
+        assertThat(result.stream().map(x -> x.repoName).collect(Collectors.toList())).containsExactly("second", "first", "3");
+        Mockito.verify(mockRepo, Mockito.times(1)).getRepoByIds(Mockito.anyCollection());
+        Mockito.verify(mockRepo, Mockito.never()).getRepoById(Mockito.anyInt());
+    }
+
     public void testTransformLanguageTypeEmpty() {
         if (Singleton.getHelpers().isStandaloneInstance()) return;
 
@@ -83,4 +113,32 @@ public class SphinxIndexServiceTest extends TestCase {
 //                .setRepo("something"));
 //        assertThat(result.getRepo()).isEqualTo("something");
 //    }
+
+    public void testFailedWriteIsKeptInSpool() throws IOException {
+        var location = Files.createTempDirectory("spool");
+        var spool = new CodeIndexSpool(location, Long.MAX_VALUE, 1024 * 1024, 100, 1024 * 1024, Singleton.getLogger());
+        var mockWriter = Mockito.mock(SphinxBulkWriter.class);
+        Mockito.when(mockWriter.write(Mockito.anyList())).thenReturn(0).thenReturn(1);
+
+        var sphinxIndexService = new SphinxIndexService(Mockito.mock(LanguageType.class), Mockito.mock(MySQLRepo.class), Mockito.mock(Source.class), CacheSingleton.getProjectStatsCache(), mockWriter);
+
+        spool.add(this.codeIndexDocument);
+        sphinxIndexService.indexDocument(spool);
+
+        // Nothing was written so it is read again without being added behind anything newer
+        assertThat(spool.size()).isEqualTo(1);
+        spool.close();
+
+        // and is still there after a restart
+        spool = new CodeIndexSpool(location, Long.MAX_VALUE, 1024 * 1024, 100, 1024 * 1024, Singleton.getLogger());
+        assertThat(spool.size()).isEqualTo(1);
+
+        sphinxIndexService.indexDocument(spool);
+        spool.close();
+
+        spool = new CodeIndexSpool(location, Long.MAX_VALUE, 1024 * 1024, 100, 1024 * 1024, Singleton.getLogger());
+        assertThat(spool.size()).isZero();
+        spool.close();
+        FileUtils.deleteDirectory(location.toFile());
+    }
 }
@@ -0,0 +1,136 @@
+package com.searchcode.app.util;
+
+import junit.framework.TestCase;
+import org.apache.commons.lang3.RandomStringUtils;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.AssertionsForInterfaceTypes.assertThat;
+
+public class CodeCleanAnalyzerTest extends TestCase {
+
+    private final SearchCodeLib searchCodeLib = new SearchCodeLib();
+
+    public void testCodeCleanMatchesPipeline() throws IOException {
+        var analyzer = new CodeCleanAnalyzer(EnumSet.of(CodeCleanFilter.Variant.CODE_CLEAN));
+
+        for (var contents : this.samples()) {
+            assertThat(this.sortedTokens(analyzer, contents)).isEqualTo(this.sortedTokens(new CodeAnalyzer(), this.searchCodeLib.codeCleanPipeline(contents).toLowerCase()));
+        }
+    }
+
+    public void testSplitKeywordsMatchesPipeline() throws IOException {
+        var analyzer = new CodeCleanAnalyzer(EnumSet.of(CodeCleanFilter.Variant.SPLIT_KEYWORDS));
+
+        for (var contents : this.samples()) {
+            assertThat(this.sortedTokens(analyzer, contents)).isEqualTo(this.sortedTokens(new CodeAnalyzer(), this.searchCodeLib.splitKeywords(contents, true).toLowerCase()));
+        }
+    }
+
+    public void testInterestingMatchesPipeline() throws IOException {
+        var analyzer = new CodeCleanAnalyzer(EnumSet.of(CodeCleanFilter.Variant.INTERESTING));
+
+        for (var contents : this.samples()) {
+            var expected = this.searchCodeLib.findInterestingKeywords(contents) + " " + this.searchCodeLib.findInterestingCharacters(contents);
+            assertThat(this.sortedTokens(analyzer, contents)).isEqualTo(this.sortedTokens(new CodeAnalyzer(), expected.toLowerCase()));
+        }
+    }
+
+    public void testSplitKeywordsCutOff() throws IOException {
+        var analyzer = new CodeCleanAnalyzer(EnumSet.of(CodeCleanFilter.Variant.SPLIT_KEYWORDS), 20);
+
+        assertThat(this.sortedTokens(analyzer, "someThing otherThin")).containsExactly("other", "other", "otherthin", "some", "some", "something", "thin", "thing");
+        assertThat(this.sortedTokens(analyzer, "someThing otherThingLonger")).containsExactly("some", "some", "something", "thing");
+    }
+
+    public void testLongWordSplitLikeTokenizer() throws IOException {
+        var analyzer = new CodeCleanAnalyzer(EnumSet.of(CodeCleanFilter.Variant.RAW));
+        var contents = RandomStringUtils.randomAlphabetic(1000);
+
+        assertThat(this.sortedTokens(analyzer, contents)).isEqualTo(this.sortedTokens(new CodeAnalyzer(), contents.toLowerCase()));
+    }
+
+    public void testVariantsStackOnWordPosition() throws IOException {
+        var analyzer = new CodeCleanAnalyzer(EnumSet.of(CodeCleanFilter.Variant.CODE_CLEAN));
+        var positions = new ArrayList<String>();
+
+        try (var tokenStream = analyzer.tokenStream("contents", "foo.bar baz")) {
+            var termAttribute = tokenStream.addAttribute(CharTermAttribute.class);
+            var positionAttribute = tokenStream.addAttribute(PositionIncrementAttribute.class);
+            tokenStream.reset();
+
+            var position = -1;
+            while (tokenStream.incrementToken()) {
+                position += positionAttribute.getPositionIncrement();
+                positions.add(position + ":" + termAttribute.toString());
+            }
+            tokenStream.end();
+        }
+
+        assertThat(positions).contains("0:foo.bar", "0:foo", "0:bar", "1:baz");
+        assertThat(positions).doesNotContain("1:foo", "1:bar", "0:baz");
+    }
+
+    public void testFieldReusesAnalyzer() throws IOException {
+        var analyzer = new CodeCleanAnalyzer(EnumSet.of(CodeCleanFilter.Variant.RAW));
+
+        assertThat(this.tokens(analyzer.field("contents", "One two").tokenStream(null, null))).containsExactly("one", "two");
+        assertThat(this.tokens(analyzer.field("contents", "Three").tokenStream(null, null))).containsExactly("three");
+        assertThat(this.tokens(analyzer.field("contents", null).tokenStream(null, null))).isEmpty();
+    }
+
+    private List<String> samples() {
+        var samples = new ArrayList<String>();
+        samples.add("");
+        samples.add("{AB3FBE3A-410C-4FB2-84E0-B2D3434D1995}");
+        samples.add("\"_updatedDate\"");
+        samples.add("'shop_order_log',");
+        samples.add("public static void main(String[] args) { System.out.println(\"hello\"); }");
+        samples.add("camelCaseVariableName anotherCamelCaseOne HTTPServerName getHTTP linux2.7.4 python3.* gcc4");
+        samples.add("a->b && c::d || e@f #include <stdio.h>\n\ttab\r\nnewline café   😀");
+        samples.add(RandomStringUtils.randomAlphabetic(600) + "With" + RandomStringUtils.randomAlphabetic(100));
+
+        var random = new Random(42);
+        var alphabet = "abcdefXYZ0123456789 ._-()<>[]{}|=,:;/\"'@#*!?\t\n";
+        for (var i = 0; i < 200; i++) {
+            var sb = new StringBuilder();
+            var length = random.nextInt(300);
+            for (var j = 0; j < length; j++) {
+                sb.append(alphabet.charAt(random.nextInt(alphabet.length())));
+            }
+            samples.add(sb.toString());
+        }
+
+        return samples;
+    }
+
+    private List<String> sortedTokens(Analyzer analyzer, String contents) throws IOException {
+        var tokens = this.tokens(analyzer.tokenStream("contents", contents));
+        Collections.sort(tokens);
+        return tokens;
+    }
+
+    private List<String> tokens(TokenStream tokenStream) throws IOException {
+        var tokens = new ArrayList<String>();
+
+        try (tokenStream) {
+            var termAttribute = tokenStream.addAttribute(CharTermAttribute.class);
+            tokenStream.reset();
+            while (tokenStream.incrementToken()) {
+                tokens.add(termAttribute.toString());
+            }
+            tokenStream.end();
+        }
+
+        return tokens;
+    }
+}
@@ -1,10 +1,14 @@
 package com.searchcode.app.util;
 
+import com.searchcode.app.config.Values;
 import com.searchcode.app.dto.classifier.FileClassifierResult;
 import junit.framework.TestCase;
 import org.assertj.core.api.AssertionsForClassTypes;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 
 import static org.assertj.core.api.AssertionsForInterfaceTypes.assertThat;
 
@@ -155,4 +159,98 @@ public class FileClassifierTest extends TestCase {
         var languageGuess = fileClassifier.languageGuesser("test.v", "fn,const,println,import,struct,module,endmodule,posedge,edge,always,wire");
         assertThat(languageGuess).isEqualTo("V");
     }
+
+    public void testHasKnownExtension() {
+        assertThat(this.fileClassifier.hasKnownExtension("something.java")).isTrue();
+        assertThat(this.fileClassifier.hasKnownExtension("something.d.ts")).isTrue();
+        assertThat(this.fileClassifier.hasKnownExtension("something.notarealextension")).isFalse();
+        assertThat(this.fileClassifier.hasKnownExtension("java")).isFalse();
+    }
+
+    /**
+     * The index must give the same answer as walking every language for each file
+     */
+    public void testLanguageGuesserMatchesWalkingDatabase() {
+        var database = this.fileClassifier.getDatabase();
+        var fileNames = new ArrayList<String>();
+
+        for (var fileClassifierResult : database.values()) {
+            for (var ext : fileClassifierResult.extensions) {
+                fileNames.add("file." + ext);
+                fileNames.add("some.file." + ext.toUpperCase());
+                fileNames.add(ext);
+            }
+            if (fileClassifierResult.filenames != null) {
+                fileNames.addAll(Arrays.asList(fileClassifierResult.filenames));
+            }
+        }
+        fileNames.add("nothing.known");
+
+        for (var fileName : fileNames) {
+            for (var content : Arrays.asList("", "module endmodule wire", "Require Lemma Proof", "\\documentclass \\begin", "fn main() { println!(); }")) {
+                assertThat(this.fileClassifier.languageGuesser(fileName, content)).as(fileName).isEqualTo(this.walkDatabase(database, fileName, content));
+            }
+        }
+    }
+
+    private String walkDatabase(HashMap<String, FileClassifierResult> database, String fileName, String content) {
+        fileName = fileName.toLowerCase();
+        var matches = this.walkMatches(database, fileName, true);
+
+        if (matches.isEmpty()) {
+            matches = this.walkMatches(database, fileName, false);
+        }
+
+        var extension = Values.EMPTYSTRING;
+        if (matches.isEmpty()) {
+            extension = this.fileClassifier.getExtension(fileName);
+            matches = this.walkMatches(database, extension, false);
+        }
+
+        if (matches.isEmpty()) {
+            extension = this.fileClassifier.getExtension(extension);
+            matches = this.walkMatches(database, extension, false);
+        }
+
+        if (matches.isEmpty()) {
+            return Values.UNKNOWN_LANGUAGE;
+        }
+
+        if (matches.size() == 1) {
+            return matches.get(0);
+        }
+
+        var toSort = new HashMap<String, Integer>();
+        for (var m : matches) {
+            toSort.put(m, 0);
+            if (database.get(m).keywords == null) {
+                continue;
+            }
+            for (var keyword : database.get(m).keywords) {
+                if (content.contains(keyword)) {
+                    toSort.put(m, toSort.get(m) + 1);
+                }
+            }
+        }
+
+        return new Helpers().sortByValue(toSort).keySet().stream().findFirst().orElse(Values.UNKNOWN_LANGUAGE);
+    }
+
+    private List<String> walkMatches(HashMap<String, FileClassifierResult> database, String name, boolean filenames) {
+        var matches = new ArrayList<String>();
+
+        for (var key : database.keySet()) {
+            var names = filenames ? database.get(key).filenames : database.get(key).extensions;
+
+            if (names != null) {
+                for (var n : names) {
+                    if (name.equals(n)) {
+                        matches.add(key);
+                    }
+                }
+            }
+        }
+
+        return matches;
+    }
 }
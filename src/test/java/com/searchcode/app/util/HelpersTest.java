@@ -49,6 +49,58 @@ public class HelpersTest extends TestCase {
         assertThat(result.get(0).length()).isEqualTo(8192);
     }
 
+    public void testIngestFileMatchesSplit() throws IOException {
+        File tempFile = File.createTempFile("ingestfile", ".txt");
+        String[] inputs = {"", "\n\n", "one", "\none\r\ntwo\rthree\n\nfour\n\n\r\n", "one\n\n\ntwo"};
+
+        for (String input : inputs) {
+            try (Writer writer = new OutputStreamWriter(new FileOutputStream(tempFile), StandardCharsets.UTF_8)) {
+                writer.write(input);
+            }
+
+            List<String> expected = Arrays.asList(input.split("\\r\\n|\\n|\\r"));
+            var ingestedFile = this.helpers.ingestFile(tempFile.toString(), 100);
+
+            assertThat(ingestedFile.getCodeLines()).isEqualTo(expected);
+            assertThat(ingestedFile.getContents()).isEqualTo(String.join("\n", expected));
+            assertThat(ingestedFile.getMd5hash()).isEqualTo(org.apache.commons.codec.digest.DigestUtils.md5Hex(input.getBytes(StandardCharsets.UTF_8)));
+        }
+
+        tempFile.delete();
+    }
+
+    public void testIngestFileLineDepth() throws IOException {
+        File tempFile = File.createTempFile("ingestfile", ".txt");
+
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(tempFile), StandardCharsets.UTF_8)) {
+            writer.write("one\r\ntwo\r\nthree λ\r\n");
+        }
+
+        var ingestedFile = this.helpers.ingestFile(tempFile.toString(), 2);
+        assertThat(ingestedFile.getCodeLines()).containsExactly("one", "two");
+        assertThat(ingestedFile.getContents()).isEqualTo("one\ntwo");
+        assertThat(ingestedFile.getLineCount()).isEqualTo(2);
+
+        ingestedFile = this.helpers.ingestFile(tempFile.toString(), 10);
+        assertThat(ingestedFile.getCodeLines()).containsExactly("one", "two", "three λ");
+
+        tempFile.delete();
+    }
+
+    public void testIngestStreamStopsAtMaxLength() throws IOException {
+        var helpers = new Helpers();
+        helpers.MAX_FILE_LENGTH_READ = 10000;
+
+        var input = "λline of text\n".repeat(10000);
+        var bytes = input.getBytes(StandardCharsets.UTF_8);
+        var ingestedFile = helpers.ingestStream(new java.io.ByteArrayInputStream(bytes), bytes.length, 100000);
+
+        assertThat(ingestedFile.getContents().length()).isLessThanOrEqualTo(10000);
+        assertThat(ingestedFile.getCodeLines().get(0)).isEqualTo("λline of text");
+        assertThat(ingestedFile.getCodeLines()).hasSize(715);
+        assertThat(ingestedFile.getMd5hash()).isEqualTo(org.apache.commons.codec.digest.DigestUtils.md5Hex(bytes));
+    }
+
     public void testIsNullEmptyOrWhitespace() {
         assertTrue(this.helpers.isNullEmptyOrWhitespace(null));
         assertTrue(this.helpers.isNullEmptyOrWhitespace(""));
@@ -0,0 +1,122 @@
+package com.searchcode.app.util;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class MultiTermMatcherTest extends TestCase {
+
+    public void testNoTerms() {
+        var scanner = new MultiTermMatcher(new ArrayList<>()).newScanner();
+
+        assertThat(scanner.countMatchingTerms("anything at all")).isZero();
+    }
+
+    public void testCountsEachTermOncePerLine() {
+        var scanner = new MultiTermMatcher(Arrays.asList("foo", "bar")).newScanner();
+
+        assertThat(scanner.countMatchingTerms("foo foo foo")).isEqualTo(1);
+        assertThat(scanner.countMatchingTerms("foo bar foo bar")).isEqualTo(2);
+        assertThat(scanner.countMatchingTerms("baz")).isZero();
+    }
+
+    public void testOverlappingTerms() {
+        var scanner = new MultiTermMatcher(Arrays.asList("he", "she", "his", "hers")).newScanner();
+
+        assertThat(scanner.countMatchingTerms("ushers")).isEqualTo(3);
+        assertThat(scanner.countMatchingTerms("this")).isEqualTo(1);
+    }
+
+    public void testCaseInsensitive() {
+        var scanner = new MultiTermMatcher(Arrays.asList("arraylist")).newScanner();
+
+        assertThat(scanner.countMatchingTerms("new ArrayList<String>()")).isEqualTo(1);
+    }
+
+    public void testWhitespaceCollapsed() {
+        var scanner = new MultiTermMatcher(Arrays.asList("public static")).newScanner();
+
+        assertThat(scanner.countMatchingTerms("public \t  static void")).isEqualTo(1);
+        assertThat(scanner.countMatchingTerms("publicstatic")).isZero();
+    }
+
+    public void testExactIsCaseAndWhitespaceSensitive() {
+        var scanner = new MultiTermMatcher(Arrays.asList("Lemma", "fn main"), true).newScanner();
+
+        assertThat(scanner.countMatchingTerms("lemma fn  main")).isZero();
+        assertThat(scanner.countMatchingTerms("Lemma fn main")).isEqualTo(2);
+        assertThat(scanner.countMatchingTerms("fn\nmain")).isZero();
+    }
+
+    public void testEmptyTermAlwaysMatches() {
+        var scanner = new MultiTermMatcher(Arrays.asList("", "foo")).newScanner();
+
+        assertThat(scanner.countMatchingTerms("")).isEqualTo(1);
+        assertThat(scanner.countMatchingTerms("foo")).isEqualTo(2);
+    }
+
+    public void testDuplicateTermsCountedEachTime() {
+        var scanner = new MultiTermMatcher(Arrays.asList("foo", "foo")).newScanner();
+
+        assertThat(scanner.countMatchingTerms("foo")).isEqualTo(2);
+    }
+
+    public void testForEachMatchingTermReportsDistinctTermsOnce() {
+        var scanner = new MultiTermMatcher(Arrays.asList("foo", "", "bar", "foo"), true).newScanner();
+        var found = new ArrayList<Integer>();
+
+        scanner.forEachMatchingTerm("bar foo foo", found::add);
+        assertThat(found).containsExactlyInAnyOrder(0, 1);
+
+        found.clear();
+        scanner.forEachMatchingTerm("FOO", found::add);
+        assertThat(found).isEmpty();
+    }
+
+    public void testMatchesContainsRandomised() {
+        var random = new Random(42);
+        var alphabet = "abAB \t.";
+
+        for (var i = 0; i < 500; i++) {
+            var terms = new ArrayList<String>();
+            for (var j = 0; j < 1 + random.nextInt(5); j++) {
+                terms.add(this.randomString(random, "ab.", 1 + random.nextInt(4)));
+            }
+
+            var scanner = new MultiTermMatcher(terms).newScanner();
+
+            for (var j = 0; j < 10; j++) {
+                var line = this.randomString(random, alphabet, random.nextInt(30));
+                assertThat(scanner.countMatchingTerms(line)).isEqualTo(this.countWithContains(line, terms));
+            }
+        }
+    }
+
+    private int countWithContains(String line, List<String> terms) {
+        var normalised = line.toLowerCase().replaceAll("\\s+", " ");
+        var count = 0;
+
+        for (var term : terms) {
+            if (normalised.contains(term)) {
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+    private String randomString(Random random, String alphabet, int length) {
+        var sb = new StringBuilder();
+
+        for (var i = 0; i < length; i++) {
+            sb.append(alphabet.charAt(random.nextInt(alphabet.length())));
+        }
+
+        return sb.toString();
+    }
+}
@@ -16,6 +16,7 @@ import junit.framework.TestCase;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Random;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
@@ -131,4 +132,106 @@ public class OWASPFileClassifierResultTest extends TestCase {
         codeLines.add("match");
         assertThat(oc.classifyCode(codeLines, "Java")).hasSize(1);
     }
-}
\ No newline at end of file
+
+    public void testClassifyCodeDuplicateNamesMerged() {
+        OWASPClassifier oc = new OWASPClassifier();
+        oc.clearDatabase();
+        oc.addToDatabase(new OWASPResult("match", "first", "", ""));
+        oc.addToDatabase(new OWASPResult("other", "", "", ""));
+        oc.addToDatabase(new OWASPResult("match", "second", "", "java"));
+
+        List<String> codeLines = new ArrayList<>();
+        codeLines.add("match other");
+        codeLines.add("match");
+
+        List<OWASPMatchingResult> result = oc.classifyCode(codeLines, "Java");
+
+        assertThat(result).hasSize(2);
+        assertThat(result.get(0).getName()).isEqualTo("match");
+        assertThat(result.get(0).getDesc()).isEqualTo("first");
+        assertThat(result.get(0).getMatchingLines()).containsExactly(1, 2, 1, 2);
+        assertThat(result.get(1).getName()).isEqualTo("other");
+    }
+
+    public void testClassifyCodeDatabaseChangesApplied() {
+        OWASPClassifier oc = new OWASPClassifier();
+        oc.clearDatabase();
+        oc.addToDatabase(new OWASPResult("match", "", "", ""));
+
+        List<String> codeLines = new ArrayList<>();
+        codeLines.add("match another");
+
+        assertThat(oc.classifyCode(codeLines, "")).hasSize(1);
+
+        oc.addToDatabase(new OWASPResult("another", "", "", ""));
+        assertThat(oc.classifyCode(codeLines, "")).hasSize(2);
+    }
+
+    public void testClassifyCodeMatchesCheckingEachRule() {
+        var random = new Random(42);
+        var languages = new String[]{"", "java", "Java", "c#"};
+
+        for (var i = 0; i < 200; i++) {
+            OWASPClassifier oc = new OWASPClassifier();
+            oc.clearDatabase();
+
+            for (var j = 0; j < 1 + random.nextInt(6); j++) {
+                oc.addToDatabase(new OWASPResult(this.randomString(random, "ab(", random.nextInt(3)), "desc" + j, "type" + j, languages[random.nextInt(languages.length)]));
+            }
+
+            List<String> codeLines = new ArrayList<>();
+            for (var j = 0; j < random.nextInt(6); j++) {
+                codeLines.add(this.randomString(random, "abA( ", random.nextInt(8)));
+            }
+
+            var language = languages[random.nextInt(languages.length)];
+            var expected = this.classifyEachRule(oc.getDatabase(), codeLines, language);
+            var actual = oc.classifyCode(codeLines, language);
+
+            assertThat(actual).hasSize(expected.size());
+            for (var j = 0; j < expected.size(); j++) {
+                assertThat(actual.get(j).getName()).isEqualTo(expected.get(j).getName());
+                assertThat(actual.get(j).getDesc()).isEqualTo(expected.get(j).getDesc());
+                assertThat(actual.get(j).getType()).isEqualTo(expected.get(j).getType());
+                assertThat(actual.get(j).getMatchingLines()).isEqualTo(expected.get(j).getMatchingLines());
+            }
+        }
+    }
+
+    /**
+     * Checks every rule against every line which is how rules were matched before they were compiled
+     */
+    private List<OWASPMatchingResult> classifyEachRule(List<OWASPResult> database, List<String> codeLines, String languageName) {
+        var matching = new ArrayList<OWASPMatchingResult>();
+
+        for (var rule : database) {
+            if (!rule.lang.equalsIgnoreCase(languageName) && !rule.lang.isEmpty()) {
+                continue;
+            }
+
+            for (var i = 0; i < codeLines.size(); i++) {
+                if (codeLines.get(i).contains(rule.name)) {
+                    var existing = matching.stream().filter(x -> x.getName().equals(rule.name)).findFirst();
+
+                    if (existing.isPresent()) {
+                        existing.get().addMatchingLine(i + 1);
+                    } else {
+                        matching.add(new OWASPMatchingResult(rule.name, rule.desc, rule.type, i + 1));
+                    }
+                }
+            }
+        }
+
+        return matching;
+    }
+
+    private String randomString(Random random, String alphabet, int length) {
+        var sb = new StringBuilder();
+
+        for (var i = 0; i < length; i++) {
+            sb.append(alphabet.charAt(random.nextInt(alphabet.length())));
+        }
+
+        return sb.toString();
+    }
+}
@@ -0,0 +1,83 @@
+package com.searchcode.app.util;
+
+import junit.framework.TestCase;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class RegexTrigramPlannerTest extends TestCase {
+
+    private final RegexTrigramPlanner planner = new RegexTrigramPlanner();
+
+    public void testTrigrams() {
+        assertThat(RegexTrigramPlanner.trigrams("AbCd")).containsExactly("abc", "bcd");
+        assertThat(RegexTrigramPlanner.trigrams("ab")).isEmpty();
+        assertThat(RegexTrigramPlanner.trigrams("aaaa")).containsExactly("aaa");
+    }
+
+    public void testLiteral() {
+        assertThat(this.planner.plan("Hello").toString()).isEqualTo("(\"hel\" AND \"ell\" AND \"llo\")");
+        assertThat(this.planner.plan("ab").isAll()).isTrue();
+    }
+
+    public void testEscapedCharactersAreLiteral() {
+        assertThat(this.planner.plan("a\\.bc").toString()).isEqualTo("(\"a.b\" AND \".bc\")");
+    }
+
+    public void testClassesAndWildcardsBreakRuns() {
+        assertThat(this.planner.plan("abc.def").toString()).isEqualTo("(\"abc\" AND \"def\")");
+        assertThat(this.planner.plan("abc[xyz]def").toString()).isEqualTo("(\"abc\" AND \"def\")");
+        assertThat(this.planner.plan("abc\\sdef").toString()).isEqualTo("(\"abc\" AND \"def\")");
+        assertThat(this.planner.plan("ab.de").isAll()).isTrue();
+    }
+
+    public void testQuantifiers() {
+        assertThat(this.planner.plan("abcd?ef").toString()).isEqualTo("\"abc\"");
+        assertThat(this.planner.plan("abcd*").toString()).isEqualTo("\"abc\"");
+        assertThat(this.planner.plan("abcd+ef").toString()).isEqualTo("(\"abc\" AND \"bcd\")");
+        assertThat(this.planner.plan("abc{0,2}").isAll()).isTrue();
+        assertThat(this.planner.plan("abc{1}").toString()).isEqualTo("\"abc\"");
+    }
+
+    public void testAlternation() {
+        assertThat(this.planner.plan("foo|bar").toString()).isEqualTo("(\"foo\" OR \"bar\")");
+        assertThat(this.planner.plan("foo|ba").isAll()).isTrue();
+        assertThat(this.planner.plan("x(foo|bar)y").toString()).isEqualTo("(\"foo\" OR \"bar\")");
+        assertThat(this.planner.plan("abc(?:foo|bar)").toString()).isEqualTo("(\"abc\" AND (\"foo\" OR \"bar\"))");
+        assertThat(this.planner.plan("abc(foo)?").toString()).isEqualTo("\"abc\"");
+    }
+
+    public void testZeroWidthAndFlags() {
+        assertThat(this.planner.plan("(?i)abc").toString()).isEqualTo("\"abc\"");
+        assertThat(this.planner.plan("^abc$").toString()).isEqualTo("\"abc\"");
+        assertThat(this.planner.plan("(?=xyz)abc").toString()).isEqualTo("\"abc\"");
+        assertThat(this.planner.plan("(?<name>abc)").toString()).isEqualTo("\"abc\"");
+    }
+
+    public void testUnsupportedMatchesEverything() {
+        assertThat(this.planner.plan("\\Qabc\\E").isAll()).isTrue();
+        assertThat(this.planner.plan("(?x)a b c").isAll()).isTrue();
+        assertThat(this.planner.plan("abc)").isAll()).isTrue();
+    }
+
+    public void testPlanIsSupersetOfMatches() {
+        var regex = "public\\s+(static\\s+)?void\\s+main";
+        var plan = this.planner.plan(regex);
+        var line = "    public   void main(String[] args) {";
+
+        assertThat(java.util.regex.Pattern.compile(regex).matcher(line).find()).isTrue();
+        assertThat(this.satisfies(plan, RegexTrigramPlanner.trigrams(line))).isTrue();
+    }
+
+    private boolean satisfies(RegexTrigramPlanner.Plan plan, java.util.Set<String> trigrams) {
+        switch (plan.op) {
+            case TRIGRAM:
+                return trigrams.contains(plan.trigram);
+            case AND:
+                return plan.children.stream().allMatch(x -> this.satisfies(x, trigrams));
+            case OR:
+                return plan.children.stream().anyMatch(x -> this.satisfies(x, trigrams));
+            default:
+                return true;
+        }
+    }
+}
@@ -1,8 +1,13 @@
 package com.searchcode.app.util;
 
+import com.searchcode.app.dto.classifier.FileClassifierResult;
 import junit.framework.TestCase;
 
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static org.assertj.core.api.AssertionsForInterfaceTypes.assertThat;
 
@@ -385,4 +390,61 @@ public class SlocCounterTest extends TestCase {
             assertThat(skipSize).isNotZero();
         }
     }
+
+    public void testTokenRunningPastEndCountsLastLine() {
+        var language = "HTML";
+        var contents = "<p>\n<!";
+
+        var slocCount = this.slocCounter.countStats(contents, language);
+        assertThat(slocCount.linesCount).isEqualTo(2);
+        assertThat(slocCount.codeCount).isEqualTo(1);
+        assertThat(slocCount.commentCount).isEqualTo(1);
+    }
+
+    public void testFirstMultiLineCommentInDatabaseOrderWins() {
+        var result = new FileClassifierResult("test");
+        result.multi_line = new String[][]{{"/**", "**/"}, {"/*", "*/"}};
+        var database = new HashMap<String, FileClassifierResult>();
+        database.put("Test", result);
+        var slocCounter = new SlocCounter(database);
+
+        var slocCount = slocCounter.countStats("/* comment */\ncode", "Test");
+        assertThat(slocCount.commentCount).isEqualTo(1);
+        assertThat(slocCount.codeCount).isEqualTo(1);
+
+        slocCount = slocCounter.countStats("/** comment */\nstill comment **/\ncode", "Test");
+        assertThat(slocCount.commentCount).isEqualTo(2);
+        assertThat(slocCount.codeCount).isEqualTo(1);
+    }
+
+    public void testCounterReusedBetweenFiles() {
+        var counter = this.slocCounter.newCounter();
+
+        var slocCount = counter.countStats("/* open\nnever closed", "Java");
+        assertThat(slocCount.commentCount).isEqualTo(2);
+
+        slocCount = counter.countStats("code", "Java");
+        assertThat(slocCount.codeCount).isEqualTo(1);
+        assertThat(slocCount.commentCount).isEqualTo(0);
+    }
+
+    public void testCountStatsFromManyThreads() throws Exception {
+        var contents = "import this\n#comment\nprint this\n\nprint 'something'";
+        var executorService = Executors.newFixedThreadPool(8);
+        var futures = new ArrayList<Future<SlocCounter.SlocCount>>();
+
+        for (var i = 0; i < 200; i++) {
+            futures.add(executorService.submit(() -> this.slocCounter.countStats(contents, "Python")));
+        }
+
+        for (var future : futures) {
+            var slocCount = future.get();
+            assertThat(slocCount.linesCount).isEqualTo(5);
+            assertThat(slocCount.commentCount).isEqualTo(1);
+            assertThat(slocCount.codeCount).isEqualTo(3);
+            assertThat(slocCount.blankCount).isEqualTo(1);
+        }
+
+        executorService.shutdown();
+    }
 }
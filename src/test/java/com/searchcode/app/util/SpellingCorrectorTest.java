@@ -3,8 +3,15 @@ package com.searchcode.app.util;
 import junit.framework.TestCase;
 import org.apache.commons.lang3.RandomStringUtils;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Random;
 
+import static org.assertj.core.api.AssertionsForInterfaceTypes.assertThat;
+
 public class SpellingCorrectorTest extends TestCase {
 
     public ISpellingCorrector getSpellingCorrector() {
@@ -120,4 +127,151 @@ public class SpellingCorrectorTest extends TestCase {
             sc.getSampleWords(10);
         }
     }
+
+    public void testSpellingCorrectorTransposition() {
+        ISpellingCorrector sc = this.getSpellingCorrector();
+        sc.putWord("default");
+
+        assertEquals("default", sc.correct("dfeault"));
+    }
+
+    public void testEditDistanceIsMetric() {
+        // Optimal string alignment would give 3 here breaking the triangle inequality via "ac"
+        assertEquals(2, SearchcodeSpellingCorrector.editDistance("ca", "abc"));
+        assertEquals(1, SearchcodeSpellingCorrector.editDistance("ca", "ac"));
+        assertEquals(1, SearchcodeSpellingCorrector.editDistance("ac", "abc"));
+        assertEquals(0, SearchcodeSpellingCorrector.editDistance("", ""));
+        assertEquals(3, SearchcodeSpellingCorrector.editDistance("", "abc"));
+        assertEquals(1, SearchcodeSpellingCorrector.editDistance("abcd", "abdc"));
+        assertEquals(3, SearchcodeSpellingCorrector.editDistance("kitten", "sitting"));
+    }
+
+    public void testCorrectMatchesBruteForce() {
+        Random random = new Random(42);
+
+        for (int run = 0; run < 20; run++) {
+            SearchcodeSpellingCorrector sc = new SearchcodeSpellingCorrector(100000);
+            List<String> words = new ArrayList<>();
+
+            for (int i = 0; i < 300; i++) {
+                String word = RandomStringUtils.random(random.nextInt(6) + 1, 0, 0, false, false, "abcd".toCharArray(), random);
+                if (!sc.containsWord(word)) {
+                    sc.putWord(word);
+                    words.add(word);
+                }
+            }
+
+            for (int i = 0; i < 100; i++) {
+                String query = RandomStringUtils.random(random.nextInt(7) + 1, 0, 0, false, false, "abcde".toCharArray(), random);
+                assertEquals(query, this.bruteForceCorrect(words, query), sc.correct(query));
+            }
+        }
+    }
+
+    /**
+     * Same ranking as the corrector with every word seen once, checking every word rather than using the tree
+     */
+    private String bruteForceCorrect(List<String> words, String query) {
+        if (words.contains(query)) {
+            return query;
+        }
+
+        String bestMatch = null;
+        int bestDistance = Integer.MAX_VALUE;
+        boolean bestSameLength = false;
+
+        for (String word : words) {
+            int distance = SearchcodeSpellingCorrector.editDistance(query, word);
+            boolean sameLength = word.length() == query.length();
+
+            if (distance > 2) {
+                continue;
+            }
+
+            boolean better = bestMatch == null
+                    || distance < bestDistance
+                    || (distance == bestDistance && sameLength && !bestSameLength)
+                    || (distance == bestDistance && sameLength == bestSameLength && word.compareTo(bestMatch) < 0);
+
+            if (better) {
+                bestMatch = word;
+                bestDistance = distance;
+                bestSameLength = sameLength;
+            }
+        }
+
+        return bestMatch == null ? query : bestMatch;
+    }
+
+    public void testBoundedWordCount() {
+        ISpellingCorrector sc = new SearchcodeSpellingCorrector(100);
+
+        for (int i = 0; i < 10; i++) {
+            sc.putWord("common");
+        }
+
+        for (int i = 0; i < 1000; i++) {
+            sc.putWord("word" + i);
+        }
+
+        assertThat(sc.getWordCount()).isLessThanOrEqualTo(100);
+        assertTrue(sc.containsWord("common"));
+        assertEquals("common", sc.correct("comon"));
+    }
+
+    public void testSaveAndLoadSnapshot() throws IOException {
+        Path snapshot = Files.createTempDirectory("spellingcorrectortest").resolve("snapshot.gz");
+        ISpellingCorrector sc = this.getSpellingCorrector();
+        sc.putWord("testy");
+        sc.putWord("testy");
+        sc.putWord("tests");
+
+        assertTrue(sc.saveSnapshot(snapshot));
+
+        ISpellingCorrector loaded = this.getSpellingCorrector();
+        assertTrue(loaded.loadSnapshot(snapshot));
+        assertEquals(2, loaded.getWordCount());
+        assertEquals("testy", loaded.correct("testz"));
+        assertThat(loaded.getSampleWords(1)).containsExactly("2 - testy");
+
+        assertFalse(loaded.loadSnapshot(snapshot.resolveSibling("missing.gz")));
+        Files.delete(snapshot);
+    }
+
+    public void testLoadSnapshotLongCounts() throws IOException {
+        Path snapshot = Files.createTempFile("spelling", ".gz");
+
+        try (var writer = new java.io.OutputStreamWriter(new java.util.zip.GZIPOutputStream(Files.newOutputStream(snapshot)), java.nio.charset.StandardCharsets.UTF_8)) {
+            writer.write("searchcode-spelling-1\nbig\t5000000000\nbroken\tabc\n");
+        }
+
+        ISpellingCorrector loaded = this.getSpellingCorrector();
+        assertTrue(loaded.loadSnapshot(snapshot));
+        assertThat(loaded.getSampleWords(2)).containsExactly("5000000000 - big", "1 - broken");
+
+        Files.delete(snapshot);
+    }
+
+    public void testConcurrentPutAndCorrect() throws InterruptedException {
+        ISpellingCorrector sc = this.getSpellingCorrector();
+        List<Thread> threads = new ArrayList<>();
+
+        for (int i = 0; i < 4; i++) {
+            int offset = i;
+            threads.add(new Thread(() -> {
+                for (int j = 0; j < 1000; j++) {
+                    sc.putWord("word" + (j * 4 + offset));
+                    sc.correct("wrd" + j);
+                }
+            }));
+        }
+
+        threads.forEach(Thread::start);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(4000, sc.getWordCount());
+        assertEquals("word1234", sc.correct("wrd1234"));
+    }
 }